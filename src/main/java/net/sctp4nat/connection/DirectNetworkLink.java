@@ -0,0 +1,50 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpSocket;
+
+/**
+ * A {@link NetworkLink}, which can send packets straight out of a direct
+ * {@link ByteBuffer}. {@link SctpSocket}s using such a link let the native
+ * counterpart write outbound packets into a reusable direct buffer, so that no
+ * array is allocated per packet.
+ *
+ * @author Jonas Wagner
+ */
+public interface DirectNetworkLink extends NetworkLink {
+
+	/**
+	 * Callback triggered by <tt>SctpSocket</tt> whenever it wants to send some
+	 * network packet.
+	 * 
+	 * @param facade
+	 *            SctpChannelFacade instance.
+	 * @param packet
+	 *            network packet between position and limit. The buffer is reused
+	 *            for the next packet, so it must be sent (or copied) before this
+	 *            method returns.
+	 * @param tos
+	 *            Type of Service flag
+	 * @throws IOException
+	 *             in case of transport error.
+	 */
+	void onConnOut(final SctpChannelFacade facade, final ByteBuffer packet, final int tos) throws IOException;
+}
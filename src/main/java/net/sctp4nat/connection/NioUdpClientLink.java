@@ -0,0 +1,190 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.connection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javassist.NotFoundException;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This class is the counterpart of {@link UdpClientLink}, which does not need
+ * a thread of its own. It holds a non-blocking {@link DatagramChannel}
+ * connected to the remote endpoint, which is serviced by a shared
+ * {@link UdpEventLoop}. Therefore, the number of threads does not grow with the
+ * number of outgoing SCTP associations.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class NioUdpClientLink implements DirectNetworkLink, UdpEventLoop.ReadHandler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(NioUdpClientLink.class);
+
+	/**
+	 * Udp channel used for transport.
+	 */
+	private final DatagramChannel channel;
+
+	/**
+	 * The {@link UdpEventLoop}, which receives on the channel.
+	 */
+	private final UdpEventLoop loop;
+
+	/**
+	 * The assigned {@link SctpChannel}.
+	 */
+	private final SctpChannel so;
+
+	/**
+	 * Destination <tt>InetSocketAddress</tt>.
+	 */
+	private final InetSocketAddress remote;
+
+	/**
+	 * Set, once this link is closed.
+	 */
+	private volatile boolean isShutdown = false;
+
+	/**
+	 * The number of outbound packets, which were dropped, because the send
+	 * buffer of the socket was full.
+	 */
+	private final AtomicLong droppedPackets = new AtomicLong();
+
+	/**
+	 * Creates new instance of <tt>NioUdpClientLink</tt>, which is serviced by
+	 * the default {@link UdpEventLoopGroup} of {@link SctpUtils}.
+	 */
+	public NioUdpClientLink(final InetSocketAddress local, final InetSocketAddress remote, final SctpChannel so)
+			throws IOException {
+		this(local, remote, so, SctpUtils.getEventLoopGroup().next());
+	}
+
+	/**
+	 * Creates new instance of <tt>NioUdpClientLink</tt>, which is serviced by
+	 * the given {@link UdpEventLoop}.
+	 */
+	public NioUdpClientLink(final InetSocketAddress local, final InetSocketAddress remote, final SctpChannel so,
+			final UdpEventLoop loop) throws IOException {
+		this.remote = remote;
+		this.so = so;
+		this.loop = loop;
+		this.channel = DatagramChannel.open();
+		try {
+			channel.configureBlocking(false);
+			channel.bind(local);
+			channel.connect(remote);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		so.setLink(this);
+		loop.register(channel, this);
+	}
+
+	@Override
+	public boolean onReadable(final ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		try {
+			if (channel.read(buffer) <= 0) {
+				return false;
+			}
+		} catch (PortUnreachableException e) {
+			LOG.debug("remote {}:{} is not reachable (yet)", remote.getHostString(), remote.getPort());
+			return true;
+		}
+		buffer.flip();
+		so.onConnIn(buffer);
+		return true;
+	}
+
+	@Override
+	public void onConnOut(final SctpChannelFacade facade, final byte[] data, final int tos)
+			throws IOException, NotFoundException {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("sending sctp packet to {}/{}, ", remote.getAddress().getHostAddress(), remote.getPort());
+		}
+		send(ByteBuffer.wrap(data));
+	}
+
+	@Override
+	public void onConnOut(final SctpChannelFacade facade, final ByteBuffer packet, final int tos) throws IOException {
+		send(packet);
+	}
+
+	/**
+	 * Writes packet to the non-blocking channel. If the send buffer of the
+	 * socket is full, nothing is written and the packet is dropped. usrsctp
+	 * retransmits it like a packet lost on the network.
+	 */
+	private void send(final ByteBuffer packet) throws IOException {
+		if (channel.write(packet) == 0 && packet.hasRemaining()) {
+			long dropped = droppedPackets.incrementAndGet();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("send buffer full, dropped packet to {}/{} ({} dropped so far)",
+						remote.getAddress().getHostAddress(), remote.getPort(), dropped);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of outbound packets, which were dropped, because the
+	 *         send buffer of the socket was full.
+	 */
+	public long getDroppedPackets() {
+		return droppedPackets.get();
+	}
+
+	@Override
+	public void close() {
+		this.isShutdown = true;
+		loop.close(channel);
+	}
+
+	/**
+	 * @return the local {@link InetSocketAddress} of the {@link DatagramChannel}
+	 *         or null if it is closed.
+	 */
+	public InetSocketAddress getLocal() {
+		try {
+			return (InetSocketAddress) channel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		InetSocketAddress local = getLocal();
+		String localString = local == null ? "closed" : local.getAddress().getHostAddress() + ":" + local.getPort();
+
+		return "NioUdpClientLink(" + "Local(" + localString + ")" + ", Remote("
+				+ remote.getAddress().getHostAddress() + ":" + remote.getPort() + "), shutdown is " + isShutdown
+				+ ")";
+	}
+}
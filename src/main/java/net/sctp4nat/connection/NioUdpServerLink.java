@@ -0,0 +1,331 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.connection;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javassist.NotFoundException;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelBuilder;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.core.SctpMapper;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.origin.SctpSocket;
+import net.sctp4nat.util.DirectBufferPool;
+import net.sctp4nat.util.ReusePort;
+import net.sctp4nat.util.SctpAssociationOptions;
+import net.sctp4nat.util.SctpInitException;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This class is an alternative to {@link UdpServerLink}, which is based on a
+ * {@link DatagramChannel} instead of a {@link java.net.DatagramSocket}.
+ * Received and sent packets are held by direct {@link ByteBuffer}s from a
+ * {@link DirectBufferPool} and received packets are passed to usrsctp without
+ * copying them. Therefore, the receive loop does not allocate any objects per
+ * packet once the pool is warmed up. The sender {@link InetSocketAddress} is
+ * provided by {@link DatagramChannel}.receive(), which reuses the address
+ * object as long as consecutive packets come from the same remote endpoint.
+ *
+ * <br>
+ * <br>
+ * Like {@link UdpServerLink}, this link can receive on several
+ * {@link DatagramChannel}s bound to the same port with SO_REUSEPORT, each with
+ * its own receive thread. See {@link ReusePort}.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class NioUdpServerLink implements DirectNetworkLink {
+
+	private static final Logger LOG = LoggerFactory.getLogger(NioUdpServerLink.class);
+
+	/**
+	 * UDP channels used for transport, all bound to the same local port.
+	 */
+	private final DatagramChannel[] channels;
+
+	/**
+	 * The pool of receive and send buffers.
+	 */
+	private final DirectBufferPool pool;
+
+	/**
+	 * Trigger to end the receive thread.
+	 */
+	private volatile boolean isShutdown = false;
+
+	/**
+	 * The options of the accepted associations or null to keep the defaults of
+	 * usrsctp.
+	 */
+	private volatile SctpAssociationOptions associationOptions = null;
+
+	/**
+	 * Creates new instance of {@link NioUdpServerLink} with a
+	 * {@link DirectBufferPool} of default size.
+	 *
+	 * @param mapper
+	 *            The {@link SctpMapper} instance
+	 * @param localAddress
+	 *            The local {@link InetAddress} used for the
+	 *            {@link DatagramChannel}.
+	 * @param localPort
+	 *            The port used for the {@link DatagramChannel}.
+	 * @param cb
+	 *            The {@link SctpDataCallback} used to reply.
+	 * @throws IOException
+	 *             Thrown, if the {@link DatagramChannel} could not be created.
+	 */
+	public NioUdpServerLink(final SctpMapper mapper, final InetAddress localAddress, final int localPort,
+			final SctpDataCallback cb) throws IOException {
+		this(mapper, localAddress, localPort, cb,
+				new DirectBufferPool(UDP_DEFAULT_BUFFER_SIZE, SctpInitOptions.DEFAULT_BUFFER_POOL_SIZE));
+	}
+
+	/**
+	 * Creates new instance of {@link NioUdpServerLink}.
+	 *
+	 * @param mapper
+	 *            The {@link SctpMapper} instance
+	 * @param localAddress
+	 *            The local {@link InetAddress} used for the
+	 *            {@link DatagramChannel}.
+	 * @param localPort
+	 *            The port used for the {@link DatagramChannel}.
+	 * @param cb
+	 *            The {@link SctpDataCallback} used to reply.
+	 * @param pool
+	 *            The {@link DirectBufferPool}, which provides the receive and
+	 *            send buffers.
+	 * @throws IOException
+	 *             Thrown, if the {@link DatagramChannel} could not be created.
+	 */
+	public NioUdpServerLink(final SctpMapper mapper, final InetAddress localAddress, final int localPort,
+			final SctpDataCallback cb, final DirectBufferPool pool) throws IOException {
+		this(mapper, localAddress, localPort, cb, pool, 1);
+	}
+
+	/**
+	 * Creates new instance of {@link NioUdpServerLink}, which receives on
+	 * several {@link DatagramChannel}s bound to the same port. If SO_REUSEPORT
+	 * is not supported, only one {@link DatagramChannel} is used.
+	 *
+	 * @param mapper
+	 *            The {@link SctpMapper} instance
+	 * @param localAddress
+	 *            The local {@link InetAddress} used for the
+	 *            {@link DatagramChannel}s.
+	 * @param localPort
+	 *            The port used for the {@link DatagramChannel}s.
+	 * @param cb
+	 *            The {@link SctpDataCallback} used to reply.
+	 * @param pool
+	 *            The {@link DirectBufferPool}, which provides the receive and
+	 *            send buffers.
+	 * @param receiveThreads
+	 *            The number of {@link DatagramChannel}s and receive threads.
+	 * @throws IOException
+	 *             Thrown, if the {@link DatagramChannel}s could not be created.
+	 */
+	public NioUdpServerLink(final SctpMapper mapper, final InetAddress localAddress, final int localPort,
+			final SctpDataCallback cb, final DirectBufferPool pool, final int receiveThreads) throws IOException {
+		this.pool = pool;
+		this.channels = ReusePort.open(new InetSocketAddress(localAddress, localPort), Math.max(1, receiveThreads));
+		SctpUtils.setLink(this); // set this as main Link
+		for (DatagramChannel channel : channels) {
+			receive(channel, mapper, localAddress, localPort, cb);
+		}
+	}
+
+	/**
+	 * Same as {@link UdpServerLink}.receive(), but each packet is received into
+	 * a pooled direct {@link ByteBuffer}, which is returned to the pool as soon
+	 * as usrsctp has consumed the packet.
+	 *
+	 * @param channel
+	 *            The {@link DatagramChannel} this receive thread is listening
+	 *            on.
+	 * @param mapper
+	 *            The {@link SctpMapper} instance
+	 * @param localAddress
+	 *            The local {@link InetAddress} used for the
+	 *            {@link DatagramChannel}.
+	 * @param localPort
+	 *            The port used for the {@link DatagramChannel}.
+	 * @param cb
+	 *            The {@link SctpDataCallback} used to reply.
+	 */
+	private void receive(final DatagramChannel channel, final SctpMapper mapper, final InetAddress localAddress, final int localPort,
+			final SctpDataCallback cb) {
+		SctpUtils.getExecutors().getIoExecutor().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				while (!isShutdown) {
+					ByteBuffer buffer = pool.acquire();
+
+					try {
+						InetSocketAddress remote = (InetSocketAddress) channel.receive(buffer);
+						if (remote == null) {
+							continue;
+						}
+						buffer.flip();
+						if (!buffer.hasRemaining()) {
+							continue;
+						}
+
+						SctpChannel so = mapper.locate(remote);
+						if (so == null) {
+							LOG.info("New INIT arrived from {}:{}. Now starting the setupSocket() process...",
+									remote.getAddress().getHostAddress(), remote.getPort());
+							so = setupSocket(localAddress, localPort, remote, cb, mapper);
+							mapper.register(remote, so);
+						}
+						so.onConnIn(buffer);
+					} catch (ClosedChannelException e) {
+						LOG.debug("receive aborted because of shutdown!");
+						break;
+					} catch (IOException e) {
+						if (!isShutdown) {
+							LOG.error("Error while receiving packet in NioUdpServerLink.class!", e);
+						} else {
+							LOG.debug("receive aborted because of shutdown!");
+						}
+					} catch (SctpInitException e) {
+						LOG.error("Sctp is currently not initialized! Try init it with SctpUtils.init(...)", e);
+					} finally {
+						pool.release(buffer);
+					}
+				}
+				LOG.debug("Link shutdown, stop listening, closing udp connection");
+			}
+		});
+	}
+
+	@Override
+	public void onConnOut(SctpChannelFacade facade, byte[] data, final int tos) throws IOException, NotFoundException {
+		DatagramChannel channel = channels[ReusePort.shardOf(facade.getRemote(), channels.length)];
+		if (data.length > pool.getBufferSize()) {
+			channel.send(ByteBuffer.wrap(data), facade.getRemote());
+			return;
+		}
+
+		ByteBuffer buffer = pool.acquire();
+		try {
+			buffer.put(data).flip();
+			channel.send(buffer, facade.getRemote());
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	@Override
+	public void onConnOut(final SctpChannelFacade facade, final ByteBuffer packet, final int tos) throws IOException {
+		InetSocketAddress remote = facade.getRemote();
+		channels[ReusePort.shardOf(remote, channels.length)].send(packet, remote);
+	}
+
+	/**
+	 * Since there is no socket yet, we need to create one first.
+	 *
+	 * @param localAddress
+	 *            {@link InetAddress}
+	 * @param localPort
+	 *            {@link Integer}
+	 * @param remote
+	 *            {@link InetSocketAddress}
+	 * @param cb
+	 *            {@link SctpDataCallback}
+	 * @return so {@link SctpChannel}
+	 * @throws SctpInitException
+	 */
+	private SctpChannel setupSocket(final InetAddress localAddress, final int localPort,
+			final InetSocketAddress remote, final SctpDataCallback cb, final SctpMapper mapper)
+			throws SctpInitException {
+		SctpChannel so = new SctpChannelBuilder().networkLink(NioUdpServerLink.this).localSctpPort(localPort)
+				.sctpDataCallBack(cb).remoteAddress(remote.getAddress()).remotePort(remote.getPort()).mapper(mapper)
+				.associationOptions(associationOptions).build();
+		LOG.info("new SctpChannel object created --> " + so.toString());
+		so.listen();
+		return so;
+	}
+
+	/**
+	 * Sets the options, which are applied to the associations accepted from now
+	 * on.
+	 * 
+	 * @param associationOptions
+	 *            the {@link SctpAssociationOptions} or null to keep the
+	 *            defaults of usrsctp.
+	 */
+	public void setAssociationOptions(final SctpAssociationOptions associationOptions) {
+		this.associationOptions = associationOptions;
+	}
+
+	/**
+	 * Do not call this method while other corresponding {@link SctpSocket}s are
+	 * still open!!! This method closes the {@link DatagramChannel}s.
+	 */
+	@Override
+	public void close() {
+		this.isShutdown = true;
+		for (DatagramChannel channel : channels) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOG.error("Could not close DatagramChannel", e);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of {@link DatagramChannel}s and receive threads.
+	 */
+	public int getReceiveThreads() {
+		return channels.length;
+	}
+
+	/**
+	 * @return the local {@link InetSocketAddress} of the {@link DatagramChannel}
+	 *         or null if it is not bound.
+	 */
+	public InetSocketAddress getLocal() {
+		try {
+			return (InetSocketAddress) channels[0].getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		InetSocketAddress local = getLocal();
+
+		String localString = local == null ? "closed" : local.getAddress().getHostAddress() + ":" + local.getPort();
+
+		return "NioUdpServerLink(" + "Local(" + localString + "), shutdown is " + isShutdown + ")";
+	}
+}
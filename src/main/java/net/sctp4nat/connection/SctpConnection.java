@@ -15,7 +15,9 @@
  */
 package net.sctp4nat.connection;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
 
 import org.jdeferred.Promise;
 import org.slf4j.Logger;
@@ -26,6 +28,7 @@ import net.sctp4nat.core.SctpChannel;
 import net.sctp4nat.core.SctpChannelBuilder;
 import net.sctp4nat.core.SctpChannelFacade;
 import net.sctp4nat.core.SctpPorts;
+import net.sctp4nat.util.SctpAssociationOptions;
 import net.sctp4nat.util.SctpInitException;
 import net.sctp4nat.util.SctpUtils;
 
@@ -45,13 +48,40 @@ public class SctpConnection {
 	private InetSocketAddress local;
 	private InetSocketAddress remote;
 	@Builder.Default private int localSctpPort = SctpPorts.PORT_NOT_INITIALIZED;
+	/**
+	 * If true, the association is attached to the shared
+	 * {@link UdpMultiplexLink} of the local address instead of opening a new UDP
+	 * socket.
+	 */
+	@Builder.Default private boolean multiplex = false;
+	/**
+	 * If true, the association gets a {@link NioUdpClientLink} on the default
+	 * {@link UdpEventLoopGroup} instead of a {@link UdpClientLink} with its
+	 * own receive thread. The inbound packets and the
+	 * {@link net.sctp4nat.origin.SctpDataCallback}s of all these associations
+	 * then run on the few event loop threads, so a callback must not block.
+	 */
+	@Builder.Default private boolean eventLoop = false;
+	/**
+	 * The time in milliseconds, which the handshake may take.
+	 */
+	@Builder.Default private long connectTimeout = SctpChannel.CONNECT_TIMEOUT_MILLIS;
+	/**
+	 * The options of the association or null to keep the defaults of usrsctp.
+	 */
+	private SctpAssociationOptions associationOptions;
 
 	/**
 	 * This method calls {@link SctpChannel}.connect() and therefore causes usrsctp
 	 * to start the handshake with the remote endpoint.
 	 * 
 	 * @param link
-	 *            The {@link NetworkLink}, on which packets are sent
+	 *            The {@link NetworkLink}, on which packets are sent. If null,
+	 *            the association is attached to the shared
+	 *            {@link UdpMultiplexLink} of local (if multiplex is set), a
+	 *            {@link NioUdpClientLink} on the default
+	 *            {@link UdpEventLoopGroup} (if eventLoop is set) or a
+	 *            {@link UdpClientLink} is created.
 	 * @return A {@link Promise} object
 	 * @throws Exception
 	 *             Possible {@link Exception}s are {@link SctpInitException} and
@@ -80,7 +110,8 @@ public class SctpConnection {
 		SctpChannel socket = null;
 		try {
 		socket = new SctpChannelBuilder().remoteAddress(remote.getAddress()).remotePort(remote.getPort())
-				.mapper(SctpUtils.getMapper()).localSctpPort(localSctpPort).build();
+				.mapper(SctpUtils.getMapper()).localSctpPort(localSctpPort).associationOptions(associationOptions)
+				.build();
 		} catch (SctpInitException e) {
 			LOG.error("Could not create SctpChannel, because Sctp is not initialized! Try SctpUtils.init()");
 			throw new SctpInitException(e.getMessage());
@@ -91,7 +122,17 @@ public class SctpConnection {
 		}
 
 		NetworkLink link2 = link;
-		if (link == null) {
+		if (link == null && multiplex) {
+			try {
+				link2 = SctpUtils.getMultiplexLink(local).attach(socket);
+			} catch (IOException e) {
+				SctpPorts.getInstance().removePort(socket);
+				socket.close();
+				throw e;
+			}
+		} else if (link == null && eventLoop) {
+			link2 = new NioUdpClientLink(local, remote, socket);
+		} else if (link == null) {
 			link2 = new UdpClientLink(local, remote, socket);
 		}
 
@@ -106,7 +147,7 @@ public class SctpConnection {
 
 		so.setLink(link2);
 
-		Promise<SctpChannelFacade, Exception, Void> p = so.connect(remote);
+		Promise<SctpChannelFacade, Exception, Void> p = so.connect(remote, connectTimeout, TimeUnit.MILLISECONDS);
 
 		return p;
 
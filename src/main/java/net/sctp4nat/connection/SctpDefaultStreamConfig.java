@@ -22,6 +22,7 @@ import lombok.Getter;
 import lombok.Setter;
 import net.sctp4nat.core.SctpChannelFacade;
 import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpPartialReliability;
 
 /**
  * 
@@ -69,4 +70,10 @@ public class SctpDefaultStreamConfig {
 	 * This field specifies if the receiver should respect the order of packets.
 	 */
 	@Getter	@Setter	private boolean ordered = false;
+
+	/**
+	 * This field specifies, how long usrsctp retransmits a message sent with
+	 * this config. By default, messages are fully reliable.
+	 */
+	@Getter	@Setter	private SctpPartialReliability partialReliability = SctpPartialReliability.NONE;
 }
@@ -19,6 +19,8 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,7 +62,7 @@ public class UdpClientLink implements NetworkLink {
 	/**
 	 * Trigger to end the wrapper thread.
 	 */
-	private boolean isShutdown = false;
+	private volatile boolean isShutdown = false;
 
 	/**
 	 * Creates new instance of <tt>UdpClientLink</tt>.
@@ -70,7 +72,8 @@ public class UdpClientLink implements NetworkLink {
 		so.setLink(this);
 		this.local = local;
 		this.remote = remote;
-		this.udpSocket = new DatagramSocket(local.getPort(), local.getAddress());
+		// a socket backed by a DatagramChannel can receive without pinning a virtual thread
+		this.udpSocket = DatagramChannel.open().bind(local).socket();
 
 		// Listening thread
 		receive(remote, so);
@@ -100,18 +103,31 @@ public class UdpClientLink implements NetworkLink {
 	 *            The assigned {@link SctpChannel}
 	 */
 	private void receive(final InetSocketAddress remote, final SctpChannel so) {
-		SctpUtils.getThreadPoolExecutor().execute(new Runnable() {
+		SctpUtils.getExecutors().getIoExecutor().execute(new Runnable() {
 			public void run() {
 
 				try {
 					byte[] buff = new byte[UDP_DEFAULT_BUFFER_SIZE];
-					DatagramPacket p = new DatagramPacket(buff, UDP_DEFAULT_BUFFER_SIZE);
-					while (!isShutdown) {
-						udpSocket.receive(p);
-						so.onConnIn(p.getData(), p.getOffset(), p.getLength());
+					DatagramChannel channel = udpSocket.getChannel();
+					if (channel != null) {
+						// DatagramSocket.receive() holds a monitor, which pins a virtual thread
+						ByteBuffer buffer = ByteBuffer.wrap(buff);
+						while (!isShutdown) {
+							buffer.clear();
+							channel.receive(buffer);
+							so.onConnIn(buff, 0, buffer.position());
+						}
+					} else {
+						DatagramPacket p = new DatagramPacket(buff, UDP_DEFAULT_BUFFER_SIZE);
+						while (!isShutdown) {
+							udpSocket.receive(p);
+							so.onConnIn(p.getData(), p.getOffset(), p.getLength());
+						}
 					}
 				} catch (IOException e) {
-					LOG.error(e.getMessage());
+					if (!isShutdown) {
+						LOG.error(e.getMessage());
+					}
 				}
 				LOG.debug(
 						"Link shutdown, closing udp connection to " + remote.getHostString() + ":" + remote.getPort());
@@ -124,8 +140,14 @@ public class UdpClientLink implements NetworkLink {
 			throws IOException, NotFoundException {
 		LOG.info("sending sctp packet from {}/{} to {}/{}, ", local.getAddress().getHostAddress(), local.getPort(),
 				remote.getAddress().getHostAddress(), remote.getPort());
-		DatagramPacket packet = new DatagramPacket(data, data.length, this.remote.getAddress(), this.remote.getPort());
-		udpSocket.send(packet);
+		DatagramChannel channel = udpSocket.getChannel();
+		if (channel != null) {
+			channel.send(ByteBuffer.wrap(data), remote);
+		} else {
+			DatagramPacket packet = new DatagramPacket(data, data.length, this.remote.getAddress(),
+					this.remote.getPort());
+			udpSocket.send(packet);
+		}
 	}
 
 	@Override
@@ -0,0 +1,228 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class multiplexes any number of non-blocking {@link DatagramChannel}s
+ * on a single {@link Selector} and therefore on a single thread. Whenever a
+ * registered channel becomes readable, its {@link ReadHandler} is called on
+ * the event loop thread with a direct {@link ByteBuffer}, which is shared by
+ * all channels of this loop.
+ *
+ * <br>
+ * <br>
+ * Since the whole inbound SCTP processing of all registered channels runs on
+ * this thread, {@link ReadHandler}s (and the {@link net.sctp4nat.origin.SctpDataCallback}s
+ * called by them) must not block.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class UdpEventLoop implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(UdpEventLoop.class);
+
+	/**
+	 * Maximal number of packets read from one channel per select, so that a busy
+	 * channel can not starve the others.
+	 */
+	private static final int MAX_READS_PER_KEY = 16;
+
+	/**
+	 * Callback of a channel registered on a {@link UdpEventLoop}.
+	 */
+	public interface ReadHandler {
+
+		/**
+		 * Called on the event loop thread, if the channel is readable.
+		 *
+		 * @param buffer
+		 *            the direct receive buffer of the event loop. It is only valid
+		 *            until this method returns.
+		 * @return true if a packet was read, false if the channel has no more
+		 *         packets.
+		 * @throws IOException
+		 *             Thrown, if the channel failed. The channel is deregistered
+		 *             afterwards.
+		 */
+		boolean onReadable(ByteBuffer buffer) throws IOException;
+	}
+
+	private final Selector selector;
+
+	/**
+	 * Receive buffer shared by all channels of this loop.
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(NetworkLink.UDP_DEFAULT_BUFFER_SIZE);
+
+	/**
+	 * Registrations, which have to be done on the event loop thread.
+	 */
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The registered channels. A channel is removed exactly once, either by
+	 * {@link #close(DatagramChannel)} or by a registration, which failed,
+	 * because the channel was already closed.
+	 */
+	private final Set<DatagramChannel> channels = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean isShutdown = false;
+
+	/**
+	 * Creates a new {@link UdpEventLoop}. Use run() to start it on a thread.
+	 *
+	 * @throws IOException
+	 *             Thrown, if the {@link Selector} could not be opened.
+	 */
+	public UdpEventLoop() throws IOException {
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * Registers a non-blocking {@link DatagramChannel} on this loop. The
+	 * registration itself happens asynchronously on the event loop thread.
+	 *
+	 * @param channel
+	 *            the {@link DatagramChannel}, which must be in non-blocking mode.
+	 * @param handler
+	 *            the {@link ReadHandler}, which is called if the channel is
+	 *            readable.
+	 */
+	public void register(final DatagramChannel channel, final ReadHandler handler) {
+		if (channel.isBlocking()) {
+			throw new IllegalArgumentException("The DatagramChannel has to be in non-blocking mode!");
+		}
+
+		channels.add(channel);
+		tasks.offer(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					channel.register(selector, SelectionKey.OP_READ, handler);
+				} catch (ClosedChannelException e) {
+					LOG.debug("Channel closed before it could be registered");
+					channels.remove(channel);
+				}
+			}
+		});
+		selector.wakeup();
+	}
+
+	/**
+	 * Closes the given {@link DatagramChannel} and removes it from this loop.
+	 *
+	 * @param channel
+	 *            the registered {@link DatagramChannel}
+	 */
+	public void close(final DatagramChannel channel) {
+		if (!channels.remove(channel)) {
+			return;
+		}
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOG.error("Could not close DatagramChannel", e);
+		}
+		// the selector releases the channel on its next select
+		selector.wakeup();
+	}
+
+	/**
+	 * @return the number of channels currently registered on this loop.
+	 */
+	public int getChannelCount() {
+		return channels.size();
+	}
+
+	@Override
+	public void run() {
+		while (!isShutdown) {
+			try {
+				selector.select();
+				runTasks();
+				processSelectedKeys();
+			} catch (IOException e) {
+				LOG.error("Select failed in UdpEventLoop!", e);
+			} catch (ClosedSelectorException e) {
+				break;
+			}
+		}
+		LOG.debug("UdpEventLoop shutdown");
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	private void processSelectedKeys() {
+		Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+		while (keys.hasNext()) {
+			SelectionKey key = keys.next();
+			keys.remove();
+			if (!key.isValid()) {
+				continue;
+			}
+
+			ReadHandler handler = (ReadHandler) key.attachment();
+			try {
+				for (int i = 0; i < MAX_READS_PER_KEY && handler.onReadable(buffer); i++) {
+					// read until the channel is drained or its share is used up
+				}
+			} catch (IOException e) {
+				if (key.channel().isOpen()) {
+					LOG.error("Error while receiving packet in UdpEventLoop, closing channel", e);
+					close((DatagramChannel) key.channel());
+				}
+			} catch (RuntimeException e) {
+				LOG.error("ReadHandler failed in UdpEventLoop!", e);
+			}
+		}
+	}
+
+	/**
+	 * Stops this loop and closes its {@link Selector}. Registered channels are
+	 * not closed.
+	 */
+	public void shutdown() {
+		this.isShutdown = true;
+		try {
+			selector.close();
+		} catch (IOException e) {
+			LOG.error("Could not close Selector", e);
+		}
+	}
+}
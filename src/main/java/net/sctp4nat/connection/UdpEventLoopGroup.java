@@ -0,0 +1,101 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.connection;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds a fixed number of {@link UdpEventLoop}s, each running on
+ * its own thread. New channels are distributed round robin among the loops.
+ * Therefore, the number of threads is independent of the number of channels.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class UdpEventLoopGroup {
+
+	private final UdpEventLoop[] loops;
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Creates a new {@link UdpEventLoopGroup} and starts its loops.
+	 *
+	 * @param size
+	 *            the number of {@link UdpEventLoop}s (threads).
+	 * @param executor
+	 *            the {@link Executor}, on which the loops are run. Each loop
+	 *            occupies one thread until shutdown() is called.
+	 * @throws IOException
+	 *             Thrown, if a {@link UdpEventLoop} could not be created.
+	 */
+	public UdpEventLoopGroup(final int size, final Executor executor) throws IOException {
+		if (size < 1) {
+			throw new IllegalArgumentException("size must be positive!");
+		}
+
+		this.loops = new UdpEventLoop[size];
+		try {
+			for (int i = 0; i < size; i++) {
+				loops[i] = new UdpEventLoop();
+			}
+		} catch (IOException e) {
+			shutdown();
+			throw e;
+		}
+
+		for (UdpEventLoop loop : loops) {
+			executor.execute(loop);
+		}
+	}
+
+	/**
+	 * @return the next {@link UdpEventLoop} in round robin order.
+	 */
+	public UdpEventLoop next() {
+		return loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+
+	/**
+	 * @return the number of {@link UdpEventLoop}s.
+	 */
+	public int size() {
+		return loops.length;
+	}
+
+	/**
+	 * @return the number of channels registered on all loops.
+	 */
+	public int getChannelCount() {
+		int count = 0;
+		for (UdpEventLoop loop : loops) {
+			count += loop.getChannelCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Stops all {@link UdpEventLoop}s.
+	 */
+	public void shutdown() {
+		for (UdpEventLoop loop : loops) {
+			if (loop != null) {
+				loop.shutdown();
+			}
+		}
+	}
+}
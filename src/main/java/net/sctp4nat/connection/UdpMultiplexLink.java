@@ -0,0 +1,279 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.connection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javassist.NotFoundException;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.core.SctpMapper;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This class is the client side counterpart of {@link UdpServerLink}. All
+ * outgoing SCTP associations attached to it share one bound
+ * {@link DatagramChannel} and therefore one local UDP port (and one NAT
+ * mapping). Inbound datagrams are demultiplexed by their remote address
+ * to the attached {@link SctpChannel}s.
+ *
+ * <br>
+ * <br>
+ * Since the remote address is the only demultiplexing key, only one
+ * association per remote endpoint can be attached at a time. Packets from
+ * unknown remote endpoints are dropped, because this link does not accept new
+ * associations.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class UdpMultiplexLink implements DirectNetworkLink, UdpEventLoop.ReadHandler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(UdpMultiplexLink.class);
+
+	/**
+	 * Udp channel shared by all attached associations.
+	 */
+	private final DatagramChannel channel;
+
+	/**
+	 * The {@link UdpEventLoop}, which receives on the channel.
+	 */
+	private final UdpEventLoop loop;
+
+	/**
+	 * The {@link SctpMapper}, in which the associations to a remote are
+	 * registered, which are not attached to this link.
+	 */
+	private final SctpMapper mapper;
+
+	/**
+	 * The attached {@link SctpChannel}s by their remote address.
+	 */
+	private final ConcurrentMap<InetSocketAddress, SctpChannel> associations = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of outgoing packets, which the channel could not send.
+	 */
+	private final AtomicLong droppedPackets = new AtomicLong();
+
+	/**
+	 * Set, once this link is closed.
+	 */
+	private volatile boolean isShutdown = false;
+
+	/**
+	 * Creates new instance of <tt>UdpMultiplexLink</tt>, which is serviced by
+	 * the default {@link UdpEventLoopGroup} and resolves channels via the default
+	 * {@link SctpMapper} of {@link SctpUtils}.
+	 */
+	public UdpMultiplexLink(final InetSocketAddress local) throws IOException {
+		this(local, SctpUtils.getMapper(), SctpUtils.getEventLoopGroup().next());
+	}
+
+	/**
+	 * Creates new instance of <tt>UdpMultiplexLink</tt>.
+	 *
+	 * @param local
+	 *            the local {@link InetSocketAddress} to bind to. Use port 0 for
+	 *            an ephemeral port.
+	 * @param mapper
+	 *            the {@link SctpMapper}, in which the attached
+	 *            {@link SctpChannel}s are registered.
+	 * @param loop
+	 *            the {@link UdpEventLoop}, which receives on this link.
+	 */
+	public UdpMultiplexLink(final InetSocketAddress local, final SctpMapper mapper, final UdpEventLoop loop)
+			throws IOException {
+		this.mapper = mapper;
+		this.loop = loop;
+		this.channel = DatagramChannel.open();
+		try {
+			channel.configureBlocking(false);
+			channel.bind(local);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		loop.register(channel, this);
+	}
+
+	/**
+	 * Attaches a new outgoing association to this link. The returned
+	 * {@link NetworkLink} has to be set on the {@link SctpChannel}. Closing it
+	 * only detaches the association and leaves the shared channel open.
+	 *
+	 * @param so
+	 *            the {@link SctpChannel}, whose remote address is already set.
+	 * @return the {@link NetworkLink} of this association
+	 * @throws IOException
+	 *             Thrown, if this link is closed or if another association to
+	 *             the same remote endpoint is already attached or registered.
+	 *             The caller has to close so in this case.
+	 */
+	public NetworkLink attach(final SctpChannel so) throws IOException {
+		final InetSocketAddress remote = so.getRemote();
+		if (remote == null) {
+			throw new IllegalArgumentException("The remote address of the SctpChannel must be set!");
+		}
+		if (isShutdown) {
+			throw new IOException("UdpMultiplexLink is closed!");
+		}
+		if (mapper.locate(remote) != null || associations.putIfAbsent(remote, so) != null) {
+			throw new IOException("There is already an association to " + remote.getAddress().getHostAddress() + ":"
+					+ remote.getPort() + ", which can not be demultiplexed from a new one!");
+		}
+
+		return new DirectNetworkLink() {
+
+			@Override
+			public void onConnOut(final SctpChannelFacade facade, final byte[] packet, final int tos)
+					throws IOException, NotFoundException {
+				UdpMultiplexLink.this.onConnOut(facade, packet, tos);
+			}
+
+			@Override
+			public void onConnOut(final SctpChannelFacade facade, final ByteBuffer packet, final int tos)
+					throws IOException {
+				UdpMultiplexLink.this.onConnOut(facade, packet, tos);
+			}
+
+			@Override
+			public void close() {
+				associations.remove(remote, so);
+			}
+
+			@Override
+			public String toString() {
+				return "UdpMultiplexLink.Association(Remote(" + remote.getAddress().getHostAddress() + ":"
+						+ remote.getPort() + "), " + UdpMultiplexLink.this + ")";
+			}
+		};
+	}
+
+	@Override
+	public boolean onReadable(final ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		InetSocketAddress remote;
+		try {
+			remote = (InetSocketAddress) channel.receive(buffer);
+		} catch (PortUnreachableException e) {
+			LOG.debug("a remote endpoint is not reachable (yet)");
+			return true;
+		}
+		if (remote == null) {
+			return false;
+		}
+		buffer.flip();
+
+		SctpChannel so = associations.get(remote);
+		if (so == null) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("dropping packet from unknown remote {}/{}", remote.getAddress().getHostAddress(),
+						remote.getPort());
+			}
+			return true;
+		}
+		so.onConnIn(buffer);
+		return true;
+	}
+
+	@Override
+	public void onConnOut(final SctpChannelFacade facade, final byte[] data, final int tos)
+			throws IOException, NotFoundException {
+		InetSocketAddress remote = facade.getRemote();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("sending sctp packet to {}/{}, ", remote.getAddress().getHostAddress(), remote.getPort());
+		}
+		send(ByteBuffer.wrap(data), remote);
+	}
+
+	@Override
+	public void onConnOut(final SctpChannelFacade facade, final ByteBuffer packet, final int tos) throws IOException {
+		send(packet, facade.getRemote());
+	}
+
+	/**
+	 * The channel is non-blocking, so a full socket send buffer drops the
+	 * packet. SCTP retransmits it like a packet lost on the network.
+	 */
+	private void send(final ByteBuffer packet, final InetSocketAddress remote) throws IOException {
+		if (channel.send(packet, remote) == 0 && packet.hasRemaining()) {
+			long dropped = droppedPackets.incrementAndGet();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("send buffer full, dropped packet to {}/{} ({} dropped so far)",
+						remote.getAddress().getHostAddress(), remote.getPort(), dropped);
+			}
+		}
+	}
+
+	/**
+	 * Closes the shared {@link DatagramChannel}. Do not call this method while
+	 * attached associations are still open!
+	 */
+	@Override
+	public void close() {
+		this.isShutdown = true;
+		loop.close(channel);
+	}
+
+	/**
+	 * @return the number of attached associations.
+	 */
+	public int getAssociationCount() {
+		return associations.size();
+	}
+
+	/**
+	 * @return the number of outgoing packets, which were dropped, because the
+	 *         socket send buffer was full.
+	 */
+	public long getDroppedPackets() {
+		return droppedPackets.get();
+	}
+
+	/**
+	 * @return the local {@link InetSocketAddress} of the {@link DatagramChannel}
+	 *         or null if it is closed.
+	 */
+	public InetSocketAddress getLocal() {
+		try {
+			return (InetSocketAddress) channel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		InetSocketAddress local = getLocal();
+		String localString = local == null ? "closed" : local.getAddress().getHostAddress() + ":" + local.getPort();
+
+		return "UdpMultiplexLink(" + "Local(" + localString + "), associations: " + associations.size()
+				+ ", shutdown is " + isShutdown + ")";
+	}
+}
@@ -34,6 +34,8 @@ import net.sctp4nat.core.SctpMapper;
 import net.sctp4nat.core.SctpPorts;
 import net.sctp4nat.origin.SctpDataCallback;
 import net.sctp4nat.origin.SctpSocket;
+import net.sctp4nat.util.ReusePort;
+import net.sctp4nat.util.SctpAssociationOptions;
 import net.sctp4nat.util.SctpInitException;
 import net.sctp4nat.util.SctpUtils;
 
@@ -42,6 +44,13 @@ import net.sctp4nat.util.SctpUtils;
  * connection attempts. By default it should be using port 9899 (default SCTP
  * via UDP port).
  * 
+ * <br>
+ * <br>
+ * Optionally, the link opens several {@link DatagramSocket}s on the same port
+ * with SO_REUSEPORT and runs one receive thread per socket. The kernel keeps
+ * each remote endpoint on the same socket, which allows the inbound SCTP
+ * processing to scale with the number of cores. See {@link ReusePort}.
+ * 
  * @author Jonas Wagner
  *
  */
@@ -50,14 +59,20 @@ public class UdpServerLink implements NetworkLink {
 	private static final Logger LOG = LoggerFactory.getLogger(UdpServerLink.class);
 
 	/**
-	 * UDP socket used for transport.
+	 * UDP sockets used for transport, all bound to the same local port.
+	 */
+	private final DatagramSocket[] udpSockets;
+
+	/**
+	 * Trigger to end the wrapper threads.
 	 */
-	private final DatagramSocket udpSocket;
+	private volatile boolean isShutdown = false;
 
 	/**
-	 * Trigger to end the wrapper thread.
+	 * The options of the accepted associations or null to keep the defaults of
+	 * usrsctp.
 	 */
-	private boolean isShutdown = false;
+	private volatile SctpAssociationOptions associationOptions = null;
 
 	/**
 	 * 
@@ -95,9 +110,39 @@ public class UdpServerLink implements NetworkLink {
 	 */
 	public UdpServerLink(final SctpMapper mapper, final InetAddress localAddress, final int localPort,
 			final SctpDataCallback cb) throws SocketException {
-		this.udpSocket = new DatagramSocket(localPort, localAddress);
+		this(mapper, localAddress, localPort, cb, 1);
+	}
+
+	/**
+	 * 
+	 * Creates new instance of {@link UdpServerLink}, which receives on several
+	 * {@link DatagramSocket}s bound to the same port. If SO_REUSEPORT is not
+	 * supported, only one {@link DatagramSocket} is used.
+	 * 
+	 * @param mapper
+	 *            The {@link SctpMapper} instance
+	 * @param local
+	 *            The local {@link InetAddress} used for the {@link DatagramSocket}s.
+	 * @param localPort
+	 *            The port used for the {@link DatagramSocket}s.
+	 * @param cb
+	 *            The {@link SctpDataCallback} used to reply.
+	 * @param receiveThreads
+	 *            The number of {@link DatagramSocket}s and receive threads.
+	 * @throws SocketException
+	 *             Thrown, if the {@link DatagramSocket}s could not be created.
+	 */
+	public UdpServerLink(final SctpMapper mapper, final InetAddress localAddress, final int localPort,
+			final SctpDataCallback cb, final int receiveThreads) throws SocketException {
+		if (receiveThreads <= 1) {
+			this.udpSockets = new DatagramSocket[] { new DatagramSocket(localPort, localAddress) };
+		} else {
+			this.udpSockets = ReusePort.openSockets(new InetSocketAddress(localAddress, localPort), receiveThreads);
+		}
 		SctpUtils.setLink(this); // set this as main Link
-		receive(mapper, localAddress, localPort, cb);
+		for (DatagramSocket udpSocket : udpSockets) {
+			receive(udpSocket, mapper, localAddress, localPort, cb);
+		}
 	}
 
 	/**
@@ -111,8 +156,8 @@ public class UdpServerLink implements NetworkLink {
 	 *            An already existing {@link DatagramSocket} instance.
 	 */
 	public UdpServerLink(SctpMapper mapper, InetSocketAddress local, SctpDataCallback cb, DatagramSocket udpSocket) {
-		this.udpSocket = udpSocket;
-		receive(mapper, local.getAddress(), local.getPort(), cb);
+		this.udpSockets = new DatagramSocket[] { udpSocket };
+		receive(udpSocket, mapper, local.getAddress(), local.getPort(), cb);
 	}
 
 	/**
@@ -125,6 +170,8 @@ public class UdpServerLink implements NetworkLink {
 	 * registration, onConnIn() is called to forward the INIT message from the
 	 * remote endpoint to the newly created SctpChannel.
 	 * 
+	 * @param udpSocket
+	 *            The {@link DatagramSocket} this receive thread is listening on.
 	 * @param mapper
 	 *            The {@link SctpMapper} instance
 	 * @param localAddress
@@ -134,9 +181,9 @@ public class UdpServerLink implements NetworkLink {
 	 * @param cb
 	 *            The {@link SctpDataCallback} used to reply.
 	 */
-	private void receive(final SctpMapper mapper, final InetAddress localAddress, final int localPort,
+	private void receive(final DatagramSocket udpSocket, final SctpMapper mapper, final InetAddress localAddress, final int localPort,
 			final SctpDataCallback cb) {
-		SctpUtils.getThreadPoolExecutor().execute(new Runnable() {
+		SctpUtils.getExecutors().getIoExecutor().execute(new Runnable() {
 
 			@Override
 			public void run() {
@@ -149,8 +196,11 @@ public class UdpServerLink implements NetworkLink {
 					try {
 						udpSocket.receive(p);
 						InetSocketAddress remote = new InetSocketAddress(p.getAddress(), p.getPort());
-						LOG.info("packet received from {}/{}", remote.getAddress().getHostAddress(), remote.getPort());
-						so = SctpMapper.locate(p.getAddress().getHostAddress(), p.getPort());
+						if (LOG.isDebugEnabled()) {
+							LOG.debug("packet received from {}/{}", remote.getAddress().getHostAddress(),
+									remote.getPort());
+						}
+						so = mapper.locate(remote);
 						if (so == null) {
 							LOG.info("New INIT arrived. Now starting the setupSocket() process...");
 							so = setupSocket(localAddress, localPort, p.getAddress(), p.getPort(), cb, mapper);
@@ -178,10 +228,12 @@ public class UdpServerLink implements NetworkLink {
 
 	@Override
 	public void onConnOut(SctpChannelFacade facade, byte[] data, final int tos) throws IOException, NotFoundException {
-		LOG.info("sending sctp packet from to {}/{}, ", facade.getRemote().getAddress().getHostAddress(),
-				facade.getRemote().getPort());
-		DatagramPacket packet = new DatagramPacket(data, data.length, (SocketAddress) facade.getRemote());
-		udpSocket.send(packet);
+		InetSocketAddress remote = facade.getRemote();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("sending sctp packet from to {}/{}, ", remote.getAddress().getHostAddress(), remote.getPort());
+		}
+		DatagramPacket packet = new DatagramPacket(data, data.length, (SocketAddress) remote);
+		udpSockets[ReusePort.shardOf(remote, udpSockets.length)].send(packet);
 	}
 
 	/**
@@ -204,25 +256,47 @@ public class UdpServerLink implements NetworkLink {
 			final InetAddress remoteAddress, final int remotePort, final SctpDataCallback cb, final SctpMapper mapper)
 			throws SctpInitException {
 		SctpChannel so = new SctpChannelBuilder().networkLink(UdpServerLink.this).localSctpPort(localPort)
-				.sctpDataCallBack(cb).remoteAddress(remoteAddress).remotePort(remotePort).mapper(mapper).build();
+				.sctpDataCallBack(cb).remoteAddress(remoteAddress).remotePort(remotePort).mapper(mapper)
+				.associationOptions(associationOptions).build();
 		LOG.info("new SctpChannel object created --> " + so.toString());
 		so.listen();
 		return so;
 	}
 
+	/**
+	 * Sets the options, which are applied to the associations accepted from now
+	 * on.
+	 * 
+	 * @param associationOptions
+	 *            the {@link SctpAssociationOptions} or null to keep the
+	 *            defaults of usrsctp.
+	 */
+	public void setAssociationOptions(final SctpAssociationOptions associationOptions) {
+		this.associationOptions = associationOptions;
+	}
+
 	/**
 	 * Do not call this method while other corresponding {@link SctpSocket}s are
-	 * still open!!! This method closes the {@link DatagramSocket}.
+	 * still open!!! This method closes the {@link DatagramSocket}s.
 	 */
 	@Override
 	public void close() {
 		this.isShutdown = true;
-		udpSocket.close();
+		for (DatagramSocket udpSocket : udpSockets) {
+			udpSocket.close();
+		}
+	}
+
+	/**
+	 * @return the number of {@link DatagramSocket}s and receive threads.
+	 */
+	public int getReceiveThreads() {
+		return udpSockets.length;
 	}
 
 	@Override
 	public String toString() {
-		InetSocketAddress local = (InetSocketAddress) this.udpSocket.getLocalSocketAddress();
+		InetSocketAddress local = (InetSocketAddress) this.udpSockets[0].getLocalSocketAddress();
 
 		return "UdpClientLink(" + "Local(" + local.getAddress().getHostAddress() + ":" + local.getPort()
 				+ "), shutdown is " + isShutdown + ")";
@@ -1,12 +1,26 @@
 package net.sctp4nat.core;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
-import java.util.concurrent.CountDownLatch;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.jdeferred.AlwaysCallback;
 import org.jdeferred.Deferred;
 import org.jdeferred.Promise;
+import org.jdeferred.Promise.State;
 import org.jdeferred.impl.DeferredObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,12 +30,21 @@ import net.sctp4nat.connection.SctpDefaultStreamConfig;
 import net.sctp4nat.origin.JNIUtils;
 import net.sctp4nat.origin.Sctp;
 import net.sctp4nat.origin.SctpAcceptable;
+import net.sctp4nat.origin.SctpBufferDataCallback;
 import net.sctp4nat.origin.SctpDataCallback;
 import net.sctp4nat.origin.SctpNotification;
+import net.sctp4nat.origin.SctpNotification.Event;
+import net.sctp4nat.origin.SctpNotificationView;
+import net.sctp4nat.origin.SctpPartialDeliveryCallback;
 import net.sctp4nat.origin.SctpSocket;
 import net.sctp4nat.origin.SctpSocket.NotificationListener;
+import net.sctp4nat.origin.SctpWritabilityCallback;
+import net.sctp4nat.util.SctpAssociationOptions;
 import net.sctp4nat.util.SctpInitException;
+import net.sctp4nat.util.SctpPartialReliability;
+import net.sctp4nat.util.SctpStreamScheduler;
 import net.sctp4nat.util.SctpUtils;
+import net.sctp4nat.util.SerialExecutor;
 
 /**
  * This class implements features from {@link SctpChannelFacade} and
@@ -40,8 +63,12 @@ import net.sctp4nat.util.SctpUtils;
 public class SctpChannel implements SctpChannelFacade {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SctpChannel.class);
-	private static final int NUMBER_OF_CONNECT_TASKS = 1;
-	private static final long CONNECT_TIMEOUT_SECONDS = 5;
+
+	/**
+	 * The default timeout of {@link #connect(InetSocketAddress)} in
+	 * milliseconds.
+	 */
+	public static final long CONNECT_TIMEOUT_MILLIS = 5000;
 
 	/**
 	 * The corresponding native {@link SctpSocket}
@@ -59,6 +86,24 @@ public class SctpChannel implements SctpChannelFacade {
 	 * The {@link SctpMapper} used by the session
 	 */
 	private SctpMapper mapper;
+	/**
+	 * Runs sends and close of this channel one after another in submission
+	 * order, so that an ordered stream is passed to usrsctp in order.
+	 */
+	private final SerialExecutor sendExecutor = SctpUtils.getExecutors().newSendMailbox();
+	/**
+	 * The transfers of
+	 * {@link #sendStream(ReadableByteChannel, boolean, int, int)} in
+	 * submission order. Without I-DATA, the head is running and the others
+	 * wait for it, because usrsctp can not interleave two open messages. With
+	 * I-DATA, the first transfer of each stream is running.
+	 */
+	private final ArrayDeque<SctpStreamSender> transfers = new ArrayDeque<>();
+	/**
+	 * Set, if {@link #shutdownInit()} waits for the end of the
+	 * {@link #transfers}. Guarded by the transfers.
+	 */
+	private boolean shutdownPending;
 
 	/**
 	 * The {@link SctpNotification} callback, which is triggered by the native
@@ -102,17 +147,53 @@ public class SctpChannel implements SctpChannelFacade {
 	 */
 	public SctpChannel(final int localSctpPort, InetSocketAddress remote, NetworkLink link, SctpDataCallback cb,
 			SctpMapper mapper) throws SctpInitException {
+		this(localSctpPort, remote, link, cb, mapper, null);
+	}
+
+	/**
+	 * Creates an Instance of {@link SctpChannel}, whose association uses the
+	 * given options.
+	 * 
+	 * @param localSctpPort
+	 *            the port, which is used by the native counterpart
+	 * @param remote
+	 *            {@link InetSocketAddress} of the remote.
+	 * @param link
+	 *            the corresponding {@link NetworkLink}.
+	 * @param cb
+	 *            the {@link SctpDataCallback}, which will be triggered by the
+	 *            native counterpart.
+	 * @param mapper
+	 *            the {@link SctpMapper} used by the session
+	 * @param options
+	 *            the {@link SctpAssociationOptions} or null to keep the
+	 *            defaults of usrsctp.
+	 * @throws SctpInitException
+	 */
+	public SctpChannel(final int localSctpPort, InetSocketAddress remote, NetworkLink link, SctpDataCallback cb,
+			SctpMapper mapper, SctpAssociationOptions options) throws SctpInitException {
 
 		if (!Sctp.isInitialized()) {
 			throw new SctpInitException("Sctp is currently not initialized! Try init with SctpUtils.init(...)");
 		}
 
-		this.so = Sctp.createSocket(localSctpPort);
+		this.so = Sctp.createSocket(localSctpPort, options != null && options.isInterleaving());
 		this.so.setLink(link); // forwards all onConnOut to the corresponding link
-		this.so.setDataCallbackNative(cb);
+		this.so.setChannel(this); // usrsctp callbacks resolve this channel without a lookup
+		setSctpDataCallback(cb);
 		this.link = link;
 		this.remote = remote;
 		this.mapper = mapper;
+
+		if (options != null) {
+			try {
+				if (!so.setAssociationOptions(options)) {
+					LOG.error("Not all association options could be set: " + options);
+				}
+			} catch (IOException e) {
+				LOG.error("Could not set the association options", e);
+			}
+		}
 	}
 
 	public void setNotificationListener(SctpSocket.NotificationListener l) {
@@ -123,24 +204,46 @@ public class SctpChannel implements SctpChannelFacade {
 	 * This method connects this {@link SctpChannel} to the remote counterpart. It
 	 * uses {@link SctpSocket} to prepare the init messages and its
 	 * {@link NetworkLink} to send it. Afterwards the SCTP four way handshake will
-	 * be done. If this method is not answered within time it will return a
-	 * {@link SctpInitException}.
+	 * be done. If the handshake is not finished within
+	 * {@link #CONNECT_TIMEOUT_MILLIS}, the {@link Promise} fails with a
+	 * {@link TimeoutException}.
 	 * 
 	 * @param remote
 	 *            {@link InetSocketAddress} of the remote.
 	 * @return p {@link Promise}
 	 */
 	public Promise<SctpChannelFacade, Exception, Void> connect(final InetSocketAddress remote) {
+		return connect(remote, CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Same as {@link #connect(InetSocketAddress)}, but with a custom timeout.
+	 * The timeout is scheduled on the shared timer of {@link SctpUtils}, so a
+	 * pending connect does not block any thread.
+	 * 
+	 * @param remote
+	 *            {@link InetSocketAddress} of the remote.
+	 * @param timeout
+	 *            the time the handshake may take.
+	 * @param unit
+	 *            the {@link TimeUnit} of timeout.
+	 * @return p {@link Promise}
+	 */
+	public Promise<SctpChannelFacade, Exception, Void> connect(final InetSocketAddress remote, final long timeout,
+			final TimeUnit unit) {
 		final Deferred<SctpChannelFacade, Exception, Void> d = new DeferredObject<>();
-		final CountDownLatch countDown = new CountDownLatch(NUMBER_OF_CONNECT_TASKS);
 
 		if (!Sctp.isInitialized()) {
 			d.reject(new SctpInitException("Sctp is currently not initialized! Try init it with SctpUtils.init(...)"));
 			return d;
 		}
 
+		if (this.remote == null) {
+			this.remote = remote;
+		}
+
 		try {
-			NotificationListener l = addNotificationListener(d, countDown);
+			NotificationListener l = addNotificationListener(d);
 			SctpChannel.this.setNotificationListener(l);
 			mapper.register(remote, SctpChannel.this);
 			LOG.debug("try connect to {}/{}, ", remote.getAddress().getHostAddress(), remote.getPort());
@@ -149,10 +252,11 @@ public class SctpChannel implements SctpChannelFacade {
 			LOG.error("Could not connect via SCTP! Cause: " + e.getMessage(), e);
 			mapper.unregister(remote);
 			d.reject(e);
+			return d.promise();
 		}
 
-		SctpUtils.getThreadPoolExecutor()
-				.execute(new SctpTimeoutThread(d, CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS, countDown));
+		SctpUtils.getExecutors().timeout(d, timeout, unit, "Timeout triggered! Connection to "
+				+ remote.getAddress().getHostAddress() + ":" + remote.getPort() + " could not be set up!");
 		return d.promise();
 	}
 
@@ -161,56 +265,105 @@ public class SctpChannel implements SctpChannelFacade {
 	 * 
 	 * @param d
 	 *            {@link Deferred}
-	 * @param countDown
-	 *            The {@link CountDownLatch} from connect.
 	 */
-	private NotificationListener addNotificationListener(final Deferred<SctpChannelFacade, Exception, Void> d,
-			final CountDownLatch countDown) {
+	private NotificationListener addNotificationListener(final Deferred<SctpChannelFacade, Exception, Void> d) {
 		return new NotificationListener() {
 
 			@Override
 			public void onSctpNotification(SctpAcceptable socket, SctpNotification notification) {
-				LOG.debug(notification.toString());
-				if (notification.toString().indexOf(SctpNotification.COMM_UP_STR) >= 0) {
-					countDown.countDown();
-					d.resolve(SctpChannel.this);
-				} else if (notification.toString().indexOf(SctpNotification.SHUTDOWN_COMP_STR) >= 0) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug(notification.toString());
+				}
+				onEvent(notification.getEvent());
+			}
+
+			@Override
+			public void onSctpNotification(SctpAcceptable socket, SctpNotificationView notification) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug(notification.toString());
+				}
+				onEvent(notification.getEvent());
+			}
+
+			private void onEvent(Event event) {
+				switch (event) {
+				case COMM_UP:
+					resolve(d);
+					break;
+				case SHUTDOWN_COMP:
 					// TODO jwa make a clean shutdown possible closing the socket prevents any
 					// SHUTDOWN ACK to be sent...
 					LOG.debug("Shutdown request received. Now shutting down the SCTP connection...");
 					SctpChannel.this.close();
-					d.reject(new Exception("we are forced to shutdown because of shutdown request from server!"));
-				} else if (notification.toString().indexOf(SctpNotification.ADDR_UNREACHABLE_STR) >= 0) {
+					reject(d, new Exception("we are forced to shutdown because of shutdown request from server!"));
+					break;
+				case ADDR_UNREACHABLE:
 					LOG.error("Heartbeat missing! Now shutting down the SCTP connection...");
 					SctpChannel.this.close();
-					d.reject(new Exception(
+					reject(d, new Exception(
 							"we are forced to close the connection because the remote is not answering! (remote: "
 									+ remote.getAddress().getHostAddress() + ":" + remote.getPort() + ")"));
-				} else if (notification.toString().indexOf(SctpNotification.COMM_LOST_STR) >= 0) {
+					break;
+				case COMM_LOST:
 					LOG.error("Communication aborted! Now shutting down the udp connection...");
 					SctpChannel.this.close();
-					d.reject(new Exception(
+					reject(d, new Exception(
 							"we are forced to close the connection because we lost the connection to remote: "
 									+ remote.getAddress().getHostAddress() + ":" + remote.getPort()));
-				} else if (notification.toString().indexOf(SctpNotification.SHUTDOWN_EVENT_STR) > 0) {
-					SctpChannel.this.close();
+					break;
+				default:
+					// SHUTDOWN is followed by SHUTDOWN_COMP, which closes the channel
+					break;
 				}
 			}
 
 		};
 	}
 
+	/**
+	 * The connect timeout may have rejected d already, therefore d is only
+	 * resolved if it is still pending.
+	 */
+	private void resolve(final Deferred<SctpChannelFacade, Exception, Void> d) {
+		synchronized (d) {
+			if (d.isPending()) {
+				d.resolve(SctpChannel.this);
+			}
+		}
+	}
+
+	private static void reject(final Deferred<SctpChannelFacade, Exception, Void> d, final Exception e) {
+		synchronized (d) {
+			if (d.isPending()) {
+				d.reject(e);
+			}
+		}
+	}
+
 	@Override
 	public Promise<Integer, Exception, Object> send(byte[] data, boolean ordered, int sid, int ppid) {
+		return send(data, 0, data.length, ordered, sid, ppid, SctpPartialReliability.NONE);
+	}
+
+	@Override
+	public Promise<Integer, Exception, Object> send(byte[] data, int offset, int len, boolean ordered, int sid,
+			int ppid) {
+		return send(data, offset, len, ordered, sid, ppid, SctpPartialReliability.NONE);
+	}
+
+	@Override
+	public Promise<Integer, Exception, Object> send(byte[] data, int offset, int len, boolean ordered, int sid,
+			int ppid, SctpPartialReliability reliability) {
 		Deferred<Integer, Exception, Object> d = new DeferredObject<>();
 
-		SctpUtils.getThreadPoolExecutor().execute(new Runnable() {
+		submitSend(d, new Runnable() {
 
 			@Override
 			public void run() {
 				try {
-					d.resolve(new Integer(so.sendNative(data, 0, data.length, ordered, sid, ppid)));
-				} catch (IOException e) {
+					d.resolve(Integer.valueOf(so.sendNative(data, offset, len, ordered, sid, ppid, reliability)));
+				} catch (Exception e) {
+					// e.g. an IllegalArgumentException for an invalid sid, which must not leave the promise pending
 					LOG.error("Could not send! Cause: " + e.getMessage(), e);
 					d.reject(e);
 				}
@@ -220,18 +373,48 @@ public class SctpChannel implements SctpChannelFacade {
 		return d.promise();
 	}
 
+	/**
+	 * Queues a send in the mailbox of this channel. If the mailbox or the send
+	 * executor is full, the send is rejected.
+	 */
+	private void submitSend(final Deferred<Integer, Exception, Object> d, final Runnable task) {
+		try {
+			sendExecutor.execute(task);
+		} catch (RejectedExecutionException e) {
+			LOG.warn("Could not queue send to " + remote.getHostString() + ":" + remote.getPort() + ". Cause: "
+					+ e.getMessage());
+			d.reject(e);
+		}
+	}
+
 	@Override
-	public Promise<Integer, Exception, Object> send(byte[] data, int offset, int len, boolean ordered, int sid,
-			int ppid) {
+	public Promise<Integer, Exception, Object> send(byte[] data, int offset, int len, SctpDefaultStreamConfig config) {
+		return send(data, offset, len, config.isOrdered(), config.getSid(), config.getPpid(),
+				config.getPartialReliability());
+	}
+
+	@Override
+	public Promise<Integer, Exception, Object> send(byte[] data, SctpDefaultStreamConfig config) {
+		return send(data, 0, data.length, config);
+	}
+
+	@Override
+	public Promise<Integer, Exception, Object> send(ByteBuffer data, boolean ordered, int sid, int ppid) {
+		return send(data, ordered, sid, ppid, SctpPartialReliability.NONE);
+	}
+
+	@Override
+	public Promise<Integer, Exception, Object> send(ByteBuffer data, boolean ordered, int sid, int ppid,
+			SctpPartialReliability reliability) {
 		Deferred<Integer, Exception, Object> d = new DeferredObject<>();
 
-		SctpUtils.getThreadPoolExecutor().execute(new Runnable() {
+		submitSend(d, new Runnable() {
 
 			@Override
 			public void run() {
 				try {
-					d.resolve(new Integer(so.sendNative(data, offset, len, ordered, sid, ppid)));
-				} catch (IOException e) {
+					d.resolve(Integer.valueOf(so.sendNative(data, ordered, sid, ppid, reliability)));
+				} catch (Exception e) {
 					LOG.error("Could not send! Cause: " + e.getMessage(), e);
 					d.reject(e);
 				}
@@ -242,13 +425,202 @@ public class SctpChannel implements SctpChannelFacade {
 	}
 
 	@Override
-	public Promise<Integer, Exception, Object> send(byte[] data, int offset, int len, SctpDefaultStreamConfig config) {
-		return send(data, offset, len, config.isOrdered(), config.getSid(), config.getPpid());
+	public Promise<Integer, Exception, Object> send(ByteBuffer data, SctpDefaultStreamConfig config) {
+		return send(data, config.isOrdered(), config.getSid(), config.getPpid(), config.getPartialReliability());
 	}
 
 	@Override
-	public Promise<Integer, Exception, Object> send(byte[] data, SctpDefaultStreamConfig config) {
-		return send(data, config.isOrdered(), config.getSid(), config.getPpid());
+	public int sendNow(byte[] data, int offset, int len, boolean ordered, int sid, int ppid) throws IOException {
+		return so.sendNative(data, offset, len, ordered, sid, ppid);
+	}
+
+	@Override
+	public int sendNow(byte[] data, int offset, int len, boolean ordered, int sid, int ppid,
+			SctpPartialReliability reliability) throws IOException {
+		return so.sendNative(data, offset, len, ordered, sid, ppid, reliability);
+	}
+
+	@Override
+	public int sendNow(byte[] data, SctpDefaultStreamConfig config) throws IOException {
+		return so.sendNative(data, 0, data.length, config.isOrdered(), config.getSid(), config.getPpid(),
+				config.getPartialReliability());
+	}
+
+	@Override
+	public int sendNow(ByteBuffer data, boolean ordered, int sid, int ppid) throws IOException {
+		return so.sendNative(data, ordered, sid, ppid);
+	}
+
+	@Override
+	public int sendNow(ByteBuffer data, boolean ordered, int sid, int ppid, SctpPartialReliability reliability)
+			throws IOException {
+		return so.sendNative(data, ordered, sid, ppid, reliability);
+	}
+
+	@Override
+	public void sendAndForget(byte[] data, int offset, int len, boolean ordered, int sid, int ppid) {
+		sendAndForget(data, offset, len, ordered, sid, ppid, SctpPartialReliability.NONE);
+	}
+
+	@Override
+	public void sendAndForget(final byte[] data, final int offset, final int len, final boolean ordered,
+			final int sid, final int ppid, final SctpPartialReliability reliability) {
+		if (isSendIdle()) {
+			forget(data, offset, len, ordered, sid, ppid, reliability);
+			return;
+		}
+
+		// queued behind the earlier sends, so that it does not overtake them. The caller may reuse data after
+		// this method returns, so the queued message is a copy.
+		final byte[] copy = Arrays.copyOfRange(data, offset, offset + len);
+		submitForget(len, new Runnable() {
+
+			@Override
+			public void run() {
+				forget(copy, 0, len, ordered, sid, ppid, reliability);
+			}
+		});
+	}
+
+	private void forget(byte[] data, int offset, int len, boolean ordered, int sid, int ppid,
+			SctpPartialReliability reliability) {
+		try {
+			if (so.sendNative(data, offset, len, ordered, sid, ppid, reliability) < 0) {
+				LOG.warn("Could not send " + len + " bytes to " + remote.getHostString() + ":" + remote.getPort());
+			}
+		} catch (Exception e) {
+			LOG.error("Could not send! Cause: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void sendAndForget(ByteBuffer data, boolean ordered, int sid, int ppid) {
+		sendAndForget(data, ordered, sid, ppid, SctpPartialReliability.NONE);
+	}
+
+	@Override
+	public void sendAndForget(final ByteBuffer data, final boolean ordered, final int sid, final int ppid,
+			final SctpPartialReliability reliability) {
+		if (isSendIdle()) {
+			forget(data, ordered, sid, ppid, reliability);
+			return;
+		}
+
+		final ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+		copy.put(data).flip();
+		submitForget(copy.remaining(), new Runnable() {
+
+			@Override
+			public void run() {
+				forget(copy, ordered, sid, ppid, reliability);
+			}
+		});
+	}
+
+	private void forget(ByteBuffer data, boolean ordered, int sid, int ppid, SctpPartialReliability reliability) {
+		int len = data.remaining();
+		try {
+			if (so.sendNative(data, ordered, sid, ppid, reliability) < 0) {
+				LOG.warn("Could not send " + len + " bytes to " + remote.getHostString() + ":" + remote.getPort());
+			}
+		} catch (Exception e) {
+			LOG.error("Could not send! Cause: " + e.getMessage(), e);
+		}
+	}
+
+	private void submitForget(final int len, final Runnable task) {
+		try {
+			sendExecutor.execute(task);
+		} catch (RejectedExecutionException e) {
+			LOG.warn("Could not queue " + len + " bytes to " + remote.getHostString() + ":" + remote.getPort()
+					+ ". Cause: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public Promise<Long, Exception, Long> sendStream(ReadableByteChannel source, boolean ordered, int sid, int ppid) {
+		final SctpStreamSender sender = new SctpStreamSender(so, sendExecutor, source, ordered, sid, ppid);
+		sender.promise().always(new AlwaysCallback<Long, Exception>() {
+
+			@Override
+			public void onAlways(State state, Long resolved, Exception rejected) {
+				boolean shutdown;
+				synchronized (transfers) {
+					transfers.remove(sender);
+					shutdown = shutdownPending && transfers.isEmpty();
+					if (shutdown) {
+						shutdownPending = false;
+					}
+				}
+				startTransfers();
+				if (shutdown) {
+					shutdownAfterSends();
+				}
+			}
+		});
+
+		synchronized (transfers) {
+			transfers.add(sender);
+		}
+		startTransfers();
+		return sender.promise();
+	}
+
+	@Override
+	public Promise<Long, Exception, Long> sendStream(InputStream source, boolean ordered, int sid, int ppid) {
+		return sendStream(Channels.newChannel(source), ordered, sid, ppid);
+	}
+
+	@Override
+	public Promise<Long, Exception, Long> sendStream(byte[] data, boolean ordered, int sid, int ppid) {
+		return sendStream(Channels.newChannel(new ByteArrayInputStream(data)), ordered, sid, ppid);
+	}
+
+	/**
+	 * Starts the transfers, which may run now. Without I-DATA, this is the
+	 * head, if it is not running yet. With I-DATA, it is the first transfer of
+	 * each stream, so a transfer only waits for the transfers on its own
+	 * stream.
+	 */
+	private void startTransfers() {
+		boolean interleaving;
+		try {
+			interleaving = so.isInterleaving();
+		} catch (IOException e) {
+			// closed, the pending transfers fail on their first part
+			interleaving = false;
+		}
+
+		List<SctpStreamSender> ready = new ArrayList<>();
+		synchronized (transfers) {
+			BitSet busy = new BitSet();
+			for (SctpStreamSender transfer : transfers) {
+				if (!busy.get(transfer.getSid()) && transfer.markStarted()) {
+					ready.add(transfer);
+				}
+				if (!interleaving) {
+					break;
+				}
+				busy.set(transfer.getSid());
+			}
+		}
+		for (SctpStreamSender transfer : ready) {
+			transfer.start();
+		}
+	}
+
+	/**
+	 * @return true, if no send is queued or running and no transfer is open. A
+	 *         transfer, which waits for free space in the send buffer, is not
+	 *         in the send mailbox, but its message is still open.
+	 */
+	private boolean isSendIdle() {
+		synchronized (transfers) {
+			if (!transfers.isEmpty()) {
+				return false;
+			}
+		}
+		return sendExecutor.isIdle();
 	}
 
 	/*
@@ -257,6 +629,40 @@ public class SctpChannel implements SctpChannelFacade {
 	 */
 	@Override
 	public void shutdownInit() {
+		synchronized (transfers) {
+			if (!transfers.isEmpty()) {
+				// a waiting transfer queues its next part later, so SHUT_WR is sent
+				// after the last transfer, and not from the send mailbox right away
+				shutdownPending = true;
+				return;
+			}
+		}
+		shutdownAfterSends();
+	}
+
+	private void shutdownAfterSends() {
+		if (sendExecutor.isIdle()) {
+			shutdownNow();
+			return;
+		}
+
+		// queued behind the earlier sends, which fail after SHUT_WR
+		try {
+			sendExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					shutdownNow();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOG.warn("Could not queue the SHUTDOWN command to " + remote.getHostString() + ":" + remote.getPort()
+					+ ", it is sent right away. Cause: " + e.getMessage());
+			shutdownNow();
+		}
+	}
+
+	private void shutdownNow() {
 		try {
 			LOG.debug("Send shutdown command to " + remote.getHostString() + ":" + remote.getPort());
 			int success = so.shutdownNative(SctpUtils.SHUT_WR);
@@ -274,7 +680,7 @@ public class SctpChannel implements SctpChannelFacade {
 		Deferred<Object, Exception, Object> d = new DeferredObject<>();
 
 		final SctpChannel currentInstance = this;
-		SctpUtils.getThreadPoolExecutor().execute(new Runnable() {
+		final Runnable closeTask = new Runnable() {
 
 			@Override
 			public void run() {
@@ -287,7 +693,21 @@ public class SctpChannel implements SctpChannelFacade {
 				}
 				d.resolve(null);
 			}
-		});
+		};
+
+		// close runs on the control executor, but only after the queued sends
+		final Executor controlExecutor = SctpUtils.getExecutors().getControlExecutor();
+		try {
+			sendExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					controlExecutor.execute(closeTask);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			controlExecutor.execute(closeTask);
+		}
 
 		return d.promise();
 
@@ -317,6 +737,13 @@ public class SctpChannel implements SctpChannelFacade {
 		return this.so.equals(so);
 	}
 
+	/**
+	 * @return the native {@link SctpSocket} wrapped by this {@link SctpChannel}.
+	 */
+	public SctpSocket getSctpSocket() {
+		return this.so;
+	}
+
 	/**
 	 * Forwards the incoming SCTP message to the native counterpart
 	 */
@@ -328,9 +755,84 @@ public class SctpChannel implements SctpChannelFacade {
 		}
 	}
 
+	/**
+	 * Forwards the incoming SCTP message held by the given buffer (from its
+	 * position to its limit) to the native counterpart
+	 */
+	public void onConnIn(ByteBuffer data) {
+		try {
+			this.so.onConnIn(data);
+		} catch (IOException e) {
+			LOG.error(e.getMessage());
+		}
+	}
+
 	@Override
 	public void setSctpDataCallback(final SctpDataCallback cb) {
 		so.setDataCallbackNative(cb);
+		// the larger buffer of the partial delivery is registered first, so the
+		// inbound buffer is only allocated once
+		if (cb instanceof SctpPartialDeliveryCallback) {
+			so.setPartialDeliveryCallbackNative((SctpPartialDeliveryCallback) cb);
+		}
+		if (cb instanceof SctpBufferDataCallback) {
+			so.setBufferDataCallbackNative((SctpBufferDataCallback) cb);
+		}
+	}
+
+	@Override
+	public void setSctpBufferDataCallback(final SctpBufferDataCallback cb) {
+		so.setBufferDataCallbackNative(cb);
+	}
+
+	@Override
+	public void setSctpPartialDeliveryCallback(final SctpPartialDeliveryCallback cb) {
+		so.setPartialDeliveryCallbackNative(cb);
+	}
+
+	@Override
+	public void setSctpWritabilityCallback(final SctpWritabilityCallback cb) {
+		so.setWritabilityCallbackNative(cb);
+	}
+
+	@Override
+	public boolean isWritable() {
+		return so.isWritable();
+	}
+
+	@Override
+	public int getSendBufferAvailable() throws IOException {
+		return so.getSendBufferAvailable();
+	}
+
+	@Override
+	public void setSendThreshold(final int sendThreshold) {
+		so.setSendThreshold(sendThreshold);
+	}
+
+	@Override
+	public SctpAssociationOptions getAssociationOptions() throws IOException {
+		return so.getAssociationOptions();
+	}
+
+	@Override
+	public boolean isInterleaving() throws IOException {
+		return so.isInterleaving();
+	}
+
+	@Override
+	public void setStreamScheduler(SctpStreamScheduler scheduler) throws IOException {
+		so.setStreamScheduler(scheduler);
+	}
+
+	@Override
+	public void setStreamPriority(int sid, int priority) throws IOException {
+		so.setStreamPriority(sid, priority);
+	}
+
+	@Override
+	public int getStreamPriority(int sid) throws IOException {
+		return so.getStreamPriority(sid);
 	}
 
 	/**
@@ -346,6 +848,13 @@ public class SctpChannel implements SctpChannelFacade {
 		this.link = link;
 	}
 
+	/**
+	 * @return the {@link NetworkLink}, which is used by this {@link SctpChannel}.
+	 */
+	public NetworkLink getLink() {
+		return link;
+	}
+
 	@Override
 	public InetSocketAddress getRemote() {
 		return this.remote;
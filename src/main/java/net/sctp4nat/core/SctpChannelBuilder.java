@@ -15,6 +15,7 @@
  */
 package net.sctp4nat.core;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 
@@ -25,8 +26,12 @@ import net.sctp4nat.connection.NetworkLink;
 import net.sctp4nat.origin.SctpAcceptable;
 import net.sctp4nat.origin.SctpDataCallback;
 import net.sctp4nat.origin.SctpNotification;
+import net.sctp4nat.origin.SctpNotification.Event;
+import net.sctp4nat.origin.SctpNotificationView;
 import net.sctp4nat.origin.SctpSocket.NotificationListener;
+import net.sctp4nat.util.SctpAssociationOptions;
 import net.sctp4nat.util.SctpInitException;
+import net.sctp4nat.util.SctpStreamScheduler;
 
 /**
  * This class helps instantiating a clean {@link SctpChannel}. It is designed
@@ -45,6 +50,8 @@ public class SctpChannelBuilder {
 	private SctpDataCallback cb = null;
 	private NetworkLink link = null;
 	private SctpMapper mapper = null;
+	private SctpAssociationOptions options = null;
+	private SctpStreamScheduler scheduler = null;
 
 	/**
 	 * This method triggers the creation of the {@link SctpChannel} object.
@@ -78,10 +85,18 @@ public class SctpChannelBuilder {
 
 		SctpChannel candidateSo = null;
 		if (remoteAddress == null || remotePort == SctpPorts.PORT_NOT_INITIALIZED) {
-			candidateSo = (SctpChannel) new SctpChannel(localSctpPort, link, cb, mapper);
+			candidateSo = (SctpChannel) new SctpChannel(localSctpPort, null, link, cb, mapper, options);
 		} else {
 			InetSocketAddress remote = new InetSocketAddress(remoteAddress, remotePort);
-			candidateSo = (SctpChannel) new SctpChannel(localSctpPort, remote, link, cb, mapper);
+			candidateSo = (SctpChannel) new SctpChannel(localSctpPort, remote, link, cb, mapper, options);
+		}
+
+		if (scheduler != null) {
+			try {
+				candidateSo.setStreamScheduler(scheduler);
+			} catch (IOException e) {
+				LOG.error("Could not set the stream scheduler", e);
+			}
 		}
 
 		final SctpChannel so = candidateSo;
@@ -89,17 +104,36 @@ public class SctpChannelBuilder {
 
 			@Override
 			public void onSctpNotification(SctpAcceptable socket, SctpNotification notification) {
-				LOG.debug(notification.toString());
-				if (notification.toString().indexOf(SctpNotification.SHUTDOWN_COMP_STR) >= 0) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug(notification.toString());
+				}
+				onEvent(notification.getEvent());
+			}
+
+			@Override
+			public void onSctpNotification(SctpAcceptable socket, SctpNotificationView notification) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug(notification.toString());
+				}
+				onEvent(notification.getEvent());
+			}
+
+			private void onEvent(Event event) {
+				switch (event) {
+				case SHUTDOWN_COMP:
 					so.close();
-				} else if (notification.toString().indexOf(SctpNotification.ADDR_UNREACHABLE_STR) >= 0) {
+					break;
+				case ADDR_UNREACHABLE:
 					LOG.error("Heartbeat missing! Now shutting down the SCTP connection...");
 					so.close();
-				} else if (notification.toString().indexOf(SctpNotification.COMM_LOST_STR) >= 0) {
+					break;
+				case COMM_LOST:
 					LOG.error("Communication aborted! Now shutting down the udp connection...");
 					so.close();
-				} else if (notification.toString().indexOf(SctpNotification.SHUTDOWN_EVENT_STR) > 0) {
-					so.close();
+					break;
+				default:
+					// SHUTDOWN is followed by SHUTDOWN_COMP, which closes the channel
+					break;
 				}
 			}
 
@@ -168,4 +202,32 @@ public class SctpChannelBuilder {
 		}
 		return this;
 	}
+
+	/**
+	 * Sets the options of the association. They are applied before the
+	 * handshake. If not set, the defaults of usrsctp are kept.
+	 * 
+	 * @param options
+	 *            the {@link SctpAssociationOptions} or null
+	 * @return this builder
+	 */
+	public SctpChannelBuilder associationOptions(SctpAssociationOptions options) {
+		this.options = options;
+		return this;
+	}
+
+	/**
+	 * Sets the stream scheduler of the association. It overrides the scheduler
+	 * of the association options. If not set, the scheduler of the association
+	 * options is used. The priorities of the streams are set at runtime with
+	 * {@link SctpChannelFacade#setStreamPriority(int, int)}.
+	 * 
+	 * @param scheduler
+	 *            the {@link SctpStreamScheduler} or null
+	 * @return this builder
+	 */
+	public SctpChannelBuilder streamScheduler(SctpStreamScheduler scheduler) {
+		this.scheduler = scheduler;
+		return this;
+	}
 }
@@ -15,14 +15,24 @@
  */
 package net.sctp4nat.core;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 import org.jdeferred.Promise;
 
 import net.sctp4nat.connection.SctpDefaultStreamConfig;
+import net.sctp4nat.origin.SctpBufferDataCallback;
 import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.origin.SctpPartialDeliveryCallback;
 import net.sctp4nat.origin.SctpSocket;
 import net.sctp4nat.origin.SctpSocket.NotificationListener;
+import net.sctp4nat.origin.SctpWritabilityCallback;
+import net.sctp4nat.util.SctpAssociationOptions;
+import net.sctp4nat.util.SctpPartialReliability;
+import net.sctp4nat.util.SctpStreamScheduler;
 
 /**
  * @author jonaswagner
@@ -36,7 +46,10 @@ public interface SctpChannelFacade {
 	/**
 	 * This method sends data to the connected endpoint. The method is non-blocking
 	 * and returns a {@link Promise} object, which fires a callback once send is
-	 * executed.
+	 * executed. Sends on the same {@link SctpChannelFacade} are executed in the
+	 * order of the calls.
+	 * The promise resolves with the number of bytes sent or with -1, if the
+	 * send buffer is full (see {@link #isWritable()}).
 	 * 
 	 * @param data
 	 *            the data, which is to be sent.
@@ -54,6 +67,31 @@ public interface SctpChannelFacade {
 	 */
 	Promise<Integer, Exception, Object> send(byte[] data, int offset, int len, boolean ordered, int sid, int ppid);
 
+	/**
+	 * This method sends data to the connected endpoint with a partial
+	 * reliability policy. usrsctp abandons the message, once the limit of the
+	 * policy is exceeded, instead of retransmitting it until it is acknowledged.
+	 * See {@link #send(byte[], int, int, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param offset
+	 *            the offset pointer.
+	 * @param len
+	 *            the length of the data
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @param reliability
+	 *            the {@link SctpPartialReliability} of the message.
+	 * @return A {@link Promise} object
+	 */
+	Promise<Integer, Exception, Object> send(byte[] data, int offset, int len, boolean ordered, int sid, int ppid,
+			SctpPartialReliability reliability);
+
 	/**
 	 * This method sends data to the connected endpoint. The method is non-blocking
 	 * and returns a {@link Promise} object, which fires a callback once send is
@@ -101,6 +139,319 @@ public interface SctpChannelFacade {
 	 */
 	Promise<Integer, Exception, Object> send(byte[] data, SctpDefaultStreamConfig config);
 
+	/**
+	 * This method sends the remaining bytes of data (position to limit) to the
+	 * connected endpoint. Direct {@link ByteBuffer}s are passed to usrsctp without
+	 * any copy. The method is non-blocking and returns a {@link Promise} object,
+	 * which fires a callback once send is executed. The buffer must not be
+	 * modified until then.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @return A {@link Promise} object
+	 */
+	Promise<Integer, Exception, Object> send(ByteBuffer data, boolean ordered, int sid, int ppid);
+
+	/**
+	 * This method sends the remaining bytes of data (position to limit) to the
+	 * connected endpoint with a partial reliability policy. See
+	 * {@link #send(ByteBuffer, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @param reliability
+	 *            the {@link SctpPartialReliability} of the message.
+	 * @return A {@link Promise} object
+	 */
+	Promise<Integer, Exception, Object> send(ByteBuffer data, boolean ordered, int sid, int ppid,
+			SctpPartialReliability reliability);
+
+	/**
+	 * This method sends the remaining bytes of data (position to limit) to the
+	 * connected endpoint. See {@link #send(ByteBuffer, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param config
+	 *            A {@link SctpDefaultStreamConfig} instance containing stream parameters.
+	 * @return A {@link Promise} object
+	 */
+	Promise<Integer, Exception, Object> send(ByteBuffer data, SctpDefaultStreamConfig config);
+
+	/**
+	 * This method sends data to the connected endpoint on the calling thread.
+	 * Since usrsctp does not block on send, this method returns immediately and
+	 * avoids the thread hop and the allocations of
+	 * {@link #send(byte[], int, int, boolean, int, int)}.
+	 * 
+	 * <br>
+	 * <br>
+	 * The message does not wait for messages, which are still queued by
+	 * {@link #send(byte[], int, int, boolean, int, int)} or a stream transfer,
+	 * so it may overtake them. Mix both on a stream only after the promises of
+	 * the queued messages are done.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param offset
+	 *            the offset pointer.
+	 * @param len
+	 *            the length of the data
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @return the number of bytes sent or -1 in case of an error (e.g. the send
+	 *         buffer is full, see {@link #isWritable()}).
+	 * @throws IOException
+	 *             Thrown, if the underlying {@link SctpSocket} is closed.
+	 */
+	int sendNow(byte[] data, int offset, int len, boolean ordered, int sid, int ppid) throws IOException;
+
+	/**
+	 * This method sends data to the connected endpoint on the calling thread
+	 * with a partial reliability policy. See
+	 * {@link #sendNow(byte[], int, int, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param offset
+	 *            the offset pointer.
+	 * @param len
+	 *            the length of the data
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @param reliability
+	 *            the {@link SctpPartialReliability} of the message.
+	 * @return the number of bytes sent or -1 in case of an error.
+	 * @throws IOException
+	 *             Thrown, if the underlying {@link SctpSocket} is closed.
+	 */
+	int sendNow(byte[] data, int offset, int len, boolean ordered, int sid, int ppid,
+			SctpPartialReliability reliability) throws IOException;
+
+	/**
+	 * This method sends data to the connected endpoint on the calling thread.
+	 * See {@link #sendNow(byte[], int, int, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param config
+	 *            A {@link SctpDefaultStreamConfig} instance containing stream parameters.
+	 * @return the number of bytes sent or -1 in case of an error.
+	 * @throws IOException
+	 *             Thrown, if the underlying {@link SctpSocket} is closed.
+	 */
+	int sendNow(byte[] data, SctpDefaultStreamConfig config) throws IOException;
+
+	/**
+	 * This method sends the remaining bytes of data (position to limit) to the
+	 * connected endpoint on the calling thread. Direct buffers are passed to
+	 * usrsctp without any copy. See
+	 * {@link #sendNow(byte[], int, int, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @return the number of bytes sent or -1 in case of an error.
+	 * @throws IOException
+	 *             Thrown, if the underlying {@link SctpSocket} is closed.
+	 */
+	int sendNow(ByteBuffer data, boolean ordered, int sid, int ppid) throws IOException;
+
+	/**
+	 * This method sends the remaining bytes of data (position to limit) to the
+	 * connected endpoint on the calling thread with a partial reliability
+	 * policy. See {@link #sendNow(ByteBuffer, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @param reliability
+	 *            the {@link SctpPartialReliability} of the message.
+	 * @return the number of bytes sent or -1 in case of an error.
+	 * @throws IOException
+	 *             Thrown, if the underlying {@link SctpSocket} is closed.
+	 */
+	int sendNow(ByteBuffer data, boolean ordered, int sid, int ppid, SctpPartialReliability reliability)
+			throws IOException;
+
+	/**
+	 * This method sends data to the connected endpoint on the calling thread
+	 * and does not report the result. Errors are only logged. Use this method,
+	 * if a lost message is handled by the application protocol anyway. If
+	 * messages of {@link #send(byte[], int, int, boolean, int, int)} are still
+	 * queued, the message is queued behind them instead, so that it never
+	 * overtakes them.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param offset
+	 *            the offset pointer.
+	 * @param len
+	 *            the length of the data
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 */
+	void sendAndForget(byte[] data, int offset, int len, boolean ordered, int sid, int ppid);
+
+	/**
+	 * This method sends data to the connected endpoint on the calling thread
+	 * with a partial reliability policy and does not report the result. See
+	 * {@link #sendAndForget(byte[], int, int, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param offset
+	 *            the offset pointer.
+	 * @param len
+	 *            the length of the data
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @param reliability
+	 *            the {@link SctpPartialReliability} of the message.
+	 */
+	void sendAndForget(byte[] data, int offset, int len, boolean ordered, int sid, int ppid,
+			SctpPartialReliability reliability);
+
+	/**
+	 * This method sends the remaining bytes of data (position to limit) to the
+	 * connected endpoint on the calling thread and does not report the result.
+	 * See {@link #sendAndForget(byte[], int, int, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 */
+	void sendAndForget(ByteBuffer data, boolean ordered, int sid, int ppid);
+
+	/**
+	 * This method sends the remaining bytes of data (position to limit) to the
+	 * connected endpoint on the calling thread with a partial reliability
+	 * policy and does not report the result. See
+	 * {@link #sendAndForget(ByteBuffer, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @param reliability
+	 *            the {@link SctpPartialReliability} of the message.
+	 */
+	void sendAndForget(ByteBuffer data, boolean ordered, int sid, int ppid, SctpPartialReliability reliability);
+
+	/**
+	 * This method sends the content of source as one message to the connected
+	 * endpoint. The content is read and passed to usrsctp in parts, as the send
+	 * buffer frees up, so a message may be larger than the send buffer and
+	 * does not need to fit into memory. The method is non-blocking and returns
+	 * a {@link Promise} object, which resolves with the number of bytes sent
+	 * and notifies the number of bytes sent so far. source should be blocking,
+	 * it is read on the send executor and it is not closed.
+	 * 
+	 * <br>
+	 * <br>
+	 * Transfers on the same {@link SctpChannelFacade} are sent one after
+	 * another. While a transfer is running, other sends on its stream fail and,
+	 * since usrsctp can not interleave messages without I-DATA, sends on other
+	 * streams fail as well. With I-DATA (see {@link #isInterleaving()}), only
+	 * the transfers on the same stream wait for each other and the other
+	 * streams can still be used. If source fails, the bytes read so far are
+	 * sent as a truncated message and the promise is rejected. A receiver gets
+	 * a large message in pieces and reassembles it with a
+	 * {@link SctpMessageAssembler}.
+	 * 
+	 * @param source
+	 *            the content of the message.
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @return A {@link Promise} object
+	 */
+	Promise<Long, Exception, Long> sendStream(ReadableByteChannel source, boolean ordered, int sid, int ppid);
+
+	/**
+	 * This method sends the content of source as one message to the connected
+	 * endpoint. See
+	 * {@link #sendStream(ReadableByteChannel, boolean, int, int)}.
+	 * 
+	 * @param source
+	 *            the content of the message.
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @return A {@link Promise} object
+	 */
+	Promise<Long, Exception, Long> sendStream(InputStream source, boolean ordered, int sid, int ppid);
+
+	/**
+	 * This method sends data as one message to the connected endpoint, even if
+	 * it is larger than the send buffer. See
+	 * {@link #sendStream(ReadableByteChannel, boolean, int, int)}.
+	 * 
+	 * @param data
+	 *            the data, which is to be sent.
+	 * @param ordered
+	 *            true if the stream should send and receive packets ordered
+	 * @param sid
+	 *            the stream, on which the data is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 * @return A {@link Promise} object
+	 */
+	Promise<Long, Exception, Long> sendStream(byte[] data, boolean ordered, int sid, int ppid);
+
 	/**
 	 * This method closes the underlying {@link SctpSocket} and releases its
 	 * resources on usrsctp. Additionally, corresponding entries on
@@ -119,6 +470,124 @@ public interface SctpChannelFacade {
 	 */
 	void setSctpDataCallback(SctpDataCallback cb);
 
+	/**
+	 * Sets the {@link SctpBufferDataCallback}, which is called whenever a SCTP
+	 * message arrived. Messages are written into a direct buffer of this channel
+	 * and handed to cb without allocating a new array per message. Passing null
+	 * goes back to the {@link SctpDataCallback}.
+	 * 
+	 * @param cb
+	 * 			A {@link SctpBufferDataCallback} instance
+	 */
+	void setSctpBufferDataCallback(SctpBufferDataCallback cb);
+
+	/**
+	 * Sets the {@link SctpPartialDeliveryCallback}, which is called for each
+	 * piece of an arriving message, so that a large message can be consumed
+	 * while it arrives. It replaces the {@link SctpBufferDataCallback} and the
+	 * {@link SctpDataCallback}. Passing null goes back to them.
+	 * 
+	 * @param cb
+	 * 			A {@link SctpPartialDeliveryCallback} instance or null
+	 */
+	void setSctpPartialDeliveryCallback(SctpPartialDeliveryCallback cb);
+
+	/**
+	 * Sets the {@link SctpWritabilityCallback}, which is called whenever this
+	 * channel becomes unwritable (a send failed, because the send buffer is
+	 * full) or writable again (the send threshold is free again). Producers can
+	 * pause on the first and resume on the second, instead of retrying.
+	 * 
+	 * @param cb
+	 * 			A {@link SctpWritabilityCallback} instance or null
+	 */
+	void setSctpWritabilityCallback(SctpWritabilityCallback cb);
+
+	/**
+	 * @return false, if a send failed, because the send buffer was full, and the
+	 *         send threshold is not free again yet. Sends on an unwritable
+	 *         channel are not rejected, but they are likely to fail.
+	 */
+	boolean isWritable();
+
+	/**
+	 * @return the free space in the send buffer in bytes or -1, if there is no
+	 *         association yet. A larger message fails with -1.
+	 * @throws IOException
+	 *             Thrown, if the underlying {@link SctpSocket} is closed.
+	 */
+	int getSendBufferAvailable() throws IOException;
+
+	/**
+	 * Sets the free space in the send buffer in bytes, at which an unwritable
+	 * channel becomes writable again. The default is
+	 * {@link SctpSocket#DEFAULT_SEND_THRESHOLD}.
+	 * 
+	 * @param sendThreshold
+	 * 			the threshold in bytes
+	 */
+	void setSendThreshold(int sendThreshold);
+
+	/**
+	 * @return the {@link SctpAssociationOptions} of the association. Once the
+	 *         association is up, the stream counts are the negotiated ones.
+	 * @throws IOException
+	 *             Thrown, if the underlying {@link SctpSocket} is closed.
+	 */
+	SctpAssociationOptions getAssociationOptions() throws IOException;
+
+	/**
+	 * Tells, whether I-DATA (RFC 8260) is used by the association. Both
+	 * endpoints must request it with
+	 * {@link SctpAssociationOptions#isInterleaving()}. Then a large message
+	 * does not delay the messages on other streams and transfers of
+	 * {@link #sendStream(ReadableByteChannel, boolean, int, int)} on different
+	 * streams run side by side.
+	 * 
+	 * @return true, if I-DATA is used.
+	 * @throws IOException
+	 *             Thrown, if the underlying {@link SctpSocket} is closed.
+	 */
+	boolean isInterleaving() throws IOException;
+
+	/**
+	 * Changes the stream scheduler of the association at runtime. Messages,
+	 * which are already queued, are scheduled by the new scheduler.
+	 * 
+	 * @param scheduler
+	 *            the {@link SctpStreamScheduler}
+	 * @throws IOException
+	 *             Thrown, if the underlying {@link SctpSocket} is closed or
+	 *             usrsctp rejected the scheduler.
+	 */
+	void setStreamScheduler(SctpStreamScheduler scheduler) throws IOException;
+
+	/**
+	 * Sets the priority of an outbound stream, if the association uses
+	 * {@link SctpStreamScheduler#PRIORITY}. Streams with a lower value are sent
+	 * first, all streams start with 0. The priority can be changed at any time
+	 * once the association is up.
+	 * 
+	 * @param sid
+	 *            the outbound stream
+	 * @param priority
+	 *            the priority between 0 and 65535
+	 * @throws IOException
+	 *             Thrown, if the association is not up, the stream does not
+	 *             exist or the scheduler has no priorities.
+	 */
+	void setStreamPriority(int sid, int priority) throws IOException;
+
+	/**
+	 * @param sid
+	 *            the outbound stream
+	 * @return the priority of the stream
+	 * @throws IOException
+	 *             Thrown, if the association is not up, the stream does not
+	 *             exist or the scheduler has no priorities.
+	 */
+	int getStreamPriority(int sid) throws IOException;
+
 	/**
 	 * @return
 	 * 			the {@link InetSocketAddress} of the remote endpoint
@@ -128,6 +597,8 @@ public interface SctpChannelFacade {
 	/**
 	 * This method initializes the SHUTDOWN INIT sequence on usrsctp. After calling
 	 * this method, a user should call close() to release the assigned resources on usrsctp.
+	 * Like {@link #sendAndForget(byte[], int, int, boolean, int, int)}, the
+	 * SHUTDOWN is queued behind the messages, which are still queued for sending.
 	 */
 	void shutdownInit();
 
@@ -18,22 +18,25 @@ package net.sctp4nat.core;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jdeferred.AlwaysCallback;
+import org.jdeferred.Deferred;
 import org.jdeferred.DoneCallback;
 import org.jdeferred.FailCallback;
 import org.jdeferred.Promise;
+import org.jdeferred.Promise.State;
+import org.jdeferred.impl.DeferredObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import lombok.Getter;
-import lombok.Setter;
+import net.sctp4nat.connection.NetworkLink;
 import net.sctp4nat.origin.SctpDataCallback;
 import net.sctp4nat.origin.SctpSocket;
+import net.sctp4nat.util.SctpUtils;
 
 /**
  * This classs caches all SCTP connections. This is necessary, because usrsctp
@@ -41,42 +44,94 @@ import net.sctp4nat.origin.SctpSocket;
  * able to reply via {@link SctpDataCallback}, it needs to know which
  * {@link SctpSocket} is assigned to which remote {@link InetSocketAddress}.
  * 
+ * <br>
+ * <br>
+ * The mapper is queried for every packet sent or received. Therefore, none of
+ * its methods hold a global lock. Lookups are plain reads on
+ * {@link ConcurrentHashMap}s and updates only lock the affected bin of the
+ * map. The only coordination point is {@link #shutdown()}: once it has been
+ * called, all further updates are rejected and it waits for updates, which
+ * are already in progress, before it closes the registered channels.
+ * 
+ * <br>
+ * <br>
+ * Every instance keeps its own channels and its own shutdown state. This
+ * allows to partition the associations, e.g. by {@link NetworkLink}, and to
+ * shut down one partition without affecting the others. A {@link SctpSocket}
+ * knows the {@link SctpMapper} of its {@link SctpChannel}, which is why
+ * packets from usrsctp are resolved without any global lookup.
+ * 
  * @author root
  *
  */
 public class SctpMapper {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SctpMapper.class);
-	private static final int CLOSE_TIMEOUT = 10;
+
+	/**
+	 * The default time in milliseconds, which {@link #shutdown()} waits for the
+	 * registered {@link SctpChannel}s to close.
+	 */
+	public static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+	/**
+	 * The time in milliseconds, which {@link #shutdown()} waits for the
+	 * registered {@link SctpChannel}s to close.
+	 */
+	private volatile long closeTimeout = CLOSE_TIMEOUT_MILLIS;
 
 	/**
 	 * The {@link Map} containing all active {@link SctpChannel}s.s
 	 */
-	private static final ConcurrentHashMap<InetSocketAddress, SctpChannel> socketMap = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<InetSocketAddress, SctpChannel> socketMap = new ConcurrentHashMap<>();
+
+	/**
+	 * Indicates if the {@link SctpMapper} is shutting down its connections.
+	 */
+	private volatile boolean isShutdown = false;
+
+	/**
+	 * The number of register or unregister calls, which are currently in
+	 * progress. {@link #shutdown()} waits until this number drops to zero before
+	 * it closes the registered {@link SctpChannel}s.
+	 */
+	private final AtomicInteger pendingUpdates = new AtomicInteger();
 
-	@Getter
-	@Setter
-	private static boolean isShutdown = false;
+	/**
+	 * The {@link Promise} of the shutdown in progress or null.
+	 */
+	private volatile Promise<Object, Exception, Object> closing;
+
+	/**
+	 * Signalled by the last update, which finishes while the
+	 * {@link SctpMapper} is shutting down.
+	 */
+	private final Object updatesDone = new Object();
 
 	/**
 	 * Caches a new {@link SctpChannel} and its corresponding remote information.
 	 * 
 	 * @param remote
-	 *            {@link InetSocketAddress}
+	 *            {@link InetSocketAddress}, the remote of so, under which it is
+	 *            located and unregistered
 	 * @param so
 	 *            {@link SctpChannel}
 	 * 
 	 */
-	public synchronized void register(final InetSocketAddress remote, final SctpChannel so) {
-		if (isShutdown) {
+	public void register(final InetSocketAddress remote, final SctpChannel so) {
+		if (!beginUpdate()) {
 			LOG.warn("Could not register remote, because SctpMapper is shutting down its connections!");
 			return;
 		}
 
-		if (remote != null && so != null) {
-			socketMap.put(remote, so);
-		} else {
-			LOG.error("Invalid input, socket could not be registered! Either remote or so was null!");
+		try {
+			if (remote != null && so != null) {
+				socketMap.put(remote, so);
+			} else {
+				LOG.error("Invalid input, socket could not be registered! Either remote or so was null!");
+			}
+		} finally {
+			endUpdate();
 		}
 	}
 
@@ -85,21 +140,24 @@ public class SctpMapper {
 	 * usrsctp counterpart. Make sure this {@link SctpChannel} instance is not used
 	 * anywhere else!
 	 */
-	@SuppressWarnings("unlikely-arg-type")
-	public synchronized void unregister(SctpChannel so) {
-		if (isShutdown) {
+	public void unregister(SctpChannel so) {
+		if (!beginUpdate()) {
 			LOG.warn("Could not unregister SctpChannel, because SctpMapper is shutting down its connections!");
 			return;
 		}
 
-		if (so == null) {
-			LOG.error("Invalid input, null can't be removed!");
-			return;
-		} else if (!socketMap.contains(so)) {
-			LOG.error("Invalid input, a socket, which is not registered, cannot be removed!");
-			return;
-		} else {
-			socketMap.remove(so);
+		try {
+			if (so == null) {
+				LOG.error("Invalid input, null can't be removed!");
+				return;
+			}
+
+			InetSocketAddress remote = so.getRemote();
+			if (remote == null || !socketMap.remove(remote, so)) {
+				LOG.error("Invalid input, a socket, which is not registered, cannot be removed!");
+			}
+		} finally {
+			endUpdate();
 		}
 	}
 
@@ -108,20 +166,23 @@ public class SctpMapper {
 	 * usrsctp counterpart. Make sure this {@link SctpChannel} instance is not used
 	 * anywhere else!
 	 */
-	public synchronized void unregister(InetSocketAddress remote) {
-		if (isShutdown) {
+	public void unregister(InetSocketAddress remote) {
+		if (!beginUpdate()) {
 			LOG.warn("Could not unregister remote, because SctpMapper is shutting down its connections!");
 			return;
 		}
 
-		if (remote == null) {
-			LOG.error("Invalid input, null can't be removed!");
-			return;
-		} else if (!socketMap.containsKey(remote)) {
-			LOG.error("Invalid input, a socket, which is not registered, cannot be removed!");
-			return;
-		} else {
-			socketMap.remove(remote);
+		try {
+			if (remote == null) {
+				LOG.error("Invalid input, null can't be removed!");
+				return;
+			}
+
+			if (socketMap.remove(remote) == null) {
+				LOG.error("Invalid input, a socket, which is not registered, cannot be removed!");
+			}
+		} finally {
+			endUpdate();
 		}
 	}
 
@@ -130,57 +191,78 @@ public class SctpMapper {
 	 * {@link InetAddress} and port.
 	 * 
 	 * @param remoteAddress
-	 *            {@link String} representation of an IP address (e.g.
-	 *            \"192.168.0.1\")
+	 *            {@link InetAddress} of the remote endpoint
 	 *            
 	 * @param remotePort
 	 * @return {@link SctpChannel}
 	 */
-	public synchronized static SctpChannel locate(final String remoteAddress, final int remotePort) {
+	public SctpChannel locate(final InetAddress remoteAddress, final int remotePort) {
 		if (isShutdown) {
 			LOG.warn("Could not locate SctpChannel, because SctpMapper is shutting down its connections!");
 			return null;
 		}
 
-		for (Map.Entry<InetSocketAddress, SctpChannel> element : socketMap.entrySet()) {
-			int port = element.getKey().getPort();
-			String address = element.getKey().getAddress().getHostAddress();
+		if (remoteAddress == null || remotePort < SctpPorts.MIN_PORT || remotePort > SctpPorts.MAX_PORT) {
+			LOG.error("Invalid input, could not locate SctpChannel for IP:" + remoteAddress + " and port: " + remotePort);
+			return null;
+		}
 
-			if (port == remotePort && address.equals(remoteAddress)) {
-				return socketMap.get(element.getKey());
-			}
+		return locate(new InetSocketAddress(remoteAddress, remotePort));
+	}
+
+	/**
+	 * This method locates a {@link SctpChannel} object given the remote
+	 * {@link InetSocketAddress}. The lookup is a single hash lookup, which is why
+	 * receiving {@link NetworkLink}s should prefer this method over
+	 * {@link #locate(InetAddress, int)}.
+	 * 
+	 * @param remote
+	 *            {@link InetSocketAddress} of the remote endpoint
+	 * @return {@link SctpChannel} or null if no {@link SctpChannel} is registered
+	 *         for remote
+	 */
+	public SctpChannel locate(final InetSocketAddress remote) {
+		if (isShutdown) {
+			LOG.warn("Could not locate SctpChannel, because SctpMapper is shutting down its connections!");
+			return null;
 		}
 
-		LOG.info("No socketMap entry found for IP:" + remoteAddress + " and port: " + remotePort);
-		return null;
+		if (remote == null) {
+			LOG.error("Invalid input, could not locate SctpChannel for null!");
+			return null;
+		}
+
+		SctpChannel so = socketMap.get(remote);
+		if (so == null && LOG.isDebugEnabled()) {
+			LOG.debug("No socketMap entry found for IP:" + remote.getAddress().getHostAddress() + " and port: "
+					+ remote.getPort());
+		}
+		return so;
 	}
 
 	/**
 	 * This method locates a {@link SctpChannel} object given a {@link SctpSocket}.
+	 * The socket knows its {@link SctpChannel} (see
+	 * {@link SctpSocket#getChannel()}), so the mapper only checks, that the
+	 * channel is registered.
 	 * 
 	 * @param sctpSocket
 	 *            {@link SctpSocket}
-	 * @return
+	 * @return {@link SctpChannel} or null if the channel of sctpSocket is not
+	 *         registered
 	 */
-	public synchronized static SctpChannel locate(final SctpSocket sctpSocket) {
+	public SctpChannel locate(final SctpSocket sctpSocket) {
 		if (isShutdown) {
 			LOG.warn("Could not locate SctpChannel, because SctpMapper is shutting down its connections!");
 			return null;
 		}
 
-		if (socketMap.isEmpty()) {
-			return null;
-		}
-
-		SctpChannel facade = null;
-		try {
-			facade = socketMap.values().stream().filter(so -> so.containsSctpSocket(sctpSocket)).findFirst().get();
-		} catch (NoSuchElementException e) {
-			LOG.error("Could not retrieve SctpSocket from SctpMapper!");
+		if (sctpSocket == null) {
 			return null;
 		}
 
-		if (facade == null) {
+		SctpChannel facade = sctpSocket.getChannel();
+		if (facade == null || !isRegistered(facade)) {
 			LOG.error("Could not retrieve SctpSocket from SctpMapper!");
 			return null;
 		} else {
@@ -188,16 +270,198 @@ public class SctpMapper {
 		}
 	}
 
+	/**
+	 * @param so
+	 *            {@link SctpChannel}
+	 * @return true if so is registered under its remote.
+	 */
+	private boolean isRegistered(final SctpChannel so) {
+		InetSocketAddress remote = so.getRemote();
+		return remote != null && socketMap.get(remote) == so;
+	}
+
+	/**
+	 * Announces a register or unregister call to {@link #shutdown()}. Every call
+	 * of this method needs to be balanced by a call of {@link #endUpdate()}.
+	 * 
+	 * @return false if the {@link SctpMapper} is shutting down and the update must
+	 *         be rejected
+	 */
+	private boolean beginUpdate() {
+		pendingUpdates.incrementAndGet();
+		if (isShutdown) {
+			// the shutdown may already wait for this update
+			endUpdate();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Marks the end of an update started with {@link #beginUpdate()}.
+	 */
+	private void endUpdate() {
+		if (pendingUpdates.decrementAndGet() == 0 && isShutdown) {
+			synchronized (updatesDone) {
+				updatesDone.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until all updates, which were in progress when the shutdown
+	 * started, are finished.
+	 * 
+	 * @param timeout
+	 *            the maximal time to wait in milliseconds
+	 * @throws InterruptedException
+	 * @throws TimeoutException
+	 *             Thrown, if the updates did not finish in time
+	 */
+	private void awaitUpdates(final long timeout) throws InterruptedException, TimeoutException {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (updatesDone) {
+			while (pendingUpdates.get() > 0) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					throw new TimeoutException("Pending updates of the SctpMapper did not finish in time");
+				}
+				updatesDone.wait(remaining);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the {@link SctpMapper} is shutting down its connections.
+	 */
+	public boolean isShutdown() {
+		return isShutdown;
+	}
+
+	/**
+	 * Overwrites the shutdown state of the {@link SctpMapper}. While the state is
+	 * true, all register, unregister and locate calls are rejected.
+	 * 
+	 * @param shutdown
+	 *            the new shutdown state
+	 */
+	public void setShutdown(final boolean shutdown) {
+		this.isShutdown = shutdown;
+	}
+
+	/**
+	 * @return the time in milliseconds, which {@link #shutdown()} waits for the
+	 *         registered {@link SctpChannel}s to close.
+	 */
+	public long getCloseTimeout() {
+		return closeTimeout;
+	}
+
+	/**
+	 * @param closeTimeout
+	 *            the time in milliseconds, which {@link #shutdown()} waits for
+	 *            the registered {@link SctpChannel}s to close.
+	 */
+	public void setCloseTimeout(final long closeTimeout) {
+		this.closeTimeout = closeTimeout;
+	}
+
 	/**
 	 * This method shuts down all remaining connections and closes them. Afterwards
-	 * the socketMap is cleared.
+	 * the socketMap is cleared. From the moment this method is called, every
+	 * register and unregister call is rejected. Calls, which were already in
+	 * progress, are completed before the remaining connections are closed. If
+	 * they or the connections do not finish within the close timeout (see
+	 * {@link #setCloseTimeout(long)}), a {@link TimeoutException} is thrown and
+	 * the socketMap is left as it is, such that the remaining connections can
+	 * still unregister themselves. In both cases, the {@link SctpMapper}
+	 * accepts updates again once this method returns.
+	 * 
+	 * <br>
+	 * <br>
+	 * The connections are closed on the control executor of {@link SctpUtils},
+	 * so this method must not be called on one of its threads. Use
+	 * {@link #shutdownAsync()} there.
 	 * 
 	 * @throws InterruptedException
 	 * @throws TimeoutException
 	 */
 	public void shutdown() throws InterruptedException, TimeoutException {
+		Promise<Object, Exception, Object> p = shutdownAsync();
+		p.waitSafely();
+		if (p.isRejected()) {
+			final Exception[] cause = new Exception[1];
+			p.fail(new FailCallback<Exception>() {
+
+				@Override
+				public void onFail(Exception result) {
+					cause[0] = result;
+				}
+			});
+			if (cause[0] instanceof TimeoutException) {
+				throw (TimeoutException) cause[0];
+			}
+			TimeoutException e = new TimeoutException("Not all connections were closed correctly");
+			e.initCause(cause[0]);
+			throw e;
+		}
+	}
+
+	/**
+	 * Same as {@link #shutdown()}, but no thread waits for the connections to
+	 * close. Only the updates, which are in progress, are awaited on the
+	 * calling thread, which takes at most the close timeout. If a shutdown is
+	 * already in progress, its {@link Promise} is returned.
+	 * 
+	 * @return A {@link Promise}, which is resolved once all connections are
+	 *         closed and rejected with a {@link TimeoutException}, if they did
+	 *         not close in time.
+	 */
+	public synchronized Promise<Object, Exception, Object> shutdownAsync() {
+		if (closing != null) {
+			return closing;
+		}
+
+		final Deferred<Object, Exception, Object> d = new DeferredObject<>();
 		isShutdown = true;
-		CountDownLatch close = new CountDownLatch(socketMap.size());
+		closing = d.promise();
+		d.always(new AlwaysCallback<Object, Exception>() {
+
+			@Override
+			public void onAlways(State state, Object resolved, Exception rejected) {
+				isShutdown = false;
+				// the next shutdown may start from here on
+				closing = null;
+			}
+		});
+
+		try {
+			awaitUpdates(closeTimeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			d.reject(e);
+			return d.promise();
+		} catch (TimeoutException e) {
+			LOG.error(e.getMessage());
+			d.reject(e);
+			return d.promise();
+		}
+
+		closeAll(d);
+		return d.promise();
+	}
+
+	/**
+	 * Closes all registered {@link SctpChannel}s, clears the socketMap and
+	 * resolves d afterwards. If the channels do not close within the close
+	 * timeout, d is rejected and the socketMap is left as it is.
+	 */
+	private void closeAll(final Deferred<Object, Exception, Object> d) {
+		final AtomicInteger open = new AtomicInteger(socketMap.size());
+		if (open.get() == 0) {
+			closed(d);
+			return;
+		}
 
 		for (Map.Entry<InetSocketAddress, SctpChannel> element : socketMap.entrySet()) {
 			SctpChannel so = element.getValue();
@@ -206,7 +470,9 @@ public class SctpMapper {
 
 				@Override
 				public void onDone(Object result) {
-					close.countDown();
+					if (open.decrementAndGet() == 0) {
+						closed(d);
+					}
 				}
 			});
 			p.fail(new FailCallback<Exception>() {
@@ -220,15 +486,20 @@ public class SctpMapper {
 
 		}
 
-		if (!close.await(CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
-			LOG.error("Timeout called, because not all connections were closed correctly in time");
-			throw new TimeoutException();
-		} else {
-			LOG.debug("all sctp connections closed");
+		SctpUtils.getExecutors().timeout(d, closeTimeout, TimeUnit.MILLISECONDS,
+				"Timeout called, because not all connections were closed correctly in time");
+	}
 
+	private void closed(final Deferred<Object, Exception, Object> d) {
+		// the timeout locks d, too, so the socketMap is only cleared if it has not fired yet
+		synchronized (d) {
+			if (!d.isPending()) {
+				return;
+			}
+			LOG.debug("all sctp connections closed");
 			socketMap.clear();
 			LOG.debug("socketMap cleared");
+			d.resolve(null);
 		}
-		isShutdown = false;
 	}
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sctp4nat.origin.Sctp;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.origin.SctpPartialDeliveryCallback;
+
+/**
+ * This {@link SctpDataCallback} reassembles messages, which usrsctp delivers
+ * in pieces, and hands each complete message to its delegate. usrsctp starts
+ * to deliver a message before it is complete, once it reaches the partial
+ * delivery point of the receive buffer, e.g. a message sent with
+ * {@link SctpChannelFacade#sendStream(byte[], boolean, int, int)}. Only the
+ * last piece carries {@link Sctp#MSG_EOR}.
+ *
+ * <br>
+ * <br>
+ * A message, which arrives in one piece, is passed through without a copy.
+ * The pieces of the other messages are collected per channel and stream. A
+ * message larger than the maximal message size is dropped. One assembler may
+ * be shared by several channels, call {@link #discard(SctpChannelFacade)},
+ * once a channel is closed. To process a large message without holding it
+ * in memory, use a {@link SctpPartialDeliveryCallback} instead.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class SctpMessageAssembler implements SctpDataCallback {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpMessageAssembler.class);
+
+	/**
+	 * The default maximal size of a message in bytes.
+	 */
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
+	private final SctpDataCallback delegate;
+	private final int maxMessageSize;
+
+	/**
+	 * The incomplete messages.
+	 */
+	private final ConcurrentHashMap<Key, Message> messages = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new {@link SctpMessageAssembler} with
+	 * {@link #DEFAULT_MAX_MESSAGE_SIZE}.
+	 *
+	 * @param delegate
+	 *            the {@link SctpDataCallback}, which gets the complete messages.
+	 */
+	public SctpMessageAssembler(final SctpDataCallback delegate) {
+		this(delegate, DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link SctpMessageAssembler}.
+	 *
+	 * @param delegate
+	 *            the {@link SctpDataCallback}, which gets the complete messages.
+	 * @param maxMessageSize
+	 *            the maximal size of a message in bytes.
+	 */
+	public SctpMessageAssembler(final SctpDataCallback delegate, final int maxMessageSize) {
+		if (delegate == null) {
+			throw new NullPointerException("delegate");
+		}
+		if (maxMessageSize < 1) {
+			throw new IllegalArgumentException("maxMessageSize must be positive!");
+		}
+		this.delegate = delegate;
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	@Override
+	public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+			SctpChannelFacade facade) {
+		boolean eor = (flags & Sctp.MSG_EOR) != 0;
+		if (eor && messages.isEmpty()) {
+			delegate.onSctpPacket(data, sid, ssn, tsn, ppid, context, flags, facade);
+			return;
+		}
+
+		Key key = new Key(facade, sid);
+		Message message = messages.get(key);
+		if (message == null) {
+			if (eor) {
+				delegate.onSctpPacket(data, sid, ssn, tsn, ppid, context, flags, facade);
+				return;
+			}
+			message = new Message();
+			messages.put(key, message);
+		}
+
+		message.append(data, maxMessageSize);
+		if (!eor) {
+			return;
+		}
+
+		messages.remove(key);
+		if (message.dropped) {
+			LOG.warn("Dropped a message of " + message.length + " bytes on stream " + sid + ", it exceeds "
+					+ maxMessageSize + " bytes");
+			return;
+		}
+		delegate.onSctpPacket(message.toArray(), sid, ssn, tsn, ppid, context, flags, facade);
+	}
+
+	/**
+	 * Discards the incomplete messages of facade.
+	 *
+	 * @param facade
+	 *            the closed channel
+	 */
+	public void discard(final SctpChannelFacade facade) {
+		Iterator<Key> keys = messages.keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().facade == facade) {
+				keys.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of incomplete messages.
+	 */
+	public int getPendingMessages() {
+		return messages.size();
+	}
+
+	/**
+	 * The pieces of an incomplete message.
+	 */
+	private static class Message {
+
+		private byte[] data = new byte[0];
+		private long length;
+		private boolean dropped;
+
+		void append(final byte[] piece, final int maxMessageSize) {
+			length += piece.length;
+			if (dropped) {
+				return;
+			}
+			if (length > maxMessageSize) {
+				dropped = true;
+				data = null;
+				return;
+			}
+			int offset = (int) length - piece.length;
+			if (length > data.length) {
+				data = Arrays.copyOf(data, (int) Math.min(maxMessageSize, Math.max(length, 2L * data.length)));
+			}
+			System.arraycopy(piece, 0, data, offset, piece.length);
+		}
+
+		byte[] toArray() {
+			return data.length == length ? data : Arrays.copyOf(data, (int) length);
+		}
+	}
+
+	/**
+	 * A stream of a channel.
+	 */
+	private static class Key {
+
+		private final SctpChannelFacade facade;
+		private final int sid;
+
+		Key(final SctpChannelFacade facade, final int sid) {
+			this.facade = facade;
+			this.sid = sid;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(facade) * 31 + sid;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return facade == other.facade && sid == other.sid;
+		}
+	}
+}
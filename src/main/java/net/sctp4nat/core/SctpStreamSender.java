@@ -0,0 +1,272 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jdeferred.Deferred;
+import org.jdeferred.Promise;
+import org.jdeferred.impl.DeferredObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sctp4nat.origin.SctpSocket;
+
+/**
+ * This class sends the content of a {@link ReadableByteChannel} as one SCTP
+ * message. The content is read into direct buffers of {@link #PART_SIZE} bytes
+ * and passed to {@link SctpSocket#sendPart} one part after another, so
+ * neither the sender nor usrsctp holds the whole message in memory.
+ *
+ * <br>
+ * <br>
+ * A sender runs on the send mailbox of its {@link SctpChannel}. If the send
+ * buffer is full, it gives the thread back and is queued again, once the
+ * socket is writable (see {@link SctpSocket#runWhenWritable(Runnable)}). The
+ * next part is always read ahead, because usrsctp rejects an empty part, so
+ * the end of the message must be known while its last part is sent.
+ *
+ * @author Jonas Wagner
+ *
+ */
+class SctpStreamSender implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpStreamSender.class);
+
+	/**
+	 * The size of a part in bytes.
+	 */
+	static final int PART_SIZE = 64 * 1024;
+
+	private final SctpSocket so;
+	private final Executor executor;
+	private final ReadableByteChannel source;
+	private final boolean ordered;
+	private final int sid;
+	private final int ppid;
+
+	private final Deferred<Long, Exception, Long> d = new DeferredObject<>();
+
+	/**
+	 * The part, which is sent next.
+	 */
+	private ByteBuffer current = ByteBuffer.allocateDirect(PART_SIZE);
+	/**
+	 * The part after {@link #current}. It is empty, if current is the last part.
+	 */
+	private ByteBuffer next = ByteBuffer.allocateDirect(PART_SIZE);
+
+	/**
+	 * Set by the channel, once it decided to start this sender. Guarded by the
+	 * transfers of the channel.
+	 */
+	private boolean scheduled;
+	private boolean started;
+	private boolean eof;
+	private long sent;
+	/**
+	 * Set, if the source failed. The parts read so far are still sent, so that
+	 * the message is closed, but the promise is rejected afterwards.
+	 */
+	private IOException sourceFailure;
+
+	/**
+	 * Queues this sender again, once the socket is writable.
+	 */
+	private final Runnable resubmit = new Runnable() {
+
+		@Override
+		public void run() {
+			submit();
+		}
+	};
+
+	/**
+	 * Creates a new {@link SctpStreamSender}.
+	 *
+	 * @param so
+	 *            the {@link SctpSocket}, which sends the parts.
+	 * @param executor
+	 *            the send mailbox of the channel.
+	 * @param source
+	 *            the content of the message.
+	 * @param ordered
+	 *            true if the message is delivered in order.
+	 * @param sid
+	 *            the stream, on which the message is sent.
+	 * @param ppid
+	 *            the payload protocol id.
+	 */
+	SctpStreamSender(final SctpSocket so, final Executor executor, final ReadableByteChannel source,
+			final boolean ordered, final int sid, final int ppid) {
+		this.so = so;
+		this.executor = executor;
+		this.source = source;
+		this.ordered = ordered;
+		this.sid = sid;
+		this.ppid = ppid;
+		this.current.flip();
+		this.next.flip();
+	}
+
+	/**
+	 * @return a {@link Promise}, which resolves with the number of bytes sent
+	 *         and notifies the progress with the number of bytes sent so far.
+	 */
+	Promise<Long, Exception, Long> promise() {
+		return d.promise();
+	}
+
+	/**
+	 * @return the stream, on which the message is sent.
+	 */
+	int getSid() {
+		return sid;
+	}
+
+	/**
+	 * Marks this sender as started. The caller holds the lock of the
+	 * transfers of the channel.
+	 *
+	 * @return false, if this sender was already started.
+	 */
+	boolean markStarted() {
+		if (scheduled) {
+			return false;
+		}
+		scheduled = true;
+		return true;
+	}
+
+	/**
+	 * Queues the first run of this sender.
+	 */
+	void start() {
+		submit();
+	}
+
+	private void submit() {
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e) {
+			LOG.warn("Could not queue part of stream " + sid + ". Cause: " + e.getMessage());
+			reject(e);
+		}
+	}
+
+	@Override
+	public void run() {
+		if (!d.isPending()) {
+			return;
+		}
+
+		try {
+			if (!started) {
+				started = true;
+				fill(current);
+				if (!current.hasRemaining()) {
+					d.resolve(Long.valueOf(0));
+					return;
+				}
+				readAhead();
+			}
+
+			while (true) {
+				boolean eor = !next.hasRemaining();
+				int r = so.sendPart(current, ordered, sid, ppid, eor);
+				if (r < 0) {
+					if (!so.isWritable()) {
+						so.runWhenWritable(resubmit);
+						return;
+					}
+					throw new IOException("Could not send part of stream " + sid);
+				}
+				if (r > 0) {
+					sent += r;
+					d.notify(Long.valueOf(sent));
+				}
+				if (current.hasRemaining()) {
+					// the send buffer took only a part of current
+					if (!so.isWritable()) {
+						so.runWhenWritable(resubmit);
+						return;
+					}
+					continue;
+				}
+
+				if (eor) {
+					if (sourceFailure != null) {
+						reject(sourceFailure);
+					} else {
+						d.resolve(Long.valueOf(sent));
+					}
+					return;
+				}
+
+				ByteBuffer sentPart = current;
+				current = next;
+				next = sentPart;
+				readAhead();
+			}
+		} catch (Exception e) {
+			// a runtime exception of the source or the socket must not leave the
+			// promise pending
+			LOG.error("Could not send stream " + sid + "! Cause: " + e.getMessage(), e);
+			reject(e);
+		}
+	}
+
+	/**
+	 * Reads the part after {@link #current}. If the source fails, current
+	 * becomes the last part.
+	 */
+	private void readAhead() {
+		try {
+			fill(next);
+		} catch (IOException e) {
+			LOG.error("Could not read stream " + sid + ", the message is truncated! Cause: " + e.getMessage(), e);
+			sourceFailure = e;
+			next.clear();
+			next.flip();
+		}
+	}
+
+	/**
+	 * Fills buffer, until it is full or the source has no more bytes, and
+	 * flips it.
+	 */
+	private void fill(final ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		while (!eof && buffer.hasRemaining()) {
+			if (source.read(buffer) < 0) {
+				eof = true;
+			}
+		}
+		buffer.flip();
+	}
+
+	private void reject(final Exception e) {
+		synchronized (d) {
+			if (d.isPending()) {
+				d.reject(e);
+			}
+		}
+	}
+}
@@ -27,8 +27,11 @@ import org.slf4j.LoggerFactory;
  * This Thread will notify the client if something goes wrong during the connection setup.
  * 
  * @author Jonas Wagner
- *
+ * @deprecated This thread blocks for the whole timeout. Use
+ *             {@link net.sctp4nat.util.SctpExecutors#timeout(Deferred, long, TimeUnit, String)}
+ *             instead, which does not occupy a thread.
  */
+@Deprecated
 public class SctpTimeoutThread extends Thread {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SctpTimeoutThread.class);
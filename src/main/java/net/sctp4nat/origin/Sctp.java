@@ -16,6 +16,7 @@
 package net.sctp4nat.origin;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -23,7 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import lombok.Getter;
-import net.sctp4nat.core.SctpMapper;
+import net.sctp4nat.util.SctpEngineProfile;
 import net.sctp4nat.util.SctpUtils;
 
 /**
@@ -53,7 +54,7 @@ public class Sctp {
 	private Sctp() {
 	}
 
-	@Getter	private static boolean initialized = false;
+	@Getter	private static volatile boolean initialized = false;
 
 	/**
 	 * The logger.
@@ -65,6 +66,21 @@ public class Sctp {
 	 */
 	public static final int MSG_NOTIFICATION = 0x2000;
 
+	/**
+	 * Set in the flags of the last part of a message, which usrsctp delivers in
+	 * several parts (partial delivery). Its value depends on the platform.
+	 */
+	public static final int MSG_EOR;
+
+	/**
+	 * Set, if the native library provides the entry points, which were added
+	 * after the bundled binaries were built. Without them, the direct buffers
+	 * and the send buffer tracking are not used, and partial reliability,
+	 * streamed messages, association options, stream schedulers, I-DATA and
+	 * engine profiles are not available.
+	 */
+	private static final boolean NATIVE_EXTENSIONS;
+
 	/**
 	 * Track the number of currently running SCTP engines. Each engine calls
 	 * {@link #init()} on startup and {@link #finish()} on shutdown. We want
@@ -93,6 +109,31 @@ public class Sctp {
 			else
 				throw new RuntimeException(t);
 		}
+
+		int eor;
+		boolean extensions;
+		try {
+			eor = usrsctp_msg_eor();
+			extensions = true;
+		} catch (UnsatisfiedLinkError e) {
+			logger.warn("The native library " + lib + " is outdated, only the basic features are available: "
+					+ e.getMessage());
+			// see usrsctp.h, Linux is the only platform with another value
+			eor = System.getProperty("os.name", "").toLowerCase().startsWith("linux") ? 0x80 : 0x8;
+			extensions = false;
+		}
+		MSG_EOR = eor;
+		NATIVE_EXTENSIONS = extensions;
+	}
+
+	/**
+	 * @return true, if the native library provides all features (see
+	 *         {@link #createSocket(int, boolean)} and {@link SctpSocket}).
+	 *         An outdated library only sends and receives complete messages
+	 *         through arrays.
+	 */
+	public static boolean hasNativeExtensions() {
+		return NATIVE_EXTENSIONS;
 	}
 
 	/**
@@ -133,7 +174,31 @@ public class Sctp {
 	 * @return new <tt>SctpSocket</tt> for given SCTP port.
 	 */
 	public static SctpSocket createSocket(int localPort) {
-		long ptr = usrsctp_socket(localPort);
+		return createSocket(localPort, false);
+	}
+
+	/**
+	 * Creates new <tt>SctpSocket</tt> for given SCTP port. Allocates native
+	 * resources bound to the socket.
+	 *
+	 * @param localPort
+	 *            local SCTP socket port.
+	 * @param interleaving
+	 *            true to announce I-DATA (RFC 8260) in the handshake. It is
+	 *            used, if the remote announces it too. Then usrsctp
+	 *            interleaves the fragments of messages on different streams,
+	 *            so a large message does not hold back the small messages on
+	 *            the other streams (see {@link SctpSocket#isInterleaving()}).
+	 *            It is ignored, if the native library is outdated (see
+	 *            {@link #hasNativeExtensions()}).
+	 * @return new <tt>SctpSocket</tt> for given SCTP port.
+	 */
+	public static SctpSocket createSocket(int localPort, boolean interleaving) {
+		if (interleaving && !NATIVE_EXTENSIONS) {
+			logger.warn("The native library does not support I-DATA, the socket does not interleave");
+			interleaving = false;
+		}
+		long ptr = interleaving ? usrsctp_socket_interleaving(localPort) : usrsctp_socket(localPort);
 		SctpSocket socket;
 
 		if (ptr == 0) {
@@ -177,18 +242,63 @@ public class Sctp {
 	 * Initializes native SCTP counterpart.
 	 */
 	public synchronized void init() {
+		init(null);
+	}
+
+	/**
+	 * Initializes native SCTP counterpart and applies the given
+	 * {@link SctpEngineProfile}. usrsctp_init resets all sysctls, so the profile
+	 * is set right afterwards, before the first socket is created. If usrsctp is
+	 * already initialized, the profile is ignored. The whole initialization
+	 * holds the lock of this singleton, which {@link #finish()} uses as well.
+	 * 
+	 * @param profile
+	 *            the {@link SctpEngineProfile} or null to keep the defaults of
+	 *            usrsctp.
+	 * @throws IllegalArgumentException
+	 *             if the profile is invalid
+	 */
+	public synchronized void init(SctpEngineProfile profile) {
 		// Skip if we're not the first one
 		// if(sctpEngineCount++ > 0)
 		// return;
-		synchronized (this) {
-			if (!initialized) {
-				logger.debug("Init'ing brian's & jonas' patched usrsctp");
-				usrsctp_init(0);
-				initialized = true;
+		if (profile != null) {
+			profile.validate();
+		}
+		if (!initialized) {
+			logger.debug("Init'ing brian's & jonas' patched usrsctp");
+			usrsctp_init(0);
+			if (profile != null && !NATIVE_EXTENSIONS) {
+				logger.warn("The native library does not support engine profiles, " + profile.getName()
+						+ " ignored");
+			} else if (profile != null) {
+				if (usrsctp_sysctl_set_profile(profile.toArray())) {
+					logger.info("usrsctp engine profile applied: " + profile);
+				} else {
+					logger.error("Could not apply the usrsctp engine profile " + profile.getName());
+				}
 			}
+			initialized = true;
+		} else if (profile != null) {
+			logger.warn("usrsctp is already initialized, engine profile " + profile.getName() + " ignored");
 		}
 	}
 
+	/**
+	 * @return the current sysctls of usrsctp as {@link SctpEngineProfile}
+	 *         named "current". Only meaningful, while usrsctp is initialized.
+	 * @throws IllegalStateException
+	 *             if the sysctls could not be read or the native library is
+	 *             outdated (see {@link #hasNativeExtensions()})
+	 */
+	public static SctpEngineProfile getEngineProfile() {
+		int[] values = SctpEngineProfile.DEFAULT.toArray();
+		if (!NATIVE_EXTENSIONS || !usrsctp_sysctl_get_profile(values)) {
+			throw new IllegalStateException("Could not read the usrsctp sysctls");
+		}
+		return SctpEngineProfile.fromArray("current", values);
+	}
+
 	/**
 	 * Passes network packet to native SCTP stack counterpart.
 	 * 
@@ -221,6 +331,47 @@ public class Sctp {
 		on_network_in(socketPtr, packet, offset, len);
 	}
 
+	/**
+	 * Passes network packet held by a direct {@link ByteBuffer} to native SCTP
+	 * stack counterpart. The packet is read in place by usrsctp.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param pkt
+	 *            direct buffer holding network packet data.
+	 * @param off
+	 *            the position in the buffer where packet data starts.
+	 * @param len
+	 *            packet data length.
+	 */
+	private static native void on_network_in_direct(long ptr, ByteBuffer pkt, int off, int len);
+
+	/**
+	 * Used by {@link SctpSocket} to pass received network packet, which is held
+	 * by a direct {@link ByteBuffer}, to native counterpart. An outdated native
+	 * library gets a copy.
+	 *
+	 * @param socketPtr
+	 *            native socket pointer.
+	 * @param packet
+	 *            direct buffer holding network packet data.
+	 * @param offset
+	 *            position in the buffer where packet data starts.
+	 * @param len
+	 *            length of packet data in the buffer.
+	 */
+	static void onConnIn(long socketPtr, ByteBuffer packet, int offset, int len) {
+		if (NATIVE_EXTENSIONS) {
+			on_network_in_direct(socketPtr, packet, offset, len);
+		} else {
+			byte[] copy = new byte[len];
+			ByteBuffer slice = packet.duplicate();
+			slice.position(offset);
+			slice.get(copy);
+			on_network_in(socketPtr, copy, 0, len);
+		}
+	}
+
 	/**
 	 * Method fired by native counterpart to notify about incoming data.
 	 *
@@ -245,7 +396,7 @@ public class Sctp {
 		if (socket == null) {
 			logger.error("No SctpSocket found for ptr: " + socketAddr);
 		} else {
-			socket.onSctpInboundPacket(data, sid, ssn, tsn, ppid, context, flags, SctpMapper.locate(socket));
+			socket.onSctpInboundPacket(data, sid, ssn, tsn, ppid, context, flags, socket.getChannel());
 		}
 
 	}
@@ -322,6 +473,25 @@ public class Sctp {
 	 */
 	private static native boolean usrsctp_init(int port);
 
+	/**
+	 * Sets the sysctls of an engine profile. A negative value keeps the current
+	 * value.
+	 * 
+	 * @param values
+	 *            the sysctls in the order of {@link SctpEngineProfile#toArray()}
+	 * @return true if the sysctls were set.
+	 */
+	private static native boolean usrsctp_sysctl_set_profile(int[] values);
+
+	/**
+	 * Reads the sysctls of an engine profile.
+	 * 
+	 * @param values
+	 *            an array in the order of {@link SctpEngineProfile#toArray()}
+	 * @return true if the sysctls were read.
+	 */
+	private static native boolean usrsctp_sysctl_get_profile(int[] values);
+
 	/**
 	 * Makes socket passive.
 	 * 
@@ -332,7 +502,8 @@ public class Sctp {
 
 	/**
 	 * Sends given <tt>data</tt> on selected SCTP stream using given payload
-	 * protocol identifier. FIXME add offset and length buffer parameters.
+	 * protocol identifier. Only the slice off..off+len is copied out of the
+	 * array.
 	 * 
 	 * @param ptr
 	 *            native socket pointer.
@@ -352,6 +523,271 @@ public class Sctp {
 	 */
 	static native int usrsctp_send(long ptr, byte[] data, int off, int len, boolean ordered, int sid, int ppid);
 
+	/**
+	 * Sends given <tt>data</tt> on selected SCTP stream using given payload
+	 * protocol identifier and partial reliability policy. Only the slice
+	 * off..off+len is copied out of the array.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param data
+	 *            the data to send.
+	 * @param off
+	 *            the position of the data inside the buffer
+	 * @param len
+	 *            data length.
+	 * @param ordered
+	 *            should we care about message order ?
+	 * @param sid
+	 *            SCTP stream identifier
+	 * @param ppid
+	 *            payload protocol identifier
+	 * @param prPolicy
+	 *            the partial reliability policy (SCTP_PR_SCTP_*)
+	 * @param prValue
+	 *            the lifetime in ms or the number of retransmissions of the
+	 *            policy
+	 * @return sent bytes count or <tt>-1</tt> in case of an error.
+	 */
+	static native int usrsctp_send_pr(long ptr, byte[] data, int off, int len, boolean ordered, int sid, int ppid,
+			int prPolicy, int prValue);
+
+	/**
+	 * Sends given <tt>data</tt> on selected SCTP stream using given payload
+	 * protocol identifier. The data is read in place, without any copy.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param data
+	 *            a direct {@link ByteBuffer} holding the data to send.
+	 * @param off
+	 *            the position of the data inside the buffer
+	 * @param len
+	 *            data length.
+	 * @param ordered
+	 *            should we care about message order ?
+	 * @param sid
+	 *            SCTP stream identifier
+	 * @param ppid
+	 *            payload protocol identifier
+	 * @param prPolicy
+	 *            the partial reliability policy (SCTP_PR_SCTP_*)
+	 * @param prValue
+	 *            the lifetime in ms or the number of retransmissions of the
+	 *            policy
+	 * @return sent bytes count or <tt>-1</tt> in case of an error.
+	 */
+	static native int usrsctp_send_direct(long ptr, ByteBuffer data, int off, int len, boolean ordered, int sid,
+			int ppid, int prPolicy, int prValue);
+
+	/**
+	 * Registers a direct {@link ByteBuffer}, into which the native counterpart
+	 * writes inbound messages of the socket. Afterwards, it calls
+	 * SctpSocket.onSctpInboundDirect() instead of {@link #onSctpInboundPacket},
+	 * so that no array is allocated. Messages, which do not fit into the buffer,
+	 * which arrive while the buffer is in use, and notifications are still
+	 * delivered via {@link #onSctpInboundPacket}. If the old buffer is in use,
+	 * it is replaced after that delivery.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param socket
+	 *            the {@link SctpSocket}, which owns ptr, or null to unregister
+	 *            the buffer.
+	 * @param buffer
+	 *            a direct {@link ByteBuffer} or null to unregister the buffer.
+	 * @return true if the buffer was registered (or unregistered).
+	 */
+	static native boolean usrsctp_set_inbound_buffer(long ptr, SctpSocket socket, ByteBuffer buffer);
+
+	/**
+	 * Registers a direct {@link ByteBuffer}, into which the native counterpart
+	 * writes the notifications of the socket. Afterwards, it calls
+	 * SctpSocket.onSctpNotificationDirect() instead of
+	 * {@link #onSctpInboundPacket}, so that no array is allocated.
+	 * Notifications, which do not fit into the buffer or which arrive while the
+	 * buffer is in use, are still delivered via {@link #onSctpInboundPacket}.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param socket
+	 *            the {@link SctpSocket}, which owns ptr, or null to unregister
+	 *            the buffer.
+	 * @param buffer
+	 *            a direct {@link ByteBuffer} or null to unregister the buffer.
+	 * @return true if the buffer was registered (or unregistered).
+	 */
+	static native boolean usrsctp_set_notification_buffer(long ptr, SctpSocket socket, ByteBuffer buffer);
+
+	/**
+	 * Registers a direct {@link ByteBuffer}, into which the native counterpart
+	 * writes outbound packets of the socket. Afterwards, it calls
+	 * SctpSocket.onSctpOutboundDirect() instead of {@link #onSctpOutboundPacket},
+	 * so that no array is allocated. Packets, which do not fit into the buffer or
+	 * which are emitted while the buffer is in use, are still delivered via
+	 * {@link #onSctpOutboundPacket}.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param socket
+	 *            the {@link SctpSocket}, which owns ptr, or null to unregister
+	 *            the buffer.
+	 * @param buffer
+	 *            a direct {@link ByteBuffer} or null to unregister the buffer.
+	 * @return true if the buffer was registered (or unregistered).
+	 */
+	static native boolean usrsctp_set_outbound_buffer(long ptr, SctpSocket socket, ByteBuffer buffer);
+
+	/**
+	 * Returns the free space in the send buffer of the association of the
+	 * socket.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @return the free space in bytes or -1 if the socket has no association.
+	 */
+	static native int usrsctp_send_buffer_free(long ptr);
+
+	/**
+	 * Lets the socket wait for free space in its send buffer, after its last
+	 * send failed, because the buffer was full. Once a SACK leaves at least
+	 * threshold bytes free, the native counterpart calls
+	 * SctpSocket.onSctpWritable() once. The socket does not wait, if the last
+	 * send failed for another reason or if nothing is queued anymore.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param threshold
+	 *            the free space in bytes, at which the socket is called. It is
+	 *            capped at the size of the send buffer.
+	 * @return the free space in bytes, if the socket waits, or -1 otherwise.
+	 */
+	static native int usrsctp_wait_writable(long ptr, int threshold);
+
+	/**
+	 * @return the value of MSG_EOR on this platform.
+	 */
+	private static native int usrsctp_msg_eor();
+
+	/**
+	 * Sends a part of a message, which is held by a direct buffer. The first
+	 * call enables SCTP_EXPLICIT_EOR on the socket. Until a part with eor is
+	 * sent, the following sends on the same stream continue the message and
+	 * sends on other streams fail, unless I-DATA is negotiated.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param data
+	 *            direct buffer holding the part.
+	 * @param off
+	 *            the position in the buffer where the part starts.
+	 * @param len
+	 *            the length of the part.
+	 * @param ordered
+	 *            should we care about message order ?
+	 * @param sid
+	 *            SCTP stream identifier
+	 * @param ppid
+	 *            payload protocol identifier
+	 * @param eor
+	 *            true for the last part of the message
+	 * @return sent bytes count or <tt>-1</tt> in case of an error. Fewer bytes
+	 *         than len are sent, if the send buffer is full.
+	 */
+	static native int usrsctp_send_part(long ptr, ByteBuffer data, int off, int len, boolean ordered, int sid,
+			int ppid, boolean eor);
+
+	/**
+	 * Sets the options of the association of the socket. A value of 0 keeps the
+	 * current value. If one option is rejected, the remaining ones are still
+	 * set.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param sndbuf
+	 *            SO_SNDBUF in bytes
+	 * @param rcvbuf
+	 *            SO_RCVBUF in bytes
+	 * @param ostreams
+	 *            the outbound streams of SCTP_INITMSG
+	 * @param instreams
+	 *            the maximal inbound streams of SCTP_INITMSG
+	 * @param rtoInitial
+	 *            the initial RTO of SCTP_RTOINFO in milliseconds
+	 * @param rtoMin
+	 *            the minimal RTO of SCTP_RTOINFO in milliseconds
+	 * @param rtoMax
+	 *            the maximal RTO of SCTP_RTOINFO in milliseconds
+	 * @param hbInterval
+	 *            the heartbeat interval of SCTP_PEER_ADDR_PARAMS in
+	 *            milliseconds
+	 * @param pathMaxRxt
+	 *            the path max retransmissions of SCTP_PEER_ADDR_PARAMS
+	 * @param scheduler
+	 *            the stream scheduler of SCTP_PLUGGABLE_SS
+	 * @return true if all options were set.
+	 */
+	static native boolean usrsctp_set_association_options(long ptr, int sndbuf, int rcvbuf, int ostreams,
+			int instreams, int rtoInitial, int rtoMin, int rtoMax, int hbInterval, int pathMaxRxt, int scheduler);
+
+	/**
+	 * Reads the options of the association of the socket (or of the socket, if
+	 * it has no association yet) into values, in the order of the parameters of
+	 * {@link #usrsctp_set_association_options}. If there is an association,
+	 * the negotiated stream counts are read instead of SCTP_INITMSG.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param values
+	 *            an array of at least 10 elements
+	 * @return true if all options were read.
+	 */
+	static native boolean usrsctp_get_association_options(long ptr, int[] values);
+
+	/**
+	 * Sets the stream scheduler (SCTP_PLUGGABLE_SS) of the association of the
+	 * socket or, if it has no association yet, of the next association.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param scheduler
+	 *            the value of the scheduler in usrsctp
+	 * @return true if the scheduler was set.
+	 */
+	static native boolean usrsctp_set_stream_scheduler(long ptr, int scheduler);
+
+	/**
+	 * Sets the priority (SCTP_SS_VALUE) of an outbound stream. Only the
+	 * priority scheduler accepts it and only once the association exists.
+	 * 
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param sid
+	 *            the outbound stream
+	 * @param priority
+	 *            the priority between 0 and 65535, lower values are sent first
+	 * @return true if the priority was set.
+	 */
+	static native boolean usrsctp_set_stream_priority(long ptr, int sid, int priority);
+
+	/**
+	 * @param ptr
+	 *            native socket pointer.
+	 * @param sid
+	 *            the outbound stream
+	 * @return the priority (SCTP_SS_VALUE) of the stream or -1, if the
+	 *         scheduler has no priorities or there is no such stream.
+	 */
+	static native int usrsctp_get_stream_priority(long ptr, int sid);
+
+	/**
+	 * @param ptr
+	 *            native socket pointer.
+	 * @return true, if I-DATA is supported by the socket or, once the
+	 *         association is established, negotiated with the remote.
+	 */
+	static native boolean usrsctp_is_interleaving(long ptr);
+
 	/**
 	 * Creates native SCTP socket and returns pointer to it.
 	 * 
@@ -361,6 +797,16 @@ public class Sctp {
 	 */
 	private static native long usrsctp_socket(int localPort);
 
+	/**
+	 * Creates native SCTP socket with SCTP_FRAGMENT_INTERLEAVE level 2 and
+	 * SCTP_INTERLEAVING_SUPPORTED and returns pointer to it.
+	 * 
+	 * @param localPort
+	 *            local SCTP socket port.
+	 * @return native socket pointer or 0 if operation failed.
+	 */
+	private static native long usrsctp_socket_interleaving(int localPort);
+
 	/**
 	 * @author jonaswagner
 	 * 
@@ -0,0 +1,59 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.origin;
+
+import java.nio.ByteBuffer;
+
+import net.sctp4nat.core.SctpChannelFacade;
+
+/**
+ * Callback used to listen for incoming data on SCTP socket without allocating
+ * a new array per message. The native counterpart writes every message into a
+ * direct {@link ByteBuffer} owned by the <tt>SctpSocket</tt>, which is passed
+ * to this callback as a view.
+ *
+ * <br>
+ * <br>
+ * A {@link SctpDataCallback}, which also implements this interface, receives
+ * all messages via this interface.
+ *
+ * @author Jonas Wagner
+ */
+public interface SctpBufferDataCallback {
+	/**
+	 * Callback fired by <tt>SctpSocket</tt> to notify about incoming data.
+	 * 
+	 * @param data
+	 *            buffer holding received data between its position and limit. It
+	 *            is reused for the next message, so it is only valid until this
+	 *            method returns. Copy it, if the data is needed later.
+	 * @param sid
+	 *            SCTP stream identifier.
+	 * @param ssn
+	 *            the stream sequence number
+	 * @param tsn
+	 *            the transmission sequence number
+	 * @param ppid
+	 *            payload protocol identifier.
+	 * @param context
+	 * @param flags
+	 *            the sctp chunk flags
+	 * @param facade
+	 *            the {@link SctpChannelFacade} the packet was sent on
+	 */
+	void onSctpPacket(ByteBuffer data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+			SctpChannelFacade facade);
+}
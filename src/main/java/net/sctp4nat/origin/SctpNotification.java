@@ -25,7 +25,12 @@ import java.nio.ByteOrder;
  * </br>
  * </br>
  *	<b>Changes made</b>
- *	Made several strings public to the sctp4nat project.
+ *	Made several strings public to the sctp4nat project. Added {@link Event}
+ *	and {@link #getEvent()}, such that listeners can dispatch with a switch
+ *	instead of matching the strings returned by {@link #toString()}.
+ *	Notifications, which are delivered into a direct buffer, are read in place
+ *	by {@link SctpNotificationView} and only parsed into a
+ *	<tt>SctpNotification</tt> on demand.
  *
  * @author Pawel Domas
  * @author Jonas Wagner
@@ -86,6 +91,40 @@ public class SctpNotification
     public static final int SCTP_STREAM_CHANGE_EVENT         = 0x000d;
     public static final int SCTP_SEND_FAILED_EVENT           = 0x000e;
 
+    /**
+     * The events, which a {@link SctpNotification} can signal. Association and
+     * peer address changes are split up by their state.
+     */
+    public enum Event
+    {
+        COMM_UP,
+        COMM_LOST,
+        RESTART,
+        SHUTDOWN_COMP,
+        CANT_STR_ASSOC,
+        ADDR_AVAILABLE,
+        ADDR_UNREACHABLE,
+        ADDR_REMOVED,
+        ADDR_ADDED,
+        ADDR_MADE_PRIM,
+        ADDR_CONFIRMED,
+        REMOTE_ERROR,
+        SEND_FAILED,
+        SHUTDOWN,
+        ADAPTATION_INDICATION,
+        PARTIAL_DELIVERY,
+        AUTHENTICATION,
+        STREAM_RESET,
+        SENDER_DRY,
+        NOTIFICATIONS_STOPPED,
+        ASSOC_RESET,
+        STREAM_CHANGE,
+        /**
+         * An unknown notification type or state.
+         */
+        OTHER
+    }
+
     public final int sn_type;
     public final int sn_flags;
     public final int sn_length;
@@ -103,6 +142,51 @@ public class SctpNotification
         this.sn_length = buffer.getInt();
     }
 
+    /**
+     * @return the {@link Event} of this notification. Unlike
+     *         {@link #toString()}, this method does not build any string.
+     */
+    public Event getEvent()
+    {
+        return eventOf(sn_type);
+    }
+
+    /**
+     * @return the {@link Event} of a notification of the given type, which is
+     *         neither an association nor a peer address change.
+     */
+    static Event eventOf(int type)
+    {
+        switch (type)
+        {
+            case SCTP_REMOTE_ERROR:
+                return Event.REMOTE_ERROR;
+            case SCTP_SEND_FAILED:
+            case SCTP_SEND_FAILED_EVENT:
+                return Event.SEND_FAILED;
+            case SCTP_SHUTDOWN_EVENT:
+                return Event.SHUTDOWN;
+            case SCTP_ADAPTATION_INDICATION:
+                return Event.ADAPTATION_INDICATION;
+            case SCTP_PARTIAL_DELIVERY_EVENT:
+                return Event.PARTIAL_DELIVERY;
+            case SCTP_AUTHENTICATION_EVENT:
+                return Event.AUTHENTICATION;
+            case SCTP_STREAM_RESET_EVENT:
+                return Event.STREAM_RESET;
+            case SCTP_SENDER_DRY_EVENT:
+                return Event.SENDER_DRY;
+            case SCTP_NOTIFICATIONS_STOPPED_EVENT:
+                return Event.NOTIFICATIONS_STOPPED;
+            case SCTP_ASSOC_RESET_EVENT:
+                return Event.ASSOC_RESET;
+            case SCTP_STREAM_CHANGE_EVENT:
+                return Event.STREAM_CHANGE;
+            default:
+                return Event.OTHER;
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -155,6 +239,8 @@ public class SctpNotification
                 return new SenderDry(data);
             case SCTP_STREAM_RESET_EVENT:
                 return new StreamReset(data);
+            case SCTP_PARTIAL_DELIVERY_EVENT:
+                return new PartialDelivery(data);
             default:
                 return new SctpNotification(data);
         }
@@ -213,6 +299,31 @@ public class SctpNotification
             this.assocId = buffer.getInt();
         }
 
+        @Override
+        public Event getEvent()
+        {
+            return eventOf(state);
+        }
+
+        static Event eventOf(int state)
+        {
+            switch (state)
+            {
+                case SCTP_COMM_UP:
+                    return Event.COMM_UP;
+                case SCTP_COMM_LOST:
+                    return Event.COMM_LOST;
+                case SCTP_RESTART:
+                    return Event.RESTART;
+                case SCTP_SHUTDOWN_COMP:
+                    return Event.SHUTDOWN_COMP;
+                case SCTP_CANT_STR_ASSOC:
+                    return Event.CANT_STR_ASSOC;
+                default:
+                    return Event.OTHER;
+            }
+        }
+
         @Override
         public String toString()
         {
@@ -296,6 +407,33 @@ public class SctpNotification
             this.assocId = buffer.getInt();
         }
 
+        @Override
+        public Event getEvent()
+        {
+            return eventOf(state);
+        }
+
+        static Event eventOf(int state)
+        {
+            switch (state)
+            {
+                case SCTP_ADDR_AVAILABLE:
+                    return Event.ADDR_AVAILABLE;
+                case SCTP_ADDR_UNREACHABLE:
+                    return Event.ADDR_UNREACHABLE;
+                case SCTP_ADDR_REMOVED:
+                    return Event.ADDR_REMOVED;
+                case SCTP_ADDR_ADDED:
+                    return Event.ADDR_ADDED;
+                case SCTP_ADDR_MADE_PRIM:
+                    return Event.ADDR_MADE_PRIM;
+                case SCTP_ADDR_CONFIRMED:
+                    return Event.ADDR_CONFIRMED;
+                default:
+                    return Event.OTHER;
+            }
+        }
+
         @Override
         public String toString()
         {
@@ -432,6 +570,61 @@ public class SctpNotification
         }
     }
 
+    /**
+     * Partial delivery event
+     *
+     * struct sctp_pdapi_event {
+     *     uint16_t pdapi_type;
+     *     uint16_t pdapi_flags;
+     *     uint32_t pdapi_length;
+     *     uint32_t pdapi_indication;
+     *     uint32_t pdapi_stream;
+     *     uint32_t pdapi_seq;
+     *     sctp_assoc_t pdapi_assoc_id;
+     * };
+     */
+    public static class PartialDelivery
+        extends SctpNotification
+    {
+        /* indication values */
+        public static final int SCTP_PARTIAL_DELIVERY_ABORTED = 0x0001;
+
+        public final int indication;
+
+        /**
+         * The stream of the message, whose partial delivery is indicated.
+         */
+        public final int stream;
+
+        public final long seq;
+
+        public final long assocId;
+
+        private PartialDelivery(byte[] data)
+        {
+            super(data);
+
+            this.indication = buffer.getInt();
+            this.stream = buffer.getInt();
+            this.seq = buffer.getInt() & 0xFFFFFFFFL;
+            this.assocId = buffer.getInt();
+        }
+
+        @Override
+        public String toString()
+        {
+            String base = super.toString();
+
+            if (indication == SCTP_PARTIAL_DELIVERY_ABORTED)
+                base += ",ABORTED";
+            else
+                base += ",0x" + Integer.toHexString(indication);
+            base += ",stream:" + stream + ",seq:" + seq;
+
+            return base;
+        }
+    }
+
     /**
      * Stream reset event
      *
@@ -0,0 +1,201 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.origin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import net.sctp4nat.origin.SctpNotification.AssociationChange;
+import net.sctp4nat.origin.SctpNotification.Event;
+import net.sctp4nat.origin.SctpNotification.PartialDelivery;
+import net.sctp4nat.origin.SctpNotification.PeerAddressChange;
+
+/**
+ * A reusable view of a notification, which reads its fields in place from the
+ * buffer the notification was delivered in. Unlike
+ * {@link SctpNotification#parse(byte[])}, nothing is allocated per
+ * notification.
+ *
+ * <br>
+ * <br>
+ * The <tt>SctpSocket</tt> reuses its view and its buffer for the next
+ * notification, so a view is only valid until the listener returns. Use
+ * {@link #copy()}, if the notification is needed later.
+ *
+ * @author Jonas Wagner
+ */
+public class SctpNotificationView {
+
+	private ByteBuffer buffer;
+	private int offset;
+	private int length;
+
+	/**
+	 * Points this view to the notification between the position and the limit
+	 * of buffer. The byte order of buffer is set to little endian.
+	 *
+	 * @param buffer
+	 *            the buffer holding the notification.
+	 * @return this view
+	 */
+	public SctpNotificationView wrap(ByteBuffer buffer) {
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		this.offset = buffer.position();
+		this.length = buffer.remaining();
+		return this;
+	}
+
+	/**
+	 * @return sn_type, e.g. {@link SctpNotification#SCTP_ASSOC_CHANGE}
+	 */
+	public int getType() {
+		return buffer.getChar(offset);
+	}
+
+	/**
+	 * @return sn_flags
+	 */
+	public int getFlags() {
+		return buffer.getChar(offset + 2);
+	}
+
+	/**
+	 * @return the number of bytes of the notification
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the {@link Event} of this notification.
+	 */
+	public Event getEvent() {
+		int type = getType();
+		switch (type) {
+		case SctpNotification.SCTP_ASSOC_CHANGE:
+			return AssociationChange.eventOf(getState());
+		case SctpNotification.SCTP_PEER_ADDR_CHANGE:
+			return PeerAddressChange.eventOf(getState());
+		default:
+			return SctpNotification.eventOf(type);
+		}
+	}
+
+	/**
+	 * @return the state of an association or peer address change (e.g.
+	 *         {@link AssociationChange#SCTP_COMM_UP}) or -1 for other
+	 *         notifications.
+	 */
+	public int getState() {
+		switch (getType()) {
+		case SctpNotification.SCTP_ASSOC_CHANGE:
+			return buffer.getChar(offset + 8);
+		case SctpNotification.SCTP_PEER_ADDR_CHANGE:
+			return buffer.getInt(offset + length - 16);
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the error of an association change, peer address change or send
+	 *         failure or 0 for other notifications.
+	 */
+	public long getError() {
+		switch (getType()) {
+		case SctpNotification.SCTP_ASSOC_CHANGE:
+			return buffer.getChar(offset + 10);
+		case SctpNotification.SCTP_PEER_ADDR_CHANGE:
+			return buffer.getInt(offset + length - 12);
+		case SctpNotification.SCTP_SEND_FAILED:
+			return buffer.getInt(offset + 8);
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * @return the association id of an association change, peer address
+	 *         change, sender dry or partial delivery event or 0 for other
+	 *         notifications.
+	 */
+	public long getAssocId() {
+		switch (getType()) {
+		case SctpNotification.SCTP_ASSOC_CHANGE:
+			return buffer.getInt(offset + 16);
+		case SctpNotification.SCTP_PEER_ADDR_CHANGE:
+			return buffer.getInt(offset + length - 8);
+		case SctpNotification.SCTP_SENDER_DRY_EVENT:
+			return buffer.getInt(offset + 8);
+		case SctpNotification.SCTP_PARTIAL_DELIVERY_EVENT:
+			return buffer.getInt(offset + 20);
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * @return the indication of a partial delivery event (e.g.
+	 *         {@link PartialDelivery#SCTP_PARTIAL_DELIVERY_ABORTED}) or 0 for
+	 *         other notifications.
+	 */
+	public int getIndication() {
+		return getType() == SctpNotification.SCTP_PARTIAL_DELIVERY_EVENT ? buffer.getInt(offset + 8) : 0;
+	}
+
+	/**
+	 * @return the stream of a partial delivery event or -1 for other
+	 *         notifications.
+	 */
+	public int getStream() {
+		return getType() == SctpNotification.SCTP_PARTIAL_DELIVERY_EVENT ? buffer.getInt(offset + 12) : -1;
+	}
+
+	/**
+	 * @return the number of outbound streams of an association change or 0 for
+	 *         other notifications.
+	 */
+	public int getOutboundStreams() {
+		return getType() == SctpNotification.SCTP_ASSOC_CHANGE ? buffer.getChar(offset + 12) : 0;
+	}
+
+	/**
+	 * @return the number of inbound streams of an association change or 0 for
+	 *         other notifications.
+	 */
+	public int getInboundStreams() {
+		return getType() == SctpNotification.SCTP_ASSOC_CHANGE ? buffer.getChar(offset + 14) : 0;
+	}
+
+	/**
+	 * Copies the notification out of the shared buffer.
+	 *
+	 * @return a {@link SctpNotification}, which stays valid after the listener
+	 *         returned.
+	 */
+	public SctpNotification copy() {
+		byte[] data = new byte[length];
+		ByteBuffer source = buffer.duplicate();
+		source.position(offset);
+		source.get(data);
+		return SctpNotification.parse(data);
+	}
+
+	@Override
+	public String toString() {
+		return copy().toString();
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.origin;
+
+import java.nio.ByteBuffer;
+
+import net.sctp4nat.core.SctpChannelFacade;
+
+/**
+ * Callback used to consume incoming messages piece by piece. usrsctp starts to
+ * deliver a message before it is complete, once it reaches the partial
+ * delivery point of the receive buffer. This callback gets each piece as soon
+ * as it arrives, together with the position of the piece in its message, so a
+ * message of any size can be processed with the memory of a single piece.
+ *
+ * <br>
+ * <br>
+ * A message, which arrives in one piece, is a single call with first and last
+ * set. The pieces of a stream are delivered in order and the pieces of two
+ * messages on the same stream never interleave. Pieces of messages on
+ * different streams may interleave, if I-DATA is negotiated. A
+ * {@link SctpDataCallback}, which also implements this interface, receives
+ * all messages via this interface.
+ *
+ * @author Jonas Wagner
+ */
+public interface SctpPartialDeliveryCallback {
+	/**
+	 * Callback fired by <tt>SctpSocket</tt> for each piece of an incoming
+	 * message.
+	 *
+	 * @param data
+	 *            buffer holding the piece between its position and limit. It is
+	 *            reused for the next piece, so it is only valid until this
+	 *            method returns.
+	 * @param sid
+	 *            SCTP stream identifier.
+	 * @param ppid
+	 *            payload protocol identifier.
+	 * @param first
+	 *            true for the first piece of a message (start)
+	 * @param last
+	 *            true for the last piece of a message (end of record)
+	 * @param facade
+	 *            the {@link SctpChannelFacade} the message was sent on
+	 */
+	void onMessagePart(ByteBuffer data, int sid, long ppid, boolean first, boolean last, SctpChannelFacade facade);
+
+	/**
+	 * Callback fired by <tt>SctpSocket</tt>, if the partial delivery of a
+	 * message was aborted by usrsctp (e.g. the association was lost). No more
+	 * pieces of this message follow.
+	 *
+	 * @param sid
+	 *            SCTP stream identifier of the aborted message.
+	 * @param facade
+	 *            the {@link SctpChannelFacade} the message was sent on
+	 */
+	void onMessageAborted(int sid, SctpChannelFacade facade);
+}
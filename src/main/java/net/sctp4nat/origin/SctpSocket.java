@@ -16,16 +16,25 @@
 package net.sctp4nat.origin;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javassist.NotFoundException;
+import net.sctp4nat.connection.DirectNetworkLink;
 import net.sctp4nat.connection.NetworkLink;
 import net.sctp4nat.core.SctpChannel;
 import net.sctp4nat.core.SctpChannelFacade;
 import net.sctp4nat.core.SctpMapper;
+import net.sctp4nat.origin.SctpNotification.PartialDelivery;
+import net.sctp4nat.util.SctpAssociationOptions;
+import net.sctp4nat.util.SctpPartialReliability;
+import net.sctp4nat.util.SctpStreamScheduler;
 
 /**
  * SCTP socket implemented using "usrsctp" lib.
@@ -211,11 +220,128 @@ public class SctpSocket implements SctpAcceptable {
 	 */
 	private boolean closed = false;
 
+	/**
+	 * Default capacity of {@link #inBuffer}. Larger messages are delivered via a
+	 * new array.
+	 */
+	public static final int DEFAULT_INBOUND_BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * Default capacity of {@link #inBuffer} for a
+	 * {@link SctpPartialDeliveryCallback}. usrsctp delivers pieces of about a
+	 * quarter of the receive buffer, larger pieces are delivered via a new
+	 * array.
+	 */
+	public static final int DEFAULT_PARTIAL_DELIVERY_BUFFER_SIZE = 128 * 1024;
+
+	/**
+	 * Default value of {@link #sendThreshold}, a quarter of the send buffer of
+	 * the native counterpart (1 MB).
+	 */
+	public static final int DEFAULT_SEND_THRESHOLD = 256 * 1024;
+
 	/**
 	 * Callback used to notify about received data.
 	 */
 	private SctpDataCallback dataCallback;
 
+	/**
+	 * Callback used to notify about received data, which is delivered in
+	 * {@link #inBuffer}. If set, it replaces {@link #dataCallback}.
+	 */
+	private volatile SctpBufferDataCallback bufferDataCallback;
+
+	/**
+	 * Callback used to notify about each piece of received messages, which is
+	 * delivered in {@link #inBuffer}. If set, it replaces
+	 * {@link #bufferDataCallback} and {@link #dataCallback}.
+	 */
+	private volatile SctpPartialDeliveryCallback partialDeliveryCallback;
+
+	/**
+	 * The streams with a message, whose last piece has not arrived yet. Only
+	 * accessed by the thread of usrsctp, which delivers the messages.
+	 */
+	private final BitSet openInboundMessages = new BitSet();
+
+	/**
+	 * Direct buffer registered with the native counterpart, into which inbound
+	 * messages are written.
+	 */
+	private ByteBuffer inBuffer;
+
+	/**
+	 * Capacity of {@link #notificationBuffer}. It holds every notification
+	 * except send failures with large payloads, which are delivered via a new
+	 * array.
+	 */
+	private static final int NOTIFICATION_BUFFER_SIZE = 1024;
+
+	/**
+	 * Direct buffer registered with the native counterpart, into which
+	 * notifications are written.
+	 */
+	private final ByteBuffer notificationBuffer = ByteBuffer.allocateDirect(NOTIFICATION_BUFFER_SIZE);
+
+	/**
+	 * The view of {@link #notificationBuffer}, which is passed to the
+	 * {@link NotificationListener}.
+	 */
+	private final SctpNotificationView notificationView = new SctpNotificationView();
+
+	/**
+	 * Direct buffer registered with the native counterpart, into which outbound
+	 * packets are written, if {@link #link} is a {@link DirectNetworkLink}.
+	 */
+	private ByteBuffer outBuffer;
+
+	/**
+	 * The free space in the send buffer in bytes, at which an unwritable socket
+	 * becomes writable again.
+	 */
+	private volatile int sendThreshold = DEFAULT_SEND_THRESHOLD;
+
+	/**
+	 * False after a send failed, because the send buffer was full, until
+	 * {@link #sendThreshold} bytes are free again. Changed under
+	 * {@link #writabilityLock}.
+	 */
+	private volatile boolean writable = true;
+
+	/**
+	 * The writability, which was last passed to {@link #writabilityCallback}.
+	 * Guarded by {@link #writabilityLock}.
+	 */
+	private boolean publishedWritable = true;
+
+	/**
+	 * Serializes the changes of {@link #writable} and the calls of
+	 * {@link #writabilityCallback}, so that the callback sees them in order.
+	 */
+	private final ReentrantLock writabilityLock = new ReentrantLock();
+
+	/**
+	 * Callback used to notify about changes of {@link #writable}.
+	 */
+	private volatile SctpWritabilityCallback writabilityCallback;
+
+	/**
+	 * The tasks of {@link #runWhenWritable(Runnable)}, which wait for
+	 * {@link #writable}. Guarded by {@link #writabilityLock}.
+	 */
+	private final ArrayDeque<Runnable> writableTasks = new ArrayDeque<>();
+
+	/**
+	 * The streams, on which {@link #sendPart} left a message open. Without
+	 * I-DATA, there is at most one. Guarded by itself.
+	 */
+	private final BitSet openMessages = new BitSet();
+
+	/**
+	 * The {@link SctpChannel}, which wraps this socket.
+	 */
+	private SctpChannel channel;
+
 	/**
 	 * The link used to send network packets.
 	 */
@@ -239,6 +365,16 @@ public class SctpSocket implements SctpAcceptable {
 				logger.trace("SctpSocket 0x" + Long.toHexString(ptr) + " notification: " + notification);
 			}
 		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onSctpNotification(SctpAcceptable socket, SctpNotificationView notification) {
+			if (logger.isTraceEnabled()) {
+				logger.trace("SctpSocket 0x" + Long.toHexString(ptr) + " notification: " + notification);
+			}
+		}
 	};
 
 	/**
@@ -252,6 +388,13 @@ public class SctpSocket implements SctpAcceptable {
 	 */
 	private int ptrLockCount = 0;
 
+	/**
+	 * Guards {@link #ptr}, {@link #ptrLockCount} and {@link #isAccepted}. A
+	 * {@link ReentrantLock} is used instead of synchronized blocks, so that a
+	 * virtual thread does not pin its carrier thread while waiting for it.
+	 */
+	private final ReentrantLock ptrLock = new ReentrantLock();
+
 	/**
 	 * Creates new instance of <tt>SctpSocket</tt>.
 	 *
@@ -301,6 +444,10 @@ public class SctpSocket implements SctpAcceptable {
 		// sending/processing threads so there's no need to duplicate this
 		// functionality here. We implement a readers-writers scheme that
 		// protects the native socket pointer instead.
+
+		if (Sctp.hasNativeExtensions() && !Sctp.usrsctp_set_notification_buffer(ptr, this, notificationBuffer)) {
+			logger.warn("Could not register notificationBuffer, notifications are delivered as arrays");
+		}
 	}
 
 	/**
@@ -326,17 +473,26 @@ public class SctpSocket implements SctpAcceptable {
 	 */
 	public void closeNative() {
 		// The value of the field closed only ever changes from false to true.
-		// Additionally, its reading is always synchronized and combined with
+		// Additionally, its reading is always guarded by ptrLock and combined with
 		// access to the field ptrLockCount governed by logic which binds the
 		// meanings of the two values together. Consequently, the
 		// synchronization with respect to closed is considered consistent.
-		// Allowing the writing outside the synchronized block expedites the
+		// Allowing the writing outside the locked block expedites the
 		// actual closing of ptr.
 		closed = true;
 
+		// the tasks, which wait for writability, find this socket closed
+		writabilityLock.lock();
+		try {
+			runWritableTasks();
+		} finally {
+			writabilityLock.unlock();
+		}
+
 		long ptr;
 
-		synchronized (this) {
+		ptrLock.lock();
+		try {
 			if (ptrLockCount == 0) {
 				// The actual closing of ptr will not be deferred.
 				ptr = this.ptr;
@@ -345,6 +501,8 @@ public class SctpSocket implements SctpAcceptable {
 				// The actual closing of ptr will be deferred.
 				ptr = 0;
 			}
+		} finally {
+			ptrLock.unlock();
 		}
 		if (ptr != 0)
 			Sctp.closeSocket(ptr);
@@ -384,8 +542,11 @@ public class SctpSocket implements SctpAcceptable {
 	 */
 	public void listenNative() throws IOException {
 
-		synchronized (this) {
+		ptrLock.lock();
+		try {
 			isAccepted = false;
+		} finally {
+			ptrLock.unlock();
 		}
 
 		long ptr = lockPtr();
@@ -410,7 +571,8 @@ public class SctpSocket implements SctpAcceptable {
 	private long lockPtr() throws IOException {
 		long ptr;
 
-		synchronized (this) {
+		ptrLock.lock();
+		try {
 			// It may seem that the synchronization with respect to the field
 			// closed is inconsistent because there is no synchronization upon
 			// writing its value. It is consistent though.
@@ -423,6 +585,8 @@ public class SctpSocket implements SctpAcceptable {
 				else
 					++ptrLockCount;
 			}
+		} finally {
+			ptrLock.unlock();
 		}
 		return ptr;
 	}
@@ -449,13 +613,48 @@ public class SctpSocket implements SctpAcceptable {
 		long ptr = lockPtr();
 
 		try {
-			logger.info("calling JNI method Sctp.onConnIn with ptr:" + ptr);
+			if (logger.isDebugEnabled()) {
+				logger.debug("calling JNI method Sctp.onConnIn with ptr:" + ptr);
+			}
 			Sctp.onConnIn(ptr, packet, offset, len);
 		} finally {
 			unlockPtr();
 		}
 	}
 
+	/**
+	 * Call this method to pass network packets received on the link. The
+	 * packet is read from the position to the limit of the given buffer. The
+	 * position of the buffer is not changed. Direct buffers are passed to
+	 * usrsctp without copying them.
+	 *
+	 * @param packet
+	 *            buffer holding the network packet received.
+	 */
+	public void onConnIn(ByteBuffer packet) throws IOException {
+		if (packet == null) {
+			throw new NullPointerException("packet");
+		}
+		if (!packet.hasRemaining()) {
+			throw new IllegalArgumentException("packet is empty");
+		}
+		if (!packet.isDirect()) {
+			if (!packet.hasArray()) {
+				throw new IllegalArgumentException("packet is neither direct nor backed by an array");
+			}
+			onConnIn(packet.array(), packet.arrayOffset() + packet.position(), packet.remaining());
+			return;
+		}
+
+		long ptr = lockPtr();
+
+		try {
+			Sctp.onConnIn(ptr, packet, packet.position(), packet.remaining());
+		} finally {
+			unlockPtr();
+		}
+	}
+
 	/**
 	 * Fired when usrsctp stack sends notification.
 	 *
@@ -463,11 +662,69 @@ public class SctpSocket implements SctpAcceptable {
 	 *            the <tt>SctpNotification</tt> triggered.
 	 */
 	private void onNotification(SctpNotification notification) {
+		if (notification instanceof PartialDelivery) {
+			PartialDelivery partialDelivery = (PartialDelivery) notification;
+			onPartialDeliveryEvent(partialDelivery.indication, partialDelivery.stream);
+		}
 		if (notificationListener != null) {
 			notificationListener.onSctpNotification(this, notification);
 		}
 	}
 
+	/**
+	 * Called by the native counterpart, after it has written a notification of
+	 * length bytes to buffer, which is {@link #notificationBuffer}. Nothing is
+	 * allocated on this path. The native counterpart keeps buffer registered,
+	 * until this method returns, and delivers concurrent notifications as
+	 * arrays.
+	 *
+	 * @param buffer
+	 *            the registered direct buffer, which holds the notification
+	 * @param length
+	 *            the length of the notification in buffer
+	 * @param flags
+	 */
+	@SuppressWarnings("unused")
+	private void onSctpNotificationDirect(ByteBuffer buffer, int length, int flags) {
+		buffer.clear();
+		buffer.limit(length);
+		notificationView.wrap(buffer);
+		if (notificationView.getType() == SctpNotification.SCTP_PARTIAL_DELIVERY_EVENT) {
+			onPartialDeliveryEvent(notificationView.getIndication(), notificationView.getStream());
+		}
+
+		NotificationListener listener = this.notificationListener;
+		if (listener != null) {
+			listener.onSctpNotification(this, notificationView);
+		}
+	}
+
+	/**
+	 * Tells the {@link SctpPartialDeliveryCallback}, that the message on sid
+	 * will not be completed, if its partial delivery was aborted.
+	 */
+	private void onPartialDeliveryEvent(int indication, int sid) {
+		SctpPartialDeliveryCallback callback = this.partialDeliveryCallback;
+		if (callback == null || indication != PartialDelivery.SCTP_PARTIAL_DELIVERY_ABORTED || sid < 0
+				|| !openInboundMessages.get(sid)) {
+			return;
+		}
+		openInboundMessages.clear(sid);
+		callback.onMessageAborted(sid, getChannel());
+	}
+
+	/**
+	 * Passes a piece of a message to callback. The piece is the first of its
+	 * message, unless the previous piece on sid had no {@link Sctp#MSG_EOR}.
+	 */
+	private void onMessagePart(SctpPartialDeliveryCallback callback, ByteBuffer data, int sid, long ppid,
+			int flags, SctpChannel so) {
+		boolean first = !openInboundMessages.get(sid);
+		boolean last = (flags & Sctp.MSG_EOR) != 0;
+		openInboundMessages.set(sid, !last);
+		callback.onMessagePart(data, sid, ppid, first, last, so);
+	}
+
 	/**
 	 * Method fired by SCTP stack to notify about incoming data.
 	 *
@@ -486,11 +743,14 @@ public class SctpSocket implements SctpAcceptable {
 	private void onSctpIn(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags, SctpChannel so)
 			throws IOException {
 
-		synchronized (this) {
+		ptrLock.lock();
+		try {
 			if (!isAccepted) {
 				acceptNative();
 				isAccepted = true;
 			}
+		} finally {
+			ptrLock.unlock();
 		}
 
 		// SctpSocketAdapter socket = (SctpSocketAdapter)
@@ -504,7 +764,15 @@ public class SctpSocket implements SctpAcceptable {
 		// return;
 		// }
 
-		if (dataCallback != null) {
+		SctpPartialDeliveryCallback partialCallback = this.partialDeliveryCallback;
+		SctpBufferDataCallback bufferCallback = this.bufferDataCallback;
+		if (partialCallback != null) {
+			// the piece did not fit into the inBuffer
+			onMessagePart(partialCallback, ByteBuffer.wrap(data), sid, ppid, flags, so);
+		} else if (bufferCallback != null) {
+			// the message did not fit into the inBuffer
+			bufferCallback.onSctpPacket(ByteBuffer.wrap(data), sid, ssn, tsn, ppid, context, flags, so);
+		} else if (dataCallback != null) {
 			dataCallback.onSctpPacket(data, sid, ssn, tsn, ppid, context, flags, so);
 		} else {
 			logger.warn("No dataCallback set, dropping a message from usrsctp");
@@ -543,6 +811,57 @@ public class SctpSocket implements SctpAcceptable {
 		}
 	}
 
+	/**
+	 * Called by the native counterpart, after it has written a message of length
+	 * bytes to buffer. Nothing is allocated on this path. The native
+	 * counterpart passes the registered buffer, because {@link #inBuffer} may
+	 * already be replaced. It keeps buffer registered, until this method
+	 * returns, and delivers concurrent messages as arrays.
+	 *
+	 * @param buffer
+	 *            the registered direct buffer, which holds the message
+	 * @param length
+	 *            the length of the message in buffer
+	 * @param sid
+	 *            stream id
+	 * @param ssn
+	 * @param tsn
+	 * @param ppid
+	 *            payload protocol identifier
+	 * @param context
+	 * @param flags
+	 */
+	@SuppressWarnings("unused")
+	private void onSctpInboundDirect(ByteBuffer buffer, int length, int sid, int ssn, int tsn, long ppid, int context,
+			int flags) throws IOException {
+		SctpBufferDataCallback bufferCallback = this.bufferDataCallback;
+
+		ptrLock.lock();
+		try {
+			if (!isAccepted) {
+				acceptNative();
+				isAccepted = true;
+			}
+		} finally {
+			ptrLock.unlock();
+		}
+
+		buffer.clear();
+		buffer.limit(length);
+		SctpPartialDeliveryCallback partialCallback = this.partialDeliveryCallback;
+		if (partialCallback != null) {
+			onMessagePart(partialCallback, buffer, sid, ppid, flags, getChannel());
+		} else if (bufferCallback != null) {
+			bufferCallback.onSctpPacket(buffer, sid, ssn, tsn, ppid, context, flags, getChannel());
+		} else if (dataCallback != null) {
+			byte[] data = new byte[length];
+			buffer.get(data);
+			dataCallback.onSctpPacket(data, sid, ssn, tsn, ppid, context, flags, getChannel());
+		} else {
+			logger.warn("No dataCallback set, dropping a message from usrsctp");
+		}
+	}
+
 	/**
 	 * Callback triggered by Sctp stack whenever it wants to send some network
 	 * packet.
@@ -561,8 +880,10 @@ public class SctpSocket implements SctpAcceptable {
 
 		if (link != null) {
 			try {
-				logger.info("calling onSctpOut with ptr:" + this.ptr);
-				link.onConnOut(SctpMapper.locate(this), packet, tos);
+				if (logger.isDebugEnabled()) {
+					logger.debug("calling onSctpOut with ptr:" + this.ptr);
+				}
+				link.onConnOut(getChannel(), packet, tos);
 				ret = 0;
 			} catch (IOException | NotFoundException e) {
 				logger.error("Error while sending packet through the link: " + link, e);
@@ -571,6 +892,47 @@ public class SctpSocket implements SctpAcceptable {
 		return ret;
 	}
 
+	/**
+	 * Called by the native counterpart, after it has written a packet of length
+	 * bytes to buffer. Nothing is allocated on this path. The native
+	 * counterpart passes the registered buffer, because {@link #outBuffer} may
+	 * already be replaced or unregistered. It keeps buffer registered, until
+	 * this method returns, and emits concurrent packets as arrays.
+	 *
+	 * @param buffer
+	 *            the registered direct buffer, which holds the packet
+	 * @param length
+	 *            the length of the packet in buffer
+	 * @param tos
+	 *            type of service???
+	 * @param set_df
+	 *            use IP don't fragment option
+	 * @return 0 if the packet was successfully sent or -1 otherwise.
+	 */
+	@SuppressWarnings("unused")
+	private int onSctpOutboundDirect(ByteBuffer buffer, int length, int tos, int set_df) {
+		NetworkLink link = this.link;
+		int ret = -1;
+
+		if (link instanceof DirectNetworkLink) {
+			buffer.clear();
+			buffer.limit(length);
+			try {
+				((DirectNetworkLink) link).onConnOut(getChannel(), buffer, tos);
+				ret = 0;
+			} catch (IOException e) {
+				logger.error("Error while sending packet through the link: " + link, e);
+			}
+		} else {
+			// the link was replaced by one without direct support in the meantime
+			byte[] packet = new byte[length];
+			buffer.clear();
+			buffer.get(packet, 0, length);
+			ret = onSctpOut(packet, tos, set_df);
+		}
+		return ret;
+	}
+
 	/**
 	 * Sends given <tt>data</tt> on selected SCTP stream using given payload
 	 * protocol identifier.
@@ -583,7 +945,8 @@ public class SctpSocket implements SctpAcceptable {
 	 *            SCTP stream identifier
 	 * @param ppid
 	 *            payload protocol identifier
-	 * @return sent bytes count or <tt>-1</tt> in case of an error.
+	 * @return sent bytes count or <tt>-1</tt> in case of an error (e.g. the send
+	 *         buffer is full, see {@link #isWritable()}).
 	 */
 	public int send(byte[] data, boolean ordered, int sid, int ppid) throws IOException {
 		return sendNative(data, 0, data.length, ordered, sid, ppid);
@@ -605,9 +968,36 @@ public class SctpSocket implements SctpAcceptable {
 	 *            SCTP stream identifier
 	 * @param ppid
 	 *            payload protocol identifier
-	 * @return sent bytes count or <tt>-1</tt> in case of an error.
+	 * @return sent bytes count or <tt>-1</tt> in case of an error (e.g. the send
+	 *         buffer is full, see {@link #isWritable()}).
 	 */
 	public int sendNative(byte[] data, int offset, int len, boolean ordered, int sid, int ppid) throws IOException {
+		return sendNative(data, offset, len, ordered, sid, ppid, SctpPartialReliability.NONE);
+	}
+
+	/**
+	 * Sends given <tt>data</tt> on selected SCTP stream using given payload
+	 * protocol identifier and partial reliability policy.
+	 *
+	 * @param data
+	 *            the data to send.
+	 * @param offset
+	 *            position of the data inside the buffer
+	 * @param len
+	 *            data length
+	 * @param ordered
+	 *            should we care about message order ?
+	 * @param sid
+	 *            SCTP stream identifier
+	 * @param ppid
+	 *            payload protocol identifier
+	 * @param reliability
+	 *            the {@link SctpPartialReliability} of the message
+	 * @return sent bytes count or <tt>-1</tt> in case of an error (e.g. the send
+	 *         buffer is full, see {@link #isWritable()}).
+	 */
+	public int sendNative(byte[] data, int offset, int len, boolean ordered, int sid, int ppid,
+			SctpPartialReliability reliability) throws IOException {
 		if (data == null) {
 			throw new NullPointerException("data");
 		}
@@ -619,12 +1009,24 @@ public class SctpSocket implements SctpAcceptable {
 		if (offset < 0 || len <= 0 || offset + len > data.length) {
 			throw new IllegalArgumentException("o: " + offset + " l: " + len + " data l: " + data.length);
 		}
+		checkNoOpenMessage(sid);
+		if (!reliability.isReliable()) {
+			checkNativeExtensions("Partial reliability");
+		}
 
 		long ptr = lockPtr();
 		int r;
 
 		try {
-			r = Sctp.usrsctp_send(ptr, data, offset, len, ordered, sid, ppid);
+			if (reliability.isReliable()) {
+				r = Sctp.usrsctp_send(ptr, data, offset, len, ordered, sid, ppid);
+			} else {
+				r = Sctp.usrsctp_send_pr(ptr, data, offset, len, ordered, sid, ppid,
+						reliability.getPolicy().getValue(), reliability.getValue());
+			}
+			if (r < 0) {
+				onSendFailed(ptr, len);
+			}
 		} finally {
 			unlockPtr();
 		}
@@ -632,35 +1034,722 @@ public class SctpSocket implements SctpAcceptable {
 	}
 
 	/**
-	 * Sets the callback that will be fired when new data is received.
+	 * Sends the remaining bytes of <tt>data</tt> (position to limit) on selected
+	 * SCTP stream using given payload protocol identifier. Direct buffers are
+	 * passed to usrsctp without any copy. On success, the position of
+	 * <tt>data</tt> is advanced by the number of bytes sent.
 	 *
-	 * @param callback
-	 *            the callback that will be fired when new data is received.
+	 * @param data
+	 *            the data to send.
+	 * @param ordered
+	 *            should we care about message order ?
+	 * @param sid
+	 *            SCTP stream identifier
+	 * @param ppid
+	 *            payload protocol identifier
+	 * @return sent bytes count or <tt>-1</tt> in case of an error (e.g. the send
+	 *         buffer is full, see {@link #isWritable()}).
 	 */
-	public void setDataCallbackNative(SctpDataCallback callback) {
-		this.dataCallback = callback;
+	public int sendNative(ByteBuffer data, boolean ordered, int sid, int ppid) throws IOException {
+		return sendNative(data, ordered, sid, ppid, SctpPartialReliability.NONE);
 	}
 
 	/**
-	 * Sets the link that will be used to send network packets.
+	 * Sends the remaining bytes of <tt>data</tt> (position to limit) on selected
+	 * SCTP stream using given payload protocol identifier and partial
+	 * reliability policy. On success, the position of <tt>data</tt> is
+	 * advanced by the number of bytes sent.
 	 *
-	 * @param link
-	 *            <tt>NetworkLink</tt> that will be used by this instance to send
-	 *            network packets.
+	 * @param data
+	 *            the data to send.
+	 * @param ordered
+	 *            should we care about message order ?
+	 * @param sid
+	 *            SCTP stream identifier
+	 * @param ppid
+	 *            payload protocol identifier
+	 * @param reliability
+	 *            the {@link SctpPartialReliability} of the message
+	 * @return sent bytes count or <tt>-1</tt> in case of an error (e.g. the send
+	 *         buffer is full, see {@link #isWritable()}).
 	 */
-	public void setLink(NetworkLink link) {
-		this.link = link;
+	public int sendNative(ByteBuffer data, boolean ordered, int sid, int ppid, SctpPartialReliability reliability)
+			throws IOException {
+		if (data == null) {
+			throw new NullPointerException("data");
+		}
+
+		int offset = data.position();
+		int len = data.remaining();
+		int r;
+		if (data.hasArray()) {
+			r = sendNative(data.array(), data.arrayOffset() + offset, len, ordered, sid, ppid, reliability);
+		} else if (!data.isDirect() || !Sctp.hasNativeExtensions()) {
+			// read-only heap buffer, which does not expose its array, or a
+			// direct buffer, which an outdated native library can not read
+			byte[] copy = new byte[len];
+			data.duplicate().get(copy);
+			r = sendNative(copy, 0, len, ordered, sid, ppid, reliability);
+		} else {
+			if (!isAccepted) {
+				isAccepted = acceptNative();
+			}
+
+			if (len <= 0) {
+				throw new IllegalArgumentException("o: " + offset + " l: " + len + " data l: " + data.limit());
+			}
+			checkNoOpenMessage(sid);
+
+			long ptr = lockPtr();
+			try {
+				r = Sctp.usrsctp_send_direct(ptr, data, offset, len, ordered, sid, ppid,
+						reliability.getPolicy().getValue(), reliability.getValue());
+				if (r < 0) {
+					onSendFailed(ptr, len);
+				}
+			} finally {
+				unlockPtr();
+			}
+		}
+
+		if (r > 0) {
+			data.position(offset + r);
+		}
+		return r;
 	}
 
 	/**
-	 * Sets the listener that will be notified about SCTP event.
+	 * Sends the remaining bytes of <tt>data</tt> as the next part of a message
+	 * on the selected SCTP stream. Unless <tt>eor</tt> is set, the message
+	 * stays open and the next part is sent with this method again. While a
+	 * message is open, the other send methods fail on its stream, and, unless
+	 * I-DATA is negotiated (see {@link #isInterleaving()}), usrsctp rejects
+	 * sends on all other streams. On
+	 * success, the position of <tt>data</tt> is advanced by the number of bytes
+	 * sent.
 	 *
-	 * @param l
-	 *            the {@link NotificationListener} to set.
+	 * @param data
+	 *            a direct buffer holding the part.
+	 * @param ordered
+	 *            should we care about message order ?
+	 * @param sid
+	 *            SCTP stream identifier
+	 * @param ppid
+	 *            payload protocol identifier
+	 * @param eor
+	 *            true for the last part of the message
+	 * @return sent bytes count or <tt>-1</tt> in case of an error. usrsctp
+	 *         takes as many bytes as fit into the send buffer, so fewer bytes
+	 *         than remaining are sent, if the buffer is full (see
+	 *         {@link #isWritable()}).
+	 * @throws IOException
+	 *             if this <tt>SctpSocket</tt> is closed
 	 */
-	public void setNotificationListener(NotificationListener l) {
-		logger.debug("Changed NotificationListener for SctpSocket ptr:" + this.ptr);
-		this.notificationListener = l;
+	public int sendPart(ByteBuffer data, boolean ordered, int sid, int ppid, boolean eor) throws IOException {
+		if (data == null) {
+			throw new NullPointerException("data");
+		}
+		if (!data.isDirect() || !data.hasRemaining()) {
+			throw new IllegalArgumentException("A part must be a non-empty direct buffer: " + data);
+		}
+		checkNativeExtensions("Sending a message in parts");
+
+		if (!isAccepted) {
+			isAccepted = acceptNative();
+		}
+
+		int offset = data.position();
+		int len = data.remaining();
+		long ptr = lockPtr();
+		int r;
+		try {
+			r = Sctp.usrsctp_send_part(ptr, data, offset, len, ordered, sid, ppid, eor);
+			if (r < 0) {
+				onSendFailed(ptr, len);
+			} else {
+				// a short send leaves the message open, even if eor is set
+				synchronized (openMessages) {
+					openMessages.set(sid, !eor || r < len);
+				}
+				if (r < len) {
+					onSendFailed(ptr, len - r);
+				}
+			}
+		} finally {
+			unlockPtr();
+		}
+
+		if (r > 0) {
+			data.position(offset + r);
+		}
+		return r;
+	}
+
+	/**
+	 * A complete message on a stream with an open message would be appended to
+	 * it by usrsctp.
+	 */
+	private void checkNoOpenMessage(int sid) throws IOException {
+		boolean open;
+		synchronized (openMessages) {
+			open = openMessages.get(sid);
+		}
+		if (open) {
+			throw new IOException("Stream " + sid + " has an open message, which is still being sent");
+		}
+	}
+
+	/**
+	 * An outdated native library lacks the entry points of feature, see
+	 * {@link Sctp#hasNativeExtensions()}.
+	 */
+	private static void checkNativeExtensions(String feature) throws IOException {
+		if (!Sctp.hasNativeExtensions()) {
+			throw new IOException(feature + " needs a newer native library");
+		}
+	}
+
+	/**
+	 * Runs task, once this socket is writable or closed. If it is writable,
+	 * task is run right away by the calling thread. Otherwise, it is run by the
+	 * thread, which makes this socket writable again or closes it, so task
+	 * should only hand over to an executor.
+	 *
+	 * @param task
+	 *            the task
+	 */
+	public void runWhenWritable(Runnable task) {
+		writabilityLock.lock();
+		try {
+			if (!writable && !closed) {
+				writableTasks.add(task);
+				return;
+			}
+		} finally {
+			writabilityLock.unlock();
+		}
+		task.run();
+	}
+
+	/**
+	 * Called, after a send of len bytes failed. If the send buffer was full,
+	 * this socket becomes unwritable and the native counterpart calls
+	 * {@link #onSctpWritable(int)}, once {@link #sendThreshold} bytes are free.
+	 * The caller holds {@link #lockPtr()}.
+	 */
+	private void onSendFailed(long ptr, int len) {
+		if (!Sctp.hasNativeExtensions()) {
+			// an outdated native library does not track the send buffer, so the
+			// socket stays writable
+			return;
+		}
+
+		// unwritable before the native counterpart waits, so that an early
+		// onSctpWritable() can not be overwritten
+		writabilityLock.lock();
+		try {
+			writable = false;
+		} finally {
+			writabilityLock.unlock();
+		}
+
+		int free = Sctp.usrsctp_wait_writable(ptr, Math.max(sendThreshold, len));
+
+		writabilityLock.lock();
+		try {
+			if (free < 0) {
+				// the send failed for another reason or nothing is queued
+				// anymore, so the native counterpart does not wait
+				writable = true;
+				if (!publishedWritable) {
+					free = Sctp.usrsctp_send_buffer_free(ptr);
+				}
+			}
+			publishWritability(free);
+			runWritableTasks();
+		} finally {
+			writabilityLock.unlock();
+		}
+	}
+
+	/**
+	 * Called by the native counterpart, once sbFree bytes are free in the send
+	 * buffer of an unwritable socket.
+	 *
+	 * @param sbFree
+	 *            the free space in the send buffer in bytes
+	 */
+	@SuppressWarnings("unused")
+	private void onSctpWritable(int sbFree) {
+		writabilityLock.lock();
+		try {
+			writable = true;
+			publishWritability(sbFree);
+			runWritableTasks();
+		} finally {
+			writabilityLock.unlock();
+		}
+	}
+
+	/**
+	 * Runs the tasks of {@link #runWhenWritable(Runnable)}, if this socket is
+	 * writable or closed. The caller holds {@link #writabilityLock}.
+	 */
+	private void runWritableTasks() {
+		Runnable task;
+		while ((writable || closed) && (task = writableTasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				logger.error("A task waiting for writability failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Passes {@link #writable} to the {@link SctpWritabilityCallback}, if it
+	 * changed since the last call. The caller holds {@link #writabilityLock}.
+	 */
+	private void publishWritability(int sendBufferAvailable) {
+		boolean writable = this.writable;
+		if (writable == publishedWritable) {
+			return;
+		}
+		publishedWritable = writable;
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("SctpSocket 0x" + Long.toHexString(ptr) + " is " + (writable ? "writable" : "unwritable")
+					+ ", " + sendBufferAvailable + " bytes free");
+		}
+		SctpWritabilityCallback callback = this.writabilityCallback;
+		if (callback != null) {
+			callback.onWritabilityChanged(getChannel(), writable, sendBufferAvailable);
+		}
+	}
+
+	/**
+	 * @return false, if a send failed, because the send buffer was full, and
+	 *         less than the send threshold is free since.
+	 */
+	public boolean isWritable() {
+		return writable;
+	}
+
+	/**
+	 * Returns the free space in the send buffer. A message, which is larger,
+	 * is rejected by usrsctp.
+	 *
+	 * @return the free space in bytes or -1 if there is no association yet or
+	 *         the native library is outdated (see
+	 *         {@link Sctp#hasNativeExtensions()}).
+	 * @throws IOException
+	 *             if this <tt>SctpSocket</tt> is closed
+	 */
+	public int getSendBufferAvailable() throws IOException {
+		if (!Sctp.hasNativeExtensions()) {
+			return -1;
+		}
+		long ptr = lockPtr();
+		try {
+			return Sctp.usrsctp_send_buffer_free(ptr);
+		} finally {
+			unlockPtr();
+		}
+	}
+
+	/**
+	 * Sets the options of the association. The stream counts of SCTP_INITMSG
+	 * only take effect, if they are set before the handshake.
+	 * {@link SctpAssociationOptions#isInterleaving()} is ignored, it is set,
+	 * when the socket is created.
+	 *
+	 * @param options
+	 *            the {@link SctpAssociationOptions}
+	 * @return true if all options were set, false if one failed or the native
+	 *         library is outdated (see {@link Sctp#hasNativeExtensions()}).
+	 * @throws IOException
+	 *             if this <tt>SctpSocket</tt> is closed
+	 */
+	public boolean setAssociationOptions(SctpAssociationOptions options) throws IOException {
+		if (!Sctp.hasNativeExtensions()) {
+			return false;
+		}
+		long ptr = lockPtr();
+		try {
+			return Sctp.usrsctp_set_association_options(ptr, options.getSendBufferSize(),
+					options.getReceiveBufferSize(), options.getOutboundStreams(), options.getMaxInboundStreams(),
+					options.getRtoInitial(), options.getRtoMin(), options.getRtoMax(), options.getHeartbeatInterval(),
+					options.getPathMaxRetransmissions(), options.getStreamScheduler().getValue());
+		} finally {
+			unlockPtr();
+		}
+	}
+
+	/**
+	 * Reads the options of the association. Before the handshake, these are the
+	 * options of the socket and the stream counts are the requested ones.
+	 * Afterwards, the stream counts are the negotiated ones.
+	 *
+	 * @return the current {@link SctpAssociationOptions}
+	 * @throws IOException
+	 *             if this <tt>SctpSocket</tt> is closed or the options could
+	 *             not be read
+	 */
+	public SctpAssociationOptions getAssociationOptions() throws IOException {
+		checkNativeExtensions("Reading the association options");
+		int[] values = SctpAssociationOptions.defaults().toArray();
+		long ptr = lockPtr();
+		try {
+			if (!Sctp.usrsctp_get_association_options(ptr, values)) {
+				throw new IOException("Failed to read the association options");
+			}
+		} finally {
+			unlockPtr();
+		}
+		return SctpAssociationOptions.fromArray(values);
+	}
+
+	/**
+	 * Tells, whether usrsctp interleaves the messages of different streams
+	 * (I-DATA, RFC 8260). It must be requested, when the socket is created
+	 * (see {@link Sctp#createSocket(int, boolean)}), and is only used, if the
+	 * remote requests it too. Before the handshake, it tells, whether it was
+	 * requested.
+	 *
+	 * @return true, if I-DATA is used. An outdated native library does not
+	 *         support it (see {@link Sctp#hasNativeExtensions()}).
+	 * @throws IOException
+	 *             if this <tt>SctpSocket</tt> is closed
+	 */
+	public boolean isInterleaving() throws IOException {
+		if (!Sctp.hasNativeExtensions()) {
+			return false;
+		}
+		long ptr = lockPtr();
+		try {
+			return Sctp.usrsctp_is_interleaving(ptr);
+		} finally {
+			unlockPtr();
+		}
+	}
+
+	/**
+	 * Changes the stream scheduler of the association. Before the handshake,
+	 * it is the scheduler of the next association. Messages, which are already
+	 * queued, are scheduled by the new scheduler.
+	 *
+	 * @param scheduler
+	 *            the {@link SctpStreamScheduler}
+	 * @throws IOException
+	 *             if this <tt>SctpSocket</tt> is closed or usrsctp rejected the
+	 *             scheduler
+	 */
+	public void setStreamScheduler(SctpStreamScheduler scheduler) throws IOException {
+		checkNativeExtensions("The stream scheduler");
+		long ptr = lockPtr();
+		try {
+			if (!Sctp.usrsctp_set_stream_scheduler(ptr, scheduler.getValue())) {
+				throw new IOException("Failed to set the stream scheduler " + scheduler);
+			}
+		} finally {
+			unlockPtr();
+		}
+	}
+
+	/**
+	 * Sets the priority of an outbound stream for the
+	 * {@link SctpStreamScheduler#PRIORITY} scheduler. Streams with a lower
+	 * value are sent first. It can only be set, once the association is up.
+	 *
+	 * @param sid
+	 *            the outbound stream
+	 * @param priority
+	 *            the priority between 0 and 65535
+	 * @throws IOException
+	 *             if this <tt>SctpSocket</tt> is closed, the association is not
+	 *             up, the stream does not exist or the scheduler has no
+	 *             priorities
+	 */
+	public void setStreamPriority(int sid, int priority) throws IOException {
+		if (priority < 0 || priority > 0xFFFF) {
+			throw new IllegalArgumentException("priority must be between 0 and 65535: " + priority);
+		}
+		checkNativeExtensions("The stream priority");
+		long ptr = lockPtr();
+		try {
+			if (!Sctp.usrsctp_set_stream_priority(ptr, sid, priority)) {
+				throw new IOException("Failed to set the priority of stream " + sid);
+			}
+		} finally {
+			unlockPtr();
+		}
+	}
+
+	/**
+	 * @param sid
+	 *            the outbound stream
+	 * @return the priority of the stream
+	 * @throws IOException
+	 *             if this <tt>SctpSocket</tt> is closed, the association is not
+	 *             up, the stream does not exist or the scheduler has no
+	 *             priorities
+	 */
+	public int getStreamPriority(int sid) throws IOException {
+		checkNativeExtensions("The stream priority");
+		int priority;
+		long ptr = lockPtr();
+		try {
+			priority = Sctp.usrsctp_get_stream_priority(ptr, sid);
+		} finally {
+			unlockPtr();
+		}
+		if (priority < 0) {
+			throw new IOException("Failed to get the priority of stream " + sid);
+		}
+		return priority;
+	}
+
+	/**
+	 * @return the free space in the send buffer in bytes, at which an
+	 *         unwritable socket becomes writable again.
+	 */
+	public int getSendThreshold() {
+		return sendThreshold;
+	}
+
+	/**
+	 * Sets the free space in the send buffer, at which an unwritable socket
+	 * becomes writable again. A larger threshold wakes a producer less often, a
+	 * smaller one keeps less data queued. The threshold is raised to the size
+	 * of a failed send and capped at the size of the send buffer.
+	 *
+	 * @param sendThreshold
+	 *            the threshold in bytes
+	 */
+	public void setSendThreshold(int sendThreshold) {
+		if (sendThreshold <= 0) {
+			throw new IllegalArgumentException("sendThreshold must be positive: " + sendThreshold);
+		}
+		this.sendThreshold = sendThreshold;
+	}
+
+	/**
+	 * Sets the callback that will be fired when the writability of this socket
+	 * changes.
+	 *
+	 * @param callback
+	 *            the {@link SctpWritabilityCallback} or null
+	 */
+	public void setWritabilityCallbackNative(SctpWritabilityCallback callback) {
+		this.writabilityCallback = callback;
+	}
+
+	/**
+	 * Sets the callback that will be fired when new data is received.
+	 *
+	 * @param callback
+	 *            the callback that will be fired when new data is received.
+	 */
+	public void setDataCallbackNative(SctpDataCallback callback) {
+		this.dataCallback = callback;
+	}
+
+	/**
+	 * Sets the callback that will be fired when new data is received and
+	 * registers a direct buffer of {@link #DEFAULT_INBOUND_BUFFER_SIZE} bytes with
+	 * the native counterpart, so that messages are delivered without allocating
+	 * a new array. A larger buffer, which is already registered, is kept.
+	 *
+	 * @param callback
+	 *            the callback that will be fired when new data is received or
+	 *            null to go back to {@link SctpDataCallback}.
+	 */
+	public void setBufferDataCallbackNative(SctpBufferDataCallback callback) {
+		setBufferDataCallbackNative(callback, DEFAULT_INBOUND_BUFFER_SIZE, true);
+	}
+
+	/**
+	 * Sets the callback that will be fired when new data is received and
+	 * registers a direct buffer with the native counterpart, so that messages up
+	 * to bufferSize bytes are delivered without allocating a new array.
+	 *
+	 * @param callback
+	 *            the callback that will be fired when new data is received or
+	 *            null to go back to {@link SctpDataCallback}.
+	 * @param bufferSize
+	 *            the capacity of the direct buffer
+	 */
+	public void setBufferDataCallbackNative(SctpBufferDataCallback callback, int bufferSize) {
+		setBufferDataCallbackNative(callback, bufferSize, false);
+	}
+
+	private void setBufferDataCallbackNative(SctpBufferDataCallback callback, int bufferSize, boolean keepLarger) {
+		long ptr;
+		try {
+			ptr = lockPtr();
+		} catch (IOException e) {
+			logger.error("Could not set SctpBufferDataCallback, because the SctpSocket is closed", e);
+			return;
+		}
+
+		try {
+			if (callback != null) {
+				registerInBuffer(ptr, keepLarger ? atLeast(bufferSize) : bufferSize);
+			} else if (partialDeliveryCallback == null) {
+				unregisterInBuffer(ptr);
+			}
+			this.bufferDataCallback = callback;
+		} finally {
+			unlockPtr();
+		}
+	}
+
+	/**
+	 * Sets the callback that will be fired for each piece of a received message
+	 * and registers a direct buffer of at least
+	 * {@link #DEFAULT_PARTIAL_DELIVERY_BUFFER_SIZE} bytes with the native
+	 * counterpart, so that pieces are delivered without allocating a new array.
+	 * A large enough buffer, which is already registered, is kept.
+	 * See {@link SctpPartialDeliveryCallback}.
+	 *
+	 * @param callback
+	 *            the callback that will be fired for each piece or null to go
+	 *            back to {@link SctpBufferDataCallback} or
+	 *            {@link SctpDataCallback}.
+	 */
+	public void setPartialDeliveryCallbackNative(SctpPartialDeliveryCallback callback) {
+		long ptr;
+		try {
+			ptr = lockPtr();
+		} catch (IOException e) {
+			logger.error("Could not set SctpPartialDeliveryCallback, because the SctpSocket is closed", e);
+			return;
+		}
+
+		try {
+			if (callback != null) {
+				registerInBuffer(ptr, atLeast(DEFAULT_PARTIAL_DELIVERY_BUFFER_SIZE));
+			} else if (bufferDataCallback == null) {
+				unregisterInBuffer(ptr);
+			}
+			this.partialDeliveryCallback = callback;
+		} finally {
+			unlockPtr();
+		}
+	}
+
+	/**
+	 * @return bufferSize or the capacity of {@link #inBuffer}, if it is larger.
+	 *         The caller holds the ptr.
+	 */
+	private int atLeast(int bufferSize) {
+		return inBuffer == null ? bufferSize : Math.max(bufferSize, inBuffer.capacity());
+	}
+
+	/**
+	 * Registers {@link #inBuffer} with bufferSize bytes with the native
+	 * counterpart. The caller holds the ptr. A registered buffer of the same
+	 * size is kept. A message, which is delivered in the old buffer right now,
+	 * keeps it, the native counterpart switches to the new one afterwards.
+	 */
+	private void registerInBuffer(long ptr, int bufferSize) {
+		if (!Sctp.hasNativeExtensions() || (inBuffer != null && inBuffer.capacity() == bufferSize)) {
+			return;
+		}
+		inBuffer = ByteBuffer.allocateDirect(bufferSize);
+		if (!Sctp.usrsctp_set_inbound_buffer(ptr, this, inBuffer)) {
+			logger.warn("Could not register inBuffer, messages are delivered as arrays");
+			inBuffer = null;
+		}
+	}
+
+	/**
+	 * Unregisters {@link #inBuffer}. The caller holds the ptr.
+	 */
+	private void unregisterInBuffer(long ptr) {
+		if (inBuffer != null) {
+			Sctp.usrsctp_set_inbound_buffer(ptr, null, null);
+			this.inBuffer = null;
+		}
+	}
+
+	/**
+	 * Sets the link that will be used to send network packets.
+	 *
+	 * @param link
+	 *            <tt>NetworkLink</tt> that will be used by this instance to send
+	 *            network packets.
+	 */
+	public void setLink(NetworkLink link) {
+		this.link = link;
+		updateOutBuffer(link instanceof DirectNetworkLink);
+	}
+
+	/**
+	 * Registers (or unregisters) {@link #outBuffer} with the native counterpart.
+	 *
+	 * @param direct
+	 *            true if outbound packets should be written to
+	 *            {@link #outBuffer}.
+	 */
+	private void updateOutBuffer(boolean direct) {
+		if (!Sctp.hasNativeExtensions() || (!direct && outBuffer == null)) {
+			return;
+		}
+
+		long ptr;
+		try {
+			ptr = lockPtr();
+		} catch (IOException e) {
+			logger.debug("SctpSocket is closed, outBuffer is not updated");
+			return;
+		}
+
+		try {
+			if (direct) {
+				if (outBuffer == null) {
+					outBuffer = ByteBuffer.allocateDirect(NetworkLink.UDP_DEFAULT_BUFFER_SIZE);
+				}
+				if (!Sctp.usrsctp_set_outbound_buffer(ptr, this, outBuffer)) {
+					logger.warn("Could not register outBuffer, packets are sent as arrays");
+				}
+			} else {
+				Sctp.usrsctp_set_outbound_buffer(ptr, null, null);
+				outBuffer = null;
+			}
+		} finally {
+			unlockPtr();
+		}
+	}
+
+	/**
+	 * Sets the {@link SctpChannel}, which wraps this socket. Callbacks resolve
+	 * the channel via this reference instead of the {@link SctpMapper}.
+	 *
+	 * @param channel
+	 *            the wrapping {@link SctpChannel}
+	 */
+	public void setChannel(SctpChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * @return the {@link SctpChannel}, which wraps this socket, or null if no
+	 *         channel was set.
+	 */
+	public SctpChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Sets the listener that will be notified about SCTP event.
+	 *
+	 * @param l
+	 *            the {@link NotificationListener} to set.
+	 */
+	public void setNotificationListener(NotificationListener l) {
+		logger.debug("Changed NotificationListener for SctpSocket ptr:" + this.ptr);
+		this.notificationListener = l;
 	}
 
 	/**
@@ -673,7 +1762,8 @@ public class SctpSocket implements SctpAcceptable {
 	private void unlockPtr() {
 		long ptr;
 
-		synchronized (this) {
+		ptrLock.lock();
+		try {
 			int ptrLockCount = this.ptrLockCount - 1;
 
 			if (ptrLockCount < 0) {
@@ -690,6 +1780,8 @@ public class SctpSocket implements SctpAcceptable {
 					ptr = 0;
 				}
 			}
+		} finally {
+			ptrLock.unlock();
 		}
 		if (ptr != 0)
 			Sctp.closeSocket(ptr);
@@ -711,6 +1803,26 @@ public class SctpSocket implements SctpAcceptable {
 																								// retrieve the
 																								// corresponding
 																								// SctpChannelFacade
+
+		/**
+		 * Fired when usrsctp stack sends a notification, which fits into the
+		 * notification buffer of the socket. By default, the notification is
+		 * copied and passed to
+		 * {@link #onSctpNotification(SctpAcceptable, SctpNotification)}.
+		 * Override this method to handle notifications without allocating.
+		 * Both methods must react the same way, since notifications, which do
+		 * not fit into the buffer, are delivered as {@link SctpNotification}.
+		 *
+		 * @param socket
+		 *            the {@link SctpSocket} notification source.
+		 * @param notification
+		 *            a view of the notification, which is only valid until
+		 *            this method returns. Use
+		 *            {@link SctpNotificationView#copy()} to keep it.
+		 */
+		default void onSctpNotification(SctpAcceptable socket, SctpNotificationView notification) {
+			onSctpNotification(socket, notification.copy());
+		}
 	}
 
 	public int shutdownNative(final int how) throws IOException {
@@ -0,0 +1,50 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.origin;
+
+import net.sctp4nat.core.SctpChannelFacade;
+
+/**
+ * Callback used to listen for changes of the writability of a SCTP socket. A
+ * socket becomes unwritable, if a send fails, because its send buffer is full.
+ * It becomes writable again, once the peer has acknowledged enough data, so
+ * that the send threshold of the socket is free again. Since usrsctp also
+ * limits the number of queued chunks, a send may still fail afterwards. The
+ * socket then becomes unwritable again.
+ *
+ * <br>
+ * <br>
+ * The callback alternates between unwritable and writable. It is fired on the
+ * thread of usrsctp, which processed the acknowledgement, so it must not
+ * block. Sending from the callback is allowed.
+ *
+ * @author Jonas Wagner
+ */
+public interface SctpWritabilityCallback {
+	/**
+	 * Callback fired by <tt>SctpSocket</tt>, if its writability changed.
+	 * 
+	 * @param facade
+	 *            the {@link SctpChannelFacade} of the socket
+	 * @param writable
+	 *            true, if the send threshold is free again, false if a send
+	 *            failed, because the send buffer is full.
+	 * @param sendBufferAvailable
+	 *            the free space in the send buffer in bytes at the time of the
+	 *            change.
+	 */
+	void onWritabilityChanged(SctpChannelFacade facade, boolean writable, int sendBufferAvailable);
+}
@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.jdeferred.Deferred;
@@ -13,8 +12,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.sctp4nat.core.SctpChannelFacade;
-import net.sctp4nat.core.SctpTimeoutThread;
 import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpUtils;
 
 public abstract class AbstractSampleHoleP {
 
@@ -31,14 +30,13 @@ public abstract class AbstractSampleHoleP {
 
 	protected static final SctpDataCallback cb = new SctpDataCallback() {
 
-		CountDownLatch countDown = new CountDownLatch(1);
 		Deferred<SctpChannelFacade, Exception, Void> d = new DeferredObject<>();
 
 		@Override
 		public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
 				SctpChannelFacade facade) {
 			if (connected == false) {
-				new SctpTimeoutThread(d, 2, TimeUnit.MINUTES, countDown).start();
+				SctpUtils.getExecutors().timeout(d, 2, TimeUnit.MINUTES, "Hole punching test timed out!");
 			}
 
 //			if (messageCap > 0 && d.isPending()) {
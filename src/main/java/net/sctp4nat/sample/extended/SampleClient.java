@@ -67,7 +67,7 @@ public class SampleClient {
 			
 			@Override
 			public void onDone(SctpChannelFacade result) {
-				SctpUtils.getThreadPoolExecutor().execute(new Runnable() {
+				SctpUtils.getExecutors().getControlExecutor().execute(new Runnable() {
 					
 					@Override
 					public void run() {
@@ -61,23 +61,27 @@ public class SampleHolePClient extends AbstractSampleHoleP {
 					@Override
 					public void onSctpNotification(SctpAcceptable socket, SctpNotification notification) {
 						LOG.debug(notification.toString());
-						if (notification.toString().indexOf(SctpNotification.COMM_UP_STR) >= 0) {
+						switch (notification.getEvent()) {
+						case COMM_UP:
 							LOG.warn("This should not be called anymore!");
-						} else if (notification.toString().indexOf(SctpNotification.SHUTDOWN_COMP_STR) >= 0) {
+							break;
+						case SHUTDOWN_COMP:
 							LOG.debug("Shutdown request received. Now shutting down the SCTP connection...");
 							result.close();
 							System.exit(0);
-						} else if (notification.toString().indexOf(SctpNotification.ADDR_UNREACHABLE_STR) >= 0) {
+							break;
+						case ADDR_UNREACHABLE:
 							LOG.error("Heartbeat missing! Now shutting down the SCTP connection...");
 							result.close();
 							System.exit(0);
-						} else if (notification.toString().indexOf(SctpNotification.COMM_LOST_STR) >= 0) {
+							break;
+						case COMM_LOST:
 							LOG.error("Communication aborted! Now shutting down the udp connection...");
 							result.close();
 							System.exit(0);
-						} else if (notification.toString().indexOf(SctpNotification.SHUTDOWN_EVENT_STR) > 0) {
-							result.close();
-							System.exit(0);
+							break;
+						default:
+							break;
 						}
 					}
 				});
@@ -134,7 +134,7 @@ public class UpgradeableUdpSocketSample extends DatagramSocket {
 	private Promise<NetworkLink, Exception, Object> initUpgrade(SocketAddress local) {
 		Deferred<NetworkLink, Exception, Object> d = new DeferredObject<>();
 
-		SctpUtils.getThreadPoolExecutor().execute(new Runnable() {
+		SctpUtils.getExecutors().getControlExecutor().execute(new Runnable() {
 
 			@Override
 			public void run() {
@@ -165,7 +165,7 @@ public class UpgradeableUdpSocketSample extends DatagramSocket {
 		// TODO check if defereed is not used 
 		// TODO jwa implement config
 
-		SctpUtils.getThreadPoolExecutor().execute(new Runnable() {
+		SctpUtils.getExecutors().getControlExecutor().execute(new Runnable() {
 			
 			@Override
 			public void run() {
@@ -0,0 +1,103 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import lombok.Getter;
+
+/**
+ * This class holds a bounded number of reusable direct {@link ByteBuffer}s of
+ * equal size. Since the pool is backed by an {@link ArrayBlockingQueue},
+ * neither acquire() nor release() allocate anything once the pool is warmed
+ * up.
+ *
+ * <br>
+ * <br>
+ * If the pool is empty, acquire() allocates a new buffer. If the pool is full,
+ * release() drops the buffer and leaves it to the garbage collector.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class DirectBufferPool {
+
+	/**
+	 * The capacity of each buffer in bytes.
+	 */
+	@Getter
+	private final int bufferSize;
+
+	/**
+	 * The idle buffers.
+	 */
+	private final ArrayBlockingQueue<ByteBuffer> buffers;
+
+	/**
+	 * Creates a new {@link DirectBufferPool} and allocates all its buffers
+	 * upfront.
+	 *
+	 * @param bufferSize
+	 *            the capacity of each buffer in bytes.
+	 * @param poolSize
+	 *            the maximal number of idle buffers kept by this pool.
+	 */
+	public DirectBufferPool(final int bufferSize, final int poolSize) {
+		if (bufferSize <= 0 || poolSize <= 0) {
+			throw new IllegalArgumentException("bufferSize and poolSize must be positive!");
+		}
+
+		this.bufferSize = bufferSize;
+		this.buffers = new ArrayBlockingQueue<>(poolSize);
+		for (int i = 0; i < poolSize; i++) {
+			buffers.offer(ByteBuffer.allocateDirect(bufferSize));
+		}
+	}
+
+	/**
+	 * @return a cleared direct {@link ByteBuffer} with a capacity of
+	 *         bufferSize.
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to this pool. Buffers, which were not acquired from a
+	 * {@link DirectBufferPool} with the same bufferSize, are ignored.
+	 *
+	 * @param buffer
+	 *            the {@link ByteBuffer} to return.
+	 */
+	public void release(final ByteBuffer buffer) {
+		if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+			buffers.offer(buffer);
+		}
+	}
+
+	/**
+	 * @return the number of idle buffers.
+	 */
+	public int available() {
+		return buffers.size();
+	}
+}
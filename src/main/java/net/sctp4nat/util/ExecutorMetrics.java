@@ -0,0 +1,89 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import lombok.Getter;
+
+/**
+ * This class is a snapshot of the state of one executor of
+ * {@link SctpExecutors}.
+ *
+ * @author Jonas Wagner
+ *
+ */
+@Getter
+public class ExecutorMetrics {
+
+	/**
+	 * The name of the executor (io, control or send).
+	 */
+	private final String name;
+
+	/**
+	 * The current number of threads.
+	 */
+	private final int poolSize;
+
+	/**
+	 * The number of threads, which are running a task.
+	 */
+	private final int activeThreads;
+
+	/**
+	 * The maximal number of threads.
+	 */
+	private final int maxThreads;
+
+	/**
+	 * The number of queued tasks.
+	 */
+	private final int queueSize;
+
+	/**
+	 * The number of tasks, which can still be queued.
+	 */
+	private final int queueRemainingCapacity;
+
+	/**
+	 * The approximate number of completed tasks.
+	 */
+	private final long completedTasks;
+
+	/**
+	 * The number of tasks, which hit the rejection policy.
+	 */
+	private final long rejectedTasks;
+
+	ExecutorMetrics(final String name, final ThreadPoolExecutor executor, final long rejectedTasks) {
+		this.name = name;
+		this.poolSize = executor.getPoolSize();
+		this.activeThreads = executor.getActiveCount();
+		this.maxThreads = executor.getMaximumPoolSize();
+		this.queueSize = executor.getQueue().size();
+		this.queueRemainingCapacity = executor.getQueue().remainingCapacity();
+		this.completedTasks = executor.getCompletedTaskCount();
+		this.rejectedTasks = rejectedTasks;
+	}
+
+	@Override
+	public String toString() {
+		return "ExecutorMetrics(" + name + ", threads: " + activeThreads + "/" + poolSize + "/" + maxThreads
+				+ ", queued: " + queueSize + ", remaining capacity: " + queueRemainingCapacity + ", completed: "
+				+ completedTasks + ", rejected: " + rejectedTasks + ")";
+	}
+}
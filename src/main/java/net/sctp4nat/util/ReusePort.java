@@ -0,0 +1,226 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class opens several {@link DatagramChannel}s or {@link DatagramSocket}s
+ * on the same local port by using the SO_REUSEPORT socket option. The kernel
+ * then distributes incoming datagrams among them by hashing the remote address,
+ * which keeps every remote endpoint on the same channel or socket (shard).
+ *
+ * <br>
+ * <br>
+ * SO_REUSEPORT is only available since Java 9 and not on every platform.
+ * Therefore, the option (and DatagramSocket.setOption()) is looked up at
+ * runtime and open() falls back to a single channel or socket, if it is not
+ * supported.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class ReusePort {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ReusePort.class);
+
+	/**
+	 * StandardSocketOptions.SO_REUSEPORT or null, if the running JVM does not
+	 * know it.
+	 */
+	private static final SocketOption<Boolean> SO_REUSEPORT = lookupOption();
+
+	/**
+	 * DatagramSocket.setOption(SocketOption, Object) or null, if the running JVM
+	 * does not know it.
+	 */
+	private static final Method SOCKET_SET_OPTION = lookupSetOption();
+
+	private ReusePort() {
+		// static helper
+	}
+
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> lookupOption() {
+		try {
+			return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+		} catch (NoSuchFieldException | IllegalAccessException | ClassCastException e) {
+			return null;
+		}
+	}
+
+	private static Method lookupSetOption() {
+		try {
+			return DatagramSocket.class.getMethod("setOption", SocketOption.class, Object.class);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the running JVM and platform support SO_REUSEPORT for
+	 *         {@link DatagramChannel}s.
+	 */
+	public static boolean isSupported() {
+		if (SO_REUSEPORT == null) {
+			return false;
+		}
+
+		try (DatagramChannel channel = DatagramChannel.open()) {
+			return channel.supportedOptions().contains(SO_REUSEPORT);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Opens and binds the given number of {@link DatagramChannel}s on the same
+	 * local address. If shards is 1 or SO_REUSEPORT is not supported, exactly one
+	 * channel is opened and SO_REUSEPORT is not set.
+	 *
+	 * @param local
+	 *            the local {@link InetSocketAddress} to bind to.
+	 * @param shards
+	 *            the desired number of channels.
+	 * @return the bound channels in blocking mode.
+	 * @throws IOException
+	 *             Thrown, if a channel could not be opened or bound.
+	 */
+	public static DatagramChannel[] open(final InetSocketAddress local, int shards) throws IOException {
+		if (shards < 1) {
+			throw new IllegalArgumentException("shards must be positive!");
+		}
+
+		boolean reusePort = shards > 1;
+		if (reusePort && !isSupported()) {
+			LOG.warn("SO_REUSEPORT is not supported by this JVM or platform, falling back to a single receive socket");
+			shards = 1;
+			reusePort = false;
+		}
+
+		DatagramChannel[] channels = new DatagramChannel[shards];
+		try {
+			for (int i = 0; i < shards; i++) {
+				channels[i] = DatagramChannel.open();
+				if (reusePort) {
+					channels[i].setOption(SO_REUSEPORT, true);
+				}
+				channels[i].bind(local);
+			}
+		} catch (IOException e) {
+			for (DatagramChannel channel : channels) {
+				if (channel != null) {
+					channel.close();
+				}
+			}
+			throw e;
+		}
+		return channels;
+	}
+
+	/**
+	 * @return true if the running JVM and platform support SO_REUSEPORT for
+	 *         {@link DatagramSocket}s.
+	 */
+	public static boolean isSupportedBySocket() {
+		if (SO_REUSEPORT == null || SOCKET_SET_OPTION == null) {
+			return false;
+		}
+
+		try (DatagramSocket socket = new DatagramSocket(null)) {
+			SOCKET_SET_OPTION.invoke(socket, SO_REUSEPORT, true);
+			return true;
+		} catch (SocketException | IllegalAccessException | InvocationTargetException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Same as open(), but for {@link DatagramSocket}s. Unlike the socket view of
+	 * a {@link DatagramChannel}, a {@link DatagramSocket} can send, while another
+	 * thread is blocked in receive().
+	 *
+	 * @param local
+	 *            the local {@link InetSocketAddress} to bind to.
+	 * @param shards
+	 *            the desired number of sockets.
+	 * @return the bound sockets.
+	 * @throws SocketException
+	 *             Thrown, if a socket could not be created or bound.
+	 */
+	public static DatagramSocket[] openSockets(final InetSocketAddress local, int shards) throws SocketException {
+		if (shards < 1) {
+			throw new IllegalArgumentException("shards must be positive!");
+		}
+
+		boolean reusePort = shards > 1;
+		if (reusePort && !isSupportedBySocket()) {
+			LOG.warn("SO_REUSEPORT is not supported by this JVM or platform, falling back to a single receive socket");
+			shards = 1;
+			reusePort = false;
+		}
+
+		DatagramSocket[] sockets = new DatagramSocket[shards];
+		try {
+			for (int i = 0; i < shards; i++) {
+				sockets[i] = new DatagramSocket(null);
+				if (reusePort) {
+					SOCKET_SET_OPTION.invoke(sockets[i], SO_REUSEPORT, true);
+				}
+				sockets[i].bind(local);
+			}
+		} catch (SocketException | IllegalAccessException | InvocationTargetException e) {
+			for (DatagramSocket socket : sockets) {
+				if (socket != null) {
+					socket.close();
+				}
+			}
+			if (e instanceof SocketException) {
+				throw (SocketException) e;
+			}
+			throw new SocketException("Could not set SO_REUSEPORT: " + e.getMessage());
+		}
+		return sockets;
+	}
+
+	/**
+	 * Selects the shard, which is used to send packets to the given remote
+	 * endpoint.
+	 *
+	 * @param remote
+	 *            the remote {@link InetSocketAddress}.
+	 * @param shards
+	 *            the number of shards.
+	 * @return an index between 0 and shards - 1.
+	 */
+	public static int shardOf(final InetSocketAddress remote, final int shards) {
+		if (shards == 1 || remote == null) {
+			return 0;
+		}
+		return (remote.hashCode() & Integer.MAX_VALUE) % shards;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * This class holds the socket options of a single association. They are set
+ * on the native socket before the handshake, so that the INIT already
+ * announces the stream counts. A value of 0 keeps the default of usrsctp. Use
+ * the generated builder to create an instance:
+ *
+ * <pre>
+ * SctpAssociationOptions options = SctpAssociationOptions.builder().outboundStreams(32).rtoMin(200).build();
+ * SctpConnection.builder().local(local).remote(remote).associationOptions(options).build();
+ * </pre>
+ *
+ * For the server side, pass the options with
+ * {@link SctpInitOptions#getAssociationOptions()}. Accepted associations
+ * inherit them.
+ *
+ * @author Jonas Wagner
+ *
+ */
+@Getter
+@Builder
+@ToString
+public class SctpAssociationOptions {
+
+	/**
+	 * The size of the send buffer in bytes (SO_SNDBUF).
+	 */
+	@Builder.Default
+	private final int sendBufferSize = 0;
+
+	/**
+	 * The size of the receive buffer in bytes (SO_RCVBUF).
+	 */
+	@Builder.Default
+	private final int receiveBufferSize = 0;
+
+	/**
+	 * The number of outbound streams requested in the INIT (SCTP_INITMSG). The
+	 * association uses the minimum of this value and the inbound streams of the
+	 * remote. The usrsctp default is 10.
+	 */
+	@Builder.Default
+	private final int outboundStreams = 0;
+
+	/**
+	 * The maximal number of inbound streams accepted from the remote
+	 * (SCTP_INITMSG).
+	 */
+	@Builder.Default
+	private final int maxInboundStreams = 0;
+
+	/**
+	 * The initial retransmission timeout in milliseconds (SCTP_RTOINFO).
+	 */
+	@Builder.Default
+	private final int rtoInitial = 0;
+
+	/**
+	 * The minimal retransmission timeout in milliseconds (SCTP_RTOINFO).
+	 */
+	@Builder.Default
+	private final int rtoMin = 0;
+
+	/**
+	 * The maximal retransmission timeout in milliseconds (SCTP_RTOINFO).
+	 * usrsctp rejects the RTO values, unless min &lt;= initial &lt;= max holds
+	 * together with the values, which are kept.
+	 */
+	@Builder.Default
+	private final int rtoMax = 0;
+
+	/**
+	 * The heartbeat interval in milliseconds (SCTP_PEER_ADDR_PARAMS). A
+	 * missing heartbeat ack is reported as ADDR_UNREACHABLE, which closes the
+	 * channel.
+	 */
+	@Builder.Default
+	private final int heartbeatInterval = 0;
+
+	/**
+	 * The number of retransmissions, after which the remote address is
+	 * considered unreachable (SCTP_PEER_ADDR_PARAMS).
+	 */
+	@Builder.Default
+	private final int pathMaxRetransmissions = 0;
+
+	/**
+	 * The stream scheduler of the association (SCTP_PLUGGABLE_SS). It decides,
+	 * which stream is sent next, e.g. {@link SctpStreamScheduler#PRIORITY}
+	 * keeps a bulk transfer on one stream from delaying the messages on
+	 * another. {@link SctpStreamScheduler#DEFAULT} keeps the default of
+	 * usrsctp.
+	 */
+	@Builder.Default
+	private final SctpStreamScheduler streamScheduler = SctpStreamScheduler.DEFAULT;
+
+	/**
+	 * Announces I-DATA (RFC 8260) in the handshake. If the remote announces it
+	 * too, usrsctp interleaves the fragments of messages on different streams,
+	 * so a large message no longer delays the small messages on the other
+	 * streams. It is set, when the native socket is created (see
+	 * {@link net.sctp4nat.origin.Sctp#createSocket(int, boolean)}), and can not be
+	 * changed afterwards. Read back from an established association, it tells,
+	 * whether I-DATA was negotiated.
+	 */
+	@Builder.Default
+	private final boolean interleaving = false;
+
+	/**
+	 * @return the options, which keep all defaults of usrsctp.
+	 */
+	public static SctpAssociationOptions defaults() {
+		return SctpAssociationOptions.builder().build();
+	}
+
+	/**
+	 * @return the options in the order of the native counterpart.
+	 */
+	public int[] toArray() {
+		return new int[] { sendBufferSize, receiveBufferSize, outboundStreams, maxInboundStreams, rtoInitial, rtoMin,
+				rtoMax, heartbeatInterval, pathMaxRetransmissions, streamScheduler.getValue(), interleaving ? 1 : 0 };
+	}
+
+	/**
+	 * @param values
+	 *            the options in the order of {@link #toArray()}
+	 * @return the options
+	 */
+	public static SctpAssociationOptions fromArray(int[] values) {
+		return SctpAssociationOptions.builder().sendBufferSize(values[0]).receiveBufferSize(values[1])
+				.outboundStreams(values[2]).maxInboundStreams(values[3]).rtoInitial(values[4]).rtoMin(values[5])
+				.rtoMax(values[6]).heartbeatInterval(values[7]).pathMaxRetransmissions(values[8])
+				.streamScheduler(SctpStreamScheduler.fromValue(values[9])).interleaving(values[10] != 0).build();
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * This class holds the stack-wide sysctls of usrsctp, which
+ * {@link net.sctp4nat.origin.Sctp} sets right after usrsctp_init. They are the
+ * defaults of every endpoint and association created afterwards, so the
+ * profile is part of {@link SctpInitOptions} and can not be changed while
+ * sockets exist. {@link SctpAssociationOptions} override some of them per
+ * association.
+ *
+ * <br>
+ * <br>
+ * There are three presets, which can be looked up with
+ * {@link #forName(String)}:
+ *
+ * <ul>
+ * <li><b>low-latency</b>: SACKs every packet and after at most 10 ms, starts
+ * with a congestion window of 10 MTUs and retransmits and detects dead paths
+ * early.</li>
+ * <li><b>bulk-throughput</b>: 4 MB send and receive buffers, a larger burst
+ * and chunk queue, so that the buffers can actually be filled with small
+ * messages.</li>
+ * <li><b>many-associations</b>: small buffers, a small hash table per socket
+ * and rare heartbeats, which keeps the memory and the timer load per
+ * association low.</li>
+ * </ul>
+ *
+ * A value of {@link #KEEP} keeps the default of usrsctp. Presets can be
+ * overridden with the generated builder:
+ *
+ * <pre>
+ * SctpEngineProfile profile = SctpEngineProfile.LOW_LATENCY.toBuilder().name("custom").heartbeatInterval(2000)
+ * 		.build();
+ * SctpUtils.init(localAddr, port, cb, SctpInitOptions.builder().engineProfile(profile).build());
+ * </pre>
+ *
+ * usrsctp runs its timers on a fixed tick, which is not configurable, so all
+ * times are effectively rounded to 10 ms.
+ *
+ * @author Jonas Wagner
+ *
+ */
+@Getter
+@Builder(toBuilder = true)
+@ToString
+public class SctpEngineProfile {
+
+	/**
+	 * Keeps the default of usrsctp.
+	 */
+	public static final int KEEP = -1;
+
+	/**
+	 * The defaults of usrsctp.
+	 */
+	public static final SctpEngineProfile DEFAULT = SctpEngineProfile.builder().name("default").build();
+
+	/**
+	 * Trades more SACKs and a more aggressive start for a lower latency.
+	 */
+	public static final SctpEngineProfile LOW_LATENCY = SctpEngineProfile.builder().name("low-latency")
+			.delayedSackTime(10).sackFrequency(1).initialCwnd(10).maxBurst(8).rtoInitial(500).rtoMin(100)
+			.rtoMax(5000).heartbeatInterval(5000).build();
+
+	/**
+	 * Trades memory for throughput.
+	 */
+	public static final SctpEngineProfile BULK_THROUGHPUT = SctpEngineProfile.builder().name("bulk-throughput")
+			.sendSpace(4 * 1024 * 1024).recvSpace(4 * 1024 * 1024).initialCwnd(10).maxBurst(16)
+			.maxChunksOnQueue(65536).build();
+
+	/**
+	 * Trades throughput per association for a low footprint per association.
+	 */
+	public static final SctpEngineProfile MANY_ASSOCIATIONS = SctpEngineProfile.builder().name("many-associations")
+			.sendSpace(128 * 1024).recvSpace(128 * 1024).pcbHashTableSize(4).heartbeatInterval(60000).build();
+
+	private static final SctpEngineProfile[] PRESETS = new SctpEngineProfile[] { DEFAULT, LOW_LATENCY,
+			BULK_THROUGHPUT, MANY_ASSOCIATIONS };
+
+	/**
+	 * The name of the profile, e.g. "low-latency".
+	 */
+	@Builder.Default
+	private final String name = "custom";
+
+	/**
+	 * The default send buffer of a socket in bytes (sctp_sendspace).
+	 */
+	@Builder.Default
+	private final int sendSpace = KEEP;
+
+	/**
+	 * The default receive buffer of a socket in bytes (sctp_recvspace).
+	 */
+	@Builder.Default
+	private final int recvSpace = KEEP;
+
+	/**
+	 * The time in ms, after which a received packet is SACKed at the latest
+	 * (sctp_delayed_sack_time_default). The usrsctp default is 200 ms.
+	 */
+	@Builder.Default
+	private final int delayedSackTime = KEEP;
+
+	/**
+	 * The number of packets, after which a SACK is sent
+	 * (sctp_sack_freq_default). The usrsctp default is 2.
+	 */
+	@Builder.Default
+	private final int sackFrequency = KEEP;
+
+	/**
+	 * The maximal number of packets sent at once (sctp_max_burst_default). 0
+	 * disables the limit. The usrsctp default is 4.
+	 */
+	@Builder.Default
+	private final int maxBurst = KEEP;
+
+	/**
+	 * The initial congestion window in MTUs (sctp_initial_cwnd). The usrsctp
+	 * default is 3.
+	 */
+	@Builder.Default
+	private final int initialCwnd = KEEP;
+
+	/**
+	 * The maximal number of chunks queued per association
+	 * (sctp_max_chunks_on_queue). A send fails, once the limit is reached,
+	 * even if the send buffer has space left. The usrsctp default is 512.
+	 */
+	@Builder.Default
+	private final int maxChunksOnQueue = KEEP;
+
+	/**
+	 * The heartbeat interval in ms (sctp_heartbeat_interval_default). The
+	 * usrsctp default is 30 s.
+	 */
+	@Builder.Default
+	private final int heartbeatInterval = KEEP;
+
+	/**
+	 * The number of retransmissions, after which a path is considered
+	 * unreachable (sctp_path_rtx_max_default). The usrsctp default is 5.
+	 */
+	@Builder.Default
+	private final int pathMaxRetransmissions = KEEP;
+
+	/**
+	 * The initial retransmission timeout in ms (sctp_rto_initial_default). The
+	 * usrsctp default is 3 s.
+	 */
+	@Builder.Default
+	private final int rtoInitial = KEEP;
+
+	/**
+	 * The minimal retransmission timeout in ms (sctp_rto_min_default). The
+	 * usrsctp default is 1 s.
+	 */
+	@Builder.Default
+	private final int rtoMin = KEEP;
+
+	/**
+	 * The maximal retransmission timeout in ms (sctp_rto_max_default). The
+	 * usrsctp default is 60 s.
+	 */
+	@Builder.Default
+	private final int rtoMax = KEEP;
+
+	/**
+	 * The number of buckets of the association hash table, which every socket
+	 * allocates (sctp_pcbtblsize). Since every socket of sctp4nat holds a
+	 * single association, a small table saves memory. The usrsctp default is
+	 * 256.
+	 */
+	@Builder.Default
+	private final int pcbHashTableSize = KEEP;
+
+	/**
+	 * @param name
+	 *            "default", "low-latency", "bulk-throughput" or
+	 *            "many-associations"
+	 * @return the preset with the given name
+	 * @throws IllegalArgumentException
+	 *             if there is no such preset
+	 */
+	public static SctpEngineProfile forName(String name) {
+		for (SctpEngineProfile preset : PRESETS) {
+			if (preset.getName().equals(name)) {
+				return preset;
+			}
+		}
+		throw new IllegalArgumentException("Unknown engine profile: " + name);
+	}
+
+	/**
+	 * Checks the values, since usrsctp does not check them. Negative values
+	 * other than {@link #KEEP} and RTOs, which violate min &lt;= initial &lt;=
+	 * max, are rejected.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a value is invalid
+	 */
+	public void validate() {
+		int[] values = toArray();
+		for (int value : values) {
+			if (value < KEEP) {
+				throw new IllegalArgumentException("Invalid engine profile: " + this);
+			}
+		}
+		if (pcbHashTableSize == 0 || !ordered(rtoMin, rtoInitial) || !ordered(rtoInitial, rtoMax)
+				|| !ordered(rtoMin, rtoMax)) {
+			throw new IllegalArgumentException("Invalid engine profile: " + this);
+		}
+	}
+
+	/**
+	 * @return the sysctls in the order of the native counterpart.
+	 */
+	public int[] toArray() {
+		return new int[] { sendSpace, recvSpace, delayedSackTime, sackFrequency, maxBurst, initialCwnd,
+				maxChunksOnQueue, heartbeatInterval, pathMaxRetransmissions, rtoInitial, rtoMin, rtoMax,
+				pcbHashTableSize };
+	}
+
+	/**
+	 * @param name
+	 *            the name of the profile
+	 * @param values
+	 *            the sysctls in the order of {@link #toArray()}
+	 * @return the profile
+	 */
+	public static SctpEngineProfile fromArray(String name, int[] values) {
+		return SctpEngineProfile.builder().name(name).sendSpace(values[0]).recvSpace(values[1])
+				.delayedSackTime(values[2]).sackFrequency(values[3]).maxBurst(values[4]).initialCwnd(values[5])
+				.maxChunksOnQueue(values[6]).heartbeatInterval(values[7]).pathMaxRetransmissions(values[8])
+				.rtoInitial(values[9]).rtoMin(values[10]).rtoMax(values[11]).pcbHashTableSize(values[12]).build();
+	}
+
+	private static boolean ordered(int lower, int upper) {
+		return lower == KEEP || upper == KEEP || lower <= upper;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * This class holds the sizes of the executors created by
+ * {@link SctpExecutors}. Use the generated builder to create an instance:
+ *
+ * <pre>
+ * SctpUtils.configureExecutors(SctpExecutorOptions.builder().sendThreads(4).build());
+ * </pre>
+ *
+ * @author Jonas Wagner
+ *
+ */
+@Getter
+@Builder
+public class SctpExecutorOptions {
+
+	private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The maximal number of I/O threads. Every receive loop of a link occupies
+	 * one of them as long as the link is open.
+	 */
+	@Builder.Default
+	private final int ioThreads = CORES * 100;
+
+	/**
+	 * The number of threads, which run close and shutdown.
+	 * Control tasks never wait for each other, so a single thread does not
+	 * deadlock. The default runs more, because a close of many channels at
+	 * once (e.g. on shutdown) is slow on one thread. Blocking calls like {@link net.sctp4nat.core.SctpMapper#shutdown()} must
+	 * not run on these threads.
+	 */
+	@Builder.Default
+	private final int controlThreads = Math.max(4, CORES * 2);
+
+	/**
+	 * The capacity of the control queue. If it is full, the submitting thread
+	 * runs the control task itself.
+	 */
+	@Builder.Default
+	private final int controlQueueSize = 10000;
+
+	/**
+	 * The number of threads, which run the sends of all
+	 * {@link net.sctp4nat.core.SctpChannel}s.
+	 */
+	@Builder.Default
+	private final int sendThreads = CORES;
+
+	/**
+	 * The capacity of the send queue. Since every channel schedules at most one
+	 * task at a time, this bounds the number of channels waiting for a thread.
+	 */
+	@Builder.Default
+	private final int sendQueueSize = 10000;
+
+	/**
+	 * The maximal number of pending sends per channel. Further sends are
+	 * rejected.
+	 */
+	@Builder.Default
+	private final int sendMailboxSize = 10000;
+
+	/**
+	 * If true and the runtime supports them (Java 21+), the io executor runs
+	 * its tasks on virtual threads. Blocking receive loops then do not occupy a
+	 * platform thread each, so ioThreads can be raised to the number of
+	 * associations. On older runtimes, platform threads are used.
+	 */
+	@Builder.Default
+	private final boolean virtualThreads = false;
+
+	/**
+	 * @return the options, which are used if none are configured.
+	 */
+	public static SctpExecutorOptions defaults() {
+		return SctpExecutorOptions.builder().build();
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdeferred.AlwaysCallback;
+import org.jdeferred.Deferred;
+import org.jdeferred.Promise.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.Getter;
+import net.sctp4nat.connection.UdpEventLoopGroup;
+import net.sctp4nat.core.SctpChannel;
+
+/**
+ * This class holds the execution tiers of sctp4nat, so that a burst in
+ * one tier can not starve the others:
+ *
+ * <ul>
+ * <li><b>io</b>: the receive loops of the links and the
+ * {@link UdpEventLoopGroup}. Each loop occupies a thread while its link is
+ * open, so there is no queue. If all threads are busy, new loops are
+ * rejected.</li>
+ * <li><b>control</b>: close and shutdown. If the queue is
+ * full, the submitting thread runs the task itself, so no control task is
+ * lost.</li>
+ * <li><b>send</b>: the sends of all {@link SctpChannel}s. If the queue is
+ * full, the send is rejected and its promise fails.</li>
+ * <li><b>timer</b>: a single thread, which fires the timeouts of
+ * {@link #timeout(Deferred, long, TimeUnit, String)} itself, even if the
+ * control threads are busy. Timeouts are cancelled
+ * as soon as their promise is resolved or rejected, so a pending connect does
+ * not occupy any thread.</li>
+ * </ul>
+ *
+ * If {@link SctpExecutorOptions#isVirtualThreads()} is set and the runtime
+ * supports it, the io executor runs on virtual threads (see
+ * {@link VirtualThreads}). A receive loop then only occupies a carrier thread
+ * while it processes a packet. Control and send tasks call into usrsctp, which
+ * pins the carrier thread for the whole native call (e.g. usrsctp_close), so
+ * they stay on platform threads.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class SctpExecutors {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpExecutors.class);
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	@Getter
+	private final ThreadPoolExecutor ioExecutor;
+
+	@Getter
+	private final ThreadPoolExecutor controlExecutor;
+
+	@Getter
+	private final ThreadPoolExecutor sendExecutor;
+
+	@Getter
+	private final ScheduledThreadPoolExecutor timer;
+
+	/**
+	 * The maximal number of pending sends per {@link SctpChannel}.
+	 */
+	@Getter
+	private final int sendMailboxSize;
+
+	/**
+	 * True, if the io executor runs on virtual threads.
+	 */
+	@Getter
+	private final boolean virtualThreads;
+
+	private final AtomicLong ioRejected = new AtomicLong();
+	private final AtomicLong controlRejected = new AtomicLong();
+	private final AtomicLong sendRejected = new AtomicLong();
+
+	/**
+	 * Creates the executors.
+	 *
+	 * @param options
+	 *            the {@link SctpExecutorOptions}
+	 */
+	public SctpExecutors(final SctpExecutorOptions options) {
+		this.virtualThreads = options.isVirtualThreads() && VirtualThreads.isSupported();
+		if (options.isVirtualThreads() && !virtualThreads) {
+			LOG.warn("Virtual threads are not supported by this runtime, platform threads are used instead");
+		}
+
+		this.ioExecutor = create("io", 0, options.getIoThreads(), new SynchronousQueue<Runnable>(),
+				new CountingPolicy(ioRejected, new ThreadPoolExecutor.AbortPolicy()), virtualThreads);
+		this.controlExecutor = create("control", options.getControlThreads(), options.getControlThreads(),
+				new ArrayBlockingQueue<Runnable>(options.getControlQueueSize()),
+				new CountingPolicy(controlRejected, new ThreadPoolExecutor.CallerRunsPolicy()), false);
+		this.sendExecutor = create("send", options.getSendThreads(), options.getSendThreads(),
+				new ArrayBlockingQueue<Runnable>(options.getSendQueueSize()),
+				new CountingPolicy(sendRejected, new ThreadPoolExecutor.AbortPolicy()), false);
+		this.sendMailboxSize = options.getSendMailboxSize();
+
+		this.timer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("sctp4nat-timer"));
+		// a cancelled timeout must not stay in the queue until its delay expires
+		this.timer.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Rejects d with a {@link TimeoutException}, if it is still pending after
+	 * timeout. The timeout is cancelled, once d is resolved or rejected. The
+	 * rejection runs on the timer thread, so that it fires even if the control
+	 * executor is busy. Therefore, the fail callbacks of d must not block, they
+	 * would delay all other timeouts.
+	 *
+	 * @param d
+	 *            the {@link Deferred}, which must finish in time.
+	 * @param timeout
+	 *            the timeout
+	 * @param unit
+	 *            the {@link TimeUnit} of timeout
+	 * @param message
+	 *            the message of the {@link TimeoutException}
+	 * @return the {@link ScheduledFuture} of the timeout
+	 */
+	public <D, P> ScheduledFuture<?> timeout(final Deferred<D, Exception, P> d, final long timeout,
+			final TimeUnit unit, final String message) {
+		final ScheduledFuture<?> future = timer.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				// resolve() and reject() lock d, so nobody can finish it in between
+				synchronized (d) {
+					if (!d.isPending()) {
+						return;
+					}
+					LOG.error(message);
+					d.reject(new TimeoutException(message));
+				}
+			}
+		}, timeout, unit);
+
+		d.promise().always(new AlwaysCallback<D, Exception>() {
+
+			@Override
+			public void onAlways(State state, D resolved, Exception rejected) {
+				future.cancel(false);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * @return a new {@link SerialExecutor} on the send executor, which is
+	 *         bounded to {@link #getSendMailboxSize()} pending tasks.
+	 */
+	public SerialExecutor newSendMailbox() {
+		return new SerialExecutor(sendExecutor, sendMailboxSize);
+	}
+
+	/**
+	 * @return a snapshot of the io, control, send and timer executors (in this
+	 *         order).
+	 */
+	public List<ExecutorMetrics> getMetrics() {
+		return Arrays.asList(new ExecutorMetrics("io", ioExecutor, ioRejected.get()),
+				new ExecutorMetrics("control", controlExecutor, controlRejected.get()),
+				new ExecutorMetrics("send", sendExecutor, sendRejected.get()),
+				new ExecutorMetrics("timer", timer, 0));
+	}
+
+	/**
+	 * Stops accepting new tasks. Already submitted tasks are still run.
+	 */
+	public void shutdown() {
+		ioExecutor.shutdown();
+		controlExecutor.shutdown();
+		sendExecutor.shutdown();
+		timer.shutdown();
+	}
+
+	private static ThreadPoolExecutor create(final String name, final int coreThreads, final int maxThreads,
+			final BlockingQueue<Runnable> queue, final RejectedExecutionHandler policy, final boolean virtual) {
+		ThreadFactory factory = virtual ? VirtualThreads.newFactory("sctp4nat-" + name)
+				: new NamedThreadFactory("sctp4nat-" + name);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(coreThreads, maxThreads, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, queue, factory, policy);
+		if (coreThreads > 0) {
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	/**
+	 * Counts the rejected tasks, before it hands them to the actual policy.
+	 */
+	private static class CountingPolicy implements RejectedExecutionHandler {
+
+		private final AtomicLong counter;
+		private final RejectedExecutionHandler policy;
+
+		CountingPolicy(final AtomicLong counter, final RejectedExecutionHandler policy) {
+			this.counter = counter;
+			this.policy = policy;
+		}
+
+		@Override
+		public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+			counter.incrementAndGet();
+			policy.rejectedExecution(r, executor);
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(final String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			return new Thread(r, prefix + "-" + count.incrementAndGet());
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import lombok.Builder;
+import lombok.Getter;
+import net.sctp4nat.connection.NetworkLink;
+import net.sctp4nat.connection.NioUdpServerLink;
+import net.sctp4nat.connection.UdpServerLink;
+
+/**
+ * This class holds the options, which are used by
+ * {@link SctpUtils}.init(...) to set up sctp4nat. Use the generated builder
+ * to create an instance:
+ *
+ * <pre>
+ * SctpInitOptions options = SctpInitOptions.builder().nioLink(true).build();
+ * </pre>
+ *
+ * @author Jonas Wagner
+ *
+ */
+@Getter
+@Builder
+public class SctpInitOptions {
+
+	/**
+	 * The default number of pooled receive and send buffers of
+	 * {@link NioUdpServerLink}.
+	 */
+	public static final int DEFAULT_BUFFER_POOL_SIZE = 64;
+
+	/**
+	 * If true, the default server link is a {@link NioUdpServerLink} instead of
+	 * a {@link UdpServerLink}.
+	 */
+	@Builder.Default
+	private final boolean nioLink = false;
+
+	/**
+	 * The number of sockets, which the server link binds to the same port with
+	 * SO_REUSEPORT. Each socket has its own receive thread. Values above 1 fall
+	 * back to 1, if SO_REUSEPORT is not supported. See {@link ReusePort}.
+	 */
+	@Builder.Default
+	private final int receiveThreads = 1;
+
+	/**
+	 * The number of pooled direct buffers of {@link NioUdpServerLink}.
+	 */
+	@Builder.Default
+	private final int bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+
+	/**
+	 * The capacity of each pooled direct buffer in bytes.
+	 */
+	@Builder.Default
+	private final int bufferSize = NetworkLink.UDP_DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * The options of the associations accepted by the server link or null to
+	 * keep the defaults of usrsctp.
+	 */
+	@Builder.Default
+	private final SctpAssociationOptions associationOptions = null;
+
+	/**
+	 * The stack-wide sysctls of usrsctp or null to keep the defaults of
+	 * usrsctp. See {@link SctpEngineProfile} for the presets.
+	 */
+	@Builder.Default
+	private final SctpEngineProfile engineProfile = null;
+
+	/**
+	 * @return the options, which reflect the behaviour of init() without
+	 *         options.
+	 */
+	public static SctpInitOptions defaults() {
+		return SctpInitOptions.builder().build();
+	}
+}
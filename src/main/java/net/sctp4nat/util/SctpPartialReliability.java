@@ -0,0 +1,128 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * This class holds the partial reliability policy (PR-SCTP, RFC 3758) of a
+ * message. usrsctp retransmits a message until it is acknowledged, unless it
+ * is sent with a policy, which limits its lifetime or its retransmissions.
+ * Once the limit is exceeded, the message is abandoned and the receiver skips
+ * it, so the messages behind it are no longer held back. This suits data,
+ * which is stale anyway after a while, e.g. game state updates or sensor
+ * samples:
+ *
+ * <pre>
+ * channel.send(data, 0, data.length, false, 1, 0, SctpPartialReliability.timeToLive(100));
+ * </pre>
+ *
+ * Both endpoints must support PR-SCTP, which usrsctp does by default. An
+ * abandoned message is not reported to the sender.
+ *
+ * @author Jonas Wagner
+ *
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class SctpPartialReliability {
+
+	/**
+	 * The policies of usrsctp (SCTP_PR_SCTP_*).
+	 */
+	public enum Policy {
+		/**
+		 * The message is retransmitted until it is acknowledged.
+		 */
+		NONE(0),
+		/**
+		 * The message is abandoned, once it is older than the value in
+		 * milliseconds.
+		 */
+		TTL(1),
+		/**
+		 * The message is abandoned, once it was retransmitted value times.
+		 */
+		RTX(3);
+
+		private final int value;
+
+		private Policy(final int value) {
+			this.value = value;
+		}
+
+		/**
+		 * @return the value of the policy in usrsctp.
+		 */
+		public int getValue() {
+			return value;
+		}
+	}
+
+	/**
+	 * Fully reliable, the default of SCTP.
+	 */
+	public static final SctpPartialReliability NONE = new SctpPartialReliability(Policy.NONE, 0);
+
+	private final Policy policy;
+
+	/**
+	 * The lifetime in milliseconds for {@link Policy#TTL} or the number of
+	 * retransmissions for {@link Policy#RTX}.
+	 */
+	private final int value;
+
+	private SctpPartialReliability(final Policy policy, final int value) {
+		this.policy = policy;
+		this.value = value;
+	}
+
+	/**
+	 * @param millis
+	 *            the time in milliseconds, after which an unacknowledged
+	 *            message is abandoned. It starts, when the message is queued.
+	 * @return the time based policy (SCTP_PR_SCTP_TTL)
+	 */
+	public static SctpPartialReliability timeToLive(final int millis) {
+		if (millis <= 0) {
+			throw new IllegalArgumentException("The time to live must be positive: " + millis);
+		}
+		return new SctpPartialReliability(Policy.TTL, millis);
+	}
+
+	/**
+	 * @param retransmissions
+	 *            the number of retransmissions, after which an unacknowledged
+	 *            message is abandoned. With 0, a message is sent only once.
+	 * @return the retransmission based policy (SCTP_PR_SCTP_RTX)
+	 */
+	public static SctpPartialReliability maxRetransmissions(final int retransmissions) {
+		if (retransmissions < 0) {
+			throw new IllegalArgumentException("The retransmissions must not be negative: " + retransmissions);
+		}
+		return new SctpPartialReliability(Policy.RTX, retransmissions);
+	}
+
+	/**
+	 * @return true, if the message is retransmitted until it is acknowledged.
+	 */
+	public boolean isReliable() {
+		return policy == Policy.NONE;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+/**
+ * The stream schedulers of usrsctp (SCTP_PLUGGABLE_SS). The scheduler decides,
+ * which stream is sent next, if several streams of an association have queued
+ * data. It is chosen per association with
+ * {@link SctpAssociationOptions#getStreamScheduler()} and can be changed at
+ * runtime.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public enum SctpStreamScheduler {
+
+	/**
+	 * Serves the streams with queued data one message after another in the
+	 * order, in which they got data (SCTP_SS_DEFAULT).
+	 */
+	DEFAULT(0),
+
+	/**
+	 * Serves the streams one message after another in the ascending order of
+	 * their stream id (SCTP_SS_ROUND_ROBIN).
+	 */
+	ROUND_ROBIN(1),
+
+	/**
+	 * Like {@link #ROUND_ROBIN}, but serves only one stream per packet
+	 * (SCTP_SS_ROUND_ROBIN_PACKET).
+	 */
+	ROUND_ROBIN_PACKET(2),
+
+	/**
+	 * Always serves the stream with the lowest priority value, streams of the
+	 * same priority are served round robin (SCTP_SS_PRIORITY). All streams
+	 * start with priority 0, so the priority of the bulk streams has to be
+	 * raised.
+	 */
+	PRIORITY(3),
+
+	/**
+	 * Serves the stream, which has sent the fewest bytes, so streams with
+	 * small messages are not starved by streams with large ones
+	 * (SCTP_SS_FAIR_BANDWITH).
+	 */
+	FAIR_BANDWIDTH(4),
+
+	/**
+	 * Sends the messages in the order, in which they were queued, regardless
+	 * of their stream (SCTP_SS_FIRST_COME).
+	 */
+	FIRST_COME(5);
+
+	private final int value;
+
+	private SctpStreamScheduler(final int value) {
+		this.value = value;
+	}
+
+	/**
+	 * @return the value of the scheduler in usrsctp.
+	 */
+	public int getValue() {
+		return value;
+	}
+
+	/**
+	 * @param value
+	 *            the value of the scheduler in usrsctp
+	 * @return the {@link SctpStreamScheduler}
+	 * @throws IllegalArgumentException
+	 *             if value is not a known scheduler
+	 */
+	public static SctpStreamScheduler fromValue(final int value) {
+		for (SctpStreamScheduler scheduler : values()) {
+			if (scheduler.value == value) {
+				return scheduler;
+			}
+		}
+		throw new IllegalArgumentException("Unknown stream scheduler: " + value);
+	}
+}
@@ -17,14 +17,20 @@ package net.sctp4nat.util;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.jdeferred.AlwaysCallback;
 import org.jdeferred.Deferred;
 import org.jdeferred.Promise;
+import org.jdeferred.Promise.State;
 import org.jdeferred.impl.DeferredObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +38,12 @@ import org.slf4j.LoggerFactory;
 import lombok.Getter;
 import lombok.Setter;
 import net.sctp4nat.connection.NetworkLink;
+import net.sctp4nat.connection.NioUdpClientLink;
+import net.sctp4nat.connection.NioUdpServerLink;
 import net.sctp4nat.connection.SctpDefaultStreamConfig;
+import net.sctp4nat.connection.UdpEventLoop;
+import net.sctp4nat.connection.UdpEventLoopGroup;
+import net.sctp4nat.connection.UdpMultiplexLink;
 import net.sctp4nat.connection.UdpServerLink;
 import net.sctp4nat.core.SctpChannel;
 import net.sctp4nat.core.SctpMapper;
@@ -54,18 +65,22 @@ public class SctpUtils {
 	private static final Logger LOG = LoggerFactory.getLogger(SctpUtils.class);
 
 	/**
-	 * This constants defines the multiplier, with which the maximal number of
-	 * Threads is defined.
+	 * These are the io, control and send executors used by sctp4nat. See
+	 * {@link SctpExecutors}.
 	 */
-	private static final int THREADPOOL_MULTIPLIER = 100;
+	@Getter
+	private static volatile SctpExecutors executors = new SctpExecutors(SctpExecutorOptions.defaults());
 
 	/**
-	 * This is the {@link ExecutorService}, which defines the
-	 * {@link ThreadPoolExecutor}.
+	 * This is the default {@link UdpEventLoopGroup}, which services all
+	 * {@link NioUdpClientLink}s. It is created on first use.
 	 */
-	@Getter
-	private static final ExecutorService threadPoolExecutor = Executors
-			.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * THREADPOOL_MULTIPLIER);
+	private static UdpEventLoopGroup eventLoopGroup;
+
+	/**
+	 * The shared {@link UdpMultiplexLink}s, one per local address.
+	 */
+	private static final Map<InetSocketAddress, UdpMultiplexLink> multiplexLinks = new HashMap<>();
 
 	/**
 	 * This is the default {@link SctpMapper} instance used in the current session.
@@ -75,13 +90,14 @@ public class SctpUtils {
 	private static SctpMapper mapper = new SctpMapper();
 
 	/**
-	 * This is the default {@link UdpServerLink}, which is used by sctp4nat to be
-	 * able to receive sctp association requests. It is instanciated either by the
-	 * user or by calling init().
+	 * This is the default server link (e.g. {@link UdpServerLink} or
+	 * {@link NioUdpServerLink}), which is used by sctp4nat to be able to receive
+	 * sctp association requests. It is instanciated either by the user or by
+	 * calling init().
 	 */
 	@Getter
 	@Setter
-	private static UdpServerLink link;
+	private static NetworkLink link;
 
 	/**
 	 * These three constants define the shutdown policy.
@@ -111,11 +127,48 @@ public class SctpUtils {
 	 */
 	public static synchronized void init(final InetAddress localAddr, final int localSctpPort, SctpDataCallback cb)
 			throws SocketException, SctpInitException {
+		try {
+			init(localAddr, localSctpPort, cb, SctpInitOptions.defaults());
+		} catch (SocketException | SctpInitException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new SocketException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Same as init(localAddr, localSctpPort, cb), but the setup is configured by
+	 * the given {@link SctpInitOptions}. E.g. if nioLink is set, the default
+	 * server link is a {@link NioUdpServerLink} instead of a
+	 * {@link UdpServerLink}.
+	 * The engineProfile of the options sets the stack-wide sysctls of usrsctp
+	 * (see {@link SctpEngineProfile}).
+	 * 
+	 * @param localAddr
+	 *            the interface, the server link is listening on.
+	 * @param localSctpPort
+	 *            the assigned SCTP port for usrsctp.
+	 * @param cb
+	 *            {@link SctpDataCallback}
+	 * @param options
+	 *            {@link SctpInitOptions}, null means default options.
+	 * @throws IOException
+	 *             Thrown, if the server link could not be created
+	 * @throws SctpInitException
+	 *             Thrown, if init() or {@link Sctp}.getInstance().init() is called,
+	 *             while usrsctp is already initialized
+	 */
+	public static synchronized void init(final InetAddress localAddr, final int localSctpPort, SctpDataCallback cb,
+			SctpInitOptions options) throws IOException, SctpInitException {
+
+		if (options == null) {
+			options = SctpInitOptions.defaults();
+		}
 
 		if (Sctp.isInitialized()) {
 			throw new SctpInitException("Sctp is already initialized. You should not initialize it twice!");
 		} else {
-			Sctp.getInstance().init();
+			Sctp.getInstance().init(options.getEngineProfile());
 		}
 
 		if (cb == null) {
@@ -124,16 +177,107 @@ public class SctpUtils {
 
 		if (localAddr == null) {
 			throw new SctpInitException("ServerAddress was null! Can't init sctp without a valid InetSocketAddress!");
-		} else if (!checkFreePort(localSctpPort) || !checkRange(localSctpPort)) {
-			link = new UdpServerLink(mapper, localAddr, cb);
+		}
+
+		int port = localSctpPort;
+		if (!checkFreePort(localSctpPort) || !checkRange(localSctpPort)) {
+			port = SctpPorts.SCTP_TUNNELING_PORT;
+		}
+
+		if (options.isNioLink()) {
+			NioUdpServerLink serverLink = new NioUdpServerLink(mapper, localAddr, port, cb,
+					new DirectBufferPool(options.getBufferSize(), options.getBufferPoolSize()),
+					options.getReceiveThreads());
+			serverLink.setAssociationOptions(options.getAssociationOptions());
+			link = serverLink;
 		} else {
-			link = new UdpServerLink(mapper, localAddr, localSctpPort, cb);
+			UdpServerLink serverLink = new UdpServerLink(mapper, localAddr, port, cb, options.getReceiveThreads());
+			serverLink.setAssociationOptions(options.getAssociationOptions());
+			link = serverLink;
 		}
 
-		if (SctpMapper.isShutdown()) {
+		if (mapper.isShutdown()) {
 			LOG.warn("You are overwriting isShutdown in SctpMapper! This probably causes serious inconsistencies!");
 		}
-		SctpMapper.setShutdown(false);
+		mapper.setShutdown(false);
+	}
+
+	/**
+	 * Replaces the executors of sctp4nat. The previous executors stop accepting
+	 * new tasks, but already running loops and queued tasks are completed. Call
+	 * this method before init(...), while no links or channels are open.
+	 * 
+	 * @param options
+	 *            the {@link SctpExecutorOptions}
+	 */
+	public static synchronized void configureExecutors(final SctpExecutorOptions options) {
+		SctpExecutors previous = executors;
+		executors = new SctpExecutors(options);
+		previous.shutdown();
+	}
+
+	/**
+	 * @return the control executor. Use {@link #getExecutors()} to pick the
+	 *         executor matching the task.
+	 * @deprecated all tasks used to share this executor. It is replaced by the
+	 *             tiers of {@link SctpExecutors}.
+	 */
+	@Deprecated
+	public static ExecutorService getThreadPoolExecutor() {
+		return executors.getControlExecutor();
+	}
+
+	/**
+	 * Returns the default {@link UdpEventLoopGroup}. It is created on the first
+	 * call with one {@link UdpEventLoop} per available processor.
+	 * 
+	 * @return the default {@link UdpEventLoopGroup}
+	 * @throws IOException
+	 *             Thrown, if the {@link UdpEventLoopGroup} could not be created
+	 */
+	public static synchronized UdpEventLoopGroup getEventLoopGroup() throws IOException {
+		if (eventLoopGroup == null) {
+			eventLoopGroup = new UdpEventLoopGroup(Runtime.getRuntime().availableProcessors(),
+					executors.getIoExecutor());
+		}
+		return eventLoopGroup;
+	}
+
+	/**
+	 * Returns the shared {@link UdpMultiplexLink} bound to local. It is created
+	 * on the first call for this local address. Outgoing associations attached to
+	 * it share one local UDP port.
+	 * 
+	 * @param local
+	 *            the local {@link InetSocketAddress} (port 0 for an ephemeral
+	 *            port)
+	 * @return the {@link UdpMultiplexLink} for local
+	 * @throws IOException
+	 *             Thrown, if the {@link UdpMultiplexLink} could not be created
+	 */
+	public static synchronized UdpMultiplexLink getMultiplexLink(final InetSocketAddress local) throws IOException {
+		UdpMultiplexLink multiplexLink = multiplexLinks.get(local);
+		if (multiplexLink == null) {
+			multiplexLink = new UdpMultiplexLink(local);
+			multiplexLinks.put(local, multiplexLink);
+		}
+		return multiplexLink;
+	}
+
+	/**
+	 * Stops the default {@link UdpEventLoopGroup}, if it was created, and closes
+	 * the shared {@link UdpMultiplexLink}s serviced by it.
+	 */
+	private static synchronized void shutdownEventLoopGroup() {
+		for (UdpMultiplexLink multiplexLink : multiplexLinks.values()) {
+			multiplexLink.close();
+		}
+		multiplexLinks.clear();
+
+		if (eventLoopGroup != null) {
+			eventLoopGroup.shutdown();
+			eventLoopGroup = null;
+		}
 	}
 
 	/**
@@ -180,9 +324,9 @@ public class SctpUtils {
 	 */
 	public static Promise<Void, Exception, Void> shutdownAll(final NetworkLink customLink,
 			final SctpMapper customMapper) {
-		Deferred<Void, Exception, Void> d = new DeferredObject<>();
+		final Deferred<Void, Exception, Void> d = new DeferredObject<>();
 
-		threadPoolExecutor.execute(new Runnable() {
+		executors.getControlExecutor().execute(new Runnable() {
 
 			@Override
 			public void run() {
@@ -196,40 +340,67 @@ public class SctpUtils {
 					link.close();
 				}
 
+				// the channels close on the control executor, too, so this thread must not wait for them
+				List<Promise<Object, Exception, Object>> shutdowns = new ArrayList<>();
 				if (customMapper != null) {
-					try {
-						customMapper.shutdown();
-					} catch (InterruptedException | TimeoutException e) {
-						LOG.error(e.getMessage(), e);
-						d.reject(e);
-					}
+					shutdowns.add(customMapper.shutdownAsync());
 				}
+				shutdowns.add(mapper.shutdownAsync());
 
-				try {
-					mapper.shutdown();
-				} catch (InterruptedException | TimeoutException e1) {
-					LOG.error(e1.getMessage(), e1);
-					d.reject(e1);
+				final AtomicInteger remaining = new AtomicInteger(shutdowns.size());
+				final AtomicReference<Exception> failure = new AtomicReference<>();
+				for (Promise<Object, Exception, Object> p : shutdowns) {
+					p.always(new AlwaysCallback<Object, Exception>() {
+
+						@Override
+						public void onAlways(State state, Object resolved, Exception rejected) {
+							if (rejected != null) {
+								LOG.error(rejected.getMessage(), rejected);
+								failure.compareAndSet(null, rejected);
+							}
+							if (remaining.decrementAndGet() == 0) {
+								finishShutdown(d, failure.get());
+							}
+						}
+					});
 				}
+			}
+		});
+
+		return d.promise();
+	}
+
+	/**
+	 * Shuts down the rest, once the {@link SctpMapper}s are done. The last
+	 * mapper may finish on the timer thread, so this is handed back to the
+	 * control executor.
+	 */
+	private static void finishShutdown(final Deferred<Void, Exception, Void> d, final Exception failure) {
+		executors.getControlExecutor().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				shutdownEventLoopGroup();
 
 				SctpPorts.shutdown();
 
+				Exception e = failure;
 				try {
 					Sctp.getInstance().finish();
-				} catch (IOException e) {
-					d.reject(e);
+				} catch (IOException e1) {
+					if (e == null) {
+						e = e1;
+					}
 				}
 
-				if (d.isPending()) {
+				if (e == null) {
 					LOG.debug("sctp4j shutdownAll done");
 					d.resolve(null);
 				} else {
 					LOG.error("shutdown all done, but with errors");
+					d.reject(e);
 				}
-				
 			}
 		});
-
-		return d.promise();
 	}
 }
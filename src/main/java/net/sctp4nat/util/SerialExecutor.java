@@ -0,0 +1,197 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is a mailbox, which runs its tasks one after another in
+ * submission order on the threads of a shared {@link Executor}. Tasks are
+ * queued in a lock-free multi-producer {@link ConcurrentLinkedQueue}. At most
+ * one drain task per mailbox is scheduled on the delegate at a time, so
+ * several {@link SerialExecutor}s on the same delegate still run in parallel.
+ *
+ * <br>
+ * <br>
+ * A drain task runs at most {@link #MAX_BATCH} tasks before it reschedules
+ * itself, so that a busy mailbox can not occupy a pool thread forever. If a
+ * capacity is set, tasks beyond it are rejected with a
+ * {@link RejectedExecutionException}.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public class SerialExecutor implements Executor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SerialExecutor.class);
+
+	/**
+	 * Maximal number of tasks run by one drain task.
+	 */
+	public static final int MAX_BATCH = 64;
+
+	/**
+	 * The {@link Executor}, which runs the drain tasks.
+	 */
+	private final Executor delegate;
+
+	/**
+	 * The pending tasks.
+	 */
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The number of pending tasks.
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+
+	/**
+	 * The maximal number of pending tasks.
+	 */
+	private final int capacity;
+
+	/**
+	 * True, while a drain task is scheduled or running.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	/**
+	 * The drain task, which is reused for every schedule.
+	 */
+	private final Runnable drain = new Runnable() {
+
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Creates a new unbounded {@link SerialExecutor}.
+	 *
+	 * @param delegate
+	 *            the {@link Executor}, on whose threads the tasks are run.
+	 */
+	public SerialExecutor(final Executor delegate) {
+		this(delegate, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a new {@link SerialExecutor}.
+	 *
+	 * @param delegate
+	 *            the {@link Executor}, on whose threads the tasks are run.
+	 * @param capacity
+	 *            the maximal number of pending tasks.
+	 */
+	public SerialExecutor(final Executor delegate, final int capacity) {
+		if (delegate == null) {
+			throw new NullPointerException("delegate");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive!");
+		}
+		this.delegate = delegate;
+		this.capacity = capacity;
+	}
+
+	@Override
+	public void execute(final Runnable task) {
+		if (task == null) {
+			throw new NullPointerException("task");
+		}
+		if (pending.incrementAndGet() > capacity) {
+			pending.decrementAndGet();
+			throw new RejectedExecutionException("SerialExecutor is full (" + capacity + " pending tasks)");
+		}
+		tasks.offer(task);
+		try {
+			schedule();
+		} catch (RejectedExecutionException e) {
+			if (tasks.remove(task)) {
+				pending.decrementAndGet();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of tasks, which are not run yet.
+	 */
+	public int getPendingTasks() {
+		return pending.get();
+	}
+
+	/**
+	 * @return true, if no task is pending or running. All tasks, which the
+	 *         calling thread submitted before, are done then.
+	 */
+	public boolean isIdle() {
+		return pending.get() == 0 && !scheduled.get();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				delegate.execute(drain);
+			} catch (RejectedExecutionException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+
+	private void drain() {
+		while (true) {
+			runBatch();
+			scheduled.set(false);
+
+			// a task may have been added after the last poll, but before the flag was cleared
+			if (tasks.isEmpty() || !scheduled.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				delegate.execute(drain);
+				return;
+			} catch (RejectedExecutionException e) {
+				// the delegate is saturated, so we keep draining on this thread
+				LOG.debug("Could not reschedule SerialExecutor, continue on the current thread");
+			}
+		}
+	}
+
+	private void runBatch() {
+		for (int i = 0; i < MAX_BATCH; i++) {
+			Runnable task = tasks.poll();
+			if (task == null) {
+				return;
+			}
+			pending.decrementAndGet();
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				LOG.error("Task of SerialExecutor failed", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sctp4nat.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class creates {@link ThreadFactory}s for virtual threads. sctp4nat is
+ * compiled for Java 8, therefore the virtual thread API (Java 21+) is accessed
+ * via reflection. On older runtimes, {@link #isSupported()} returns false.
+ *
+ * @author Jonas Wagner
+ *
+ */
+public final class VirtualThreads {
+
+	private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+	/**
+	 * Thread.ofVirtual() or null, if virtual threads are not supported.
+	 */
+	private static final Method OF_VIRTUAL;
+
+	/**
+	 * Thread.Builder.name(String, long) and Thread.Builder.factory().
+	 */
+	private static final Method NAME;
+	private static final Method FACTORY;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			// preview versions of the API throw here, if preview is not enabled
+			ofVirtual.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.debug("Virtual threads are not supported by this runtime: " + e);
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return true, if the runtime supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Creates a {@link ThreadFactory}, which creates virtual threads named
+	 * prefix-1, prefix-2, ...
+	 *
+	 * @param prefix
+	 *            the name prefix of the threads.
+	 * @return the {@link ThreadFactory}
+	 * @throws UnsupportedOperationException
+	 *             Thrown, if the runtime does not support virtual threads.
+	 */
+	public static ThreadFactory newFactory(final String prefix) {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or newer!");
+		}
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = NAME.invoke(builder, prefix + "-", 1L);
+			return (ThreadFactory) FACTORY.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Could not create a virtual thread factory", e);
+		}
+	}
+}
@@ -45,9 +45,85 @@
 #endif
 #include <usrsctp.h>
 
+#ifdef _MSC_VER
+#include <intrin.h>
+#define SCTP_TRY_ACQUIRE(flag) (_InterlockedExchange((flag), 1) == 0)
+#define SCTP_RELEASE(flag) _InterlockedExchange((flag), 0)
+#else
+#define SCTP_TRY_ACQUIRE(flag) (__sync_lock_test_and_set((flag), 1) == 0)
+#define SCTP_RELEASE(flag) __sync_lock_release(flag)
+#endif
+
+#ifdef _WIN32
+#define SCTP_LOCK_T CRITICAL_SECTION
+#define SCTP_LOCK_INIT(lock) InitializeCriticalSection(lock)
+#define SCTP_LOCK_DESTROY(lock) DeleteCriticalSection(lock)
+#define SCTP_LOCK(lock) EnterCriticalSection(lock)
+#define SCTP_UNLOCK(lock) LeaveCriticalSection(lock)
+#else
+#include <pthread.h>
+#define SCTP_LOCK_T pthread_mutex_t
+#define SCTP_LOCK_INIT(lock) pthread_mutex_init((lock), NULL)
+#define SCTP_LOCK_DESTROY(lock) pthread_mutex_destroy(lock)
+#define SCTP_LOCK(lock) pthread_mutex_lock(lock)
+#define SCTP_UNLOCK(lock) pthread_mutex_unlock(lock)
+#endif
+
+#ifndef SCTP_GET_SNDBUF_USE
+/* not exported by usrsctp.h, see netinet/sctp.h and netinet/sctp_uio.h */
+#define SCTP_GET_SNDBUF_USE 0x00001101
+struct sctp_sockstat {
+    sctp_assoc_t ss_assoc_id;
+    uint32_t ss_total_sndbuf;
+    uint32_t ss_total_recv_buf;
+};
+#endif
+
+#ifndef SCTP_INTERLEAVING_SUPPORTED
+/* not exported by usrsctp.h, see netinet/sctp.h */
+#define SCTP_INTERLEAVING_SUPPORTED 0x00001206
+#define SCTP_FRAG_LEVEL_2 0x00000002
+#endif
+
 /* The name of the class which defines the callback methods. */
 #define SCTP_CLASSNAME "net/sctp4nat/origin/Sctp"
 
+/* The name of the class which receives messages delivered into its buffer. */
+#define SCTP_SOCKET_CLASSNAME "net/sctp4nat/origin/SctpSocket"
+
+/**
+ * A direct ByteBuffer registered by the Java SctpSocket. The native code writes
+ * into it and calls the Java SctpSocket with primitives only. The buffer is not
+ * replaced while it is in use.
+ */
+typedef struct _SctpDirectBuffer
+{
+    /** Global reference to the direct ByteBuffer or NULL. */
+    jobject buffer;
+    /** The address of buffer. */
+    void *address;
+    /** The capacity of buffer. */
+    size_t capacity;
+    /**
+     * Set while buffer is in use. Deliveries, which happen concurrently, take
+     * the byte[] path instead.
+     */
+    volatile long busy;
+    /**
+     * Guards the pending buffer and the release of busy. A buffer, which is
+     * set while buffer is in use, replaces it at the end of the delivery.
+     */
+    SCTP_LOCK_T lock;
+    /** Set, if the pending buffer has to replace buffer. */
+    int pending;
+    /** Global reference to the buffer, which replaces buffer, or NULL. */
+    jobject pendingBuffer;
+    /** The address of pendingBuffer. */
+    void *pendingAddress;
+    /** The capacity of pendingBuffer. */
+    size_t pendingCapacity;
+} SctpDirectBuffer;
+
 /**
  * Represents the <tt>struct socket</tt> instances initialized by our SCTP
  * integration.
@@ -57,6 +133,31 @@ typedef struct _SctpSocket
     /** The socket created by the SCTP stack. */
     struct socket *so;
     int localPort;
+    /**
+     * Global reference to the Java SctpSocket, if inbound messages,
+     * notifications or outbound packets are delivered via in, notification
+     * or out, or NULL.
+     */
+    jobject javaSocket;
+    /** The direct buffer for inbound messages. */
+    SctpDirectBuffer in;
+    /** The direct buffer for notifications. */
+    SctpDirectBuffer notification;
+    /** The direct buffer for outbound packets. */
+    SctpDirectBuffer out;
+    /**
+     * Set while the socket waits in Sctp_writableSockets for free space in its
+     * send buffer. Guarded by Sctp_writableLock.
+     */
+    int writableArmed;
+    /** The free send buffer space, at which the Java SctpSocket is called. */
+    uint32_t writableThreshold;
+    /** The next socket in Sctp_writableSockets. */
+    struct _SctpSocket *nextWritable;
+    /** The errno of the last failed send or 0. */
+    int sendErrno;
+    /** Set, once SCTP_EXPLICIT_EOR is enabled by usrsctp_send_part. */
+    int explicitEor;
 } SctpSocket;
 
 void
@@ -86,6 +187,15 @@ static int
 onSctpOutboundPacket
     (void *addr, void *buffer, size_t length, uint8_t tos, uint8_t set_df);
 
+static int
+onSctpSendBufferFree(struct socket *so, uint32_t sb_free);
+
+static void
+SctpDirectBuffer_destroy(JNIEnv *env, SctpDirectBuffer *b);
+
+static void
+SctpSocket_disarmWritable(SctpSocket *sctpSocket);
+
 static int SCTP_EVENT_TYPES[]
     = {
         SCTP_ASSOC_CHANGE,
@@ -107,6 +217,21 @@ static int SCTP_EVENT_TYPES[]
 static jclass Sctp_clazz = 0;
 static jmethodID Sctp_receiveCb = 0;
 static jmethodID Sctp_sendCb = 0;
+/** SctpSocket.onSctpInboundDirect, called for messages written to in. */
+static jmethodID SctpSocket_receiveDirectCb = 0;
+/** SctpSocket.onSctpNotificationDirect, called for notifications written to notification. */
+static jmethodID SctpSocket_notificationDirectCb = 0;
+/** SctpSocket.onSctpOutboundDirect, called for packets written to out. */
+static jmethodID SctpSocket_sendDirectCb = 0;
+/** SctpSocket.onSctpWritable, called once a full send buffer has drained. */
+static jmethodID SctpSocket_writableCb = 0;
+/**
+ * The sockets, which wait for free space in their send buffer. usrsctp calls
+ * onSctpSendBufferFree on every SACK with the struct socket only, so the
+ * waiting sockets are looked up here. Usually, the list is empty or short.
+ */
+static SctpSocket * volatile Sctp_writableSockets = NULL;
+static SCTP_LOCK_T Sctp_writableLock;
 /** The global, cached pointer to the Invocation API function table. */
 static JavaVM *Sctp_vm = NULL;
 
@@ -132,6 +257,28 @@ Java_net_sctp4nat_origin_Sctp_on_1network_1in
     }
 }
 
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    on_network_in_direct
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sctp4nat_origin_Sctp_on_1network_1in_1direct
+    (JNIEnv *env, jclass clazz, jlong ptr, jobject pkt, jint off, jint len)
+{
+    jbyte *pkt_;
+
+    /* direct buffers are read in place, without any copy or pinning */
+    pkt_ = (*env)->GetDirectBufferAddress(env, pkt);
+    if (pkt_)
+    {
+        usrsctp_conninput(
+                (void *) (intptr_t) ptr,
+                pkt_ + off, len,
+                /* ecn_bits */ 0);
+    }
+}
+
 /*
  * Class:     net_sctp4nat_origin_Sctp
  * Method:    usrsctp_accept
@@ -142,35 +289,722 @@ Java_net_sctp4nat_origin_Sctp_usrsctp_1accept
     (JNIEnv *env, jclass clazz, jlong ptr)
 {
     SctpSocket *sctpSocket;
-    struct socket* so;
+    struct socket* so;
+
+    sctpSocket = (SctpSocket *) (intptr_t) ptr;
+    if((so = usrsctp_accept(sctpSocket->so, NULL, NULL)))
+    {
+        usrsctp_close(sctpSocket->so);
+        sctpSocket->so = so;
+        return JNI_TRUE;
+    }
+    else
+    {
+        return JNI_FALSE;
+    }
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_close
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1close
+    (JNIEnv *env, jclass clazz, jlong ptr)
+{
+    SctpSocket *sctpSocket;
+
+    sctpSocket = (SctpSocket *) (intptr_t) ptr;
+    SctpSocket_disarmWritable(sctpSocket);
+    usrsctp_close(sctpSocket->so);
+    if (sctpSocket->javaSocket)
+        (*env)->DeleteGlobalRef(env, sctpSocket->javaSocket);
+    SctpDirectBuffer_destroy(env, &sctpSocket->in);
+    SctpDirectBuffer_destroy(env, &sctpSocket->notification);
+    SctpDirectBuffer_destroy(env, &sctpSocket->out);
+    free(sctpSocket);
+}
+
+/*
+ * Deletes the references of b. The socket is closed, so b is not in use.
+ */
+static void
+SctpDirectBuffer_destroy(JNIEnv *env, SctpDirectBuffer *b)
+{
+    if (b->buffer)
+        (*env)->DeleteGlobalRef(env, b->buffer);
+    if (b->pendingBuffer)
+        (*env)->DeleteGlobalRef(env, b->pendingBuffer);
+    SCTP_LOCK_DESTROY(&b->lock);
+}
+
+/*
+ * Returns 1, if a buffer is registered or about to replace the registered one.
+ */
+static int
+SctpDirectBuffer_isSet(SctpDirectBuffer *b)
+{
+    int set;
+
+    /* a delivery may replace buffer by the pending buffer concurrently */
+    SCTP_LOCK(&b->lock);
+    set = b->buffer || b->pendingBuffer;
+    SCTP_UNLOCK(&b->lock);
+    return set;
+}
+
+/*
+ * Replaces buffer by the pending buffer. The caller holds the lock and busy.
+ */
+static void
+SctpDirectBuffer_replace(JNIEnv *env, SctpDirectBuffer *b)
+{
+    if (b->buffer)
+        (*env)->DeleteGlobalRef(env, b->buffer);
+    b->buffer = b->pendingBuffer;
+    b->address = b->pendingAddress;
+    b->capacity = b->pendingCapacity;
+    b->pendingBuffer = NULL;
+    b->pendingAddress = NULL;
+    b->pendingCapacity = 0;
+    b->pending = 0;
+}
+
+/*
+ * Registers the global reference buffer, which may be NULL, as the pending
+ * buffer of b. It replaces the registered buffer right away, if that is not
+ * in use, or else at the end of the delivery, which uses it.
+ */
+static void
+SctpDirectBuffer_set
+    (JNIEnv *env, SctpDirectBuffer *b, jobject buffer, void *address,
+        size_t capacity)
+{
+    SCTP_LOCK(&b->lock);
+    if (b->pendingBuffer)
+        (*env)->DeleteGlobalRef(env, b->pendingBuffer);
+    b->pendingBuffer = buffer;
+    b->pendingAddress = address;
+    b->pendingCapacity = capacity;
+    b->pending = 1;
+    /*
+     * The old buffer must not go away while data is written to it or read
+     * from it. If it is in use, the delivery replaces it, once it is done.
+     */
+    if (SCTP_TRY_ACQUIRE(&b->busy))
+    {
+        SctpDirectBuffer_replace(env, b);
+        SCTP_RELEASE(&b->busy);
+    }
+    SCTP_UNLOCK(&b->lock);
+}
+
+/*
+ * Ends the use of b, which starts with SCTP_TRY_ACQUIRE(&b->busy). While busy
+ * is held, buffer, address and capacity do not change.
+ */
+static void
+SctpDirectBuffer_release(JNIEnv *env, SctpDirectBuffer *b)
+{
+    SCTP_LOCK(&b->lock);
+    if (b->pending)
+        SctpDirectBuffer_replace(env, b);
+    SCTP_RELEASE(&b->busy);
+    SCTP_UNLOCK(&b->lock);
+}
+
+/*
+ * Keeps a global reference to the Java SctpSocket as long as in, notification
+ * or out is registered. Returns 0 on failure.
+ */
+static int
+SctpSocket_updateJavaSocket(JNIEnv *env, SctpSocket *sctpSocket, jobject socket)
+{
+    if (SctpDirectBuffer_isSet(&sctpSocket->in)
+            || SctpDirectBuffer_isSet(&sctpSocket->notification)
+            || SctpDirectBuffer_isSet(&sctpSocket->out))
+    {
+        if (!sctpSocket->javaSocket)
+            sctpSocket->javaSocket = (*env)->NewGlobalRef(env, socket);
+        return sctpSocket->javaSocket != NULL;
+    }
+    if (sctpSocket->javaSocket)
+    {
+        (*env)->DeleteGlobalRef(env, sctpSocket->javaSocket);
+        sctpSocket->javaSocket = NULL;
+    }
+    return 1;
+}
+
+/*
+ * Registers buffer as b of sctpSocket or unregisters b, if buffer is NULL.
+ * callback is the method of the Java SctpSocket, which is called for b.
+ */
+static jboolean
+SctpSocket_setDirectBuffer
+    (JNIEnv *env, SctpSocket *sctpSocket, SctpDirectBuffer *b, jobject socket,
+        jobject buffer, jmethodID callback)
+{
+    void *address = NULL;
+    jlong capacity = 0;
+    jobject ref = NULL;
+
+    if (socket && buffer)
+    {
+        address = (*env)->GetDirectBufferAddress(env, buffer);
+        capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+        if (!address || capacity <= 0 || !callback)
+            return JNI_FALSE;
+        ref = (*env)->NewGlobalRef(env, buffer);
+        if (!ref)
+            return JNI_FALSE;
+    }
+
+    SctpDirectBuffer_set(env, b, ref, address, (size_t) capacity);
+
+    return SctpSocket_updateJavaSocket(env, sctpSocket, socket)
+        ? JNI_TRUE
+        : JNI_FALSE;
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_set_inbound_buffer
+ * Signature: (JLnet/sctp4nat/origin/SctpSocket;Ljava/nio/ByteBuffer;)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1set_1inbound_1buffer
+    (JNIEnv *env, jclass clazz, jlong ptr, jobject socket, jobject buffer)
+{
+    SctpSocket *sctpSocket = (SctpSocket *) (intptr_t) ptr;
+
+    return
+        SctpSocket_setDirectBuffer(
+                env,
+                sctpSocket,
+                &sctpSocket->in,
+                socket,
+                buffer,
+                SctpSocket_receiveDirectCb);
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_set_notification_buffer
+ * Signature: (JLnet/sctp4nat/origin/SctpSocket;Ljava/nio/ByteBuffer;)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1set_1notification_1buffer
+    (JNIEnv *env, jclass clazz, jlong ptr, jobject socket, jobject buffer)
+{
+    SctpSocket *sctpSocket = (SctpSocket *) (intptr_t) ptr;
+
+    return
+        SctpSocket_setDirectBuffer(
+                env,
+                sctpSocket,
+                &sctpSocket->notification,
+                socket,
+                buffer,
+                SctpSocket_notificationDirectCb);
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_set_outbound_buffer
+ * Signature: (JLnet/sctp4nat/origin/SctpSocket;Ljava/nio/ByteBuffer;)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1set_1outbound_1buffer
+    (JNIEnv *env, jclass clazz, jlong ptr, jobject socket, jobject buffer)
+{
+    SctpSocket *sctpSocket = (SctpSocket *) (intptr_t) ptr;
+
+    return
+        SctpSocket_setDirectBuffer(
+                env,
+                sctpSocket,
+                &sctpSocket->out,
+                socket,
+                buffer,
+                SctpSocket_sendDirectCb);
+}
+
+/*
+ * Removes sctpSocket from Sctp_writableSockets, if it waits there.
+ */
+static void
+SctpSocket_disarmWritable(SctpSocket *sctpSocket)
+{
+    SctpSocket * volatile *p;
+
+    SCTP_LOCK(&Sctp_writableLock);
+    if (sctpSocket->writableArmed)
+    {
+        for (p = &Sctp_writableSockets; *p; p = &(*p)->nextWritable)
+        {
+            if (*p == sctpSocket)
+            {
+                *p = sctpSocket->nextWritable;
+                break;
+            }
+        }
+        sctpSocket->nextWritable = NULL;
+        sctpSocket->writableArmed = 0;
+    }
+    SCTP_UNLOCK(&Sctp_writableLock);
+}
+
+/*
+ * Returns the free space in the send buffer of the association of sctpSocket
+ * or -1, if the socket has no association (yet). The size of the send buffer
+ * and the bytes queued in it are stored in sndbuf and queued.
+ */
+static jint
+SctpSocket_sendBufferFree(SctpSocket *sctpSocket, int *sndbuf, uint32_t *queued)
+{
+    struct sctp_sockstat stat;
+    socklen_t len = (socklen_t) sizeof(*sndbuf);
+
+    if (usrsctp_getsockopt(sctpSocket->so, SOL_SOCKET, SO_SNDBUF, sndbuf, &len)
+            < 0)
+        return -1;
+    memset(&stat, 0, sizeof(stat));
+    len = (socklen_t) sizeof(stat);
+    if (usrsctp_getsockopt(sctpSocket->so, IPPROTO_SCTP, SCTP_GET_SNDBUF_USE,
+                           &stat, &len)
+            < 0)
+        return -1;
+    *queued = stat.ss_total_sndbuf;
+    return
+        ((uint32_t) *sndbuf > stat.ss_total_sndbuf)
+            ? (jint) ((uint32_t) *sndbuf - stat.ss_total_sndbuf)
+            : 0;
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_send_buffer_free
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1send_1buffer_1free
+    (JNIEnv *env, jclass clazz, jlong ptr)
+{
+    int sndbuf;
+    uint32_t queued;
+
+    return
+        SctpSocket_sendBufferFree(
+                (SctpSocket *) (intptr_t) ptr,
+                &sndbuf, &queued);
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_wait_writable
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1wait_1writable
+    (JNIEnv *env, jclass clazz, jlong ptr, jint threshold)
+{
+    SctpSocket *sctpSocket;
+    int sndbuf;
+    uint32_t queued;
+    jint free;
+    int full;
+
+    sctpSocket = (SctpSocket *) (intptr_t) ptr;
+    if (!sctpSocket->javaSocket || !SctpSocket_writableCb || threshold <= 0)
+        return -1;
+
+    /*
+     * The socket waits before the free space is read, so that a SACK, which
+     * arrives in between, is not missed.
+     */
+    SCTP_LOCK(&Sctp_writableLock);
+    sctpSocket->writableThreshold = (uint32_t) threshold;
+    if (!sctpSocket->writableArmed)
+    {
+        sctpSocket->nextWritable = Sctp_writableSockets;
+        Sctp_writableSockets = sctpSocket;
+        sctpSocket->writableArmed = 1;
+    }
+    SCTP_UNLOCK(&Sctp_writableLock);
+
+    /*
+     * usrsctp also rejects a send, if too many chunks are queued, so the
+     * errno of the send decides and not the free space. Without queued data,
+     * no SACK would ever wake the socket.
+     */
+    full = sctpSocket->sendErrno == EWOULDBLOCK
+        || sctpSocket->sendErrno == EAGAIN;
+    free = SctpSocket_sendBufferFree(sctpSocket, &sndbuf, &queued);
+    if (free < 0 || !full || queued == 0)
+    {
+        SctpSocket_disarmWritable(sctpSocket);
+        return -1;
+    }
+    else if ((uint32_t) sndbuf < (uint32_t) threshold)
+    {
+        /* a threshold above the send buffer would never be reached */
+        SCTP_LOCK(&Sctp_writableLock);
+        sctpSocket->writableThreshold = (uint32_t) sndbuf;
+        SCTP_UNLOCK(&Sctp_writableLock);
+    }
+    return free;
+}
+
+/* The order of the values of usrsctp_get_association_options. */
+#define SCTP_OPTION_SNDBUF 0
+#define SCTP_OPTION_RCVBUF 1
+#define SCTP_OPTION_OSTREAMS 2
+#define SCTP_OPTION_INSTREAMS 3
+#define SCTP_OPTION_RTO_INITIAL 4
+#define SCTP_OPTION_RTO_MIN 5
+#define SCTP_OPTION_RTO_MAX 6
+#define SCTP_OPTION_HB_INTERVAL 7
+#define SCTP_OPTION_PATH_MAX_RXT 8
+#define SCTP_OPTION_STREAM_SCHEDULER 9
+#define SCTP_OPTION_INTERLEAVING 10
+#define SCTP_OPTION_COUNT 11
+
+/*
+ * Sets the stream scheduler of the association of so or, if there is no
+ * association yet, of the associations created on so.
+ */
+static int
+usrsctp_set_stream_scheduler(struct socket *so, int scheduler)
+{
+    struct sctp_assoc_value av;
+
+    memset(&av, 0, sizeof(av));
+    av.assoc_id = SCTP_FUTURE_ASSOC;
+    av.assoc_value = (uint32_t) scheduler;
+    return
+        usrsctp_setsockopt(so, IPPROTO_SCTP, SCTP_PLUGGABLE_SS, &av,
+                           sizeof(av));
+}
+
+/*
+ * Returns 1, if so supports I-DATA (RFC 8260), 0, if not, or -1 on failure.
+ * Once the association is established, this is the negotiated value.
+ */
+static int
+usrsctp_get_interleaving(struct socket *so)
+{
+    struct sctp_assoc_value av;
+    socklen_t len;
+
+    memset(&av, 0, sizeof(av));
+    av.assoc_id = SCTP_FUTURE_ASSOC;
+    len = (socklen_t) sizeof(av);
+    if (usrsctp_getsockopt(so, IPPROTO_SCTP, SCTP_INTERLEAVING_SUPPORTED, &av,
+                           &len) < 0)
+    {
+        return -1;
+    }
+    return av.assoc_value ? 1 : 0;
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_set_association_options
+ * Signature: (JIIIIIIIIII)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1set_1association_1options
+    (JNIEnv *env, jclass clazz, jlong ptr, jint sndbuf, jint rcvbuf,
+        jint ostreams, jint instreams, jint rtoInitial, jint rtoMin,
+        jint rtoMax, jint hbInterval, jint pathMaxRxt, jint scheduler)
+{
+    SctpSocket *sctpSocket;
+    struct socket *so;
+    jboolean r = JNI_TRUE;
+
+    sctpSocket = (SctpSocket *) (intptr_t) ptr;
+    so = sctpSocket->so;
+
+    /*
+     * 0 keeps the current value of an option. The remaining options are still
+     * set, if one of them is rejected.
+     */
+    if (sndbuf > 0
+            && usrsctp_setsockopt(so, SOL_SOCKET, SO_SNDBUF, &sndbuf,
+                                  sizeof(sndbuf)))
+    {
+        perror("Failed to set SO_SNDBUF.");
+        r = JNI_FALSE;
+    }
+    if (rcvbuf > 0
+            && usrsctp_setsockopt(so, SOL_SOCKET, SO_RCVBUF, &rcvbuf,
+                                  sizeof(rcvbuf)))
+    {
+        perror("Failed to set SO_RCVBUF.");
+        r = JNI_FALSE;
+    }
+    if (ostreams > 0 || instreams > 0)
+    {
+        struct sctp_initmsg initmsg;
+
+        memset(&initmsg, 0, sizeof(initmsg));
+        initmsg.sinit_num_ostreams = (uint16_t) ostreams;
+        initmsg.sinit_max_instreams = (uint16_t) instreams;
+        if (usrsctp_setsockopt(so, IPPROTO_SCTP, SCTP_INITMSG, &initmsg,
+                               sizeof(initmsg)))
+        {
+            perror("Failed to set SCTP_INITMSG.");
+            r = JNI_FALSE;
+        }
+    }
+    if (rtoInitial > 0 || rtoMin > 0 || rtoMax > 0)
+    {
+        struct sctp_rtoinfo rtoinfo;
+
+        memset(&rtoinfo, 0, sizeof(rtoinfo));
+        rtoinfo.srto_assoc_id = SCTP_FUTURE_ASSOC;
+        rtoinfo.srto_initial = (uint32_t) rtoInitial;
+        rtoinfo.srto_min = (uint32_t) rtoMin;
+        rtoinfo.srto_max = (uint32_t) rtoMax;
+        if (usrsctp_setsockopt(so, IPPROTO_SCTP, SCTP_RTOINFO, &rtoinfo,
+                               sizeof(rtoinfo)))
+        {
+            perror("Failed to set SCTP_RTOINFO.");
+            r = JNI_FALSE;
+        }
+    }
+    if (hbInterval > 0 || pathMaxRxt > 0)
+    {
+        struct sctp_paddrparams paddrparams;
+
+        memset(&paddrparams, 0, sizeof(paddrparams));
+        paddrparams.spp_assoc_id = SCTP_FUTURE_ASSOC;
+        /* the wildcard address selects all paths of the association */
+        paddrparams.spp_address.ss_family = AF_CONN;
+        paddrparams.spp_pathmaxrxt = (uint16_t) pathMaxRxt;
+        if (hbInterval > 0)
+        {
+            paddrparams.spp_hbinterval = (uint32_t) hbInterval;
+            paddrparams.spp_flags = SPP_HB_ENABLE;
+        }
+        if (usrsctp_setsockopt(so, IPPROTO_SCTP, SCTP_PEER_ADDR_PARAMS,
+                               &paddrparams, sizeof(paddrparams)))
+        {
+            perror("Failed to set SCTP_PEER_ADDR_PARAMS.");
+            r = JNI_FALSE;
+        }
+    }
+    if (scheduler > 0 && usrsctp_set_stream_scheduler(so, scheduler))
+    {
+        perror("Failed to set SCTP_PLUGGABLE_SS.");
+        r = JNI_FALSE;
+    }
+    return r;
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_get_association_options
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1get_1association_1options
+    (JNIEnv *env, jclass clazz, jlong ptr, jintArray values)
+{
+    SctpSocket *sctpSocket;
+    struct socket *so;
+    jint values_[SCTP_OPTION_COUNT];
+    struct sctp_initmsg initmsg;
+    struct sctp_status status;
+    struct sctp_rtoinfo rtoinfo;
+    struct sctp_paddrparams paddrparams;
+    struct sctp_assoc_value av;
+    socklen_t len;
+
+    if ((*env)->GetArrayLength(env, values) < SCTP_OPTION_COUNT)
+        return JNI_FALSE;
+
+    sctpSocket = (SctpSocket *) (intptr_t) ptr;
+    so = sctpSocket->so;
+
+    len = (socklen_t) sizeof(jint);
+    if (usrsctp_getsockopt(so, SOL_SOCKET, SO_SNDBUF,
+                           &values_[SCTP_OPTION_SNDBUF], &len) < 0)
+    {
+        perror("Failed to get SO_SNDBUF.");
+        return JNI_FALSE;
+    }
+    len = (socklen_t) sizeof(jint);
+    if (usrsctp_getsockopt(so, SOL_SOCKET, SO_RCVBUF,
+                           &values_[SCTP_OPTION_RCVBUF], &len) < 0)
+    {
+        perror("Failed to get SO_RCVBUF.");
+        return JNI_FALSE;
+    }
+
+    /*
+     * Once there is an association, the negotiated stream counts are reported,
+     * else the ones, which the next INIT will request.
+     */
+    memset(&status, 0, sizeof(status));
+    len = (socklen_t) sizeof(status);
+    if (usrsctp_getsockopt(so, IPPROTO_SCTP, SCTP_STATUS, &status, &len) == 0)
+    {
+        values_[SCTP_OPTION_OSTREAMS] = status.sstat_outstrms;
+        values_[SCTP_OPTION_INSTREAMS] = status.sstat_instrms;
+    }
+    else
+    {
+        memset(&initmsg, 0, sizeof(initmsg));
+        len = (socklen_t) sizeof(initmsg);
+        if (usrsctp_getsockopt(so, IPPROTO_SCTP, SCTP_INITMSG, &initmsg, &len)
+                < 0)
+        {
+            perror("Failed to get SCTP_INITMSG.");
+            return JNI_FALSE;
+        }
+        values_[SCTP_OPTION_OSTREAMS] = initmsg.sinit_num_ostreams;
+        values_[SCTP_OPTION_INSTREAMS] = initmsg.sinit_max_instreams;
+    }
+
+    /* the values of the association, if there is one, else of the socket */
+    memset(&rtoinfo, 0, sizeof(rtoinfo));
+    rtoinfo.srto_assoc_id = SCTP_FUTURE_ASSOC;
+    len = (socklen_t) sizeof(rtoinfo);
+    if (usrsctp_getsockopt(so, IPPROTO_SCTP, SCTP_RTOINFO, &rtoinfo, &len)
+            < 0)
+    {
+        perror("Failed to get SCTP_RTOINFO.");
+        return JNI_FALSE;
+    }
+    values_[SCTP_OPTION_RTO_INITIAL] = (jint) rtoinfo.srto_initial;
+    values_[SCTP_OPTION_RTO_MIN] = (jint) rtoinfo.srto_min;
+    values_[SCTP_OPTION_RTO_MAX] = (jint) rtoinfo.srto_max;
+
+    memset(&paddrparams, 0, sizeof(paddrparams));
+    paddrparams.spp_assoc_id = SCTP_FUTURE_ASSOC;
+    paddrparams.spp_address.ss_family = AF_CONN;
+    len = (socklen_t) sizeof(paddrparams);
+    if (usrsctp_getsockopt(so, IPPROTO_SCTP, SCTP_PEER_ADDR_PARAMS,
+                           &paddrparams, &len) < 0)
+    {
+        perror("Failed to get SCTP_PEER_ADDR_PARAMS.");
+        return JNI_FALSE;
+    }
+    values_[SCTP_OPTION_HB_INTERVAL] = (jint) paddrparams.spp_hbinterval;
+    values_[SCTP_OPTION_PATH_MAX_RXT] = paddrparams.spp_pathmaxrxt;
+
+    memset(&av, 0, sizeof(av));
+    av.assoc_id = SCTP_FUTURE_ASSOC;
+    len = (socklen_t) sizeof(av);
+    if (usrsctp_getsockopt(so, IPPROTO_SCTP, SCTP_PLUGGABLE_SS, &av, &len)
+            < 0)
+    {
+        perror("Failed to get SCTP_PLUGGABLE_SS.");
+        return JNI_FALSE;
+    }
+    values_[SCTP_OPTION_STREAM_SCHEDULER] = (jint) av.assoc_value;
+
+    values_[SCTP_OPTION_INTERLEAVING] = usrsctp_get_interleaving(so);
+    if (values_[SCTP_OPTION_INTERLEAVING] < 0)
+    {
+        perror("Failed to get SCTP_INTERLEAVING_SUPPORTED.");
+        return JNI_FALSE;
+    }
+
+    (*env)->SetIntArrayRegion(env, values, 0, SCTP_OPTION_COUNT, values_);
+    return JNI_TRUE;
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_set_stream_scheduler
+ * Signature: (JI)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1set_1stream_1scheduler
+    (JNIEnv *env, jclass clazz, jlong ptr, jint scheduler)
+{
+    SctpSocket *sctpSocket;
+
+    sctpSocket = (SctpSocket *) (intptr_t) ptr;
+    if (usrsctp_set_stream_scheduler(sctpSocket->so, scheduler))
+    {
+        perror("Failed to set SCTP_PLUGGABLE_SS.");
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_set_stream_priority
+ * Signature: (JII)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1set_1stream_1priority
+    (JNIEnv *env, jclass clazz, jlong ptr, jint sid, jint priority)
+{
+    SctpSocket *sctpSocket;
+    struct sctp_stream_value sv;
+
+    sctpSocket = (SctpSocket *) (intptr_t) ptr;
+
+    memset(&sv, 0, sizeof(sv));
+    sv.assoc_id = SCTP_FUTURE_ASSOC;
+    sv.stream_id = (uint16_t) sid;
+    sv.stream_value = (uint16_t) priority;
+    /* only the priority scheduler accepts a value per stream */
+    if (usrsctp_setsockopt(sctpSocket->so, IPPROTO_SCTP, SCTP_SS_VALUE, &sv,
+                           sizeof(sv)))
+    {
+        perror("Failed to set SCTP_SS_VALUE.");
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_get_stream_priority
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1get_1stream_1priority
+    (JNIEnv *env, jclass clazz, jlong ptr, jint sid)
+{
+    SctpSocket *sctpSocket;
+    struct sctp_stream_value sv;
+    socklen_t len;
 
     sctpSocket = (SctpSocket *) (intptr_t) ptr;
-    if((so = usrsctp_accept(sctpSocket->so, NULL, NULL)))
-    {
-        usrsctp_close(sctpSocket->so);
-        sctpSocket->so = so;
-        return JNI_TRUE;
-    }
-    else
-    {
-        return JNI_FALSE;
-    }
+
+    memset(&sv, 0, sizeof(sv));
+    sv.assoc_id = SCTP_FUTURE_ASSOC;
+    sv.stream_id = (uint16_t) sid;
+    len = (socklen_t) sizeof(sv);
+    if (usrsctp_getsockopt(sctpSocket->so, IPPROTO_SCTP, SCTP_SS_VALUE, &sv,
+                           &len) < 0)
+        return -1;
+    return (jint) sv.stream_value;
 }
 
 /*
  * Class:     net_sctp4nat_origin_Sctp
- * Method:    usrsctp_close
- * Signature: (J)V
+ * Method:    usrsctp_is_interleaving
+ * Signature: (J)Z
  */
-JNIEXPORT void JNICALL
-Java_net_sctp4nat_origin_Sctp_usrsctp_1close
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1is_1interleaving
     (JNIEnv *env, jclass clazz, jlong ptr)
 {
     SctpSocket *sctpSocket;
 
     sctpSocket = (SctpSocket *) (intptr_t) ptr;
-    usrsctp_close(sctpSocket->so);
-    free(sctpSocket);
+
+    return usrsctp_get_interleaving(sctpSocket->so) == 1 ? JNI_TRUE : JNI_FALSE;
 }
 
 /*
@@ -257,6 +1091,115 @@ Java_net_sctp4nat_origin_Sctp_usrsctp_1init
     return JNI_TRUE;
 }
 
+/*
+ * The sysctls of an engine profile in the order of SctpEngineProfile.toArray().
+ * They are read, when an endpoint or an association is created, so they must
+ * be set before the first socket.
+ */
+typedef struct _SctpSysctl
+{
+    void (*set)(uint32_t value);
+    uint32_t (*get)(void);
+} SctpSysctl;
+
+static const SctpSysctl Sctp_profileSysctls[] =
+{
+    { usrsctp_sysctl_set_sctp_sendspace, usrsctp_sysctl_get_sctp_sendspace },
+    { usrsctp_sysctl_set_sctp_recvspace, usrsctp_sysctl_get_sctp_recvspace },
+    {
+        usrsctp_sysctl_set_sctp_delayed_sack_time_default,
+        usrsctp_sysctl_get_sctp_delayed_sack_time_default
+    },
+    {
+        usrsctp_sysctl_set_sctp_sack_freq_default,
+        usrsctp_sysctl_get_sctp_sack_freq_default
+    },
+    {
+        usrsctp_sysctl_set_sctp_max_burst_default,
+        usrsctp_sysctl_get_sctp_max_burst_default
+    },
+    {
+        usrsctp_sysctl_set_sctp_initial_cwnd,
+        usrsctp_sysctl_get_sctp_initial_cwnd
+    },
+    {
+        usrsctp_sysctl_set_sctp_max_chunks_on_queue,
+        usrsctp_sysctl_get_sctp_max_chunks_on_queue
+    },
+    {
+        usrsctp_sysctl_set_sctp_heartbeat_interval_default,
+        usrsctp_sysctl_get_sctp_heartbeat_interval_default
+    },
+    {
+        usrsctp_sysctl_set_sctp_path_rtx_max_default,
+        usrsctp_sysctl_get_sctp_path_rtx_max_default
+    },
+    {
+        usrsctp_sysctl_set_sctp_rto_initial_default,
+        usrsctp_sysctl_get_sctp_rto_initial_default
+    },
+    {
+        usrsctp_sysctl_set_sctp_rto_min_default,
+        usrsctp_sysctl_get_sctp_rto_min_default
+    },
+    {
+        usrsctp_sysctl_set_sctp_rto_max_default,
+        usrsctp_sysctl_get_sctp_rto_max_default
+    },
+    { usrsctp_sysctl_set_sctp_pcbtblsize, usrsctp_sysctl_get_sctp_pcbtblsize }
+};
+
+#define SCTP_PROFILE_SYSCTL_COUNT \
+    ((jsize) (sizeof(Sctp_profileSysctls) / sizeof(Sctp_profileSysctls[0])))
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_sysctl_set_profile
+ * Signature: ([I)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1sysctl_1set_1profile
+    (JNIEnv *env, jclass clazz, jintArray values)
+{
+    jint values_[SCTP_PROFILE_SYSCTL_COUNT];
+    jsize i;
+
+    if ((*env)->GetArrayLength(env, values) != SCTP_PROFILE_SYSCTL_COUNT)
+        return JNI_FALSE;
+    (*env)->GetIntArrayRegion(env, values, 0, SCTP_PROFILE_SYSCTL_COUNT,
+                              values_);
+
+    /* a negative value keeps the default of usrsctp */
+    for (i = 0; i < SCTP_PROFILE_SYSCTL_COUNT; i++)
+    {
+        if (values_[i] >= 0)
+            Sctp_profileSysctls[i].set((uint32_t) values_[i]);
+    }
+    return JNI_TRUE;
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_sysctl_get_profile
+ * Signature: ([I)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1sysctl_1get_1profile
+    (JNIEnv *env, jclass clazz, jintArray values)
+{
+    jint values_[SCTP_PROFILE_SYSCTL_COUNT];
+    jsize i;
+
+    if ((*env)->GetArrayLength(env, values) != SCTP_PROFILE_SYSCTL_COUNT)
+        return JNI_FALSE;
+
+    for (i = 0; i < SCTP_PROFILE_SYSCTL_COUNT; i++)
+        values_[i] = (jint) Sctp_profileSysctls[i].get();
+    (*env)->SetIntArrayRegion(env, values, 0, SCTP_PROFILE_SYSCTL_COUNT,
+                              values_);
+    return JNI_TRUE;
+}
+
 /*
  * Class:     net_sctp4nat_origin_Sctp
  * Method:    usrsctp_listen
@@ -283,6 +1226,101 @@ Java_net_sctp4nat_origin_Sctp_usrsctp_1listen
         perror("usrsctp_listen");
 }
 
+/* Payloads up to this size are copied to the stack instead of the heap. */
+#define SCTP_SEND_STACK_BUFFER_SIZE 2048
+
+/*
+ * Sends len bytes as (the next part of) a message. Unless eor is false, the
+ * message is complete. An incomplete message is continued by the next send on
+ * the same stream, once SCTP_EXPLICIT_EOR is enabled. Unless prPolicy is
+ * SCTP_PR_SCTP_NONE, the message is abandoned, once prValue (the lifetime in
+ * ms or the number of retransmissions) is exceeded.
+ */
+static ssize_t
+Sctp_sendv
+    (SctpSocket *sctpSocket, const void *data, size_t len, jboolean ordered,
+        jint sid, jint ppid, jboolean eor, jint prPolicy, jint prValue)
+{
+    struct sctp_sendv_spa spa;
+    ssize_t r;
+
+    memset(&spa, 0, sizeof(spa));
+    spa.sendv_flags = SCTP_SEND_SNDINFO_VALID;
+    spa.sendv_sndinfo.snd_assoc_id = 0;
+    spa.sendv_sndinfo.snd_context = 0;
+    spa.sendv_sndinfo.snd_flags = 0;
+    if (JNI_FALSE == ordered)
+        spa.sendv_sndinfo.snd_flags |= SCTP_UNORDERED;
+    if (JNI_FALSE != eor)
+        spa.sendv_sndinfo.snd_flags |= SCTP_EOR;
+    spa.sendv_sndinfo.snd_ppid = htonl(ppid);
+    spa.sendv_sndinfo.snd_sid = sid;
+    if (prPolicy != SCTP_PR_SCTP_NONE)
+    {
+        spa.sendv_flags |= SCTP_SEND_PRINFO_VALID;
+        spa.sendv_prinfo.pr_policy = (uint16_t) prPolicy;
+        spa.sendv_prinfo.pr_value = (uint32_t) prValue;
+    }
+
+    r
+        = usrsctp_sendv(
+                sctpSocket->so,
+                data,
+                len,
+                /* to */ NULL,
+                /* addrcnt */ 0,
+                &spa,
+                (socklen_t) sizeof(spa),
+                SCTP_SENDV_SPA,
+                /* flags */ 0);
+    sctpSocket->sendErrno = (r < 0) ? errno : 0;
+    return r;
+}
+
+/*
+ * Sends the slice off..off+len of data as one message with the given partial
+ * reliability policy.
+ */
+static jint
+Sctp_sendArray
+    (JNIEnv *env, jlong ptr, jbyteArray data, jint off, jint len,
+        jboolean ordered, jint sid, jint ppid, jint prPolicy, jint prValue)
+{
+    /*
+     * Only the slice off..off+len is copied. The array can not be pinned with
+     * GetPrimitiveArrayCritical, because usrsctp_sendv may call back into Java
+     * (onSctpOutboundPacket) before it returns.
+     */
+    jbyte stackBuffer[SCTP_SEND_STACK_BUFFER_SIZE];
+    jbyte *data_;
+    ssize_t r;  /* returned by usrsctp_sendv */
+
+    if (len <= SCTP_SEND_STACK_BUFFER_SIZE)
+        data_ = stackBuffer;
+    else
+        data_ = malloc(len);
+
+    if (data_)
+    {
+        (*env)->GetByteArrayRegion(env, data, off, len, data_);
+        if ((*env)->ExceptionCheck(env))
+            r = -1;
+        else
+            r = Sctp_sendv((SctpSocket *) (intptr_t) ptr, data_, len, ordered, sid, ppid,
+                            JNI_TRUE, prPolicy, prValue);
+        if (data_ != stackBuffer)
+            free(data_);
+    }
+    else
+    {
+        r = -1;
+    }
+    /* a full send buffer is reported to Java, see usrsctp_wait_writable */
+    if (r < 0 && errno != EWOULDBLOCK && errno != EAGAIN)
+        perror("Sctp send error: ");
+    return (jint) r;
+}
+
 /*
  * Class:     net_sctp4nat_origin_Sctp
  * Method:    usrsctp_send
@@ -293,55 +1331,138 @@ Java_net_sctp4nat_origin_Sctp_usrsctp_1send
     (JNIEnv *env, jclass clazz, jlong ptr, jbyteArray data, jint off, jint len,
         jboolean ordered, jint sid, jint ppid)
 {
-    jbyte *data_;
+    return
+        Sctp_sendArray(
+                env,
+                ptr,
+                data,
+                off,
+                len,
+                ordered,
+                sid,
+                ppid,
+                SCTP_PR_SCTP_NONE,
+                0);
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_send_pr
+ * Signature: (J[BIIZIIII)I
+ */
+JNIEXPORT jint JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1send_1pr
+    (JNIEnv *env, jclass clazz, jlong ptr, jbyteArray data, jint off, jint len,
+        jboolean ordered, jint sid, jint ppid, jint prPolicy, jint prValue)
+{
+    return
+        Sctp_sendArray(
+                env,
+                ptr,
+                data,
+                off,
+                len,
+                ordered,
+                sid,
+                ppid,
+                prPolicy,
+                prValue);
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_send_direct
+ * Signature: (JLjava/nio/ByteBuffer;IIZIIII)I
+ */
+JNIEXPORT jint JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1send_1direct
+    (JNIEnv *env, jclass clazz, jlong ptr, jobject data, jint off, jint len,
+        jboolean ordered, jint sid, jint ppid, jint prPolicy, jint prValue)
+{
+    /* direct buffers are handed to usrsctp in place, without any copy */
+    jbyte *data_ = (*env)->GetDirectBufferAddress(env, data);
     ssize_t r;  /* returned by usrsctp_sendv */
 
-    data_ = (*env)->GetByteArrayElements(env, data, NULL);
     if (data_)
-    {
-        SctpSocket *sctpSocket;
-        struct sctp_sndinfo sndinfo;
-
-        sctpSocket = (SctpSocket *) (intptr_t) ptr;
-
-        sndinfo.snd_assoc_id = 0;
-        sndinfo.snd_context = 0;
-        sndinfo.snd_flags = 0;
-        if (JNI_FALSE == ordered)
-            sndinfo.snd_flags |= SCTP_UNORDERED;
-        sndinfo.snd_ppid = htonl(ppid);
-        sndinfo.snd_sid = sid;
-
-        r
-            = usrsctp_sendv(
-                    sctpSocket->so,
-                    data_ + off,
-                    len,
-                    /* to */ NULL,
-                    /* addrcnt */ 0,
-                    &sndinfo,
-                    (socklen_t) sizeof(sndinfo),
-                    SCTP_SENDV_SNDINFO,
-                    /* flags */ 0);
-        (*env)->ReleaseByteArrayElements(env, data, data_, JNI_ABORT);
-    }
+        r = Sctp_sendv((SctpSocket *) (intptr_t) ptr, data_ + off, len, ordered, sid, ppid,
+                        JNI_TRUE, prPolicy, prValue);
     else
-    {
         r = -1;
-    }
-    if (r < 0)
+    /* a full send buffer is reported to Java, see usrsctp_wait_writable */
+    if (r < 0 && errno != EWOULDBLOCK && errno != EAGAIN)
         perror("Sctp send error: ");
     return (jint) r;
 }
 
 /*
  * Class:     net_sctp4nat_origin_Sctp
- * Method:    usrsctp_socket
- * Signature: (I)J
+ * Method:    usrsctp_msg_eor
+ * Signature: ()I
  */
-JNIEXPORT jlong JNICALL
-Java_net_sctp4nat_origin_Sctp_usrsctp_1socket
-    (JNIEnv *env, jclass clazz, jint localPort)
+JNIEXPORT jint JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1msg_1eor
+    (JNIEnv *env, jclass clazz)
+{
+    /* differs between the platforms, e.g. 0x80 on Linux */
+    return MSG_EOR;
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_send_part
+ * Signature: (JLjava/nio/ByteBuffer;IIZIIZ)I
+ */
+JNIEXPORT jint JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1send_1part
+    (JNIEnv *env, jclass clazz, jlong ptr, jobject data, jint off, jint len,
+        jboolean ordered, jint sid, jint ppid, jboolean eor)
+{
+    SctpSocket *sctpSocket = (SctpSocket *) (intptr_t) ptr;
+    jbyte *data_ = (*env)->GetDirectBufferAddress(env, data);
+    ssize_t r;  /* returned by usrsctp_sendv */
+
+    if (!data_)
+        return -1;
+
+    /*
+     * SCTP_EXPLICIT_EOR is only enabled on sockets, which stream a message,
+     * since usrsctp holds back the parts of incomplete messages. All other
+     * sends set SCTP_EOR, so they stay complete messages.
+     */
+    if (!sctpSocket->explicitEor)
+    {
+        int on = 1;
+
+        if (usrsctp_setsockopt(sctpSocket->so, IPPROTO_SCTP, SCTP_EXPLICIT_EOR,
+                               &on, sizeof(on)))
+        {
+            perror("Failed to set SCTP_EXPLICIT_EOR.");
+            sctpSocket->sendErrno = errno;
+            return -1;
+        }
+        sctpSocket->explicitEor = 1;
+    }
+
+    r = Sctp_sendv(sctpSocket, data_ + off, len, ordered, sid, ppid, eor,
+                   SCTP_PR_SCTP_NONE, 0);
+    /* a full send buffer is reported to Java, see usrsctp_wait_writable */
+    if (r < 0 && errno != EWOULDBLOCK && errno != EAGAIN)
+        perror("Sctp send error: ");
+    /*
+     * With SCTP_EXPLICIT_EOR, usrsctp takes as much of a part as fits into
+     * the send buffer, so a short send means, that the buffer is full.
+     */
+    else if (r >= 0 && r < len)
+        sctpSocket->sendErrno = EWOULDBLOCK;
+    return (jint) r;
+}
+
+/*
+ * Creates the SctpSocket for localPort. If interleaving is set, it announces
+ * I-DATA in the handshake.
+ */
+static jlong
+Sctp_socket(jint localPort, jboolean interleaving)
 {
     SctpSocket *sctpSocket;
     struct socket *so;
@@ -352,7 +1473,7 @@ Java_net_sctp4nat_origin_Sctp_usrsctp_1socket
 
     struct sctp_event ev;
 
-    sctpSocket = malloc(sizeof(SctpSocket));
+    sctpSocket = calloc(1, sizeof(SctpSocket));
     if (sctpSocket == NULL)
     {
         perror("Out of memory!");
@@ -369,8 +1490,12 @@ Java_net_sctp4nat_origin_Sctp_usrsctp_1socket
                 SOCK_STREAM,
                 IPPROTO_SCTP,
                 onSctpInboundPacket,
-                /* send_cb */ NULL,
-                /* sb_threshold */ 0,
+                onSctpSendBufferFree,
+                /*
+                 * The threshold of each socket is checked in
+                 * onSctpSendBufferFree, since usrsctp fixes it here.
+                 */
+                /* sb_threshold */ 1,
                 sctpSocket);
     if (so == NULL)
     {
@@ -436,6 +1561,32 @@ Java_net_sctp4nat_origin_Sctp_usrsctp_1socket
         return 0;
     }
 
+    // I-DATA (RFC 8260) is announced in the INIT, so it is set before the
+    // handshake. usrsctp requires fragment and stream interleaving for it.
+    if (interleaving == JNI_TRUE)
+    {
+        int level = SCTP_FRAG_LEVEL_2;
+        struct sctp_assoc_value idata;
+
+        if (usrsctp_setsockopt(so, IPPROTO_SCTP, SCTP_FRAGMENT_INTERLEAVE,
+                               &level, sizeof(level)))
+        {
+            perror("Failed to set SCTP_FRAGMENT_INTERLEAVE.");
+            free(sctpSocket);
+            return 0;
+        }
+        memset(&idata, 0, sizeof(idata));
+        idata.assoc_id = SCTP_FUTURE_ASSOC;
+        idata.assoc_value = 1;
+        if (usrsctp_setsockopt(so, IPPROTO_SCTP, SCTP_INTERLEAVING_SUPPORTED,
+                               &idata, sizeof(idata)))
+        {
+            perror("Failed to set SCTP_INTERLEAVING_SUPPORTED.");
+            free(sctpSocket);
+            return 0;
+        }
+    }
+
     // Subscribe to SCTP events.
     eventTypeCount = sizeof(SCTP_EVENT_TYPES) / sizeof(int);
     memset(&ev, 0, sizeof(ev));
@@ -455,16 +1606,44 @@ Java_net_sctp4nat_origin_Sctp_usrsctp_1socket
 
     sctpSocket->so = so;
     sctpSocket->localPort = (int) localPort;
+    SCTP_LOCK_INIT(&sctpSocket->in.lock);
+    SCTP_LOCK_INIT(&sctpSocket->notification.lock);
+    SCTP_LOCK_INIT(&sctpSocket->out.lock);
 
     return (jlong) (intptr_t) sctpSocket;
 }
 
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_socket
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1socket
+    (JNIEnv *env, jclass clazz, jint localPort)
+{
+    return Sctp_socket(localPort, JNI_FALSE);
+}
+
+/*
+ * Class:     net_sctp4nat_origin_Sctp
+ * Method:    usrsctp_socket_interleaving
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL
+Java_net_sctp4nat_origin_Sctp_usrsctp_1socket_1interleaving
+    (JNIEnv *env, jclass clazz, jint localPort)
+{
+    return Sctp_socket(localPort, JNI_TRUE);
+}
+
 JNIEXPORT jint JNICALL
 JNI_OnLoad(JavaVM *vm, void *reserved)
 {
     JNIEnv *env;
     jint r = JNI_EVERSION;
 
+    SCTP_LOCK_INIT(&Sctp_writableLock);
     if ((*vm)->AttachCurrentThreadAsDaemon(vm, (void **) &env, /* args */ NULL)
             == JNI_OK)
     {
@@ -488,6 +1667,44 @@ JNI_OnLoad(JavaVM *vm, void *reserved)
                             "onSctpOutboundPacket",
                             "(J[BII)I");
 
+                jclass socketClazz = (*env)->FindClass(env, SCTP_SOCKET_CLASSNAME);
+
+                if (socketClazz)
+                {
+                    /* optional, inbound messages fall back to byte[] without it */
+                    SctpSocket_receiveDirectCb
+                        = (*env)->GetMethodID(
+                                env,
+                                socketClazz,
+                                "onSctpInboundDirect",
+                                "(Ljava/nio/ByteBuffer;IIIIJII)V");
+                    (*env)->ExceptionClear(env);
+                    /* optional, notifications fall back to byte[] without it */
+                    SctpSocket_notificationDirectCb
+                        = (*env)->GetMethodID(
+                                env,
+                                socketClazz,
+                                "onSctpNotificationDirect",
+                                "(Ljava/nio/ByteBuffer;II)V");
+                    (*env)->ExceptionClear(env);
+                    SctpSocket_sendDirectCb
+                        = (*env)->GetMethodID(
+                                env,
+                                socketClazz,
+                                "onSctpOutboundDirect",
+                                "(Ljava/nio/ByteBuffer;III)I");
+                    (*env)->ExceptionClear(env);
+                    /* optional, the send buffer is not tracked without it */
+                    SctpSocket_writableCb
+                        = (*env)->GetMethodID(
+                                env,
+                                socketClazz,
+                                "onSctpWritable",
+                                "(I)V");
+                    (*env)->DeleteLocalRef(env, socketClazz);
+                }
+                (*env)->ExceptionClear(env);
+
                 if (sendCb)
                 {
                     clazz = (*env)->NewGlobalRef(env, clazz);
@@ -514,6 +1731,9 @@ JNI_OnUnload(JavaVM *vm, void *reserved)
     Sctp_clazz = 0;
     Sctp_receiveCb = 0;
     Sctp_sendCb = 0;
+    SctpSocket_receiveDirectCb = 0;
+    SctpSocket_sendDirectCb = 0;
+    SctpSocket_writableCb = 0;
     Sctp_vm = NULL;
 
     if (clazz)
@@ -538,6 +1758,88 @@ callOnSctpInboundPacket
 {
     JavaVM *vm = Sctp_vm;
     JNIEnv *env;
+    SctpSocket *sctpSocket = (SctpSocket *) socketPtr;
+
+    /*
+     * Notifications, which fit into the registered notification buffer of the
+     * socket, are written there and parsed in place by the Java SctpSocket.
+     * The buffer is not replaced while it is in use.
+     */
+    if (vm
+            && (flags & MSG_NOTIFICATION)
+            && sctpSocket
+            && sctpSocket->notification.address
+            && (*vm)->AttachCurrentThreadAsDaemon(
+                    vm,
+                    (void **) &env,
+                    /* args */ NULL)
+                == JNI_OK
+            && SCTP_TRY_ACQUIRE(&sctpSocket->notification.busy))
+    {
+        SctpDirectBuffer *b = &sctpSocket->notification;
+        int delivered = 0;
+
+        if (b->address && length <= b->capacity)
+        {
+            memcpy(b->address, data, length);
+            (*env)->CallVoidMethod(
+                    env,
+                    sctpSocket->javaSocket,
+                    SctpSocket_notificationDirectCb,
+                    b->buffer,
+                    (jint) length,
+                    (jint) flags);
+            /* see below */
+            (*env)->ExceptionClear(env);
+            delivered = 1;
+        }
+        SctpDirectBuffer_release(env, b);
+        if (delivered)
+            return;
+    }
+
+    /*
+     * Messages, which fit into the registered direct buffer of the socket, are
+     * written there and the Java SctpSocket is called with the buffer and
+     * primitives only. The buffer is not replaced while it is in use.
+     */
+    if (vm
+            && !(flags & MSG_NOTIFICATION)
+            && sctpSocket
+            && sctpSocket->in.address
+            && (*vm)->AttachCurrentThreadAsDaemon(
+                    vm,
+                    (void **) &env,
+                    /* args */ NULL)
+                == JNI_OK
+            && SCTP_TRY_ACQUIRE(&sctpSocket->in.busy))
+    {
+        SctpDirectBuffer *b = &sctpSocket->in;
+        int delivered = 0;
+
+        if (b->address && length <= b->capacity)
+        {
+            memcpy(b->address, data, length);
+            (*env)->CallVoidMethod(
+                    env,
+                    sctpSocket->javaSocket,
+                    SctpSocket_receiveDirectCb,
+                    b->buffer,
+                    (jint) length,
+                    (jint) sid,
+                    (jint) ssn,
+                    (jint) tsn,
+                    (jlong) ntohl(ppid),
+                    (jint) context,
+                    (jint) flags);
+            /* see below */
+            (*env)->ExceptionClear(env);
+            delivered = 1;
+        }
+        SctpDirectBuffer_release(env, b);
+        if (delivered)
+            return;
+    }
 
     if (vm
             && (*vm)->AttachCurrentThreadAsDaemon(
@@ -601,6 +1903,60 @@ callOnSctpInboundPacket
     }
 }
 
+/*
+ * Called by usrsctp on every SACK, which leaves at least sb_threshold bytes
+ * free in the send buffer of so. The Java SctpSocket is only called, if it
+ * waits in Sctp_writableSockets and its own threshold is reached.
+ */
+static int
+onSctpSendBufferFree(struct socket *so, uint32_t sb_free)
+{
+    JavaVM *vm = Sctp_vm;
+    JNIEnv *env;
+    SctpSocket * volatile *p;
+    jobject javaSocket = NULL;
+
+    /* usually, nobody waits and the SACK is not reported at all */
+    if (!Sctp_writableSockets || !vm)
+        return 1;
+    if ((*vm)->AttachCurrentThreadAsDaemon(vm, (void **) &env, /* args */ NULL)
+            != JNI_OK)
+        return 1;
+
+    SCTP_LOCK(&Sctp_writableLock);
+    for (p = &Sctp_writableSockets; *p; p = &(*p)->nextWritable)
+    {
+        SctpSocket *sctpSocket = *p;
+
+        if (sctpSocket->so == so)
+        {
+            if (sb_free >= sctpSocket->writableThreshold)
+            {
+                *p = sctpSocket->nextWritable;
+                sctpSocket->nextWritable = NULL;
+                sctpSocket->writableArmed = 0;
+                /* stays valid, even if the socket is closed before the call */
+                javaSocket = (*env)->NewLocalRef(env, sctpSocket->javaSocket);
+            }
+            break;
+        }
+    }
+    SCTP_UNLOCK(&Sctp_writableLock);
+
+    if (javaSocket)
+    {
+        (*env)->CallVoidMethod(
+                env,
+                javaSocket,
+                SctpSocket_writableCb,
+                (jint) sb_free);
+        /* see callOnSctpInboundPacket */
+        (*env)->ExceptionClear(env);
+        (*env)->DeleteLocalRef(env, javaSocket);
+    }
+    return 1;
+}
+
 int
 callOnSctpOutboundPacket
     (void *socketPtr, void *data, size_t length, uint8_t tos, uint8_t set_df)
@@ -608,6 +1964,46 @@ callOnSctpOutboundPacket
     JavaVM *vm = Sctp_vm;
     JNIEnv *env;
     jint r = -1;
+    SctpSocket *sctpSocket = (SctpSocket *) socketPtr;
+
+    /*
+     * Packets, which fit into the registered direct buffer of the socket, are
+     * written there and the Java SctpSocket is called with the buffer and
+     * primitives only. The buffer is not replaced while it is in use.
+     */
+    if (vm
+            && sctpSocket
+            && sctpSocket->out.address
+            && (*vm)->AttachCurrentThreadAsDaemon(
+                    vm,
+                    (void **) &env,
+                    /* args */ NULL)
+                == JNI_OK
+            && SCTP_TRY_ACQUIRE(&sctpSocket->out.busy))
+    {
+        SctpDirectBuffer *b = &sctpSocket->out;
+        int delivered = 0;
+
+        if (b->address && length <= b->capacity)
+        {
+            memcpy(b->address, data, length);
+            r
+                = (*env)->CallIntMethod(
+                        env,
+                        sctpSocket->javaSocket,
+                        SctpSocket_sendDirectCb,
+                        b->buffer,
+                        (jint) length,
+                        (jint) tos,
+                        (jint) set_df);
+            /* see below */
+            (*env)->ExceptionClear(env);
+            delivered = 1;
+        }
+        SctpDirectBuffer_release(env, b);
+        if (delivered)
+            return r;
+    }
 
     if (vm
             && (*vm)->AttachCurrentThreadAsDaemon(
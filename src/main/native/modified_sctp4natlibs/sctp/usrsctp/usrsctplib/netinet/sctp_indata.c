@@ -1166,14 +1166,17 @@ done_un:
 #endif
 				SCTP_STAT_INCR_COUNTER64(sctps_reasmusrmsgs);
 				TAILQ_REMOVE(&strm->inqueue, control, next_instrm);
-				if (asoc->size_on_all_streams >= control->length) {
-					asoc->size_on_all_streams -= control->length;
-				} else {
+				/* a partially delivered message is accounted in the socket buffer */
+				if (control->on_read_q == 0) {
+					if (asoc->size_on_all_streams >= control->length) {
+						asoc->size_on_all_streams -= control->length;
+					} else {
 #ifdef INVARIANTS
-					panic("size_on_all_streams = %u smaller than control length %u", asoc->size_on_all_streams, control->length);
+						panic("size_on_all_streams = %u smaller than control length %u", asoc->size_on_all_streams, control->length);
 #else
-					asoc->size_on_all_streams = 0;
+						asoc->size_on_all_streams = 0;
 #endif
+					}
 				}
 				sctp_ucount_decr(asoc->cnt_on_all_streams);
 				control->on_strm_q = 0;
@@ -1245,6 +1248,17 @@ deliver_more:
 			}
 			done = (control->end_added) && (control->last_frag_seen);
 			if (control->on_read_q == 0) {
+				if (!done) {
+					/*
+					 * The partial delivery starts. From now on,
+					 * the socket buffer accounts for the data.
+					 */
+					if (asoc->size_on_all_streams >= control->length) {
+						asoc->size_on_all_streams -= control->length;
+					} else {
+						asoc->size_on_all_streams = 0;
+					}
+				}
 				sctp_add_to_readq(stcb->sctp_ep, stcb,
 						  control,
 						  &stcb->sctp_socket->so_rcv, control->end_added,
@@ -1318,14 +1332,17 @@ sctp_add_chk_to_control(struct sctp_queued_to_read *control,
 			} else if (control->on_strm_q == SCTP_ON_ORDERED) {
 				/* Ordered */
 				TAILQ_REMOVE(&strm->inqueue, control, next_instrm);
-				if (asoc->size_on_all_streams >= control->length) {
-					asoc->size_on_all_streams -= control->length;
-				} else {
+				/* a partially delivered message is accounted in the socket buffer */
+				if (control->on_read_q == 0) {
+					if (asoc->size_on_all_streams >= control->length) {
+						asoc->size_on_all_streams -= control->length;
+					} else {
 #ifdef INVARIANTS
-					panic("size_on_all_streams = %u smaller than control length %u", asoc->size_on_all_streams, control->length);
+						panic("size_on_all_streams = %u smaller than control length %u", asoc->size_on_all_streams, control->length);
 #else
-					asoc->size_on_all_streams = 0;
+						asoc->size_on_all_streams = 0;
 #endif
+					}
 				}
 				sctp_ucount_decr(asoc->cnt_on_all_streams);
 				control->on_strm_q = 0;
@@ -1583,9 +1600,16 @@ sctp_queue_data_for_reasm(struct sctp_tcb *stcb, struct sctp_association *asoc,
 					next_fsn, control->fsn_included);
 				TAILQ_REMOVE(&control->reasm, at, sctp_next);
 				lenadded = sctp_add_chk_to_control(control, strm, stcb, asoc, at, SCTP_READ_LOCK_NOT_HELD);
-				asoc->size_on_all_streams += lenadded;
 				if (control->on_read_q) {
 					do_wakeup = 1;
+				} else {
+					/*
+					 * We only add to the size-on-all-streams
+					 * if its not on the read q. The read q
+					 * flag will cause a sballoc so its accounted
+					 * for there.
+					 */
+					asoc->size_on_all_streams += lenadded;
 				}
 				next_fsn++;
 				if (control->end_added && control->pdapi_started) {
@@ -5471,14 +5495,17 @@ sctp_flush_reassm_for_str_seq(struct sctp_tcb *stcb,
 	}
 	if (control->on_strm_q == SCTP_ON_ORDERED) {
 		TAILQ_REMOVE(&strm->inqueue, control, next_instrm);
-		if (asoc->size_on_all_streams >= control->length) {
-			asoc->size_on_all_streams -= control->length;
-		} else {
+		/* a partially delivered message is accounted in the socket buffer */
+		if (control->on_read_q == 0) {
+			if (asoc->size_on_all_streams >= control->length) {
+				asoc->size_on_all_streams -= control->length;
+			} else {
 #ifdef INVARIANTS
-			panic("size_on_all_streams = %u smaller than control length %u", asoc->size_on_all_streams, control->length);
+				panic("size_on_all_streams = %u smaller than control length %u", asoc->size_on_all_streams, control->length);
 #else
-			asoc->size_on_all_streams = 0;
+				asoc->size_on_all_streams = 0;
 #endif
+			}
 		}
 		sctp_ucount_decr(asoc->cnt_on_all_streams);
 		control->on_strm_q = 0;
@@ -5689,14 +5716,17 @@ sctp_handle_forward_tsn(struct sctp_tcb *stcb,
 					control->end_added = 1;
 					if (control->on_strm_q == SCTP_ON_ORDERED) {
 						TAILQ_REMOVE(&strm->inqueue, control, next_instrm);
-						if (asoc->size_on_all_streams >= control->length) {
-							asoc->size_on_all_streams -= control->length;
-						} else {
+						/* a partially delivered message is accounted in the socket buffer */
+						if (control->on_read_q == 0) {
+							if (asoc->size_on_all_streams >= control->length) {
+								asoc->size_on_all_streams -= control->length;
+							} else {
 #ifdef INVARIANTS
-							panic("size_on_all_streams = %u smaller than control length %u", asoc->size_on_all_streams, control->length);
+								panic("size_on_all_streams = %u smaller than control length %u", asoc->size_on_all_streams, control->length);
 #else
-							asoc->size_on_all_streams = 0;
+								asoc->size_on_all_streams = 0;
 #endif
+							}
 						}
 						sctp_ucount_decr(asoc->cnt_on_all_streams);
 					} else if (control->on_strm_q == SCTP_ON_UNORDERED) {
@@ -4420,6 +4420,25 @@ sctp_getopt(struct socket *so, int optname, void *optval, size_t *optsize,
 	return (error);
 }
 
+/*
+ * Replaces the stream scheduler of an association. The per stream state of
+ * the new scheduler (e.g. the priority) shares its memory with the one of the
+ * old scheduler, so it is initialized before the queued streams are added.
+ */
+static void
+sctp_ss_switch(struct sctp_tcb *stcb, uint32_t module)
+{
+	uint16_t i;
+
+	stcb->asoc.ss_functions.sctp_ss_clear(stcb, &stcb->asoc, 1, 1);
+	stcb->asoc.ss_functions = sctp_ss_functions[module];
+	stcb->asoc.stream_scheduling_module = module;
+	for (i = 0; i < stcb->asoc.streamoutcnt; i++) {
+		stcb->asoc.ss_functions.sctp_ss_init_stream(stcb, &stcb->asoc.strmout[i], NULL);
+	}
+	stcb->asoc.ss_functions.sctp_ss_init(stcb, &stcb->asoc, 1);
+}
+
 #if defined(__Panda__) || defined(__Userspace__)
 int
 #else
@@ -4751,10 +4770,7 @@ sctp_setopt(struct socket *so, int optname, void *optval, size_t optsize,
 		}
 		SCTP_FIND_STCB(inp, stcb, av->assoc_id);
 		if (stcb) {
-			stcb->asoc.ss_functions.sctp_ss_clear(stcb, &stcb->asoc, 1, 1);
-			stcb->asoc.ss_functions = sctp_ss_functions[av->assoc_value];
-			stcb->asoc.stream_scheduling_module = av->assoc_value;
-			stcb->asoc.ss_functions.sctp_ss_init(stcb, &stcb->asoc, 1);
+			sctp_ss_switch(stcb, av->assoc_value);
 			SCTP_TCB_UNLOCK(stcb);
 		} else {
 			if ((inp->sctp_flags & SCTP_PCB_FLAGS_TCPTYPE) ||
@@ -4770,10 +4786,7 @@ sctp_setopt(struct socket *so, int optname, void *optval, size_t optsize,
 				SCTP_INP_RLOCK(inp);
 				LIST_FOREACH(stcb, &inp->sctp_asoc_list, sctp_tcblist) {
 					SCTP_TCB_LOCK(stcb);
-					stcb->asoc.ss_functions.sctp_ss_clear(stcb, &stcb->asoc, 1, 1);
-					stcb->asoc.ss_functions = sctp_ss_functions[av->assoc_value];
-					stcb->asoc.stream_scheduling_module = av->assoc_value;
-					stcb->asoc.ss_functions.sctp_ss_init(stcb, &stcb->asoc, 1);
+					sctp_ss_switch(stcb, av->assoc_value);
 					SCTP_TCB_UNLOCK(stcb);
 				}
 				SCTP_INP_RUNLOCK(inp);
@@ -0,0 +1,160 @@
+package connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdeferred.DoneCallback;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import core.Loopback;
+import net.sctp4nat.connection.NioUdpServerLink;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.core.SctpMapper;
+import net.sctp4nat.core.SctpPorts;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.DirectBufferPool;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpUtils;
+
+public class NioUdpServerLinkTest {
+
+	private static final int TIMEOUT = 30;
+	private static final int PACKETS = 10000;
+	private static final String TEST_STR = "Hello World!";
+	private static final Logger LOG = LoggerFactory.getLogger(NioUdpServerLinkTest.class);
+
+	/**
+	 * Feeds datagrams into a {@link NioUdpServerLink}, whose remote endpoint is
+	 * already known by the {@link SctpMapper}. Each packet must reach the
+	 * {@link SctpChannel} unchanged and all buffers must be back in the pool
+	 * afterwards.
+	 */
+	@Test
+	public void receiveTest() throws Exception {
+		InetAddress localHost = InetAddress.getByName("127.0.0.1");
+		DatagramChannel sender = DatagramChannel.open();
+		sender.bind(new InetSocketAddress(localHost, 0));
+		InetSocketAddress senderAddress = (InetSocketAddress) sender.getLocalAddress();
+
+		final CountDownLatch received = new CountDownLatch(PACKETS);
+		final AtomicInteger corrupt = new AtomicInteger();
+		SctpChannel channel = Mockito.mock(SctpChannel.class);
+		Mockito.doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+				if (!buffer.isDirect() || buffer.remaining() != 4
+						|| buffer.getInt(buffer.position()) != PACKETS - received.getCount()) {
+					corrupt.incrementAndGet();
+				}
+				received.countDown();
+				return null;
+			}
+		}).when(channel).onConnIn(Mockito.any(ByteBuffer.class));
+
+		SctpMapper mapper = new SctpMapper();
+		mapper.register(senderAddress, channel);
+
+		DirectBufferPool pool = new DirectBufferPool(NioUdpServerLink.UDP_DEFAULT_BUFFER_SIZE, 4);
+		int port = SctpPorts.getInstance().generateDynPort();
+		NioUdpServerLink link = new NioUdpServerLink(mapper, localHost, port, null, pool);
+		InetSocketAddress linkAddress = new InetSocketAddress(localHost, port);
+
+		long start = System.nanoTime();
+		ByteBuffer packet = ByteBuffer.allocateDirect(4);
+		for (int i = 0; i < PACKETS; i++) {
+			packet.clear();
+			packet.putInt(i).flip();
+			sender.send(packet, linkAddress);
+			// keep the socket buffer from overflowing on slow machines
+			long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+			while (i + 1 - (PACKETS - received.getCount()) > 64 && System.currentTimeMillis() < deadline) {
+				Thread.yield();
+			}
+		}
+		assertTrue(received.await(TIMEOUT, TimeUnit.SECONDS));
+		LOG.info("{} packets received in {} ms", PACKETS, (System.nanoTime() - start) / 1000000);
+
+		assertEquals(0, corrupt.get());
+
+		// the pending receive holds a buffer until the link is closed
+		link.close();
+		sender.close();
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (pool.available() < 4 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(4, pool.available());
+		SctpUtils.setLink(null);
+	}
+
+	@Test
+	public void sctpChannelTest() throws Exception {
+		final CountDownLatch comCd = new CountDownLatch(2);
+		final CountDownLatch shutdownCd = new CountDownLatch(1);
+		InetAddress localHost = InetAddress.getByName("127.0.0.1");
+
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				LOG.debug("SERVER GOT DATA: " + new String(data, StandardCharsets.UTF_8));
+				assertEquals(TEST_STR, new String(data, StandardCharsets.UTF_8));
+				so.send(data, 0, data.length, false, sid, (int) ppid);
+				comCd.countDown();
+			}
+		};
+
+		final SctpDataCallback clientCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				LOG.debug("REPLY SUCCESS");
+				assertEquals(TEST_STR, new String(data, StandardCharsets.UTF_8));
+				comCd.countDown();
+				so.close().done(new DoneCallback<Object>() {
+
+					@Override
+					public void onDone(Object result) {
+						shutdownCd.countDown();
+					}
+				});
+			}
+		};
+
+		SctpChannelFacade client = Loopback.connect(serverCb, SctpInitOptions.builder().nioLink(true).build(),
+				SctpConnection.builder());
+		assertTrue(SctpUtils.getLink() instanceof NioUdpServerLink);
+		client.setSctpDataCallback(clientCb);
+		client.send(TEST_STR.getBytes(), false, 0, 0);
+
+		if (!comCd.await(TIMEOUT, TimeUnit.SECONDS)) {
+			fail("communication error");
+		}
+		if (!shutdownCd.await(TIMEOUT, TimeUnit.SECONDS)) {
+			fail("client could not close");
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+}
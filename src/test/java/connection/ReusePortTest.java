@@ -0,0 +1,180 @@
+package connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jdeferred.DoneCallback;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import core.Loopback;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.connection.UdpServerLink;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.core.SctpMapper;
+import net.sctp4nat.core.SctpPorts;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.ReusePort;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpUtils;
+
+public class ReusePortTest {
+
+	private static final int TIMEOUT = 30;
+	private static final int SHARDS = 4;
+	private static final int REMOTES = 32;
+	private static final int PACKETS_PER_REMOTE = 50;
+	private static final String TEST_STR = "Hello World!";
+	private static final Logger LOG = LoggerFactory.getLogger(ReusePortTest.class);
+
+	@Test
+	public void openTest() throws Exception {
+		InetSocketAddress local = new InetSocketAddress(InetAddress.getByName("127.0.0.1"),
+				SctpPorts.getInstance().generateDynPort());
+
+		DatagramChannel[] channels = ReusePort.open(local, SHARDS);
+		assertEquals(ReusePort.isSupported() ? SHARDS : 1, channels.length);
+		for (DatagramChannel channel : channels) {
+			assertEquals(local, channel.getLocalAddress());
+			channel.close();
+		}
+
+		channels = ReusePort.open(local, 1);
+		assertEquals(1, channels.length);
+		channels[0].close();
+	}
+
+	/**
+	 * Every remote endpoint must always be served by the same receive thread
+	 * (shard), while all shards together receive every packet.
+	 */
+	@Test
+	public void shardedReceiveTest() throws Exception {
+		InetAddress localHost = InetAddress.getByName("127.0.0.1");
+		final CountDownLatch received = new CountDownLatch(REMOTES * PACKETS_PER_REMOTE);
+		final Map<InetSocketAddress, Set<Thread>> threadsPerRemote = new ConcurrentHashMap<>();
+
+		SctpMapper mapper = new SctpMapper();
+		List<DatagramSocket> senders = new ArrayList<>();
+		for (int i = 0; i < REMOTES; i++) {
+			DatagramSocket sender = new DatagramSocket(0, localHost);
+			final InetSocketAddress remote = (InetSocketAddress) sender.getLocalSocketAddress();
+			threadsPerRemote.put(remote, ConcurrentHashMap.<Thread> newKeySet());
+
+			SctpChannel channel = Mockito.mock(SctpChannel.class);
+			Mockito.doAnswer(new Answer<Void>() {
+
+				@Override
+				public Void answer(InvocationOnMock invocation) throws Throwable {
+					threadsPerRemote.get(remote).add(Thread.currentThread());
+					received.countDown();
+					return null;
+				}
+			}).when(channel).onConnIn(Mockito.any(byte[].class), Mockito.anyInt(), Mockito.anyInt());
+			mapper.register(remote, channel);
+			senders.add(sender);
+		}
+
+		int port = SctpPorts.getInstance().generateDynPort();
+		UdpServerLink link = new UdpServerLink(mapper, localHost, port, null, SHARDS);
+		assertEquals(ReusePort.isSupportedBySocket() ? SHARDS : 1, link.getReceiveThreads());
+
+		byte[] data = new byte[64];
+		for (int n = 0; n < PACKETS_PER_REMOTE; n++) {
+			for (DatagramSocket sender : senders) {
+				sender.send(new DatagramPacket(data, data.length, localHost, port));
+			}
+			// keep the socket buffers from overflowing on slow machines
+			long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+			while (received.getCount() > (long) (PACKETS_PER_REMOTE - n - 1) * REMOTES + REMOTES
+					&& System.currentTimeMillis() < deadline) {
+				Thread.yield();
+			}
+		}
+		assertTrue(received.await(TIMEOUT, TimeUnit.SECONDS));
+
+		Set<Thread> allThreads = new HashSet<>();
+		for (Set<Thread> threads : threadsPerRemote.values()) {
+			assertEquals(1, threads.size());
+			allThreads.addAll(threads);
+		}
+		LOG.info("{} remotes were served by {} receive threads", REMOTES, allThreads.size());
+		assertTrue(allThreads.size() <= link.getReceiveThreads());
+
+		link.close();
+		for (DatagramSocket sender : senders) {
+			sender.close();
+		}
+		SctpUtils.setLink(null);
+	}
+
+	@Test
+	public void sctpChannelTest() throws Exception {
+		final CountDownLatch comCd = new CountDownLatch(2);
+		final CountDownLatch shutdownCd = new CountDownLatch(1);
+		InetAddress localHost = InetAddress.getByName("127.0.0.1");
+
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				assertEquals(TEST_STR, new String(data, StandardCharsets.UTF_8));
+				so.send(data, 0, data.length, false, sid, (int) ppid);
+				comCd.countDown();
+			}
+		};
+
+		final SctpDataCallback clientCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				assertEquals(TEST_STR, new String(data, StandardCharsets.UTF_8));
+				comCd.countDown();
+				so.close().done(new DoneCallback<Object>() {
+
+					@Override
+					public void onDone(Object result) {
+						shutdownCd.countDown();
+					}
+				});
+			}
+		};
+
+		SctpChannelFacade client = Loopback.connect(serverCb,
+				SctpInitOptions.builder().receiveThreads(SHARDS).build(), SctpConnection.builder());
+		client.setSctpDataCallback(clientCb);
+		client.send(TEST_STR.getBytes(), false, 0, 0);
+
+		if (!comCd.await(TIMEOUT, TimeUnit.SECONDS)) {
+			fail("communication error");
+		}
+		if (!shutdownCd.await(TIMEOUT, TimeUnit.SECONDS)) {
+			fail("client could not close");
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+}
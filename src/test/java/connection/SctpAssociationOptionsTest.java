@@ -0,0 +1,89 @@
+package connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import core.Loopback;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpAssociationOptions;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This test connects a client with custom {@link SctpAssociationOptions} to a
+ * server, whose accepted associations use other options. Both sides must
+ * report their own options and the negotiated stream counts, and the client
+ * must be able to send on a stream beyond the 10 default streams of usrsctp.
+ */
+public class SctpAssociationOptionsTest {
+
+	private static final int TIMEOUT = 10;
+	private static final int STREAMS = 32;
+
+	@Test
+	public void associationOptionsTest() throws Exception {
+		final SctpAssociationOptions serverOptions = SctpAssociationOptions.builder().sendBufferSize(512 * 1024)
+				.receiveBufferSize(512 * 1024).maxInboundStreams(STREAMS).rtoInitial(1000).rtoMin(300).rtoMax(3000)
+				.heartbeatInterval(10000).pathMaxRetransmissions(4).build();
+		final SctpAssociationOptions clientOptions = SctpAssociationOptions.builder().sendBufferSize(256 * 1024)
+				.receiveBufferSize(256 * 1024).outboundStreams(STREAMS).rtoInitial(500).rtoMin(200).rtoMax(2000)
+				.heartbeatInterval(5000).pathMaxRetransmissions(3).build();
+
+		final CountDownLatch received = new CountDownLatch(1);
+		final AtomicInteger receivedSid = new AtomicInteger(-1);
+		final AtomicReference<SctpChannelFacade> server = new AtomicReference<>();
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				server.set(so);
+				receivedSid.set(sid);
+				received.countDown();
+			}
+		};
+
+		SctpChannelFacade client = Loopback.connect(serverCb,
+				SctpInitOptions.builder().associationOptions(serverOptions).build(),
+				SctpConnection.builder().associationOptions(clientOptions));
+
+		// the server requests the 10 default outbound streams of usrsctp
+		SctpAssociationOptions negotiated = client.getAssociationOptions();
+		assertOptions(clientOptions, negotiated);
+		assertEquals(STREAMS, negotiated.getOutboundStreams());
+		assertEquals(10, negotiated.getMaxInboundStreams());
+
+		// stream 31 does not exist with the 10 default streams of usrsctp
+		assertEquals(4, client.sendNow(new byte[] { 1, 2, 3, 4 }, 0, 4, true, STREAMS - 1, 0));
+		assertTrue(received.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(STREAMS - 1, receivedSid.get());
+
+		assertNotNull(server.get());
+		SctpAssociationOptions accepted = server.get().getAssociationOptions();
+		assertOptions(serverOptions, accepted);
+		assertEquals(STREAMS, accepted.getMaxInboundStreams());
+		assertEquals(10, accepted.getOutboundStreams());
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	private static void assertOptions(SctpAssociationOptions expected, SctpAssociationOptions actual) {
+		assertEquals(expected.getSendBufferSize(), actual.getSendBufferSize());
+		assertEquals(expected.getReceiveBufferSize(), actual.getReceiveBufferSize());
+		assertEquals(expected.getRtoInitial(), actual.getRtoInitial());
+		assertEquals(expected.getRtoMin(), actual.getRtoMin());
+		assertEquals(expected.getRtoMax(), actual.getRtoMax());
+		assertEquals(expected.getHeartbeatInterval(), actual.getHeartbeatInterval());
+		assertEquals(expected.getPathMaxRetransmissions(), actual.getPathMaxRetransmissions());
+	}
+}
@@ -1,5 +1,6 @@
 package connection;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -7,9 +8,12 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jdeferred.DoneCallback;
 import org.jdeferred.FailCallback;
@@ -21,9 +25,11 @@ import org.powermock.reflect.Whitebox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.sctp4nat.connection.NioUdpClientLink;
 import net.sctp4nat.connection.SctpConnection;
 import net.sctp4nat.connection.SctpDefaultStreamConfig;
 import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelBuilder;
 import net.sctp4nat.core.SctpChannelFacade;
 import net.sctp4nat.core.SctpMapper;
 import net.sctp4nat.core.SctpPorts;
@@ -138,6 +144,74 @@ public class SctpConnectTest {
 		}
 	}
 
+	/**
+	 * Pending connects must not occupy a control thread while they wait for
+	 * their timeout.
+	 */
+	@Test
+	public void connectTimeoutTest() throws Exception {
+		SctpUtils.init(clientAddr.getAddress(), SctpPorts.getInstance().generateDynPort(), null);
+		final int connects = 50;
+		final long timeout = 1000;
+		final CountDownLatch latch = new CountDownLatch(connects);
+		final AtomicInteger timeouts = new AtomicInteger();
+
+		List<SctpChannel> channels = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int i = 0; i < connects; i++) {
+			// every channel needs its own remote, since the mapper is keyed by the remote
+			InetSocketAddress remote = new InetSocketAddress(serverAddr.getAddress(),
+					SctpPorts.getInstance().generateDynPort());
+			SctpChannel channel = new SctpChannelBuilder().remoteAddress(remote.getAddress())
+					.remotePort(remote.getPort()).localSctpPort(remote.getPort()).mapper(SctpUtils.getMapper())
+					.build();
+			new NioUdpClientLink(new InetSocketAddress(clientAddr.getAddress(), 0), remote, channel);
+			channels.add(channel);
+			channel.connect(remote, timeout, TimeUnit.MILLISECONDS).fail(new FailCallback<Exception>() {
+
+				@Override
+				public void onFail(Exception result) {
+					if (result instanceof TimeoutException) {
+						timeouts.incrementAndGet();
+					}
+					latch.countDown();
+				}
+			});
+		}
+
+		assertEquals(0, SctpUtils.getExecutors().getControlExecutor().getActiveCount());
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(connects, timeouts.get());
+		// the custom timeout is used instead of the default
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(SctpChannel.CONNECT_TIMEOUT_MILLIS));
+
+		final CountDownLatch closed = new CountDownLatch(connects);
+		for (SctpChannel channel : channels) {
+			channel.close().done(new DoneCallback<Object>() {
+
+				@Override
+				public void onDone(Object result) {
+					closed.countDown();
+				}
+			});
+		}
+		assertTrue(closed.await(10, TimeUnit.SECONDS));
+
+		CountDownLatch close = new CountDownLatch(1);
+		Promise<Void, Exception, Void> promise = SctpUtils.shutdownAll();
+		promise.done(new DoneCallback<Void>() {
+
+			@Override
+			public void onDone(Void result) {
+				close.countDown();
+			}
+		});
+
+		if (!close.await(10, TimeUnit.SECONDS)) {
+			fail("Timeout in close");
+		}
+	}
+
 	@Test
 	public void connectFailTest() throws Exception {
 
@@ -22,7 +22,6 @@ import org.slf4j.LoggerFactory;
 import net.sctp4nat.connection.SctpConnection;
 import net.sctp4nat.connection.SctpDefaultStreamConfig;
 import net.sctp4nat.core.SctpChannelFacade;
-import net.sctp4nat.core.SctpMapper;
 import net.sctp4nat.core.SctpPorts;
 import net.sctp4nat.origin.Sctp;
 import net.sctp4nat.origin.SctpDataCallback;
@@ -41,7 +40,7 @@ public class SctpConnectionTest {
 	@Test
 	public void sctpChannelTest() throws InterruptedException {
 
-		SctpMapper.setShutdown(false);
+		SctpUtils.getMapper().setShutdown(false);
 
 		CountDownLatch serverCd = new CountDownLatch(1);
 		CountDownLatch clientCd = new CountDownLatch(1);
@@ -1,6 +1,7 @@
 package connection;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
@@ -21,15 +22,16 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import core.Loopback;
 import net.sctp4nat.connection.SctpConnection;
 import net.sctp4nat.core.SctpChannelFacade;
-import net.sctp4nat.core.SctpMapper;
 import net.sctp4nat.core.SctpPorts;
 import net.sctp4nat.origin.Sctp;
 import net.sctp4nat.origin.SctpAcceptable;
 import net.sctp4nat.origin.SctpDataCallback;
 import net.sctp4nat.origin.SctpNotification;
 import net.sctp4nat.origin.SctpSocket.NotificationListener;
+import net.sctp4nat.util.SctpExecutorOptions;
 import net.sctp4nat.util.SctpInitException;
 import net.sctp4nat.util.SctpUtils;
 
@@ -45,7 +47,7 @@ public class SctpShutdownTest {
 	@Test
 	public void sctpChannelTest() throws InterruptedException {
 
-		SctpMapper.setShutdown(false);
+		SctpUtils.getMapper().setShutdown(false);
 		
 		CountDownLatch serverCd = new CountDownLatch(1);
 		CountDownLatch clientCd = new CountDownLatch(1);
@@ -201,10 +203,40 @@ public class SctpShutdownTest {
 		}
 	}
 	
+	/**
+	 * shutdownAll must complete, although the channels close on the only
+	 * control thread, on which shutdownAll runs, too.
+	 */
+	@Test
+	public void singleControlThreadTest() throws Exception {
+		SctpUtils.configureExecutors(SctpExecutorOptions.builder().controlThreads(1).build());
+		try {
+			SctpDataCallback cb = new SctpDataCallback() {
+
+				@Override
+				public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+						SctpChannelFacade so) {
+				}
+			};
+
+			Loopback.connect(cb);
+
+			Promise<Void, Exception, Void> p = SctpUtils.shutdownAll();
+			p.waitSafely(TIMEOUT * 1000);
+			assertTrue(p.isResolved());
+		} finally {
+			SctpUtils.configureExecutors(SctpExecutorOptions.defaults());
+		}
+	}
+
 	@After
 	public void tearDown() throws IOException {
-		server.interrupt();
-		client.interrupt();
+		if (server != null) {
+			server.interrupt();
+		}
+		if (client != null) {
+			client.interrupt();
+		}
 		SctpUtils.shutdownAll();
 	}
 }
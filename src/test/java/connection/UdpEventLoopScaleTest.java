@@ -0,0 +1,132 @@
+package connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdeferred.AlwaysCallback;
+import org.jdeferred.DoneCallback;
+import org.jdeferred.FailCallback;
+import org.jdeferred.Promise.State;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import core.Benchmarks;
+import core.Loopback;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.connection.UdpEventLoopGroup;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.core.SctpPorts;
+import net.sctp4nat.origin.Sctp;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This test sets up 10k outgoing SCTP associations on loopback. All client
+ * links are serviced by the default {@link UdpEventLoopGroup}, therefore the
+ * number of threads must not depend on the number of associations. It takes
+ * minutes, so it only runs with the benchmarks (see {@link Benchmarks}).
+ */
+public class UdpEventLoopScaleTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(UdpEventLoopScaleTest.class);
+
+	private static final int ASSOCIATIONS = Integer.getInteger("sctp4nat.scale.associations", 10000);
+	// small batches keep every handshake within the connect timeout of SctpChannel
+	private static final int BATCH = 25;
+	private static final int TIMEOUT = 60;
+
+	private Level level;
+
+	@Before
+	public void quiet() {
+		// logging every packet of 10k handshakes would dominate the runtime
+		level = Loopback.quietLogs();
+	}
+
+	@After
+	public void restore() {
+		Loopback.restoreLogs(level);
+	}
+
+	@Test
+	public void manyClientAssociations() throws Exception {
+		Benchmarks.assumeEnabled();
+		InetAddress localHost = InetAddress.getByName("127.0.0.1");
+		SctpUtils.getMapper().setShutdown(false);
+		SctpUtils.init(localHost, SctpPorts.SCTP_TUNNELING_PORT, null);
+		Sctp.getInstance().init();
+
+		InetSocketAddress local = new InetSocketAddress(localHost, 0);
+		InetSocketAddress remote = new InetSocketAddress(localHost, SctpPorts.SCTP_TUNNELING_PORT);
+		final List<SctpChannelFacade> channels = new ArrayList<>();
+		final AtomicInteger failed = new AtomicInteger();
+		int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+		int peakThreads = threadsBefore;
+		long start = System.nanoTime();
+
+		for (int i = 0; i < ASSOCIATIONS; i += BATCH) {
+			int size = Math.min(BATCH, ASSOCIATIONS - i);
+			final CountDownLatch batch = new CountDownLatch(size);
+			for (int j = 0; j < size; j++) {
+				SctpConnection.builder().local(local).remote(remote).eventLoop(true).build().connect(null)
+						.done(new DoneCallback<SctpChannelFacade>() {
+
+							@Override
+							public void onDone(SctpChannelFacade result) {
+								synchronized (channels) {
+									channels.add(result);
+								}
+								batch.countDown();
+							}
+						}).fail(new FailCallback<Exception>() {
+
+							@Override
+							public void onFail(Exception result) {
+								failed.incrementAndGet();
+								batch.countDown();
+							}
+						});
+			}
+			assertTrue(batch.await(TIMEOUT, TimeUnit.SECONDS));
+			peakThreads = Math.max(peakThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+		}
+
+		long millis = (System.nanoTime() - start) / 1000000;
+		LOG.warn("{} associations up in {} ms, {} failed, threads: {} before, {} peak, {} event loop channels",
+				channels.size(), millis, failed.get(), threadsBefore, peakThreads,
+				SctpUtils.getEventLoopGroup().getChannelCount());
+
+		assertEquals(0, failed.get());
+		assertEquals(ASSOCIATIONS, channels.size());
+		assertEquals(ASSOCIATIONS, SctpUtils.getEventLoopGroup().getChannelCount());
+		// one thread per association would add 10k threads
+		assertTrue(peakThreads - threadsBefore < ASSOCIATIONS / 10);
+
+		final CountDownLatch closed = new CountDownLatch(channels.size());
+		for (SctpChannelFacade channel : channels) {
+			channel.close().always(new AlwaysCallback<Object, Exception>() {
+
+				@Override
+				public void onAlways(State state, Object resolved, Exception rejected) {
+					closed.countDown();
+				}
+			});
+		}
+		assertTrue(closed.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(0, SctpUtils.getEventLoopGroup().getChannelCount());
+
+		SctpUtils.shutdownAll().waitSafely(TIMEOUT * 1000);
+	}
+}
@@ -0,0 +1,65 @@
+package connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import org.junit.Test;
+
+import net.sctp4nat.connection.UdpEventLoop;
+
+public class UdpEventLoopTest {
+
+	private static final int TIMEOUT = 30;
+
+	/**
+	 * A channel, which is closed before the loop registered it, must only be
+	 * removed from the channel count once.
+	 */
+	@Test
+	public void channelCountTest() throws Exception {
+		UdpEventLoop loop = new UdpEventLoop();
+		UdpEventLoop.ReadHandler handler = new UdpEventLoop.ReadHandler() {
+
+			@Override
+			public boolean onReadable(ByteBuffer buffer) throws IOException {
+				return false;
+			}
+		};
+
+		DatagramChannel closed = open();
+		DatagramChannel open = open();
+		loop.register(closed, handler);
+		loop.close(closed);
+		loop.close(closed);
+		loop.register(open, handler);
+		assertEquals(1, loop.getChannelCount());
+
+		// the registration of closed fails on the loop thread
+		Thread thread = new Thread(loop, "event-loop-test");
+		thread.start();
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (!open.isRegistered() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertTrue(open.isRegistered());
+		assertEquals(1, loop.getChannelCount());
+
+		loop.close(open);
+		assertEquals(0, loop.getChannelCount());
+		loop.shutdown();
+		thread.join(TIMEOUT * 1000);
+	}
+
+	private static DatagramChannel open() throws IOException {
+		DatagramChannel channel = DatagramChannel.open();
+		channel.configureBlocking(false);
+		channel.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		return channel;
+	}
+}
@@ -0,0 +1,208 @@
+package connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdeferred.DoneCallback;
+import org.jdeferred.FailCallback;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sctp4nat.connection.NetworkLink;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.connection.UdpEventLoop;
+import net.sctp4nat.connection.UdpMultiplexLink;
+import net.sctp4nat.connection.UdpServerLink;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.core.SctpMapper;
+import net.sctp4nat.core.SctpPorts;
+import net.sctp4nat.origin.Sctp;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpUtils;
+
+public class UdpMultiplexLinkTest {
+
+	private static final int TIMEOUT = 30;
+	private static final int SERVERS = 3;
+	private static final String TEST_STR = "Hello World!";
+	private static final Logger LOG = LoggerFactory.getLogger(UdpMultiplexLinkTest.class);
+
+	/**
+	 * Associations to several servers must share one local UDP port, while
+	 * every server still sees its own association.
+	 */
+	@Test
+	public void sharedPortTest() throws Exception {
+		final InetAddress localHost = InetAddress.getByName("127.0.0.1");
+		final CountDownLatch comCd = new CountDownLatch(2 * SERVERS);
+		final List<InetSocketAddress> seenByServers = new ArrayList<>();
+
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				assertEquals(TEST_STR, new String(data, StandardCharsets.UTF_8));
+				synchronized (seenByServers) {
+					seenByServers.add(so.getRemote());
+				}
+				so.send(data, 0, data.length, false, sid, (int) ppid);
+				comCd.countDown();
+			}
+		};
+
+		SctpUtils.getMapper().setShutdown(false);
+		SctpUtils.init(localHost, SctpPorts.SCTP_TUNNELING_PORT, serverCb);
+		Sctp.getInstance().init();
+
+		List<UdpServerLink> servers = new ArrayList<>();
+		List<InetSocketAddress> remotes = new ArrayList<>();
+		for (int i = 0; i < SERVERS; i++) {
+			int port = SctpPorts.getInstance().generateDynPort();
+			InetSocketAddress remote = new InetSocketAddress(localHost, port);
+			// every server has its own mapper, as if it ran in a process of its own
+			servers.add(new UdpServerLink(new SctpMapper(), remote, serverCb, new DatagramSocket(port, localHost)));
+			remotes.add(remote);
+		}
+
+		final SctpDataCallback clientCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				assertEquals(TEST_STR, new String(data, StandardCharsets.UTF_8));
+				comCd.countDown();
+			}
+		};
+
+		InetSocketAddress local = new InetSocketAddress(localHost, 0);
+		final List<SctpChannelFacade> clients = new ArrayList<>();
+		for (InetSocketAddress remote : remotes) {
+			SctpConnection.builder().local(local).remote(remote).multiplex(true).build().connect(null)
+					.done(new DoneCallback<SctpChannelFacade>() {
+
+						@Override
+						public void onDone(SctpChannelFacade result) {
+							synchronized (clients) {
+								clients.add(result);
+							}
+							result.setSctpDataCallback(clientCb);
+							result.send(TEST_STR.getBytes(), false, 0, 0);
+						}
+					}).fail(new FailCallback<Exception>() {
+
+						@Override
+						public void onFail(Exception result) {
+							LOG.error("connect failed", result);
+						}
+					});
+		}
+
+		if (!comCd.await(TIMEOUT, TimeUnit.SECONDS)) {
+			fail("communication error");
+		}
+
+		UdpMultiplexLink link = SctpUtils.getMultiplexLink(local);
+		assertNotNull(link.getLocal());
+		assertEquals(SERVERS, link.getAssociationCount());
+		assertEquals(SERVERS, seenByServers.size());
+		for (InetSocketAddress seen : seenByServers) {
+			// every server sees the same local UDP port
+			assertEquals(link.getLocal().getPort(), seen.getPort());
+		}
+
+		// a second association to the same remote can not be demultiplexed
+		try {
+			SctpConnection.builder().local(local).remote(remotes.get(0)).multiplex(true).build().connect(null);
+			fail("duplicate remote must be rejected");
+		} catch (IOException e) {
+			LOG.debug("expected: " + e.getMessage());
+		}
+
+		final CountDownLatch closeCd = new CountDownLatch(clients.size());
+		for (SctpChannelFacade client : clients) {
+			client.close().done(new DoneCallback<Object>() {
+
+				@Override
+				public void onDone(Object result) {
+					closeCd.countDown();
+				}
+			});
+		}
+		assertTrue(closeCd.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(0, link.getAssociationCount());
+		// detaching the associations must not close the shared socket
+		assertNotNull(link.getLocal());
+
+		for (UdpServerLink server : servers) {
+			server.close();
+		}
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	/**
+	 * Of several associations, which attach to the same remote at once, only
+	 * one may win.
+	 */
+	@Test
+	public void concurrentAttachTest() throws Exception {
+		final InetSocketAddress remote = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 9);
+		final UdpMultiplexLink link = new UdpMultiplexLink(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0),
+				new SctpMapper(), new UdpEventLoop());
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicInteger attached = new AtomicInteger();
+		final List<NetworkLink> links = new ArrayList<>();
+
+		for (int i = 0; i < threads; i++) {
+			final SctpChannel so = Mockito.mock(SctpChannel.class);
+			Mockito.when(so.getRemote()).thenReturn(remote);
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						start.await();
+						NetworkLink association = link.attach(so);
+						attached.incrementAndGet();
+						synchronized (links) {
+							links.add(association);
+						}
+					} catch (IOException e) {
+						LOG.debug("expected: " + e.getMessage());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+
+		start.countDown();
+		assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(1, attached.get());
+		assertEquals(1, link.getAssociationCount());
+
+		links.get(0).close();
+		assertEquals(0, link.getAssociationCount());
+		link.close();
+	}
+}
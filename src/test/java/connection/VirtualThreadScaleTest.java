@@ -0,0 +1,153 @@
+package connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdeferred.AlwaysCallback;
+import org.jdeferred.DoneCallback;
+import org.jdeferred.FailCallback;
+import org.jdeferred.Promise.State;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import core.Benchmarks;
+import core.Loopback;
+import net.sctp4nat.connection.UdpClientLink;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelBuilder;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.core.SctpPorts;
+import net.sctp4nat.origin.Sctp;
+import net.sctp4nat.util.SctpExecutorOptions;
+import net.sctp4nat.util.SctpUtils;
+import net.sctp4nat.util.VirtualThreads;
+
+/**
+ * This test sets up 10k idle associations over blocking {@link UdpClientLink}s
+ * (one receive loop each) with virtual threads enabled. The number of platform
+ * threads must not depend on the number of associations. It takes minutes, so
+ * it only runs with the benchmarks (see {@link Benchmarks}). It is skipped on
+ * runtimes without virtual threads (before Java 21).
+ */
+public class VirtualThreadScaleTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadScaleTest.class);
+
+	private static final int ASSOCIATIONS = Integer.getInteger("sctp4nat.scale.associations", 10000);
+	// small batches keep every handshake within the connect timeout of SctpChannel
+	private static final int BATCH = 25;
+	private static final int TIMEOUT = 60;
+	private static final int IDLE_MILLIS = 2000;
+
+	private Level level;
+
+	@Before
+	public void setUp() {
+		Benchmarks.assumeEnabled();
+		Assume.assumeTrue(VirtualThreads.isSupported());
+
+		// logging every packet of 10k handshakes would dominate the runtime
+		level = Loopback.quietLogs();
+
+		SctpUtils.configureExecutors(SctpExecutorOptions.builder().virtualThreads(true)
+				.ioThreads(ASSOCIATIONS + 100).build());
+	}
+
+	@After
+	public void tearDown() {
+		if (level != null) {
+			Loopback.restoreLogs(level);
+			SctpUtils.configureExecutors(SctpExecutorOptions.defaults());
+		}
+	}
+
+	@Test
+	public void manyIdleAssociations() throws Exception {
+		assertTrue(SctpUtils.getExecutors().isVirtualThreads());
+
+		InetAddress localHost = InetAddress.getByName("127.0.0.1");
+		SctpUtils.getMapper().setShutdown(false);
+		SctpUtils.init(localHost, SctpPorts.SCTP_TUNNELING_PORT, null);
+		Sctp.getInstance().init();
+
+		InetSocketAddress local = new InetSocketAddress(localHost, 0);
+		InetSocketAddress remote = new InetSocketAddress(localHost, SctpPorts.SCTP_TUNNELING_PORT);
+		final List<SctpChannelFacade> channels = new ArrayList<>();
+		final AtomicInteger failed = new AtomicInteger();
+		int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+		int peakThreads = threadsBefore;
+		long start = System.nanoTime();
+
+		for (int i = 0; i < ASSOCIATIONS; i += BATCH) {
+			int size = Math.min(BATCH, ASSOCIATIONS - i);
+			final CountDownLatch batch = new CountDownLatch(size);
+			for (int j = 0; j < size; j++) {
+				SctpChannel so = new SctpChannelBuilder().localSctpPort(remote.getPort())
+						.remoteAddress(remote.getAddress()).remotePort(remote.getPort()).mapper(SctpUtils.getMapper())
+						.build();
+				new UdpClientLink(local, remote, so);
+				so.connect(remote).done(new DoneCallback<SctpChannelFacade>() {
+
+					@Override
+					public void onDone(SctpChannelFacade result) {
+						synchronized (channels) {
+							channels.add(result);
+						}
+						batch.countDown();
+					}
+				}).fail(new FailCallback<Exception>() {
+
+					@Override
+					public void onFail(Exception result) {
+						failed.incrementAndGet();
+						batch.countDown();
+					}
+				});
+			}
+			assertTrue(batch.await(TIMEOUT, TimeUnit.SECONDS));
+			peakThreads = Math.max(peakThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+		}
+
+		long millis = (System.nanoTime() - start) / 1000000;
+		Thread.sleep(IDLE_MILLIS);
+		peakThreads = Math.max(peakThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+		int receiveLoops = SctpUtils.getExecutors().getIoExecutor().getActiveCount();
+		LOG.warn("{} associations up in {} ms, {} failed, platform threads: {} before, {} peak, {} receive loops",
+				channels.size(), millis, failed.get(), threadsBefore, peakThreads, receiveLoops);
+
+		assertEquals(0, failed.get());
+		assertEquals(ASSOCIATIONS, channels.size());
+		// every client link and the server link block in receive on a virtual thread
+		assertTrue(receiveLoops > ASSOCIATIONS);
+		// one platform thread per receive loop would add 10k threads
+		assertTrue(peakThreads - threadsBefore < ASSOCIATIONS / 10);
+
+		final CountDownLatch closed = new CountDownLatch(channels.size());
+		for (SctpChannelFacade channel : channels) {
+			channel.close().always(new AlwaysCallback<Object, Exception>() {
+
+				@Override
+				public void onAlways(State state, Object resolved, Exception rejected) {
+					closed.countDown();
+				}
+			});
+		}
+		assertTrue(closed.await(TIMEOUT, TimeUnit.SECONDS));
+
+		SctpUtils.shutdownAll().waitSafely(TIMEOUT * 1000);
+	}
+}
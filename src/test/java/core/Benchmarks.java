@@ -0,0 +1,37 @@
+package core;
+
+import org.junit.Assume;
+
+/**
+ * The benchmarks run for a long time and their numbers depend on the
+ * machine, so they are skipped in the unit test run. They run, if the system
+ * property <tt>sctp4nat.benchmarks</tt> or the environment variable
+ * <tt>SCTP4NAT_BENCHMARKS</tt> is set to true, e.g.
+ *
+ * <pre>
+ * SCTP4NAT_BENCHMARKS=true ./gradlew test
+ * </pre>
+ */
+public final class Benchmarks {
+
+	public static final String PROPERTY = "sctp4nat.benchmarks";
+	public static final String ENVIRONMENT = "SCTP4NAT_BENCHMARKS";
+
+	private Benchmarks() {
+	}
+
+	/**
+	 * @return true if the benchmarks are enabled.
+	 */
+	public static boolean isEnabled() {
+		return Boolean.getBoolean(PROPERTY) || Boolean.parseBoolean(System.getenv(ENVIRONMENT));
+	}
+
+	/**
+	 * Skips the calling test, unless the benchmarks are enabled.
+	 */
+	public static void assumeEnabled() {
+		Assume.assumeTrue("benchmarks are disabled, set " + PROPERTY + " or " + ENVIRONMENT + " to true",
+				isEnabled());
+	}
+}
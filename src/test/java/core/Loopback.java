@@ -0,0 +1,104 @@
+package core;
+
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jdeferred.DoneCallback;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.connection.SctpConnection.SctpConnectionBuilder;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.core.SctpPorts;
+import net.sctp4nat.origin.Sctp;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * The fixture of the tests and benchmarks, which need one association on the
+ * loopback interface. The server listens on
+ * {@link SctpPorts#SCTP_TUNNELING_PORT}, the client on a dynamic port. The
+ * association ends with {@link SctpUtils#shutdownAll()}.
+ */
+public final class Loopback {
+
+	public static final int TIMEOUT = 30;
+
+	private Loopback() {
+	}
+
+	/**
+	 * Connects a client to a server with the default options.
+	 *
+	 * @param serverCb
+	 *            receives the messages of the server
+	 * @return the channel of the client
+	 */
+	public static SctpChannelFacade connect(final SctpDataCallback serverCb) throws Exception {
+		return connect(serverCb, SctpInitOptions.defaults(), SctpConnection.builder());
+	}
+
+	/**
+	 * Connects a client to a server.
+	 *
+	 * @param serverCb
+	 *            receives the messages of the server
+	 * @param serverOptions
+	 *            the options of the server
+	 * @param client
+	 *            the options of the client, local and remote are set here
+	 * @return the channel of the client
+	 */
+	public static SctpChannelFacade connect(final SctpDataCallback serverCb, final SctpInitOptions serverOptions,
+			final SctpConnectionBuilder client) throws Exception {
+		InetAddress localHost = InetAddress.getByName("127.0.0.1");
+		SctpUtils.getMapper().setShutdown(false);
+		SctpUtils.init(localHost, SctpPorts.SCTP_TUNNELING_PORT, serverCb, serverOptions);
+		Sctp.getInstance().init();
+
+		final CountDownLatch connected = new CountDownLatch(1);
+		final SctpChannelFacade[] channel = new SctpChannelFacade[1];
+		InetSocketAddress local = new InetSocketAddress(localHost, SctpPorts.getInstance().generateDynPort());
+		InetSocketAddress remote = new InetSocketAddress(localHost, SctpPorts.SCTP_TUNNELING_PORT);
+		client.local(local).remote(remote).build().connect(null).done(new DoneCallback<SctpChannelFacade>() {
+
+			@Override
+			public void onDone(SctpChannelFacade result) {
+				channel[0] = result;
+				connected.countDown();
+			}
+		});
+		assertTrue(connected.await(TIMEOUT, TimeUnit.SECONDS));
+		return channel[0];
+	}
+
+	/**
+	 * Raises the root logger to WARN, so that the debug log does not slow down
+	 * a benchmark.
+	 *
+	 * @return the previous level, see {@link #restoreLogs(Level)}
+	 */
+	public static Level quietLogs() {
+		ch.qos.logback.classic.Logger root = rootLogger();
+		Level level = root.getLevel();
+		root.setLevel(Level.WARN);
+		return level;
+	}
+
+	/**
+	 * Sets the root logger back to level.
+	 */
+	public static void restoreLogs(final Level level) {
+		rootLogger().setLevel(level);
+	}
+
+	private static ch.qos.logback.classic.Logger rootLogger() {
+		return (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+	}
+}
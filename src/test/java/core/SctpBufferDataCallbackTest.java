@@ -0,0 +1,196 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpBufferDataCallback;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.origin.SctpSocket;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * Messages, which fit into the inbound buffer of a socket, must be delivered
+ * as a view on that buffer without allocating an array per message. Larger
+ * messages are still delivered, but via a new array.
+ */
+public class SctpBufferDataCallbackTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpBufferDataCallbackTest.class);
+
+	private static final int TIMEOUT = 30;
+	private static final int MESSAGES = 20000;
+	private static final int MESSAGE_SIZE = 1024;
+	private static final int LARGE_MESSAGE_SIZE = SctpSocket.DEFAULT_INBOUND_BUFFER_SIZE + 1000;
+	private static final int BURST = 100;
+	private static final int SWAP_MESSAGES = 2000;
+	private static final int SWAP_INTERVAL = 7;
+
+	@Test
+	public void directDeliveryTest() throws Exception {
+		Level level = Loopback.quietLogs();
+
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicInteger directViews = new AtomicInteger();
+		final AtomicInteger corrupted = new AtomicInteger();
+		final AtomicLong firstAllocated = new AtomicLong(-1);
+		final AtomicLong lastAllocated = new AtomicLong(-1);
+		final CountDownLatch largeCd = new CountDownLatch(1);
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+
+		class ServerCallback implements SctpDataCallback, SctpBufferDataCallback {
+
+			@Override
+			public void onSctpPacket(ByteBuffer data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade facade) {
+				if (data.remaining() == LARGE_MESSAGE_SIZE) {
+					assertFalse(data.isDirect());
+					largeCd.countDown();
+					return;
+				}
+
+				if (data.remaining() != MESSAGE_SIZE || data.get(data.position()) != (byte) ppid) {
+					corrupted.incrementAndGet();
+				}
+				if (data.isDirect()) {
+					directViews.incrementAndGet();
+				}
+
+				int n = received.incrementAndGet();
+				if (n == MESSAGES / 2) {
+					firstAllocated.set(threads.getThreadAllocatedBytes(Thread.currentThread().getId()));
+				} else if (n == MESSAGES) {
+					lastAllocated.set(threads.getThreadAllocatedBytes(Thread.currentThread().getId()));
+				}
+			}
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade facade) {
+				throw new IllegalStateException("byte[] callback must not be used");
+			}
+		}
+
+		try {
+			SctpChannelFacade client = Loopback.connect(new ServerCallback(),
+					SctpInitOptions.builder().nioLink(true).build(), SctpConnection.builder());
+			SctpSocket socket = ((SctpChannel) client).getSctpSocket();
+
+			byte[] message = new byte[MESSAGE_SIZE];
+			for (int i = 0; i < MESSAGES; i++) {
+				message[0] = (byte) i;
+				assertEquals(MESSAGE_SIZE, socket.sendNative(message, 0, MESSAGE_SIZE, true, 0, i));
+				if (i % BURST == BURST - 1) {
+					awaitReceived(received, i + 1);
+				}
+			}
+			awaitReceived(received, MESSAGES);
+
+			assertEquals(LARGE_MESSAGE_SIZE,
+					socket.sendNative(new byte[LARGE_MESSAGE_SIZE], 0, LARGE_MESSAGE_SIZE, true, 0, 0));
+			assertTrue(largeCd.await(TIMEOUT, TimeUnit.SECONDS));
+
+			double perMessage = (double) (lastAllocated.get() - firstAllocated.get()) / (MESSAGES / 2);
+			LOG.warn("{} messages of {} B received, {} B allocated per message on the receive thread", MESSAGES,
+					MESSAGE_SIZE, String.format("%.1f", perMessage));
+
+			assertEquals(0, corrupted.get());
+			assertEquals(MESSAGES, directViews.get());
+			// a byte[] per message alone would be more than MESSAGE_SIZE
+			assertTrue(perMessage < MESSAGE_SIZE / 4);
+		} finally {
+			Loopback.restoreLogs(level);
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	/**
+	 * A callback, which registers a new inbound buffer while it reads a message
+	 * from the old one, must still see its whole message. The following
+	 * messages are delivered in the new buffer.
+	 */
+	@Test
+	public void swapDuringDeliveryTest() throws Exception {
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicInteger directViews = new AtomicInteger();
+		final AtomicInteger corrupted = new AtomicInteger();
+
+		class SwappingCallback implements SctpDataCallback, SctpBufferDataCallback {
+
+			@Override
+			public void onSctpPacket(ByteBuffer data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade facade) {
+				int n = received.incrementAndGet();
+				if (data.isDirect()) {
+					directViews.incrementAndGet();
+				}
+				if (n % SWAP_INTERVAL == 0) {
+					// alternates between two capacities, so every call allocates a new buffer
+					int size = SctpSocket.DEFAULT_INBOUND_BUFFER_SIZE * (1 + (n / SWAP_INTERVAL) % 2);
+					((SctpChannel) facade).getSctpSocket().setBufferDataCallbackNative(this, size);
+				}
+				if (data.remaining() != MESSAGE_SIZE) {
+					corrupted.incrementAndGet();
+				}
+				while (data.hasRemaining()) {
+					if (data.get() != (byte) ppid) {
+						corrupted.incrementAndGet();
+						return;
+					}
+				}
+			}
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade facade) {
+				throw new IllegalStateException("byte[] callback must not be used");
+			}
+		}
+
+		SctpChannelFacade client = Loopback.connect(new SwappingCallback(),
+				SctpInitOptions.builder().nioLink(true).build(), SctpConnection.builder());
+		SctpSocket socket = ((SctpChannel) client).getSctpSocket();
+
+		byte[] message = new byte[MESSAGE_SIZE];
+		for (int i = 0; i < SWAP_MESSAGES; i++) {
+			Arrays.fill(message, (byte) i);
+			assertEquals(MESSAGE_SIZE, socket.sendNative(message, 0, MESSAGE_SIZE, true, 0, i));
+			if (i % BURST == BURST - 1) {
+				awaitReceived(received, i + 1);
+			}
+		}
+		awaitReceived(received, SWAP_MESSAGES);
+
+		assertEquals(0, corrupted.get());
+		assertEquals(SWAP_MESSAGES, directViews.get());
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	private void awaitReceived(final AtomicInteger received, final int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (received.get() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertTrue(received.get() >= expected);
+	}
+}
@@ -0,0 +1,237 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.Sctp;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.origin.SctpWritabilityCallback;
+import net.sctp4nat.util.SctpEngineProfile;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This benchmark runs every preset of {@link SctpEngineProfile} on a loopback
+ * association and reports the round trip time of small echoed messages and
+ * the throughput of a bulk transfer, which is paced by the
+ * {@link SctpWritabilityCallback}. It only runs with the benchmarks (see
+ * {@link Benchmarks}). The tests check the presets and that the sysctls of a
+ * profile are applied.
+ */
+public class SctpEngineProfileBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpEngineProfileBenchmarkTest.class);
+
+	private static final int TIMEOUT = 30;
+	private static final int PING_SIZE = 64;
+	private static final int PINGS = 2000;
+	private static final int WARMUP_PINGS = 200;
+	private static final int BULK_MESSAGE_SIZE = 16 * 1024;
+	private static final int BULK_MESSAGES = 1024;
+
+	private final AtomicLong received = new AtomicLong();
+	private final Semaphore echoes = new Semaphore(0);
+	private final Semaphore writable = new Semaphore(0);
+
+	@Test
+	public void presetTest() {
+		assertSame(SctpEngineProfile.LOW_LATENCY, SctpEngineProfile.forName("low-latency"));
+		assertSame(SctpEngineProfile.BULK_THROUGHPUT, SctpEngineProfile.forName("bulk-throughput"));
+		assertSame(SctpEngineProfile.MANY_ASSOCIATIONS, SctpEngineProfile.forName("many-associations"));
+		assertSame(SctpEngineProfile.DEFAULT, SctpEngineProfile.forName("default"));
+		try {
+			SctpEngineProfile.forName("fast");
+			fail("unknown preset accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		SctpEngineProfile custom = SctpEngineProfile.LOW_LATENCY.toBuilder().name("custom").heartbeatInterval(2000)
+				.build();
+		assertEquals(2000, custom.getHeartbeatInterval());
+		assertEquals(SctpEngineProfile.LOW_LATENCY.getSackFrequency(), custom.getSackFrequency());
+		assertEquals(SctpEngineProfile.KEEP, custom.getSendSpace());
+
+		for (SctpEngineProfile preset : new SctpEngineProfile[] { SctpEngineProfile.DEFAULT,
+				SctpEngineProfile.LOW_LATENCY, SctpEngineProfile.BULK_THROUGHPUT,
+				SctpEngineProfile.MANY_ASSOCIATIONS, custom }) {
+			preset.validate();
+		}
+		assertInvalid(SctpEngineProfile.builder().rtoMin(500).rtoInitial(200).build());
+		assertInvalid(SctpEngineProfile.builder().rtoInitial(5000).rtoMax(1000).build());
+		assertInvalid(SctpEngineProfile.builder().pcbHashTableSize(0).build());
+		assertInvalid(SctpEngineProfile.builder().maxBurst(-2).build());
+	}
+
+	@Test
+	public void appliedTest() throws Exception {
+		for (SctpEngineProfile profile : new SctpEngineProfile[] { SctpEngineProfile.DEFAULT,
+				SctpEngineProfile.LOW_LATENCY, SctpEngineProfile.BULK_THROUGHPUT,
+				SctpEngineProfile.MANY_ASSOCIATIONS }) {
+			connect(profile);
+			assertApplied(profile, Sctp.getEngineProfile());
+
+			SctpUtils.shutdownAll().waitSafely();
+			assertFalse(Sctp.isInitialized());
+		}
+	}
+
+	@Test
+	public void profileBenchmark() throws Exception {
+		Benchmarks.assumeEnabled();
+		Level level = Loopback.quietLogs();
+
+		try {
+			for (SctpEngineProfile profile : new SctpEngineProfile[] { SctpEngineProfile.DEFAULT,
+					SctpEngineProfile.LOW_LATENCY, SctpEngineProfile.BULK_THROUGHPUT,
+					SctpEngineProfile.MANY_ASSOCIATIONS }) {
+				run(profile);
+			}
+		} finally {
+			Loopback.restoreLogs(level);
+		}
+	}
+
+	private void run(final SctpEngineProfile profile) throws Exception {
+		SctpChannelFacade client = connect(profile);
+		assertApplied(profile, Sctp.getEngineProfile());
+
+		long[] rtts = ping(client);
+		double throughput = bulk(client);
+		LOG.warn("{}: {} B round trip median {} us, p99 {} us; {} B messages {} MB/s", profile.getName(), PING_SIZE,
+				percentile(rtts, 50) / 1000, percentile(rtts, 99) / 1000, BULK_MESSAGE_SIZE,
+				String.format("%.1f", throughput));
+
+		SctpUtils.shutdownAll().waitSafely();
+		assertFalse(Sctp.isInitialized());
+	}
+
+	/**
+	 * @return the round trip time of every ping in ns.
+	 */
+	private long[] ping(final SctpChannelFacade client) throws Exception {
+		byte[] ping = new byte[PING_SIZE];
+		long[] rtts = new long[PINGS];
+		for (int i = -WARMUP_PINGS; i < PINGS; i++) {
+			long start = System.nanoTime();
+			assertEquals(PING_SIZE, client.sendNow(ping, 0, PING_SIZE, true, 0, 0));
+			assertTrue(echoes.tryAcquire(TIMEOUT, TimeUnit.SECONDS));
+			if (i >= 0) {
+				rtts[i] = System.nanoTime() - start;
+			}
+		}
+		return rtts;
+	}
+
+	/**
+	 * @return the throughput in MB/s, until the receiver got all messages.
+	 */
+	private double bulk(final SctpChannelFacade client) throws Exception {
+		byte[] data = new byte[BULK_MESSAGE_SIZE];
+		long expected = received.get() + (long) BULK_MESSAGES * BULK_MESSAGE_SIZE;
+		writable.drainPermits();
+
+		long start = System.nanoTime();
+		int sent = 0;
+		while (sent < BULK_MESSAGES) {
+			if (client.sendNow(data, 0, BULK_MESSAGE_SIZE, true, 0, 0) == BULK_MESSAGE_SIZE) {
+				sent++;
+			} else if (!client.isWritable()) {
+				assertTrue(writable.tryAcquire(TIMEOUT, TimeUnit.SECONDS));
+			} else {
+				// the chunk queue is full, although the send buffer is not
+				Thread.sleep(1);
+			}
+		}
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (received.get() < expected) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("receiver did not get all data");
+			}
+			Thread.sleep(1);
+		}
+		long nanos = System.nanoTime() - start;
+		return (double) BULK_MESSAGES * BULK_MESSAGE_SIZE / (1024 * 1024) / (nanos / 1e9);
+	}
+
+	private static void assertApplied(final SctpEngineProfile profile, final SctpEngineProfile current) {
+		int[] expected = profile.toArray();
+		int[] actual = current.toArray();
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] != SctpEngineProfile.KEEP) {
+				assertEquals(profile.getName() + " sysctl " + i, expected[i], actual[i]);
+			}
+		}
+	}
+
+	private static void assertInvalid(final SctpEngineProfile profile) {
+		try {
+			profile.validate();
+			fail("invalid profile accepted: " + profile);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static long percentile(final long[] values, final int percentile) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+	}
+
+	private SctpChannelFacade connect(final SctpEngineProfile profile) throws Exception {
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				if (data.length == PING_SIZE) {
+					try {
+						so.sendNow(data, 0, data.length, true, sid, (int) ppid);
+					} catch (IOException e) {
+						LOG.error("Could not echo the ping", e);
+					}
+				} else {
+					received.addAndGet(data.length);
+				}
+			}
+		};
+
+		SctpChannelFacade client = Loopback.connect(serverCb,
+				SctpInitOptions.builder().engineProfile(profile).build(), SctpConnection.builder());
+		client.setSctpDataCallback(new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				echoes.release();
+			}
+		});
+		client.setSctpWritabilityCallback(new SctpWritabilityCallback() {
+
+			@Override
+			public void onWritabilityChanged(SctpChannelFacade facade, boolean isWritable, int sendBufferAvailable) {
+				if (isWritable) {
+					writable.release();
+				}
+			}
+		});
+		return client;
+	}
+}
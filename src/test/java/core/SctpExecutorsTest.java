@@ -0,0 +1,160 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jdeferred.Deferred;
+import org.jdeferred.impl.DeferredObject;
+import org.junit.Test;
+
+import net.sctp4nat.util.ExecutorMetrics;
+import net.sctp4nat.util.SctpExecutorOptions;
+import net.sctp4nat.util.SctpExecutors;
+import net.sctp4nat.util.SerialExecutor;
+
+public class SctpExecutorsTest {
+
+	private static final int TIMEOUT = 30;
+
+	/**
+	 * A full send executor must reject further sends and count them.
+	 */
+	@Test
+	public void sendRejectionTest() throws Exception {
+		SctpExecutors executors = new SctpExecutors(
+				SctpExecutorOptions.builder().sendThreads(1).sendQueueSize(1).build());
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+
+		executors.getSendExecutor().execute(blocker(started, release));
+		assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+		executors.getSendExecutor().execute(blocker(new CountDownLatch(1), release));
+		try {
+			executors.getSendExecutor().execute(blocker(new CountDownLatch(1), release));
+			fail("the send executor must be full");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+
+		ExecutorMetrics send = executors.getMetrics().get(2);
+		assertEquals("send", send.getName());
+		assertEquals(1, send.getActiveThreads());
+		assertEquals(1, send.getQueueSize());
+		assertEquals(0, send.getQueueRemainingCapacity());
+		assertEquals(1, send.getRejectedTasks());
+
+		release.countDown();
+		executors.shutdown();
+	}
+
+	/**
+	 * A full control executor must run the task on the submitting thread.
+	 */
+	@Test
+	public void controlCallerRunsTest() throws Exception {
+		SctpExecutors executors = new SctpExecutors(
+				SctpExecutorOptions.builder().controlThreads(1).controlQueueSize(1).build());
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+
+		executors.getControlExecutor().execute(blocker(started, release));
+		assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+		executors.getControlExecutor().execute(blocker(new CountDownLatch(1), release));
+
+		final Thread[] runner = new Thread[1];
+		executors.getControlExecutor().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				runner[0] = Thread.currentThread();
+			}
+		});
+		assertSame(Thread.currentThread(), runner[0]);
+		assertEquals(1, executors.getMetrics().get(1).getRejectedTasks());
+
+		release.countDown();
+		executors.shutdown();
+	}
+
+	/**
+	 * A send mailbox must reject tasks beyond its capacity.
+	 */
+	@Test
+	public void mailboxCapacityTest() throws Exception {
+		SctpExecutors executors = new SctpExecutors(
+				SctpExecutorOptions.builder().sendThreads(1).sendMailboxSize(2).build());
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		SerialExecutor mailbox = executors.newSendMailbox();
+
+		mailbox.execute(blocker(started, release));
+		assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+		mailbox.execute(blocker(new CountDownLatch(1), release));
+		mailbox.execute(blocker(new CountDownLatch(1), release));
+		try {
+			mailbox.execute(blocker(new CountDownLatch(1), release));
+			fail("the mailbox must be full");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(2, mailbox.getPendingTasks());
+
+		release.countDown();
+		executors.shutdown();
+	}
+
+	@Test
+	public void metricsTest() {
+		SctpExecutors executors = new SctpExecutors(SctpExecutorOptions.defaults());
+		List<ExecutorMetrics> metrics = executors.getMetrics();
+		assertEquals(4, metrics.size());
+		assertEquals("io", metrics.get(0).getName());
+		assertEquals("control", metrics.get(1).getName());
+		assertEquals("send", metrics.get(2).getName());
+		assertEquals("timer", metrics.get(3).getName());
+		assertEquals(SctpExecutorOptions.defaults().getIoThreads(), metrics.get(0).getMaxThreads());
+		executors.shutdown();
+	}
+
+	/**
+	 * A timeout must fire, although all control threads are busy.
+	 */
+	@Test
+	public void timeoutBusyControlTest() throws Exception {
+		SctpExecutors executors = new SctpExecutors(SctpExecutorOptions.builder().controlThreads(1).build());
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		executors.getControlExecutor().execute(blocker(started, release));
+		assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+
+		Deferred<Object, Exception, Object> d = new DeferredObject<>();
+		executors.timeout(d, 10, TimeUnit.MILLISECONDS, "expected timeout");
+		d.waitSafely(TIMEOUT * 1000);
+		assertTrue(d.isRejected());
+
+		release.countDown();
+		executors.shutdown();
+	}
+
+	private static Runnable blocker(final CountDownLatch started, final CountDownLatch release) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await(TIMEOUT, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,243 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdeferred.Promise;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpAssociationOptions;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This benchmark measures the latency of small messages on a control stream,
+ * while large messages are sent on a bulk stream. Without I-DATA, usrsctp
+ * sends all fragments of a large message, before it serves another stream, so
+ * a control message waits for the rest of the large message. With I-DATA
+ * (RFC 8260), the control message is interleaved with the fragments. The
+ * latencies depend on the machine, so the benchmark only runs with the
+ * benchmarks (see {@link Benchmarks}), interleavingTest always runs.
+ */
+public class SctpInterleavingBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpInterleavingBenchmarkTest.class);
+
+	private static final int TIMEOUT = 30;
+	private static final int CONTROL_SID = 0;
+	private static final int BULK_SID = 2;
+	private static final int BULK_MESSAGE_SIZE = 512 * 1024;
+	private static final int CONTROL_MESSAGE_SIZE = 50;
+	private static final int CONTROL_MESSAGES = 200;
+	private static final int CONTROL_INTERVAL_MILLIS = 5;
+	private static final int WARMUP_MESSAGES = 50;
+	private static final int SEND_BUFFER_SIZE = 4 * 1024 * 1024;
+	private static final int RECEIVE_BUFFER_SIZE = 256 * 1024;
+
+	private final AtomicLong bulkReceived = new AtomicLong();
+	private volatile long[] latencies;
+	private final AtomicLong controlReceived = new AtomicLong();
+
+	@Test
+	public void interleavingTest() throws Exception {
+		// only used, if both endpoints request it
+		SctpChannelFacade client = connect(true, false);
+		assertFalse(client.isInterleaving());
+		assertFalse(client.getAssociationOptions().isInterleaving());
+		SctpUtils.shutdownAll().waitSafely();
+
+		client = connect(true, true);
+		assertTrue(client.isInterleaving());
+		assertTrue(client.getAssociationOptions().isInterleaving());
+
+		// transfers on different streams run side by side and the other
+		// streams stay usable
+		Promise<Long, Exception, Long> first = client.sendStream(new byte[4 * BULK_MESSAGE_SIZE], true, BULK_SID, 0);
+		Promise<Long, Exception, Long> second = client.sendStream(new byte[4 * BULK_MESSAGE_SIZE], true,
+				BULK_SID + 1, 0);
+		sendControl(client, 0);
+		first.waitSafely();
+		second.waitSafely();
+		assertTrue(first.isResolved());
+		assertTrue(second.isResolved());
+		awaitBulk(8L * BULK_MESSAGE_SIZE);
+		awaitControl(1);
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	@Test
+	public void interleavingLatencyBenchmark() throws Exception {
+		Benchmarks.assumeEnabled();
+		Level level = Loopback.quietLogs();
+
+		try {
+			long[] data = run(false);
+			long[] idata = run(true);
+			assertTrue(percentile(idata, 50) < percentile(data, 50));
+		} finally {
+			Loopback.restoreLogs(level);
+		}
+	}
+
+	/**
+	 * Measures the control latency, while the bulk stream is busy.
+	 */
+	private long[] run(final boolean interleaving) throws Exception {
+		SctpChannelFacade client = connect(interleaving, interleaving);
+		assertEquals(interleaving, client.isInterleaving());
+		BulkSender bulk = new BulkSender(client);
+		bulk.start();
+
+		run(client, WARMUP_MESSAGES);
+		long start = System.nanoTime();
+		long bytes = bulkReceived.get();
+		long[] latencies = run(client, CONTROL_MESSAGES);
+		double throughput = (bulkReceived.get() - bytes) * 1e9 / (1024 * 1024) / (System.nanoTime() - start);
+
+		bulk.stop();
+		assertTrue(bulk.failure == null);
+		LOG.warn("control latency beside {} KB messages {}: median {} us, p99 {} us, bulk {} MB/s",
+				BULK_MESSAGE_SIZE / 1024, interleaving ? "with I-DATA" : "without I-DATA",
+				percentile(latencies, 50) / 1000, percentile(latencies, 99) / 1000,
+				String.format("%.1f", throughput));
+
+		SctpUtils.shutdownAll().waitSafely();
+		return latencies;
+	}
+
+	/**
+	 * Sends count control messages, each stamped with the time of its first
+	 * send attempt, and returns the time until each one was received in ns.
+	 */
+	private long[] run(final SctpChannelFacade client, final int count) throws Exception {
+		latencies = new long[count];
+		controlReceived.set(0);
+		for (int i = 0; i < count; i++) {
+			sendControl(client, i);
+			Thread.sleep(CONTROL_INTERVAL_MILLIS);
+		}
+		awaitControl(count);
+		return latencies;
+	}
+
+	private void sendControl(final SctpChannelFacade client, final int i) throws Exception {
+		ByteBuffer message = ByteBuffer.allocate(CONTROL_MESSAGE_SIZE);
+		message.putInt(0, i);
+		message.putLong(8, System.nanoTime());
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		// the bulk stream fills the send buffer, so retry until there is space
+		// for the control message
+		while (client.sendNow(message.array(), 0, message.capacity(), true, CONTROL_SID, 0) < 0) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("control message could not be sent");
+			}
+			Thread.yield();
+		}
+	}
+
+	private void awaitControl(final int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (controlReceived.get() < count) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("receiver did not get all control messages");
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	private void awaitBulk(final long bytes) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (bulkReceived.get() < bytes) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("receiver did not get all bulk data");
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	private static long percentile(final long[] values, final int percentile) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+	}
+
+	private SctpChannelFacade connect(final boolean clientInterleaving, final boolean serverInterleaving)
+			throws Exception {
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				if (sid == CONTROL_SID) {
+					ByteBuffer message = ByteBuffer.wrap(data);
+					latencies[message.getInt(0)] = System.nanoTime() - message.getLong(8);
+					controlReceived.incrementAndGet();
+				} else {
+					bulkReceived.addAndGet(data.length);
+				}
+			}
+		};
+
+		latencies = new long[1];
+		bulkReceived.set(0);
+		controlReceived.set(0);
+		// a receive window smaller than the send buffer keeps most of a large
+		// message queued at the sender
+		SctpInitOptions initOptions = SctpInitOptions.builder().associationOptions(SctpAssociationOptions.builder()
+				.receiveBufferSize(RECEIVE_BUFFER_SIZE).interleaving(serverInterleaving).build()).build();
+		SctpAssociationOptions options = SctpAssociationOptions.builder().sendBufferSize(SEND_BUFFER_SIZE)
+				.interleaving(clientInterleaving).build();
+		return Loopback.connect(serverCb, initOptions, SctpConnection.builder().associationOptions(options));
+	}
+
+	/**
+	 * Keeps the send buffer full with large messages on the bulk stream.
+	 */
+	private static class BulkSender implements Runnable {
+
+		private final SctpChannelFacade client;
+		private final Thread thread = new Thread(this, "bulk-sender");
+		private volatile boolean running = true;
+		private volatile Exception failure;
+
+		BulkSender(final SctpChannelFacade client) {
+			this.client = client;
+		}
+
+		void start() {
+			thread.start();
+		}
+
+		void stop() throws InterruptedException {
+			running = false;
+			thread.join();
+		}
+
+		@Override
+		public void run() {
+			byte[] message = new byte[BULK_MESSAGE_SIZE];
+			try {
+				while (running) {
+					if (client.sendNow(message, 0, message.length, true, BULK_SID, 0) < 0) {
+						Thread.sleep(1);
+					}
+				}
+			} catch (Exception e) {
+				failure = e;
+			}
+		}
+	}
+}
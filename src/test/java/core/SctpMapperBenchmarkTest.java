@@ -0,0 +1,188 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpMapper;
+import net.sctp4nat.origin.SctpSocket;
+
+/**
+ * This benchmark reports the lookup cost of {@link SctpMapper} for a growing
+ * number of registered {@link SctpChannel}s and the lookup rate when many
+ * threads use the mapper at once. It only checks, that the lookups are
+ * correct, the numbers are logged. Outbound packets resolve their channel
+ * through {@link SctpSocket#getChannel()}, so only the lookup of inbound
+ * packets by remote address is measured. It takes a while, so it only runs
+ * with the benchmarks (see {@link Benchmarks}).
+ */
+public class SctpMapperBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpMapperBenchmarkTest.class);
+
+	private static final int[] CHANNEL_COUNTS = { 10, 100, 1000, 10000, 100000 };
+	private static final int LOOKUPS = 1000000;
+	private static final int WARMUP_ROUNDS = 3;
+
+	private static final int CONTENTION_CHANNELS = 1000;
+	private static final int[] CONTENTION_THREADS = { 1, 2, 4, 8 };
+	private static final long CONTENTION_MILLIS = 1000;
+
+	@Test
+	public void lookupBenchmark() throws UnknownHostException {
+		Benchmarks.assumeEnabled();
+		SctpMapper mapper = new SctpMapper();
+		List<InetSocketAddress> remotes = new ArrayList<>();
+		List<SctpChannel> channels = new ArrayList<>();
+
+		double[] addressNanos = new double[CHANNEL_COUNTS.length];
+
+		for (int i = 0; i < CHANNEL_COUNTS.length; i++) {
+			while (channels.size() < CHANNEL_COUNTS[i]) {
+				int n = channels.size();
+				InetSocketAddress remote = new InetSocketAddress(
+						InetAddress.getByAddress(new byte[] { 10, (byte) (n >> 16), (byte) (n >> 8), (byte) n }),
+						1024 + (n % 60000));
+				SctpChannel channel = Mockito.mock(SctpChannel.class);
+				mapper.register(remote, channel);
+
+				remotes.add(remote);
+				channels.add(channel);
+			}
+
+			for (int round = 0; round < WARMUP_ROUNDS; round++) {
+				lookupByAddress(mapper, remotes, channels);
+			}
+			addressNanos[i] = lookupByAddress(mapper, remotes, channels);
+
+			LOG.info("{} channels: {} ns/lookup by address", CHANNEL_COUNTS[i],
+					String.format("%.1f", addressNanos[i]));
+		}
+
+		for (int i = 0; i < channels.size(); i++) {
+			mapper.unregister(remotes.get(i));
+		}
+		assertEquals(null, mapper.locate(remotes.get(0)));
+
+		// the times are only reported, they depend on the machine
+		int last = CHANNEL_COUNTS.length - 1;
+		LOG.info("{} vs. {} channels: {}x", CHANNEL_COUNTS[last], CHANNEL_COUNTS[0],
+				String.format("%.1f", addressNanos[last] / addressNanos[0]));
+	}
+
+	/**
+	 * N receiver threads locate channels by remote address (inbound packets).
+	 * One additional thread keeps registering and unregistering channels during
+	 * the whole measurement.
+	 */
+	@Test
+	public void contentionBenchmark() throws Exception {
+		Benchmarks.assumeEnabled();
+		SctpMapper mapper = new SctpMapper();
+		List<InetSocketAddress> remotes = new ArrayList<>();
+		List<SctpChannel> channels = new ArrayList<>();
+
+		for (int n = 0; n < CONTENTION_CHANNELS + 1; n++) {
+			InetSocketAddress remote = new InetSocketAddress(
+					InetAddress.getByAddress(new byte[] { 10, 1, (byte) (n >> 8), (byte) n }), 2000 + n);
+			SctpChannel channel = Mockito.mock(SctpChannel.class);
+			Mockito.when(channel.getRemote()).thenReturn(remote);
+			remotes.add(remote);
+			channels.add(channel);
+		}
+		for (int n = 0; n < CONTENTION_CHANNELS; n++) {
+			mapper.register(remotes.get(n), channels.get(n));
+		}
+
+		for (int threads : CONTENTION_THREADS) {
+			long ops = runContention(mapper, remotes, channels, threads);
+			LOG.info("{} receivers: {} lookups/s", threads, ops * 1000 / CONTENTION_MILLIS);
+			assertTrue(ops > 0);
+		}
+
+		for (int n = 0; n < CONTENTION_CHANNELS; n++) {
+			mapper.unregister(remotes.get(n));
+		}
+		assertEquals(null, mapper.locate(remotes.get(0)));
+	}
+
+	private long runContention(final SctpMapper mapper, final List<InetSocketAddress> remotes,
+			final List<SctpChannel> channels, final int receivers) throws InterruptedException {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong ops = new AtomicLong();
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		List<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < receivers; t++) {
+			final int offset = t * 31;
+			threads.add(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					long count = 0;
+					int i = offset;
+					while (running.get()) {
+						int index = i++ % CONTENTION_CHANNELS;
+						if (mapper.locate(remotes.get(index)) != channels.get(index)) {
+							failed.set(true);
+						}
+						count++;
+					}
+					ops.addAndGet(count);
+				}
+			}));
+		}
+
+		// the churn thread only touches the channel, which is not part of the lookups
+		threads.add(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				InetSocketAddress remote = remotes.get(CONTENTION_CHANNELS);
+				SctpChannel channel = channels.get(CONTENTION_CHANNELS);
+				while (running.get()) {
+					mapper.register(remote, channel);
+					mapper.unregister(channel);
+				}
+			}
+		}));
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(CONTENTION_MILLIS);
+		running.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertFalse(failed.get());
+		return ops.get();
+	}
+
+	private double lookupByAddress(final SctpMapper mapper, final List<InetSocketAddress> remotes, final List<SctpChannel> channels) {
+		int size = remotes.size();
+		long start = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++) {
+			int index = i % size;
+			if (mapper.locate(remotes.get(index)) != channels.get(index)) {
+				throw new AssertionError("Wrong SctpChannel located!");
+			}
+		}
+		return (System.nanoTime() - start) / (double) LOOKUPS;
+	}
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.lang.reflect.Field;
 import java.net.InetAddress;
@@ -11,6 +12,7 @@ import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jdeferred.Deferred;
 import org.jdeferred.Promise;
@@ -44,32 +46,35 @@ public class SctpMapperTest {
 				.get(mapper);
 
 		mapper.register(null, null);
-		mapper.locate(null);
+		mapper.locate((SctpSocket) null);
+		mapper.locate((InetSocketAddress) null);
 		mapper.locate(null, -1);
 		
-		SctpChannel mockChannel1 = channelGen();
 		InetSocketAddress address1 = isaGen();
+		SctpChannel mockChannel1 = channelGen(address1);
+		SctpSocket mockSocket = Mockito.mock(SctpSocket.class);
+		Mockito.when(mockChannel1.getSctpSocket()).thenReturn(mockSocket);
+		Mockito.when(mockSocket.getChannel()).thenReturn(mockChannel1);
 		mapper.register(address1, mockChannel1);
 		assertTrue(socketMap.containsKey(address1));
 		assertTrue(socketMap.containsValue(mockChannel1));
 
-		assertEquals(mockChannel1, mapper.locate(address1.getAddress().getHostAddress(), address1.getPort()));
-		SctpSocket mockSocket = Mockito.mock(SctpSocket.class);
-		Mockito.when(mockChannel1.containsSctpSocket(mockSocket)).thenReturn(true);
+		assertEquals(mockChannel1, mapper.locate(address1.getAddress(), address1.getPort()));
+		assertEquals(mockChannel1, mapper.locate(address1));
 		assertEquals(mockChannel1, mapper.locate(mockSocket));
-		Mockito.when(mockChannel1.containsSctpSocket(mockSocket)).thenReturn(false);
-		assertNotEquals(mockChannel1, mapper.locate(mockSocket));
+		SctpSocket unknownSocket = Mockito.mock(SctpSocket.class);
+		assertNotEquals(mockChannel1, mapper.locate(unknownSocket));
 	
-		SctpMapper.setShutdown(true);
-		SctpChannel mockChannel2 = channelGen();
+		mapper.setShutdown(true);
 		InetSocketAddress address2 = isaGen();
+		SctpChannel mockChannel2 = channelGen(address2);
 		mapper.register(address1, mockChannel2);
 		assertFalse(socketMap.containsKey(mockChannel2));
 		assertFalse(socketMap.containsValue(mockChannel2));
 		SctpSocket mockSocket2 = Mockito.mock(SctpSocket.class);
 		Mockito.when(mockChannel2.containsSctpSocket(mockSocket)).thenReturn(true);
 		assertEquals(null, mapper.locate(mockSocket2));
-		assertEquals(null, mapper.locate(address2.getAddress().getHostAddress(), address2.getPort()));
+		assertEquals(null, mapper.locate(address2.getAddress(), address2.getPort()));
 
 		mapper.unregister(address1);
 		assertTrue(socketMap.containsKey(address1));
@@ -78,11 +83,11 @@ public class SctpMapperTest {
 		assertTrue(socketMap.containsKey(address1));
 		assertTrue(socketMap.containsValue(mockChannel1));
 
-		if (SctpMapper.isShutdown()) {
-			SctpMapper.setShutdown(false);
+		if (mapper.isShutdown()) {
+			mapper.setShutdown(false);
 		}
-		SctpChannel mockChannel3 = channelGen();
 		InetSocketAddress address3 = isaGen();
+		SctpChannel mockChannel3 = channelGen(address3);
 		mapper.register(address3, mockChannel3);
 		assertTrue(socketMap.containsKey(address3));
 		assertTrue(socketMap.containsValue(mockChannel3));
@@ -95,8 +100,8 @@ public class SctpMapperTest {
 		assertFalse(socketMap.containsValue(mockChannel3));
 		assertEquals(1, socketMap.size());
 		
-		SctpChannel mockChannel4 = channelGen();
 		InetSocketAddress address4 = isaGen();
+		SctpChannel mockChannel4 = channelGen(address4);
 		mapper.register(address4, mockChannel4);
 		SctpChannel nullChannel = null;
 		mapper.unregister(nullChannel);
@@ -126,11 +131,73 @@ public class SctpMapperTest {
 		mapper.shutdown();
 	}
 
+	@Test
+	public void testMapperIsolation() throws UnknownHostException {
+		SctpMapper mapper1 = new SctpMapper();
+		SctpMapper mapper2 = new SctpMapper();
+
+		InetSocketAddress address1 = isaGen();
+		SctpChannel mockChannel1 = channelGen(address1);
+		SctpSocket mockSocket1 = Mockito.mock(SctpSocket.class);
+		Mockito.when(mockChannel1.getSctpSocket()).thenReturn(mockSocket1);
+		Mockito.when(mockSocket1.getChannel()).thenReturn(mockChannel1);
+		mapper1.register(address1, mockChannel1);
+
+		InetSocketAddress address2 = isaGen();
+		SctpChannel mockChannel2 = channelGen(address2);
+		SctpSocket mockSocket2 = Mockito.mock(SctpSocket.class);
+		Mockito.when(mockChannel2.getSctpSocket()).thenReturn(mockSocket2);
+		Mockito.when(mockSocket2.getChannel()).thenReturn(mockChannel2);
+		mapper2.register(address2, mockChannel2);
+
+		assertEquals(mockChannel1, mapper1.locate(address1));
+		assertEquals(mockChannel1, mapper1.locate(mockSocket1));
+		assertEquals(null, mapper1.locate(address2));
+		assertEquals(null, mapper1.locate(mockSocket2));
+		assertEquals(mockChannel2, mapper2.locate(address2));
+		assertEquals(mockChannel2, mapper2.locate(mockSocket2));
+		assertEquals(null, mapper2.locate(address1));
+
+		mapper1.setShutdown(true);
+		assertTrue(mapper1.isShutdown());
+		assertFalse(mapper2.isShutdown());
+		assertEquals(null, mapper1.locate(address1));
+		assertEquals(mockChannel2, mapper2.locate(address2));
+		mapper2.unregister(address2);
+		assertEquals(null, mapper2.locate(address2));
+	}
+
+	@Test
+	public void testShutdownWaitsForUpdates() throws Exception {
+		SctpMapper mapper = new SctpMapper();
+		mapper.setCloseTimeout(200);
+
+		Field field = SctpMapper.class.getDeclaredField("pendingUpdates");
+		field.setAccessible(true);
+		AtomicInteger pendingUpdates = (AtomicInteger) field.get(mapper);
+
+		// an update, which never finishes, must not block the shutdown forever
+		pendingUpdates.incrementAndGet();
+		try {
+			mapper.shutdown();
+			fail("shutdown must time out");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertFalse(mapper.isShutdown());
+
+		pendingUpdates.decrementAndGet();
+		mapper.shutdown();
+		assertFalse(mapper.isShutdown());
+	}
+
 	private InetSocketAddress isaGen() throws UnknownHostException {
 		return new InetSocketAddress(InetAddress.getByName("127.0.0.1"), SctpPorts.getInstance().generateDynPort());
 	}
 
-	private SctpChannel channelGen() {
-		return Mockito.mock(SctpChannel.class);
+	private SctpChannel channelGen(final InetSocketAddress remote) {
+		SctpChannel channel = Mockito.mock(SctpChannel.class);
+		Mockito.when(channel.getRemote()).thenReturn(remote);
+		return channel;
 	}
 }
@@ -0,0 +1,294 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sctp4nat.origin.SctpNotification;
+import net.sctp4nat.origin.SctpNotification.AssociationChange;
+import net.sctp4nat.origin.SctpNotification.Event;
+import net.sctp4nat.origin.SctpNotification.PartialDelivery;
+import net.sctp4nat.origin.SctpNotification.PeerAddressChange;
+import net.sctp4nat.origin.SctpNotificationView;
+
+/**
+ * This benchmark compares the classification of {@link SctpNotification}s via
+ * {@link SctpNotification#getEvent()} with the former matching of the strings
+ * returned by toString(), and the parsing of a notification with
+ * {@link SctpNotification#parse(byte[])} with a reused
+ * {@link SctpNotificationView}. It reports the time and the bytes allocated
+ * per event. The numbers depend on the JIT, so the benchmarks only run with
+ * the benchmarks (see {@link Benchmarks}), the functional tests always run.
+ */
+public class SctpNotificationBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpNotificationBenchmarkTest.class);
+
+	private static final int EVENTS = 700000;
+	private static final int WARMUP_ROUNDS = 3;
+
+	private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	private static final byte[][] DATA = new byte[][] { associationChange(AssociationChange.SCTP_COMM_UP),
+			associationChange(AssociationChange.SCTP_COMM_LOST), associationChange(AssociationChange.SCTP_SHUTDOWN_COMP),
+			peerAddressChange(PeerAddressChange.SCTP_ADDR_UNREACHABLE),
+			peerAddressChange(PeerAddressChange.SCTP_ADDR_CONFIRMED), header(SctpNotification.SCTP_SHUTDOWN_EVENT, 8),
+			header(SctpNotification.SCTP_SENDER_DRY_EVENT, 12) };
+
+	private final SctpNotification[] notifications = new SctpNotification[DATA.length];
+
+	public SctpNotificationBenchmarkTest() {
+		for (int i = 0; i < DATA.length; i++) {
+			notifications[i] = SctpNotification.parse(DATA[i].clone());
+		}
+	}
+
+	@Test
+	public void eventTest() {
+		assertEquals(Event.COMM_UP, notifications[0].getEvent());
+		assertEquals(Event.COMM_LOST, notifications[1].getEvent());
+		assertEquals(Event.SHUTDOWN_COMP, notifications[2].getEvent());
+		assertEquals(Event.ADDR_UNREACHABLE, notifications[3].getEvent());
+		assertEquals(Event.ADDR_CONFIRMED, notifications[4].getEvent());
+		assertEquals(Event.SHUTDOWN, notifications[5].getEvent());
+		assertEquals(Event.SENDER_DRY, notifications[6].getEvent());
+		assertEquals(Event.OTHER, SctpNotification.parse(associationChange(0x00ff)).getEvent());
+
+		for (SctpNotification notification : notifications) {
+			assertEquals(notification.getEvent(), classifyString(notification));
+		}
+	}
+
+	@Test
+	public void dispatchBenchmark() {
+		Benchmarks.assumeEnabled();
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			run(true);
+			run(false);
+		}
+		double[] typed = run(true);
+		double[] string = run(false);
+
+		LOG.warn("notification dispatch: {} ns and {} B/event typed, {} ns and {} B/event toString()",
+				String.format("%.1f", typed[0]), String.format("%.1f", typed[1]), String.format("%.1f", string[0]),
+				String.format("%.1f", string[1]));
+
+		assertTrue(typed[1] < 1);
+		assertTrue(string[1] > typed[1]);
+	}
+
+	@Test
+	public void viewTest() {
+		SctpNotificationView view = new SctpNotificationView();
+		for (SctpNotification notification : notifications) {
+			byte[] data = copy(notification);
+			view.wrap(direct(data));
+			assertEquals(notification.sn_type, view.getType());
+			assertEquals(notification.getEvent(), view.getEvent());
+			assertEquals(data.length, view.getLength());
+			assertEquals(notification.toString(), view.copy().toString());
+		}
+
+		AssociationChange up = (AssociationChange) notifications[0];
+		view.wrap(direct(copy(up)));
+		assertEquals(up.state, view.getState());
+		assertEquals(up.assocId, view.getAssocId());
+		assertEquals(up.inboundStreams, view.getInboundStreams());
+		assertEquals(up.outboundStreams, view.getOutboundStreams());
+
+		PeerAddressChange unreachable = (PeerAddressChange) notifications[3];
+		view.wrap(direct(copy(unreachable)));
+		assertEquals(unreachable.state, view.getState());
+		assertEquals(unreachable.error, view.getError());
+		assertEquals(unreachable.assocId, view.getAssocId());
+
+		byte[] data = partialDelivery(PartialDelivery.SCTP_PARTIAL_DELIVERY_ABORTED, 3);
+		PartialDelivery aborted = (PartialDelivery) SctpNotification.parse(data.clone());
+		view.wrap(direct(data));
+		assertEquals(Event.PARTIAL_DELIVERY, view.getEvent());
+		assertEquals(aborted.indication, view.getIndication());
+		assertEquals(aborted.stream, view.getStream());
+		assertEquals(3, view.getStream());
+		assertEquals(aborted.assocId, view.getAssocId());
+		assertEquals(aborted.toString(), view.copy().toString());
+	}
+
+	@Test
+	public void parseBenchmark() {
+		Benchmarks.assumeEnabled();
+		ByteBuffer[] buffers = new ByteBuffer[notifications.length];
+		byte[][] arrays = new byte[notifications.length][];
+		for (int i = 0; i < notifications.length; i++) {
+			arrays[i] = copy(notifications[i]);
+			buffers[i] = direct(arrays[i]);
+		}
+
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			parse(arrays, buffers, true);
+			parse(arrays, buffers, false);
+		}
+		double[] view = parse(arrays, buffers, true);
+		double[] parsed = parse(arrays, buffers, false);
+
+		LOG.warn("notification parsing: {} ns and {} B/event view, {} ns and {} B/event parse(byte[])",
+				String.format("%.1f", view[0]), String.format("%.1f", view[1]), String.format("%.1f", parsed[0]),
+				String.format("%.1f", parsed[1]));
+
+		assertTrue(view[1] < 1);
+		// parse(byte[]) allocates at least the notification and its ByteBuffer
+		assertTrue(parsed[1] > 32);
+	}
+
+	/**
+	 * Parses EVENTS notifications, either with a reused view or with
+	 * parse(byte[]), and returns the nanoseconds and the bytes allocated per
+	 * event. The byte[], which the native counterpart allocates on the array
+	 * path, is not included.
+	 */
+	private double[] parse(final byte[][] arrays, final ByteBuffer[] buffers, final boolean reuse) {
+		long threadId = Thread.currentThread().getId();
+		SctpNotificationView view = new SctpNotificationView();
+		int[] counts = new int[Event.values().length];
+
+		long allocatedStart = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < EVENTS; i++) {
+			int index = i % arrays.length;
+			Event event;
+			if (reuse) {
+				ByteBuffer buffer = buffers[index];
+				buffer.clear();
+				event = view.wrap(buffer).getEvent();
+			} else {
+				event = SctpNotification.parse(arrays[index]).getEvent();
+			}
+			counts[event.ordinal()]++;
+		}
+		long nanos = System.nanoTime() - start;
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedStart;
+
+		assertEquals(EVENTS / arrays.length, counts[Event.COMM_UP.ordinal()]);
+		return new double[] { (double) nanos / EVENTS, (double) allocated / EVENTS };
+	}
+
+	/**
+	 * Classifies EVENTS notifications and returns the nanoseconds and the bytes
+	 * allocated per event.
+	 */
+	private double[] run(final boolean typed) {
+		long threadId = Thread.currentThread().getId();
+		int[] counts = new int[Event.values().length];
+
+		long allocatedStart = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < EVENTS; i++) {
+			SctpNotification notification = notifications[i % notifications.length];
+			Event event = typed ? notification.getEvent() : classifyString(notification);
+			counts[event.ordinal()]++;
+		}
+		long nanos = System.nanoTime() - start;
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedStart;
+
+		assertEquals(EVENTS / notifications.length, counts[Event.COMM_UP.ordinal()]);
+		return new double[] { (double) nanos / EVENTS, (double) allocated / EVENTS };
+	}
+
+	/**
+	 * The classification, which the listeners of SctpChannel and
+	 * SctpChannelBuilder used before {@link SctpNotification#getEvent()}.
+	 */
+	private static Event classifyString(final SctpNotification notification) {
+		if (notification.toString().indexOf("COMM_UP") >= 0) {
+			return Event.COMM_UP;
+		} else if (notification.toString().indexOf("SHUTDOWN_COMP") >= 0) {
+			return Event.SHUTDOWN_COMP;
+		} else if (notification.toString().indexOf("ADDR_UNREACHABLE") >= 0) {
+			return Event.ADDR_UNREACHABLE;
+		} else if (notification.toString().indexOf("COMM_LOST") >= 0) {
+			return Event.COMM_LOST;
+		} else if (notification.toString().indexOf("ADDR_CONFIRMED") >= 0) {
+			return Event.ADDR_CONFIRMED;
+		} else if (notification.toString().indexOf("SCTP_SHUTDOWN_EVENT") >= 0) {
+			return Event.SHUTDOWN;
+		} else if (notification.toString().indexOf("SCTP_SENDER_DRY_EVENT") >= 0) {
+			return Event.SENDER_DRY;
+		}
+		return Event.OTHER;
+	}
+
+	/**
+	 * @return the bytes, from which notification was parsed.
+	 */
+	private byte[] copy(final SctpNotification notification) {
+		for (int i = 0; i < notifications.length; i++) {
+			if (notifications[i] == notification) {
+				return DATA[i].clone();
+			}
+		}
+		throw new IllegalArgumentException();
+	}
+
+	private static ByteBuffer direct(final byte[] data) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+		buffer.put(data);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static ByteBuffer buffer(final int type, final int length) {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putShort((short) type);
+		buffer.putShort((short) 0);
+		buffer.putInt(length);
+		return buffer;
+	}
+
+	private static byte[] header(final int type, final int length) {
+		return buffer(type, length).array();
+	}
+
+	/**
+	 * struct sctp_assoc_change without sac_info.
+	 */
+	private static byte[] associationChange(final int state) {
+		ByteBuffer buffer = buffer(SctpNotification.SCTP_ASSOC_CHANGE, 20);
+		buffer.putShort((short) state);
+		buffer.putShort((short) 0);
+		buffer.putShort((short) 1);
+		buffer.putShort((short) 1);
+		buffer.putInt(1);
+		return buffer.array();
+	}
+
+	/**
+	 * struct sctp_paddr_change with a 128 byte sockaddr_storage.
+	 */
+	private static byte[] peerAddressChange(final int state) {
+		ByteBuffer buffer = buffer(SctpNotification.SCTP_PEER_ADDR_CHANGE, 152);
+		buffer.position(8 + 128);
+		buffer.putInt(state);
+		buffer.putInt(0);
+		buffer.putInt(1);
+		return buffer.array();
+	}
+
+	/**
+	 * struct sctp_pdapi_event.
+	 */
+	private static byte[] partialDelivery(final int indication, final int stream) {
+		ByteBuffer buffer = buffer(SctpNotification.SCTP_PARTIAL_DELIVERY_EVENT, 24);
+		buffer.putInt(indication);
+		buffer.putInt(stream);
+		buffer.putInt(7);
+		buffer.putInt(1);
+		return buffer.array();
+	}
+}
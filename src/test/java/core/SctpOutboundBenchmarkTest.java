@@ -0,0 +1,194 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import javassist.NotFoundException;
+import net.sctp4nat.connection.DirectNetworkLink;
+import net.sctp4nat.connection.NetworkLink;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.origin.SctpSocket;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This benchmark compares the outbound packet path of a {@link SctpSocket} for
+ * a {@link DirectNetworkLink} (packets are written into a reusable direct
+ * buffer) and the same link hidden behind a plain {@link NetworkLink} (a new
+ * array per packet). It reports packets per CPU second of the whole process
+ * and the bytes allocated per packet on the sending thread. It only runs with
+ * the benchmarks (see {@link Benchmarks}).
+ */
+public class SctpOutboundBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpOutboundBenchmarkTest.class);
+
+	private static final int TIMEOUT = 30;
+	private static final int MESSAGE_SIZE = 1024;
+	private static final int MESSAGES = 20000;
+	private static final int BURST = 100;
+	private static final int WARMUP_ROUNDS = 2;
+
+	private final AtomicLong received = new AtomicLong();
+	private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+	private final com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory
+			.getOperatingSystemMXBean();
+
+	@Test
+	public void outboundBenchmark() throws Exception {
+		Benchmarks.assumeEnabled();
+
+		Level level = Loopback.quietLogs();
+
+		try {
+			SctpChannel client = connect();
+			final DirectNetworkLink direct = (DirectNetworkLink) client.getLink();
+			CountingLink countingDirect = new CountingDirectLink(direct);
+			CountingLink countingArray = new CountingLink(direct);
+
+			for (int round = 0; round < WARMUP_ROUNDS; round++) {
+				run(client, countingDirect);
+				run(client, countingArray);
+			}
+			double[] directResult = run(client, countingDirect);
+			double[] arrayResult = run(client, countingArray);
+
+			LOG.warn("{} B messages: {} packets/cpu-s and {} B/packet direct, {} packets/cpu-s and {} B/packet byte[]",
+					MESSAGE_SIZE, String.format("%.0f", directResult[0]), String.format("%.1f", directResult[1]),
+					String.format("%.0f", arrayResult[0]), String.format("%.1f", arrayResult[1]));
+
+			// the byte[] path allocates at least one packet per packet
+			assertTrue(arrayResult[1] > MESSAGE_SIZE);
+			assertTrue(directResult[1] < MESSAGE_SIZE / 4);
+			client.setLink(direct);
+		} finally {
+			Loopback.restoreLogs(level);
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	/**
+	 * Sends MESSAGES messages through link and returns the packets per CPU
+	 * second of the process and the bytes allocated per packet on this thread.
+	 */
+	private double[] run(final SctpChannel client, final CountingLink link) throws Exception {
+		client.setLink(link);
+		SctpSocket socket = client.getSctpSocket();
+		byte[] message = new byte[MESSAGE_SIZE];
+		long threadId = Thread.currentThread().getId();
+
+		link.reset();
+		long cpuStart = os.getProcessCpuTime();
+		long allocatedStart = threads.getThreadAllocatedBytes(threadId);
+		long expected = received.get();
+		for (int i = 0; i < MESSAGES; i++) {
+			assertEquals(MESSAGE_SIZE, socket.sendNative(message, 0, MESSAGE_SIZE, true, 0, 0));
+			expected += MESSAGE_SIZE;
+			if (i % BURST == BURST - 1) {
+				awaitReceived(expected);
+			}
+		}
+		awaitReceived(expected);
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedStart;
+		long cpu = os.getProcessCpuTime() - cpuStart;
+
+		double packetsPerCpuSecond = link.packets.get() * 1e9 / cpu;
+		double bytesPerPacket = (double) allocated / Math.max(1, link.senderPackets.get());
+		return new double[] { packetsPerCpuSecond, bytesPerPacket };
+	}
+
+	private void awaitReceived(final long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (received.get() < expected) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("receiver did not get all data");
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	private SctpChannel connect() throws Exception {
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				received.addAndGet(data.length);
+			}
+		};
+
+		// the benchmark needs a DirectNetworkLink, such as the event loop link
+		return (SctpChannel) Loopback.connect(serverCb, SctpInitOptions.builder().nioLink(true).build(),
+				SctpConnection.builder().eventLoop(true));
+	}
+
+	/**
+	 * Counts the packets and forwards them as arrays.
+	 */
+	private static class CountingLink implements NetworkLink {
+
+		final DirectNetworkLink delegate;
+		final Thread sender = Thread.currentThread();
+		final AtomicLong packets = new AtomicLong();
+		final AtomicLong senderPackets = new AtomicLong();
+
+		CountingLink(final DirectNetworkLink delegate) {
+			this.delegate = delegate;
+		}
+
+		void reset() {
+			packets.set(0);
+			senderPackets.set(0);
+		}
+
+		void count() {
+			packets.incrementAndGet();
+			if (Thread.currentThread() == sender) {
+				senderPackets.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void onConnOut(SctpChannelFacade facade, byte[] packet, int tos) throws IOException, NotFoundException {
+			count();
+			delegate.onConnOut(facade, packet, tos);
+		}
+
+		@Override
+		public void close() {
+			// the delegate is closed with the channel
+		}
+	}
+
+	/**
+	 * Counts the packets and forwards them as direct buffers.
+	 */
+	private static class CountingDirectLink extends CountingLink implements DirectNetworkLink {
+
+		CountingDirectLink(final DirectNetworkLink delegate) {
+			super(delegate);
+		}
+
+		@Override
+		public void onConnOut(SctpChannelFacade facade, ByteBuffer packet, int tos) throws IOException {
+			count();
+			delegate.onConnOut(facade, packet, tos);
+		}
+	}
+}
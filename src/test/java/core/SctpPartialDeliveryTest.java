@@ -0,0 +1,123 @@
+package core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdeferred.Promise;
+import org.junit.Test;
+
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.origin.SctpPartialDeliveryCallback;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This test receives a message, which is larger than the receive buffer, with
+ * a {@link SctpPartialDeliveryCallback}. The receiver digests the pieces as
+ * they arrive and never holds the whole message.
+ */
+public class SctpPartialDeliveryTest {
+
+	private static final int TIMEOUT = 120;
+	private static final int MB = 1024 * 1024;
+
+	@Test
+	public void partialDeliveryTest() throws Exception {
+		final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		final AtomicInteger pieces = new AtomicInteger();
+		final AtomicInteger firsts = new AtomicInteger();
+		final AtomicInteger lasts = new AtomicInteger();
+		final AtomicInteger aborted = new AtomicInteger();
+		final AtomicLong receivedBytes = new AtomicLong();
+		final AtomicInteger wholePieces = new AtomicInteger();
+		final AtomicInteger packets = new AtomicInteger();
+		final CountDownLatch received = new CountDownLatch(2);
+		final byte[][] small = new byte[1][];
+
+		SctpDataCallback serverCb = new PartialCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				packets.incrementAndGet();
+			}
+
+			@Override
+			public void onMessagePart(ByteBuffer data, int sid, long ppid, boolean first, boolean last,
+					SctpChannelFacade facade) {
+				if (first && last) {
+					wholePieces.incrementAndGet();
+					small[0] = new byte[data.remaining()];
+					data.get(small[0]);
+					received.countDown();
+					return;
+				}
+				pieces.incrementAndGet();
+				if (first) {
+					firsts.incrementAndGet();
+				}
+				receivedBytes.addAndGet(data.remaining());
+				digest.update(data);
+				if (last) {
+					lasts.incrementAndGet();
+					received.countDown();
+				}
+			}
+
+			@Override
+			public void onMessageAborted(int sid, SctpChannelFacade facade) {
+				aborted.incrementAndGet();
+			}
+		};
+		SctpChannelFacade client = connect(serverCb);
+
+		// 8 times SO_RCVBUF (1 MB) of the native socket
+		byte[] large = new byte[8 * MB];
+		new Random(42).nextBytes(large);
+		Promise<Long, Exception, Long> transfer = client.sendStream(large, true, 0, 0);
+		transfer.waitSafely();
+		assertTrue(transfer.isResolved());
+
+		// the promise resolves, once the last part is queued, so the send buffer
+		// may still be full
+		byte[] message = new byte[] { 1, 2, 3, 4 };
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (client.sendNow(message, 0, message.length, true, 0, 0) < 0
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertTrue(received.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(large.length, receivedBytes.get());
+		assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(large), digest.digest());
+		assertTrue(pieces.get() > 2);
+		assertEquals(1, firsts.get());
+		assertEquals(1, lasts.get());
+		assertEquals(1, wholePieces.get());
+		assertArrayEquals(message, small[0]);
+		assertEquals(0, aborted.get());
+		// the partial delivery callback replaces the data callback
+		assertEquals(0, packets.get());
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	private SctpChannelFacade connect(final SctpDataCallback serverCb) throws Exception {
+		return Loopback.connect(serverCb);
+	}
+
+	/**
+	 * A server callback, which receives all messages in pieces.
+	 */
+	private static abstract class PartialCallback implements SctpDataCallback, SctpPartialDeliveryCallback {
+	}
+}
@@ -0,0 +1,170 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import javassist.NotFoundException;
+import net.sctp4nat.connection.NetworkLink;
+import net.sctp4nat.connection.SctpDefaultStreamConfig;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpPartialReliability;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This test drops the packets of a message on the way to the receiver. A
+ * fully reliable message is retransmitted and holds back the messages behind
+ * it on its ordered stream. A partially reliable message is abandoned, so the
+ * messages behind it are delivered without it.
+ */
+public class SctpPartialReliabilityTest {
+
+	private static final int TIMEOUT = 30;
+	private static final int MESSAGE_SIZE = 512;
+	private static final byte LOST = 0x5A;
+	private static final byte NEXT = 0x11;
+
+	private final AtomicInteger lostReceived = new AtomicInteger();
+	private volatile CountDownLatch nextReceived;
+
+	@Test
+	public void policyTest() {
+		assertTrue(SctpPartialReliability.NONE.isReliable());
+		assertEquals(SctpPartialReliability.Policy.NONE, new SctpDefaultStreamConfig().getPartialReliability()
+				.getPolicy());
+
+		SctpPartialReliability ttl = SctpPartialReliability.timeToLive(100);
+		assertFalse(ttl.isReliable());
+		assertEquals(SctpPartialReliability.Policy.TTL, ttl.getPolicy());
+		assertEquals(100, ttl.getValue());
+		assertEquals(ttl, SctpPartialReliability.timeToLive(100));
+
+		SctpPartialReliability rtx = SctpPartialReliability.maxRetransmissions(0);
+		assertEquals(SctpPartialReliability.Policy.RTX, rtx.getPolicy());
+		assertEquals(0, rtx.getValue());
+
+		try {
+			SctpPartialReliability.timeToLive(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			SctpPartialReliability.maxRetransmissions(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void abandonTest() throws Exception {
+		SctpChannel client = connect();
+		NetworkLink link = client.getLink();
+		LossyLink lossy = new LossyLink(link);
+		client.setLink(lossy);
+
+		// every transmission of the message is lost
+		lossy.drops.set(Integer.MAX_VALUE);
+		send(client, SctpPartialReliability.maxRetransmissions(0));
+		assertTrue(nextReceived.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(0, lostReceived.get());
+
+		lossy.drops.set(Integer.MAX_VALUE);
+		send(client, SctpPartialReliability.timeToLive(100));
+		assertTrue(nextReceived.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(0, lostReceived.get());
+		assertTrue(lossy.dropped.get() >= 2);
+
+		// the first transmission is lost, the retransmission arrives first
+		lossy.drops.set(1);
+		send(client, SctpPartialReliability.NONE);
+		assertTrue(nextReceived.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(1, lostReceived.get());
+
+		client.setLink(link);
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	/**
+	 * Sends a message with reliability, which is dropped by the link, and a
+	 * fully reliable message behind it on the same ordered stream.
+	 */
+	private void send(final SctpChannel client, final SctpPartialReliability reliability) throws IOException {
+		nextReceived = new CountDownLatch(1);
+		byte[] lost = new byte[MESSAGE_SIZE];
+		Arrays.fill(lost, LOST);
+		byte[] next = new byte[MESSAGE_SIZE];
+		Arrays.fill(next, NEXT);
+		assertEquals(MESSAGE_SIZE, client.sendNow(lost, 0, lost.length, true, 0, 0, reliability));
+		assertEquals(MESSAGE_SIZE, client.sendNow(next, 0, next.length, true, 0, 0));
+	}
+
+	private SctpChannel connect() throws Exception {
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				if (data[0] == LOST) {
+					lostReceived.incrementAndGet();
+				} else if (data[0] == NEXT) {
+					// the message behind the lost one on the ordered stream
+					nextReceived.countDown();
+				}
+			}
+		};
+
+		return (SctpChannel) Loopback.connect(serverCb);
+	}
+
+	/**
+	 * Drops the packets, which carry the lost message, until drops is used up.
+	 */
+	private static class LossyLink implements NetworkLink {
+
+		final NetworkLink delegate;
+		final AtomicInteger drops = new AtomicInteger();
+		final AtomicInteger dropped = new AtomicInteger();
+
+		LossyLink(final NetworkLink delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void onConnOut(SctpChannelFacade facade, byte[] packet, int tos) throws IOException, NotFoundException {
+			if (carriesLost(packet) && drops.getAndDecrement() > 0) {
+				dropped.incrementAndGet();
+				return;
+			}
+			delegate.onConnOut(facade, packet, tos);
+		}
+
+		private static boolean carriesLost(final byte[] packet) {
+			int run = 0;
+			for (byte b : packet) {
+				run = b == LOST ? run + 1 : 0;
+				if (run == MESSAGE_SIZE) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public void close() {
+			// the delegate is closed with the channel
+		}
+	}
+}
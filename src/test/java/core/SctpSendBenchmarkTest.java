@@ -0,0 +1,149 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdeferred.Promise;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import net.sctp4nat.core.SctpChannel;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.origin.SctpSocket;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This benchmark compares the cost of {@link SctpSocket#sendNative} for heap
+ * arrays (region copy of the requested slice) and direct {@link ByteBuffer}s
+ * (no copy) over a loopback association for payloads from 64B to 256KB.
+ * It only runs with the {@link Benchmarks}.
+ */
+public class SctpSendBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpSendBenchmarkTest.class);
+
+	private static final int TIMEOUT = 30;
+	private static final int[] PAYLOAD_SIZES = { 64, 256, 1024, 4096, 16384, 65536, 131072, 262144 };
+	private static final int BYTES_PER_ROUND = 8 * 1024 * 1024;
+	/**
+	 * Bytes in flight before we wait for the receiver, well below SO_SNDBUF of
+	 * the native socket, so that a send never fails with EWOULDBLOCK.
+	 */
+	private static final int BURST_BYTES = 256 * 1024;
+	/**
+	 * Every small message occupies a whole chunk in the send buffer, so bursts
+	 * are limited in messages, too.
+	 */
+	private static final int BURST_MESSAGES = 128;
+	private static final int WARMUP_ROUNDS = 2;
+
+	private final AtomicLong received = new AtomicLong();
+
+	/**
+	 * A send, which the {@link SctpSocket} refuses with a
+	 * {@link RuntimeException}, must reject the {@link Promise}.
+	 */
+	@Test
+	public void invalidSendTest() throws Exception {
+		SctpChannelFacade client = connect();
+
+		Promise<Integer, Exception, Object> p = client.send(new byte[16], 8, 16, true, 0, 0);
+		p.waitSafely(TIMEOUT * 1000);
+		assertTrue(p.isRejected());
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	@Test
+	public void sendBenchmark() throws Exception {
+		Benchmarks.assumeEnabled();
+
+		Level level = Loopback.quietLogs();
+
+		try {
+			SctpSocket socket = ((SctpChannel) connect()).getSctpSocket();
+
+			for (int size : PAYLOAD_SIZES) {
+				byte[] array = new byte[size];
+				ByteBuffer direct = ByteBuffer.allocateDirect(size);
+
+				for (int round = 0; round < WARMUP_ROUNDS; round++) {
+					run(socket, array, null);
+					run(socket, null, direct);
+				}
+				double arrayNanos = run(socket, array, null);
+				double directNanos = run(socket, null, direct);
+
+				LOG.warn("{} B payload: {} ns/send byte[], {} ns/send direct ByteBuffer ({} MB/s vs {} MB/s)", size,
+						String.format("%.0f", arrayNanos), String.format("%.0f", directNanos),
+						String.format("%.0f", size * 1000.0 / arrayNanos), String.format("%.0f", size * 1000.0 / directNanos));
+			}
+		} finally {
+			Loopback.restoreLogs(level);
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	/**
+	 * Sends BYTES_PER_ROUND bytes either from array or from direct and returns
+	 * the average time of one sendNative call in ns.
+	 */
+	private double run(final SctpSocket socket, final byte[] array, final ByteBuffer direct) throws Exception {
+		int size = array != null ? array.length : direct.capacity();
+		int messages = Math.max(1, BYTES_PER_ROUND / size);
+		int burst = Math.max(1, Math.min(BURST_MESSAGES, BURST_BYTES / size));
+		long nanos = 0;
+
+		for (int sent = 0; sent < messages;) {
+			long expected = received.get();
+			int n = Math.min(burst, messages - sent);
+			for (int i = 0; i < n; i++) {
+				int r;
+				long start = System.nanoTime();
+				if (array != null) {
+					r = socket.sendNative(array, 0, size, true, 0, 0);
+				} else {
+					direct.clear();
+					r = socket.sendNative(direct, true, 0, 0);
+				}
+				nanos += System.nanoTime() - start;
+				assertEquals(size, r);
+				expected += size;
+			}
+			sent += n;
+			awaitReceived(expected);
+		}
+		return (double) nanos / messages;
+	}
+
+	private void awaitReceived(final long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (received.get() < expected) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("receiver did not get all data");
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	private SctpChannelFacade connect() throws Exception {
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				received.addAndGet(data.length);
+			}
+		};
+
+		return Loopback.connect(serverCb);
+	}
+}
@@ -0,0 +1,175 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdeferred.DoneCallback;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This benchmark compares the latency of {@link SctpChannelFacade#send} (the
+ * time until its {@link org.jdeferred.Promise} is resolved) with
+ * {@link SctpChannelFacade#sendNow} (the time until it returns). It only runs
+ * with the benchmarks (see {@link Benchmarks}). The test checks, that
+ * {@link SctpChannelFacade#sendAndForget} delivers its messages in order with
+ * queued sends.
+ */
+public class SctpSendLatencyBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpSendLatencyBenchmarkTest.class);
+
+	private static final int TIMEOUT = 30;
+	private static final int MESSAGE_SIZE = 256;
+	private static final int MESSAGES = 10000;
+	private static final int BURST = 100;
+	private static final int WARMUP_ROUNDS = 2;
+
+	private final AtomicLong received = new AtomicLong();
+	private final List<Long> ppids = new ArrayList<>();
+
+	@Test
+	public void sendAndForgetOrderTest() throws Exception {
+		SctpChannelFacade client = connect();
+		byte[] message = new byte[MESSAGE_SIZE];
+
+		// a sendAndForget must not overtake the sends queued before it
+		int ppid = 0;
+		for (int i = 0; i < BURST; i++) {
+			client.send(message, 0, MESSAGE_SIZE, true, 0, ++ppid);
+			client.sendAndForget(message, 0, MESSAGE_SIZE, true, 0, ++ppid);
+		}
+		awaitReceived(2 * BURST * MESSAGE_SIZE);
+		synchronized (ppids) {
+			assertEquals(2 * BURST, ppids.size());
+			for (int i = 0; i < ppids.size(); i++) {
+				assertEquals(i + 1, ppids.get(i).intValue());
+			}
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	@Test
+	public void sendLatencyBenchmark() throws Exception {
+		Benchmarks.assumeEnabled();
+		Level level = Loopback.quietLogs();
+
+		try {
+			SctpChannelFacade client = connect();
+			byte[] message = new byte[MESSAGE_SIZE];
+
+			for (int round = 0; round < WARMUP_ROUNDS; round++) {
+				runPromise(client, message);
+				runNow(client, message);
+			}
+			long[] promise = runPromise(client, message);
+			long[] now = runNow(client, message);
+
+			LOG.warn("{} B messages: send() median {} ns, p99 {} ns; sendNow() median {} ns, p99 {} ns",
+					MESSAGE_SIZE, percentile(promise, 50), percentile(promise, 99), percentile(now, 50),
+					percentile(now, 99));
+		} finally {
+			Loopback.restoreLogs(level);
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	/**
+	 * @return the time of every send until its promise is resolved in ns.
+	 */
+	private long[] runPromise(final SctpChannelFacade client, final byte[] message) throws Exception {
+		long[] latencies = new long[MESSAGES];
+		long expected = received.get();
+		for (int i = 0; i < MESSAGES; i++) {
+			final long start = System.nanoTime();
+			final long[] end = new long[1];
+			final CountDownLatch sent = new CountDownLatch(1);
+			client.send(message, 0, MESSAGE_SIZE, true, 0, 0).done(new DoneCallback<Integer>() {
+
+				@Override
+				public void onDone(Integer result) {
+					end[0] = System.nanoTime();
+					sent.countDown();
+				}
+			});
+			assertTrue(sent.await(TIMEOUT, TimeUnit.SECONDS));
+			latencies[i] = end[0] - start;
+			expected += MESSAGE_SIZE;
+			if (i % BURST == BURST - 1) {
+				awaitReceived(expected);
+			}
+		}
+		awaitReceived(expected);
+		return latencies;
+	}
+
+	/**
+	 * @return the time of every sendNow call in ns.
+	 */
+	private long[] runNow(final SctpChannelFacade client, final byte[] message) throws Exception {
+		long[] latencies = new long[MESSAGES];
+		long expected = received.get();
+		for (int i = 0; i < MESSAGES; i++) {
+			long start = System.nanoTime();
+			int r = client.sendNow(message, 0, MESSAGE_SIZE, true, 0, 0);
+			latencies[i] = System.nanoTime() - start;
+			assertEquals(MESSAGE_SIZE, r);
+			expected += MESSAGE_SIZE;
+			if (i % BURST == BURST - 1) {
+				awaitReceived(expected);
+			}
+		}
+		awaitReceived(expected);
+		return latencies;
+	}
+
+	private static long percentile(final long[] values, final int percentile) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+	}
+
+	private void awaitReceived(final long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (received.get() < expected) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("receiver did not get all data");
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	private SctpChannelFacade connect() throws Exception {
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				if (ppid != 0) {
+					synchronized (ppids) {
+						ppids.add(Long.valueOf(ppid));
+					}
+				}
+				received.addAndGet(data.length);
+			}
+		};
+
+		return Loopback.connect(serverCb);
+	}
+}
@@ -0,0 +1,240 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import net.sctp4nat.connection.SctpConnection;
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpAssociationOptions;
+import net.sctp4nat.util.SctpInitOptions;
+import net.sctp4nat.util.SctpStreamScheduler;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This benchmark measures the latency of small messages on a control stream,
+ * while several bulk streams keep the send buffer of the association full.
+ * With {@link SctpStreamScheduler#FIRST_COME}, a control message waits behind
+ * all bulk data queued before it, with {@link SctpStreamScheduler#DEFAULT}
+ * behind one message of each bulk stream. With
+ * {@link SctpStreamScheduler#PRIORITY} and a lower priority value on the
+ * control stream, it only waits for the bulk message, which is being sent.
+ * The latencies depend on the machine, so the benchmark only runs with the
+ * benchmarks (see {@link Benchmarks}), schedulerTest always runs.
+ */
+public class SctpStreamSchedulerBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpStreamSchedulerBenchmarkTest.class);
+
+	private static final int TIMEOUT = 30;
+	private static final int CONTROL_SID = 0;
+	private static final int BULK_SID = 1;
+	private static final int BULK_STREAMS = 4;
+	private static final int BULK_MESSAGE_SIZE = 64 * 1024;
+	private static final int CONTROL_MESSAGES = 200;
+	private static final int CONTROL_INTERVAL_MILLIS = 5;
+	private static final int WARMUP_MESSAGES = 50;
+	private static final int SEND_BUFFER_SIZE = 4 * 1024 * 1024;
+	private static final int RECEIVE_BUFFER_SIZE = 256 * 1024;
+
+	private final AtomicLong bulkReceived = new AtomicLong();
+	private volatile long[] latencies;
+	private final AtomicLong controlReceived = new AtomicLong();
+
+	@Test
+	public void schedulerTest() throws Exception {
+		SctpChannelFacade client = connect(SctpStreamScheduler.PRIORITY);
+		assertEquals(SctpStreamScheduler.PRIORITY, client.getAssociationOptions().getStreamScheduler());
+
+		assertEquals(0, client.getStreamPriority(BULK_SID));
+		client.setStreamPriority(BULK_SID, 10);
+		assertEquals(10, client.getStreamPriority(BULK_SID));
+		assertEquals(0, client.getStreamPriority(CONTROL_SID));
+
+		client.setStreamScheduler(SctpStreamScheduler.ROUND_ROBIN);
+		assertEquals(SctpStreamScheduler.ROUND_ROBIN, client.getAssociationOptions().getStreamScheduler());
+		try {
+			// round robin has no priorities
+			client.setStreamPriority(BULK_SID, 10);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	@Test
+	public void priorityLatencyBenchmark() throws Exception {
+		Benchmarks.assumeEnabled();
+		Level level = Loopback.quietLogs();
+
+		try {
+			SctpChannelFacade client = connect(SctpStreamScheduler.DEFAULT);
+			BulkSender[] bulk = new BulkSender[BULK_STREAMS];
+			for (int i = 0; i < BULK_STREAMS; i++) {
+				bulk[i] = new BulkSender(client, BULK_SID + i);
+				bulk[i].start();
+			}
+
+			// the scheduler is changed, while the bulk streams are busy
+			long[] firstCome = run(client, SctpStreamScheduler.FIRST_COME);
+			// round robin is only logged, it is close to priority on loopback
+			run(client, SctpStreamScheduler.DEFAULT);
+			long[] priority = run(client, SctpStreamScheduler.PRIORITY);
+
+			for (int i = 0; i < BULK_STREAMS; i++) {
+				bulk[i].stop();
+				assertTrue(bulk[i].failure == null);
+			}
+
+			assertTrue(percentile(priority, 50) < percentile(firstCome, 50));
+		} finally {
+			Loopback.restoreLogs(level);
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	/**
+	 * Measures the control latency with scheduler. With
+	 * {@link SctpStreamScheduler#PRIORITY}, the bulk streams get a higher
+	 * priority value than the control stream.
+	 */
+	private long[] run(final SctpChannelFacade client, final SctpStreamScheduler scheduler) throws Exception {
+		client.setStreamScheduler(scheduler);
+		if (scheduler == SctpStreamScheduler.PRIORITY) {
+			for (int i = 0; i < BULK_STREAMS; i++) {
+				client.setStreamPriority(BULK_SID + i, 1);
+			}
+		}
+
+		run(client, WARMUP_MESSAGES);
+		long start = System.nanoTime();
+		long bytes = bulkReceived.get();
+		long[] latencies = run(client, CONTROL_MESSAGES);
+		double throughput = (bulkReceived.get() - bytes) * 1e9 / (1024 * 1024) / (System.nanoTime() - start);
+
+		LOG.warn("control latency under bulk load with {}: median {} us, p99 {} us, bulk {} MB/s", scheduler,
+				percentile(latencies, 50) / 1000, percentile(latencies, 99) / 1000,
+				String.format("%.1f", throughput));
+		return latencies;
+	}
+
+	/**
+	 * Sends count control messages, each stamped with the time of its first
+	 * send attempt, and returns the time until each one was received in ns.
+	 */
+	private long[] run(final SctpChannelFacade client, final int count) throws Exception {
+		latencies = new long[count];
+		controlReceived.set(0);
+		ByteBuffer message = ByteBuffer.allocate(16);
+		for (int i = 0; i < count; i++) {
+			message.clear();
+			message.putInt(0, i);
+			message.putLong(8, System.nanoTime());
+			long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+			// the bulk stream fills the send buffer, so retry until there is
+			// space for the control message
+			while (client.sendNow(message.array(), 0, message.capacity(), true, CONTROL_SID, 0) < 0) {
+				if (System.currentTimeMillis() > deadline) {
+					fail("control message could not be sent");
+				}
+				Thread.yield();
+			}
+			Thread.sleep(CONTROL_INTERVAL_MILLIS);
+		}
+
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (controlReceived.get() < count) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("receiver did not get all control messages");
+			}
+			Thread.sleep(1);
+		}
+		return latencies;
+	}
+
+	private static long percentile(final long[] values, final int percentile) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+	}
+
+	private SctpChannelFacade connect(final SctpStreamScheduler scheduler) throws Exception {
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				if (sid == CONTROL_SID) {
+					ByteBuffer message = ByteBuffer.wrap(data);
+					latencies[message.getInt(0)] = System.nanoTime() - message.getLong(8);
+					controlReceived.incrementAndGet();
+				} else {
+					bulkReceived.addAndGet(data.length);
+				}
+			}
+		};
+
+		// a receive window smaller than the send buffer keeps most of the bulk
+		// data queued at the sender, where the scheduler picks the next stream
+		SctpInitOptions initOptions = SctpInitOptions.builder()
+				.associationOptions(SctpAssociationOptions.builder().receiveBufferSize(RECEIVE_BUFFER_SIZE).build())
+				.build();
+		SctpAssociationOptions options = SctpAssociationOptions.builder().sendBufferSize(SEND_BUFFER_SIZE)
+				.streamScheduler(scheduler).build();
+		return Loopback.connect(serverCb, initOptions, SctpConnection.builder().associationOptions(options));
+	}
+
+	/**
+	 * Keeps the send buffer full with messages on one stream.
+	 */
+	private static class BulkSender implements Runnable {
+
+		private final SctpChannelFacade client;
+		private final int sid;
+		private final Thread thread = new Thread(this, "bulk-sender");
+		private volatile boolean running = true;
+		private volatile Exception failure;
+
+		BulkSender(final SctpChannelFacade client, final int sid) {
+			this.client = client;
+			this.sid = sid;
+		}
+
+		void start() {
+			thread.start();
+		}
+
+		void stop() throws InterruptedException {
+			running = false;
+			thread.join();
+		}
+
+		@Override
+		public void run() {
+			byte[] message = new byte[BULK_MESSAGE_SIZE];
+			try {
+				while (running) {
+					if (client.sendNow(message, 0, message.length, true, sid, 0) < 0) {
+						Thread.sleep(1);
+					}
+				}
+			} catch (Exception e) {
+				failure = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,293 @@
+package core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdeferred.DoneCallback;
+import org.jdeferred.ProgressCallback;
+import org.jdeferred.Promise;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.core.SctpMessageAssembler;
+import net.sctp4nat.origin.Sctp;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This test sends messages larger than the send buffer with
+ * {@link SctpChannelFacade#sendStream(ReadableByteChannel, boolean, int, int)}
+ * over a loopback association. The receiver must get each message complete
+ * after reassembly with a {@link SctpMessageAssembler}. The benchmark reports
+ * the throughput of messages from 1 MB to 1 GB, whose pieces the receiver
+ * only counts. It takes minutes, so it only runs with the benchmarks (see
+ * {@link Benchmarks}).
+ */
+public class SctpStreamSendBenchmarkTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SctpStreamSendBenchmarkTest.class);
+
+	private static final int TIMEOUT = 120;
+	private static final int MB = 1024 * 1024;
+	private static final long[] SIZES = new long[] { MB, 16 * MB, 256 * MB, 1024 * MB };
+
+	private volatile SctpDataCallback serverCb;
+
+	@Test
+	public void reassemblyTest() throws Exception {
+		final List<byte[]> messages = new CopyOnWriteArrayList<>();
+		final CountDownLatch received = new CountDownLatch(2);
+		final AtomicLong pieces = new AtomicLong();
+		final SctpMessageAssembler assembler = new SctpMessageAssembler(new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				assertTrue((flags & Sctp.MSG_EOR) != 0);
+				messages.add(data);
+				received.countDown();
+			}
+		});
+		serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				pieces.incrementAndGet();
+				assembler.onSctpPacket(data, sid, ssn, tsn, ppid, context, flags, so);
+			}
+		};
+		final SctpChannelFacade client = connect();
+
+		// 4 times SO_SNDBUF (1 MB) of the native socket
+		final byte[] large = new byte[4 * MB];
+		new Random(42).nextBytes(large);
+		final AtomicLong sent = new AtomicLong();
+		final AtomicLong locked = new AtomicLong();
+		Promise<Long, Exception, Long> transfer = client.sendStream(large, true, 0, 0)
+				.progress(new ProgressCallback<Long>() {
+
+					@Override
+					public void onProgress(Long progress) {
+						// the progress is notified before the next part is sent, so the
+						// message is still open and locks its stream
+						if (progress.longValue() < large.length) {
+							try {
+								client.sendNow(new byte[] { 1 }, 0, 1, true, 0, 0);
+							} catch (IOException e) {
+								locked.incrementAndGet();
+							}
+						}
+					}
+				}).done(new DoneCallback<Long>() {
+
+					@Override
+					public void onDone(Long result) {
+						sent.set(result.longValue());
+					}
+				});
+
+		transfer.waitSafely();
+		assertTrue(transfer.isResolved());
+		assertEquals(large.length, sent.get());
+		assertTrue(locked.get() > 0);
+		// the promise resolves, once the last part is queued, so the send buffer
+		// may still be full
+		byte[] small = new byte[] { 1, 2, 3, 4 };
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (client.sendNow(small, 0, small.length, true, 0, 0) < 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertTrue(received.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(2, messages.size());
+		assertArrayEquals(large, messages.get(0));
+		assertArrayEquals(small, messages.get(1));
+		assertTrue(pieces.get() > 2);
+		assertEquals(0, assembler.getPendingMessages());
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	/**
+	 * A shutdown, which is requested while a transfer waits for free space in
+	 * the send buffer, must not cut the message of the transfer.
+	 */
+	@Test
+	public void shutdownTest() throws Exception {
+		final List<byte[]> messages = new CopyOnWriteArrayList<>();
+		final CountDownLatch received = new CountDownLatch(1);
+		final SctpMessageAssembler assembler = new SctpMessageAssembler(new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				messages.add(data);
+				received.countDown();
+			}
+		});
+		serverCb = assembler;
+		SctpChannelFacade client = connect();
+
+		// 4 times SO_SNDBUF (1 MB) of the native socket, so the transfer waits
+		final byte[] large = new byte[4 * MB];
+		new Random(7).nextBytes(large);
+		Promise<Long, Exception, Long> transfer = client.sendStream(large, true, 0, 0);
+		client.shutdownInit();
+
+		transfer.waitSafely(TIMEOUT * 1000);
+		assertTrue(transfer.isResolved());
+		assertTrue(received.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(1, messages.size());
+		assertArrayEquals(large, messages.get(0));
+
+		// the shutdown was sent after the message
+		boolean failed;
+		try {
+			failed = client.sendNow(new byte[] { 1 }, 0, 1, true, 0, 0) < 0;
+		} catch (IOException e) {
+			failed = true;
+		}
+		assertTrue(failed);
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	@Test
+	public void throughputBenchmark() throws Exception {
+		Benchmarks.assumeEnabled();
+		final AtomicLong receivedBytes = new AtomicLong();
+		final AtomicLong receivedMessages = new AtomicLong();
+		serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				// the message is counted first, the bytes are awaited
+				if ((flags & Sctp.MSG_EOR) != 0) {
+					receivedMessages.incrementAndGet();
+				}
+				receivedBytes.addAndGet(data.length);
+			}
+		};
+		SctpChannelFacade client = connect();
+
+		long expectedBytes = 0;
+		for (int i = 0; i < SIZES.length; i++) {
+			long size = SIZES[i];
+			long start = System.nanoTime();
+			Promise<Long, Exception, Long> transfer = client.sendStream(new ZeroChannel(size), true, 0, 0);
+			transfer.waitSafely();
+			assertTrue(transfer.isResolved());
+
+			expectedBytes += size;
+			awaitReceived(receivedBytes, expectedBytes);
+			assertEquals(i + 1, receivedMessages.get());
+			long nanos = System.nanoTime() - start;
+			LOG.warn("stream send of {} MB: {} ms, {} MB/s", size / MB, TimeUnit.NANOSECONDS.toMillis(nanos),
+					String.format("%.1f", size * 1e9 / MB / nanos));
+		}
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	/**
+	 * A source, which fails with a runtime exception, must reject the promise.
+	 */
+	@Test
+	public void failingSourceTest() throws Exception {
+		serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+			}
+		};
+		SctpChannelFacade client = connect();
+
+		Promise<Long, Exception, Long> transfer = client.sendStream(new ReadableByteChannel() {
+
+			@Override
+			public int read(ByteBuffer dst) {
+				throw new IllegalStateException("broken source");
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		}, true, 0, 0);
+		transfer.waitSafely(TIMEOUT * 1000);
+		assertTrue(transfer.isRejected());
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	private static void awaitReceived(final AtomicLong received, final long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (received.get() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(expected, received.get());
+	}
+
+	private SctpChannelFacade connect() throws Exception {
+		return Loopback.connect(new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				serverCb.onSctpPacket(data, sid, ssn, tsn, ppid, context, flags, so);
+			}
+		});
+	}
+
+	/**
+	 * A source of size zero bytes, which does not allocate.
+	 */
+	private static class ZeroChannel implements ReadableByteChannel {
+
+		private long remaining;
+
+		ZeroChannel(final long size) {
+			this.remaining = size;
+		}
+
+		@Override
+		public int read(final ByteBuffer dst) {
+			if (remaining == 0) {
+				return -1;
+			}
+			int n = (int) Math.min(remaining, dst.remaining());
+			dst.position(dst.position() + n);
+			remaining -= n;
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
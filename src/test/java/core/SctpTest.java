@@ -174,7 +174,7 @@ public class SctpTest {
 
 					@Override
 					public void onDone(SctpChannelFacade result) {
-						SctpUtils.getThreadPoolExecutor().execute(new Runnable() {
+						SctpUtils.getExecutors().getControlExecutor().execute(new Runnable() {
 
 							@Override
 							public void run() {
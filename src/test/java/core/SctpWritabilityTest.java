@@ -0,0 +1,134 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import net.sctp4nat.core.SctpChannelFacade;
+import net.sctp4nat.origin.SctpDataCallback;
+import net.sctp4nat.origin.SctpWritabilityCallback;
+import net.sctp4nat.util.SctpUtils;
+
+/**
+ * This test stalls the receiver of a loopback association, until a send of
+ * the client fails, because its send buffer is full. The client must become
+ * unwritable and, once the receiver drains, writable again. Afterwards, the
+ * client paces itself with the {@link SctpWritabilityCallback}: it sends until
+ * a send fails and waits for the next writable event, until all messages are
+ * delivered.
+ */
+public class SctpWritabilityTest {
+
+	private static final int TIMEOUT = 30;
+	private static final int MESSAGE_SIZE = 16 * 1024;
+	private static final int SEND_THRESHOLD = 128 * 1024;
+	/**
+	 * 4 times SO_SNDBUF (1 MB) of the native socket.
+	 */
+	private static final int MESSAGES = 256;
+
+	private final AtomicLong received = new AtomicLong();
+	private final CountDownLatch stalled = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Test
+	public void writabilityTest() throws Exception {
+		SctpChannelFacade client = connect();
+
+		final List<Boolean> changes = new CopyOnWriteArrayList<>();
+		final List<Integer> available = new CopyOnWriteArrayList<>();
+		final Semaphore writable = new Semaphore(0);
+		client.setSendThreshold(SEND_THRESHOLD);
+		client.setSctpWritabilityCallback(new SctpWritabilityCallback() {
+
+			@Override
+			public void onWritabilityChanged(SctpChannelFacade facade, boolean isWritable, int sendBufferAvailable) {
+				changes.add(isWritable);
+				available.add(sendBufferAvailable);
+				if (isWritable) {
+					writable.release();
+				}
+			}
+		});
+
+		assertTrue(client.isWritable());
+		assertTrue(client.getSendBufferAvailable() > SEND_THRESHOLD);
+
+		byte[] data = new byte[MESSAGE_SIZE];
+		int sent = 0;
+		int failed = 0;
+		while (sent < MESSAGES) {
+			if (client.sendNow(data, 0, data.length, true, 0, 0) == MESSAGE_SIZE) {
+				sent++;
+				if (sent == 1) {
+					assertTrue(stalled.await(TIMEOUT, TimeUnit.SECONDS));
+				}
+				continue;
+			}
+
+			failed++;
+			if (failed == 1) {
+				// the receiver is still stalled, so the send buffer is full
+				assertFalse(client.isWritable());
+				assertEquals(1, changes.size());
+				assertEquals(Boolean.FALSE, changes.get(0));
+				assertTrue(available.get(0) < MESSAGE_SIZE);
+				assertTrue(client.getSendBufferAvailable() < MESSAGE_SIZE);
+				release.countDown();
+			}
+			// a socket, which drained in the meantime, stays writable
+			if (!client.isWritable()) {
+				assertTrue(writable.tryAcquire(TIMEOUT, TimeUnit.SECONDS));
+			}
+		}
+
+		awaitReceived((long) MESSAGES * MESSAGE_SIZE);
+		assertTrue(client.isWritable());
+		// unwritable and writable alternate
+		assertEquals(0, changes.size() % 2);
+		for (int i = 0; i < changes.size(); i++) {
+			assertEquals(i % 2 == 1, changes.get(i));
+		}
+		assertTrue(available.get(1) >= SEND_THRESHOLD);
+
+		SctpUtils.shutdownAll().waitSafely();
+	}
+
+	private void awaitReceived(final long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (received.get() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, received.get());
+	}
+
+	private SctpChannelFacade connect() throws Exception {
+		SctpDataCallback serverCb = new SctpDataCallback() {
+
+			@Override
+			public void onSctpPacket(byte[] data, int sid, int ssn, int tsn, long ppid, int context, int flags,
+					SctpChannelFacade so) {
+				// the first message stalls the receiver, so that no SACK reaches
+				// the client until it is released
+				stalled.countDown();
+				try {
+					release.await(TIMEOUT, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				received.addAndGet(data.length);
+			}
+		};
+
+		return Loopback.connect(serverCb);
+	}
+}
@@ -0,0 +1,164 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import net.sctp4nat.util.SerialExecutor;
+
+public class SerialExecutorTest {
+
+	private static final int TIMEOUT = 30;
+	private static final int PRODUCERS = 4;
+	private static final int TASKS = 10000;
+
+	/**
+	 * Tasks of one producer must run in submission order and never
+	 * concurrently, although the delegate has several threads.
+	 */
+	@Test
+	public void orderTest() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(PRODUCERS);
+		final SerialExecutor executor = new SerialExecutor(pool);
+		final int[] last = new int[PRODUCERS];
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(PRODUCERS * TASKS);
+
+		Thread[] producers = new Thread[PRODUCERS];
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+			last[producer] = -1;
+			producers[p] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < TASKS; i++) {
+						final int seq = i;
+						executor.execute(new Runnable() {
+
+							@Override
+							public void run() {
+								if (running.incrementAndGet() != 1 || last[producer] != seq - 1) {
+									errors.incrementAndGet();
+								}
+								last[producer] = seq;
+								running.decrementAndGet();
+								done.countDown();
+							}
+						});
+					}
+				}
+			});
+			producers[p].start();
+		}
+
+		assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(0, errors.get());
+		assertEquals(0, executor.getPendingTasks());
+		pool.shutdown();
+	}
+
+	/**
+	 * Two {@link SerialExecutor}s on the same delegate must run in parallel.
+	 */
+	@Test
+	public void parallelTest() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		final CountDownLatch bothRunning = new CountDownLatch(2);
+		final CountDownLatch done = new CountDownLatch(2);
+
+		for (int i = 0; i < 2; i++) {
+			new SerialExecutor(pool).execute(new Runnable() {
+
+				@Override
+				public void run() {
+					bothRunning.countDown();
+					try {
+						if (bothRunning.await(TIMEOUT, TimeUnit.SECONDS)) {
+							done.countDown();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+
+		assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+		pool.shutdown();
+	}
+
+	/**
+	 * A failing task must not stop the mailbox.
+	 */
+	@Test
+	public void failingTaskTest() throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		SerialExecutor executor = new SerialExecutor(pool);
+		final CountDownLatch done = new CountDownLatch(1);
+
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				throw new IllegalStateException("expected");
+			}
+		});
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		});
+
+		assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+		pool.shutdown();
+	}
+
+	/**
+	 * The mailbox is only idle, if no task is pending or running.
+	 */
+	@Test
+	public void idleTest() throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		SerialExecutor executor = new SerialExecutor(pool);
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		assertTrue(executor.isIdle());
+
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				running.countDown();
+				try {
+					release.await(TIMEOUT, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(running.await(TIMEOUT, TimeUnit.SECONDS));
+		// no task is pending, but one is running
+		assertEquals(0, executor.getPendingTasks());
+		assertFalse(executor.isIdle());
+
+		release.countDown();
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while (!executor.isIdle() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertTrue(executor.isIdle());
+		pool.shutdown();
+	}
+}